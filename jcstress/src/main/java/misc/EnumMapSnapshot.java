@@ -0,0 +1,81 @@
+package misc;
+
+import org.openjdk.jcstress.Main;
+import org.openjdk.jcstress.annotations.*;
+import org.openjdk.jcstress.infra.results.IIII_Result;
+import org.openjdk.jcstress.infra.results.II_Result;
+import sunmisc.utils.concurrent.Backoff;
+import sunmisc.utils.concurrent.maps.ConcurrentEnumMap;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+public class EnumMapSnapshot {
+
+    private static ConcurrentEnumMap<TimeUnit, Integer> versioned() {
+        return new ConcurrentEnumMap<>(TimeUnit.class, Backoff.NONE,
+                ConcurrentEnumMap.Option.VERSIONED);
+    }
+
+    // SECONDS is put before DAYS, a snapshot with DAYS has SECONDS
+    @JCStressTest
+    @State
+    @Outcome(id = {"0, 0", "1, 0", "1, 1"}, expect = ACCEPTABLE, desc = "A prefix of the writes")
+    @Outcome(id = "0, 1", expect = FORBIDDEN, desc = "The later write without the earlier one")
+    public static class Ordered {
+        final ConcurrentEnumMap<TimeUnit, Integer> map = versioned();
+
+        @Actor
+        void writer() {
+            map.put(TimeUnit.SECONDS, 1);
+            map.put(TimeUnit.DAYS, 1);
+        }
+
+        @Actor
+        void reader(II_Result r) {
+            Map<TimeUnit, Integer> s = map.snapshot();
+            r.r1 = s.containsKey(TimeUnit.SECONDS) ? 1 : 0;
+            r.r2 = s.containsKey(TimeUnit.DAYS) ? 1 : 0;
+        }
+    }
+
+    // independent writes: both snapshots agree on which came first
+    @JCStressTest
+    @State
+    @Outcome(id = {"1, 0, 0, 1", "0, 1, 1, 0"}, expect = FORBIDDEN, desc = "Snapshots disagree on the order")
+    @Outcome(expect = ACCEPTABLE, desc = "Linearizable")
+    public static class Iriw {
+        final ConcurrentEnumMap<TimeUnit, Integer> map = versioned();
+
+        @Actor
+        void writer1() {
+            map.put(TimeUnit.SECONDS, 1);
+        }
+
+        @Actor
+        void writer2() {
+            map.put(TimeUnit.DAYS, 1);
+        }
+
+        @Actor
+        void reader1(IIII_Result r) {
+            Map<TimeUnit, Integer> s = map.snapshot();
+            r.r1 = s.containsKey(TimeUnit.SECONDS) ? 1 : 0;
+            r.r2 = s.containsKey(TimeUnit.DAYS) ? 1 : 0;
+        }
+
+        @Actor
+        void reader2(IIII_Result r) {
+            Map<TimeUnit, Integer> s = map.snapshot();
+            r.r3 = s.containsKey(TimeUnit.SECONDS) ? 1 : 0;
+            r.r4 = s.containsKey(TimeUnit.DAYS) ? 1 : 0;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Main.main(args);
+    }
+}
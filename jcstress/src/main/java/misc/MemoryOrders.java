@@ -0,0 +1,209 @@
+package misc;
+
+import org.openjdk.jcstress.Main;
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.II_Result;
+import sunmisc.utils.concurrent.memory.ArrayMemory;
+import sunmisc.utils.concurrent.memory.BitwiseSegmentMemory;
+import sunmisc.utils.concurrent.memory.MemoryOrder;
+import sunmisc.utils.concurrent.memory.ModifiableMemory;
+
+import static org.openjdk.jcstress.annotations.Expect.*;
+
+/*
+ * What each MemoryOrder actually guarantees for fetch/store
+ *
+ * message passing: data is stored before the flag,
+ * seeing the flag without the data is a reordering
+ *
+ * store buffering (Dekker): each thread stores its element
+ * and then fetches the other one, (0, 0) needs the store
+ * to be reordered with the subsequent fetch
+ *
+ * coherence: two fetches of one element by the same thread
+ * must not go back in time
+ */
+public class MemoryOrders {
+
+    /* ---------------- message passing -------------- */
+
+    private static class MessagePassing {
+        final ModifiableMemory<Integer> memory;
+
+        MessagePassing(MemoryOrder order) {
+            memory = new ArrayMemory<>(2, order);
+        }
+
+        void write() {
+            memory.store(0, 1); // data
+            memory.store(1, 1); // flag
+        }
+
+        void read(II_Result r) {
+            r.r1 = value(memory.fetch(1));
+            r.r2 = value(memory.fetch(0));
+        }
+    }
+
+    @JCStressTest
+    @State
+    @Outcome(id = {"0, 0", "0, 1", "1, 1"}, expect = ACCEPTABLE, desc = "Trivial")
+    @Outcome(id = "1, 0", expect = ACCEPTABLE_INTERESTING, desc = "Flag without data, plain stores are reordered")
+    public static class PlainMessagePassing extends MessagePassing {
+        public PlainMessagePassing() { super(MemoryOrder.PLAIN); }
+
+        @Actor
+        public void writer() { write(); }
+
+        @Actor
+        public void reader(II_Result r) { read(r); }
+    }
+
+    @JCStressTest
+    @State
+    @Outcome(id = {"0, 0", "0, 1", "1, 1"}, expect = ACCEPTABLE, desc = "Trivial")
+    @Outcome(id = "1, 0", expect = ACCEPTABLE_INTERESTING, desc = "Flag without data, opaque does not order distinct elements")
+    public static class OpaqueMessagePassing extends MessagePassing {
+        public OpaqueMessagePassing() { super(MemoryOrder.OPAQUE); }
+
+        @Actor
+        public void writer() { write(); }
+
+        @Actor
+        public void reader(II_Result r) { read(r); }
+    }
+
+    @JCStressTest
+    @State
+    @Outcome(id = {"0, 0", "0, 1", "1, 1"}, expect = ACCEPTABLE, desc = "Trivial")
+    @Outcome(id = "1, 0", expect = FORBIDDEN, desc = "Acquire must observe what precedes the release")
+    public static class AcquireReleaseMessagePassing extends MessagePassing {
+        public AcquireReleaseMessagePassing() { super(MemoryOrder.ACQUIRE_RELEASE); }
+
+        @Actor
+        public void writer() { write(); }
+
+        @Actor
+        public void reader(II_Result r) { read(r); }
+    }
+
+    @JCStressTest
+    @State
+    @Outcome(id = {"0, 0", "0, 1", "1, 1"}, expect = ACCEPTABLE, desc = "Trivial")
+    @Outcome(id = "1, 0", expect = FORBIDDEN, desc = "Volatile is at least acquire/release")
+    public static class VolatileMessagePassing extends MessagePassing {
+        public VolatileMessagePassing() { super(MemoryOrder.VOLATILE); }
+
+        @Actor
+        public void writer() { write(); }
+
+        @Actor
+        public void reader(II_Result r) { read(r); }
+    }
+
+    /* ---------------- store buffering -------------- */
+
+    private static class StoreBuffering {
+        final BitwiseSegmentMemory<Integer> memory;
+
+        StoreBuffering(MemoryOrder order) {
+            memory = new BitwiseSegmentMemory<>(int.class, order);
+        }
+
+        void first(II_Result r) {
+            memory.storeInt(0, 1);
+            r.r1 = memory.fetchInt(1);
+        }
+
+        void second(II_Result r) {
+            memory.storeInt(1, 1);
+            r.r2 = memory.fetchInt(0);
+        }
+    }
+
+    @JCStressTest
+    @State
+    @Outcome(id = {"0, 1", "1, 0", "1, 1"}, expect = ACCEPTABLE, desc = "Trivial")
+    @Outcome(id = "0, 0", expect = ACCEPTABLE_INTERESTING, desc = "Release store passes the acquire fetch")
+    public static class AcquireReleaseStoreBuffering extends StoreBuffering {
+        public AcquireReleaseStoreBuffering() { super(MemoryOrder.ACQUIRE_RELEASE); }
+
+        @Actor
+        public void actor1(II_Result r) { first(r); }
+
+        @Actor
+        public void actor2(II_Result r) { second(r); }
+    }
+
+    @JCStressTest
+    @State
+    @Outcome(id = {"0, 1", "1, 0", "1, 1"}, expect = ACCEPTABLE, desc = "Trivial")
+    @Outcome(id = "0, 0", expect = FORBIDDEN, desc = "Sequential consistency")
+    public static class VolatileStoreBuffering extends StoreBuffering {
+        public VolatileStoreBuffering() { super(MemoryOrder.VOLATILE); }
+
+        @Actor
+        public void actor1(II_Result r) { first(r); }
+
+        @Actor
+        public void actor2(II_Result r) { second(r); }
+    }
+
+    /* ---------------- coherence -------------- */
+
+    private static class Coherence {
+        final BitwiseSegmentMemory<Integer> memory;
+
+        Coherence(MemoryOrder order) {
+            memory = new BitwiseSegmentMemory<>(int.class, order);
+        }
+
+        void write() {
+            memory.storeInt(0, 1);
+        }
+
+        void read(II_Result r) {
+            r.r1 = memory.fetchInt(0);
+            r.r2 = memory.fetchInt(0);
+        }
+    }
+
+    @JCStressTest
+    @State
+    @Outcome(id = {"0, 0", "0, 1", "1, 1"}, expect = ACCEPTABLE, desc = "Trivial")
+    @Outcome(id = "1, 0", expect = ACCEPTABLE_INTERESTING, desc = "Plain fetches may go back in time")
+    public static class PlainCoherence extends Coherence {
+        public PlainCoherence() { super(MemoryOrder.PLAIN); }
+
+        @Actor
+        public void writer() { write(); }
+
+        @Actor
+        public void reader(II_Result r) { read(r); }
+    }
+
+    @JCStressTest
+    @State
+    @Outcome(id = {"0, 0", "0, 1", "1, 1"}, expect = ACCEPTABLE, desc = "Trivial")
+    @Outcome(id = "1, 0", expect = FORBIDDEN, desc = "Opaque is coherent per element")
+    public static class OpaqueCoherence extends Coherence {
+        public OpaqueCoherence() { super(MemoryOrder.OPAQUE); }
+
+        @Actor
+        public void writer() { write(); }
+
+        @Actor
+        public void reader(II_Result r) { read(r); }
+    }
+
+    private static int value(Integer x) {
+        return x == null ? 0 : x;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Main.main(args);
+    }
+}
@@ -0,0 +1,75 @@
+package misc;
+
+import org.openjdk.jcstress.Main;
+import org.openjdk.jcstress.annotations.*;
+import org.openjdk.jcstress.infra.results.II_Result;
+import org.openjdk.jcstress.infra.results.ZZ_Result;
+import sunmisc.utils.concurrent.memory.KCasMemory;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+public class MultiWordCas {
+
+    // a reader of both words must never observe half of a transfer
+    @JCStressTest
+    @State
+    @Outcome(id = {"1, 0", "0, 1"}, expect = ACCEPTABLE, desc = "Before or after the transfer")
+    @Outcome(expect = FORBIDDEN, desc = "Torn transfer")
+    public static class Transfer {
+        static final Integer ZERO = 0, ONE = 1;
+        final KCasMemory<Integer> memory = new KCasMemory<>(2);
+
+        public Transfer() {
+            memory.store(0, ONE);
+            memory.store(1, ZERO);
+        }
+
+        @Actor
+        void transfer() {
+            memory.compareAndStore(0, ONE, ZERO, 1, ZERO, ONE);
+        }
+
+        @Actor
+        void reader(II_Result r) {
+            // a successful identity k-CAS validates the pair as a snapshot
+            for (Integer a, b;;) {
+                a = memory.fetch(0); b = memory.fetch(1);
+                if (memory.compareAndStore(0, a, a, 1, b, b)) {
+                    r.r1 = a; r.r2 = b;
+                    return;
+                }
+            }
+        }
+    }
+
+    // of two competing operations over a shared word at most one succeeds
+    @JCStressTest
+    @State
+    @Outcome(id = {"true, false", "false, true"}, expect = ACCEPTABLE, desc = "One winner")
+    @Outcome(expect = FORBIDDEN, desc = "Both or none succeeded")
+    public static class Conflict {
+        static final Integer ZERO = 0, ONE = 1;
+        final KCasMemory<Integer> memory = new KCasMemory<>(3);
+
+        public Conflict() {
+            memory.store(0, ZERO);
+            memory.store(1, ZERO);
+            memory.store(2, ZERO);
+        }
+
+        @Actor
+        void actor1(ZZ_Result r) {
+            r.r1 = memory.compareAndStore(0, ZERO, ONE, 1, ZERO, ONE);
+        }
+
+        @Actor
+        void actor2(ZZ_Result r) {
+            r.r2 = memory.compareAndStore(2, ZERO, ONE, 1, ZERO, ONE);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Main.main(args);
+    }
+}
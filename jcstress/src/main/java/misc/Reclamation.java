@@ -0,0 +1,215 @@
+package misc;
+
+import org.openjdk.jcstress.Main;
+import org.openjdk.jcstress.annotations.*;
+import org.openjdk.jcstress.infra.results.II_Result;
+import org.openjdk.jcstress.infra.results.I_Result;
+import sunmisc.utils.concurrent.memory.EpochReclaimer;
+import sunmisc.utils.concurrent.memory.NativeSegmentMemory;
+import sunmisc.utils.concurrent.memory.ReferenceSegmentMemory;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+public class Reclamation {
+
+    /*
+     * the reader either sees the segment or gets IndexOutOfBoundsException,
+     * -1 stands for any other exception
+     */
+    @JCStressTest
+    @State
+    @Outcome(id = {"1", "0"}, expect = ACCEPTABLE, desc = "Read before or after the shrink")
+    @Outcome(id = "-1", expect = FORBIDDEN, desc = "Unlinked segment observed")
+    public static class ReferenceShrink {
+        final ReferenceSegmentMemory<Integer> memory = new ReferenceSegmentMemory<>();
+
+        public ReferenceShrink() {
+            memory.realloc(8);
+            memory.store(6, 1);
+        }
+
+        @Actor
+        void shrink() {
+            memory.realloc(2);
+        }
+
+        @Actor
+        void reader(I_Result r) {
+            try {
+                Integer x = memory.fetch(6);
+                r.r1 = x == null ? -1 : x;
+            } catch (IndexOutOfBoundsException e) {
+                r.r1 = 0;
+            } catch (RuntimeException e) {
+                r.r1 = -1;
+            }
+        }
+    }
+
+    // IllegalStateException would mean that a released arena was accessed
+    @JCStressTest
+    @State
+    @Outcome(id = {"1", "0"}, expect = ACCEPTABLE, desc = "Read before or after the shrink")
+    @Outcome(id = "-1", expect = FORBIDDEN, desc = "Released area accessed")
+    public static class NativeShrink {
+        final NativeSegmentMemory<Long> memory = new NativeSegmentMemory<>(long.class);
+
+        public NativeShrink() {
+            memory.realloc(8);
+            memory.storeLong(6, 1L);
+        }
+
+        @Actor
+        void shrink() {
+            memory.realloc(2);
+        }
+
+        @Actor
+        void reader(I_Result r) {
+            try {
+                r.r1 = (int) memory.fetchLong(6);
+            } catch (IndexOutOfBoundsException e) {
+                r.r1 = 0;
+            } catch (RuntimeException e) {
+                r.r1 = -1;
+            }
+        }
+
+        @Arbiter
+        void close() {
+            memory.close();
+        }
+    }
+
+    // the reclaimer must not return while a reader that saw the old state is inside
+    @JCStressTest
+    @State
+    @Outcome(id = {"0, 1", "1, 1"}, expect = ACCEPTABLE, desc = "Synchronized")
+    @Outcome(id = "1, 0", expect = FORBIDDEN, desc = "Freed under the reader")
+    public static class Synchronize {
+        final EpochReclaimer reclaimer = new EpochReclaimer();
+        volatile int linked = 1, freed;
+
+        @Actor
+        void reclaimer() {
+            linked = 0;
+            reclaimer.synchronize();
+            freed = 1;
+        }
+
+        @Actor
+        void reader(II_Result r) {
+            EpochReclaimer.Reader reader = reclaimer.enter();
+            try {
+                r.r1 = linked;
+                r.r2 = r.r1 == 1 ? 1 - freed : 1;
+            } finally {
+                reader.exit();
+            }
+        }
+    }
+
+    /*
+     * A reader that reads the epoch before a grace period and increments
+     * its counter after it must still hold back the next grace period
+     */
+    @JCStressTest
+    @State
+    @Outcome(id = {"0, 1", "1, 1"}, expect = ACCEPTABLE, desc = "Synchronized")
+    @Outcome(id = "1, 0", expect = FORBIDDEN, desc = "Freed under the reader")
+    public static class BackToBack {
+        final EpochReclaimer reclaimer = new EpochReclaimer();
+        volatile int linked = 1, freed;
+
+        @Actor
+        void reclaimer() {
+            reclaimer.synchronize();
+            linked = 0;
+            reclaimer.synchronize();
+            freed = 1;
+        }
+
+        @Actor
+        void reader(II_Result r) {
+            EpochReclaimer.Reader reader = reclaimer.enter();
+            try {
+                r.r1 = linked;
+                r.r2 = r.r1 == 1 ? 1 - freed : 1;
+            } finally {
+                reader.exit();
+            }
+        }
+    }
+
+    // the first grace period belongs to an unrelated reclaimer
+    @JCStressTest
+    @State
+    @Outcome(id = {"0, 1", "1, 1"}, expect = ACCEPTABLE, desc = "Synchronized")
+    @Outcome(id = "1, 0", expect = FORBIDDEN, desc = "Freed under the reader")
+    public static class ConcurrentSynchronize {
+        final EpochReclaimer reclaimer = new EpochReclaimer();
+        volatile int linked = 1, freed;
+
+        @Actor
+        void other() {
+            reclaimer.synchronize();
+        }
+
+        @Actor
+        void reclaimer() {
+            linked = 0;
+            reclaimer.synchronize();
+            freed = 1;
+        }
+
+        @Actor
+        void reader(II_Result r) {
+            EpochReclaimer.Reader reader = reclaimer.enter();
+            try {
+                r.r1 = linked;
+                r.r2 = r.r1 == 1 ? 1 - freed : 1;
+            } finally {
+                reader.exit();
+            }
+        }
+    }
+
+    // the reader is already inside another reclaimer when it enters this one
+    @JCStressTest
+    @State
+    @Outcome(id = {"0, 1", "1, 1"}, expect = ACCEPTABLE, desc = "Synchronized")
+    @Outcome(id = "1, 0", expect = FORBIDDEN, desc = "Freed under the nested reader")
+    public static class Nested {
+        final EpochReclaimer outer = new EpochReclaimer();
+        final EpochReclaimer reclaimer = new EpochReclaimer();
+        volatile int linked = 1, freed;
+
+        @Actor
+        void reclaimer() {
+            linked = 0;
+            reclaimer.synchronize();
+            freed = 1;
+        }
+
+        @Actor
+        void reader(II_Result r) {
+            EpochReclaimer.Reader a = outer.enter();
+            try {
+                EpochReclaimer.Reader b = reclaimer.enter();
+                try {
+                    r.r1 = linked;
+                    r.r2 = r.r1 == 1 ? 1 - freed : 1;
+                } finally {
+                    b.exit();
+                }
+            } finally {
+                a.exit();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Main.main(args);
+    }
+}
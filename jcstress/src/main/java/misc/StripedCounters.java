@@ -0,0 +1,45 @@
+package misc;
+
+import org.openjdk.jcstress.Main;
+import org.openjdk.jcstress.annotations.*;
+import org.openjdk.jcstress.infra.results.J_Result;
+import sunmisc.utils.concurrent.memory.StripedSegmentMemory;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+public class StripedCounters {
+
+    // an update must not be lost while the counter is being inflated
+    @JCStressTest
+    @State
+    @Outcome(id = "3", expect = ACCEPTABLE, desc = "All updates counted")
+    @Outcome(expect = FORBIDDEN, desc = "Lost update")
+    public static class Inflation {
+        final StripedSegmentMemory memory = new StripedSegmentMemory(2);
+
+        @Actor
+        void actor1() {
+            memory.increment(0);
+        }
+
+        @Actor
+        void actor2() {
+            memory.increment(0);
+        }
+
+        @Actor
+        void actor3() {
+            memory.increment(0);
+        }
+
+        @Arbiter
+        void arbiter(J_Result r) {
+            r.r1 = memory.sum(0);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Main.main(args);
+    }
+}
@@ -0,0 +1,43 @@
+package misc;
+
+import org.openjdk.jcstress.Main;
+import org.openjdk.jcstress.annotations.*;
+import org.openjdk.jcstress.infra.results.JJ_Result;
+import sunmisc.utils.concurrent.memory.StructMemory;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+public class StructSeqlock {
+
+    // a read must return the fields of a single write
+    @JCStressTest
+    @State
+    @Outcome(id = {"0, 0", "1, 1", "2, 2"}, expect = ACCEPTABLE, desc = "Fields of one write")
+    @Outcome(expect = FORBIDDEN, desc = "Torn slot")
+    public static class TornRead {
+        final StructMemory memory = new StructMemory(2, true, long.class, int.class);
+
+        @Actor
+        void writer1() {
+            memory.write(1, 1L, 1L);
+        }
+
+        @Actor
+        void writer2() {
+            memory.write(1, 2L, 2L);
+        }
+
+        @Actor
+        void reader(JJ_Result r) {
+            long[] slot = new long[2];
+            memory.read(1, slot);
+            r.r1 = slot[0];
+            r.r2 = slot[1];
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Main.main(args);
+    }
+}
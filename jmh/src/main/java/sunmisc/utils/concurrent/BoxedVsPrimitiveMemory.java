@@ -0,0 +1,86 @@
+package sunmisc.utils.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sunmisc.utils.concurrent.memory.BitwiseSegmentMemory;
+import sunmisc.utils.concurrent.memory.LongMemory;
+import sunmisc.utils.concurrent.memory.NativeSegmentMemory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * gc.alloc.rate.norm shows the bytes allocated per operation,
+ * the primitive increment path is expected to allocate nothing
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(1)
+@Fork(1)
+public class BoxedVsPrimitiveMemory {
+
+    private static final int SIZE = 1 << 13;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BoxedVsPrimitiveMemory.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+
+    public enum ContainerType { BITWISE, NATIVE }
+    private @Param ContainerType containerType;
+
+    private BitwiseSegmentMemory<Long> heap;
+    private NativeSegmentMemory<Long> offHeap;
+
+    @Setup
+    public void prepare() {
+        heap = new BitwiseSegmentMemory<>(long.class);
+        heap.realloc(SIZE);
+        offHeap = new NativeSegmentMemory<>(long.class);
+        offHeap.realloc(SIZE);
+    }
+
+    @TearDown
+    public void close() {
+        offHeap.close();
+    }
+
+    @Benchmark
+    public Long boxedIncrement() {
+        final int r = ThreadLocalRandom.current().nextInt(SIZE);
+        return switch (containerType) {
+            case BITWISE -> heap.fetchAndAdd(r, 1L);
+            case NATIVE -> offHeap.fetchAndAdd(r, 1L);
+        };
+    }
+
+    @Benchmark
+    public long primitiveIncrement() {
+        final int r = ThreadLocalRandom.current().nextInt(SIZE);
+        final LongMemory memory = switch (containerType) {
+            case BITWISE -> heap;
+            case NATIVE -> offHeap;
+        };
+        return memory.fetchAndAddLong(r, 1L);
+    }
+
+    @Benchmark
+    public long primitiveRead() {
+        final int r = ThreadLocalRandom.current().nextInt(SIZE);
+        final LongMemory memory = switch (containerType) {
+            case BITWISE -> heap;
+            case NATIVE -> offHeap;
+        };
+        return memory.fetchLong(r);
+    }
+}
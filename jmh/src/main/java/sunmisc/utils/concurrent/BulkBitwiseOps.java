@@ -0,0 +1,78 @@
+package sunmisc.utils.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sunmisc.utils.concurrent.memory.BitwiseSegmentMemory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * elementwise: one fetchAndBitwiseAndLong per element, what the filters do today
+ * scalar: andRange without the vector module, the plain loop fallback
+ * vector: andRange with --add-modules jdk.incubator.vector
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(1)
+@Fork(1)
+public class BulkBitwiseOps {
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BulkBitwiseOps.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+    private @Param({"1024", "65536", "1048576"}) int size;
+
+    private BitwiseSegmentMemory<Long> dst, src;
+
+    @Setup
+    public void prepare() {
+        dst = new BitwiseSegmentMemory<>(long.class);
+        src = new BitwiseSegmentMemory<>(long.class);
+        dst.realloc(size);
+        src.realloc(size);
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        for (int i = 0; i < size; ++i) {
+            dst.storeLong(i, r.nextLong());
+            src.storeLong(i, r.nextLong() | r.nextLong());
+        }
+    }
+
+    @Benchmark
+    public void elementwise() {
+        for (int i = 0; i < size; ++i)
+            dst.fetchAndBitwiseAndLong(i, src.fetchLong(i));
+    }
+
+    @Benchmark
+    public void scalar() {
+        dst.andRange(0, src, 0, size);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+    public void vector() {
+        dst.andRange(0, src, 0, size);
+    }
+
+    @Benchmark
+    public long bitCountScalar() {
+        return dst.bitCount(0, size);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+    public long bitCountVector() {
+        return dst.bitCount(0, size);
+    }
+}
@@ -0,0 +1,90 @@
+package sunmisc.utils.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sunmisc.utils.concurrent.memory.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(1)
+@Fork(1)
+public class BulkVsElementwise {
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BulkVsElementwise.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+    public enum ContainerType { ARRAY, MALLOC, EXP, BITWISE }
+    private @Param ContainerType containerType;
+    private @Param({"1024", "65536"}) int size;
+
+    private ModifiableMemory<Integer> memory, target;
+    private Integer[] buffer;
+
+    @Setup
+    public void prepare() {
+        memory = make(); target = make();
+        buffer = new Integer[size];
+        memory.fill(0, size, 1);
+        target.fill(0, size, 0);
+    }
+
+    private ModifiableMemory<Integer> make() {
+        return switch (containerType) {
+            case ARRAY -> new ArrayMemory<>(size);
+            case MALLOC -> new ReferenceSegmentMemory<Integer>().realloc(size);
+            case EXP -> new ImmutableSegmentsMemory<>(size);
+            case BITWISE -> new BitwiseSegmentMemory<>(int.class).realloc(size);
+        };
+    }
+
+    @Benchmark
+    public Object fillBulk() {
+        memory.fill(0, size, 7);
+        return memory;
+    }
+
+    @Benchmark
+    public Object fillLoop() {
+        for (int i = 0; i < size; ++i)
+            memory.store(i, 7);
+        return memory;
+    }
+
+    @Benchmark
+    public Object fetchRangeBulk() {
+        memory.fetchRange(0, buffer, 0, size);
+        return buffer;
+    }
+
+    @Benchmark
+    public Object fetchRangeLoop() {
+        for (int i = 0; i < size; ++i)
+            buffer[i] = memory.fetch(i);
+        return buffer;
+    }
+
+    @Benchmark
+    public Object copyBulk() {
+        memory.copy(0, target, 0, size);
+        return target;
+    }
+
+    @Benchmark
+    public Object copyLoop() {
+        for (int i = 0; i < size; ++i)
+            target.store(i, memory.fetch(i));
+        return target;
+    }
+}
@@ -0,0 +1,66 @@
+package sunmisc.utils.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sunmisc.utils.concurrent.maps.ConcurrentEnumMap;
+import sunmisc.utils.concurrent.memory.ArrayMemory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * The CAS loop of AtomicAddVsCas and the retry loops of the structures
+ * on a single hot slot, with every backoff policy
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode({Mode.Throughput})
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(Threads.MAX)
+@Fork(1)
+public class ContendedBackoff {
+
+    private @Param Backoff backoff;
+
+    private AtomicInteger x;
+    private ArrayMemory<Integer> memory;
+    private ConcurrentEnumMap<TimeUnit, Integer> map;
+
+    @Setup
+    public void prepare() {
+        x = new AtomicInteger();
+        memory = new ArrayMemory<>(1);
+        memory.store(0, 0);
+        map = new ConcurrentEnumMap<>(TimeUnit.class, backoff);
+    }
+
+    @Benchmark
+    public int casLoop() {
+        for (int attempt = 0;; backoff.pause(attempt++)) {
+            int i = x.getOpaque();
+            if (x.weakCompareAndSetVolatile(i, i + 1))
+                return i;
+        }
+    }
+
+    @Benchmark
+    public void transform() {
+        memory.transform(0, i -> i + 1, backoff);
+    }
+
+    @Benchmark
+    public Integer merge() {
+        return map.merge(TimeUnit.SECONDS, 1, Integer::sum);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(ContendedBackoff.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,82 @@
+package sunmisc.utils.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sunmisc.utils.Cursor;
+import sunmisc.utils.concurrent.memory.ArrayMemory;
+import sunmisc.utils.concurrent.memory.BitwiseSegmentMemory;
+import sunmisc.utils.concurrent.memory.ModifiableMemory;
+import sunmisc.utils.concurrent.memory.ReferenceSegmentMemory;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * gc.alloc.rate.norm: the cursor walk allocates a record per element,
+ * forEach should allocate nothing
+ * (the bitwise memory still boxes its elements for the Consumer,
+ * forEachLong does not)
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(1)
+@Fork(1)
+public class CursorVsForEach {
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(CursorVsForEach.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+
+    public enum ContainerType { ARRAY, EXP, BITWISE }
+    private @Param ContainerType containerType;
+    private @Param({"65536"}) int size;
+
+    private ModifiableMemory<Long> memory;
+    private BitwiseSegmentMemory<Long> bitwise;
+
+    @Setup
+    public void prepare() {
+        bitwise = new BitwiseSegmentMemory<>(long.class);
+        bitwise.realloc(size);
+        memory = switch (containerType) {
+            case ARRAY -> new ArrayMemory<>(size);
+            case EXP -> {
+                ReferenceSegmentMemory<Long> m = new ReferenceSegmentMemory<>();
+                m.realloc(size);
+                yield m;
+            }
+            case BITWISE -> bitwise;
+        };
+        for (int i = 0, n = memory.length(); i < n; ++i)
+            memory.store(i, (long) i);
+    }
+
+    @Benchmark
+    public void cursor(Blackhole bh) {
+        for (Cursor<Long> cursor = memory.origin();
+             cursor.exists();
+             cursor = cursor.next())
+            bh.consume(cursor.element());
+    }
+
+    @Benchmark
+    public void forEach(Blackhole bh) {
+        memory.forEach(bh::consume);
+    }
+
+    @Benchmark
+    public void forEachLong(Blackhole bh) {
+        bitwise.forEachLong(bh::consume);
+    }
+}
@@ -0,0 +1,110 @@
+package sunmisc.utils.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sunmisc.utils.concurrent.SparseEnumMap.Key;
+import sunmisc.utils.concurrent.ThreadSafeMaps.Letter;
+import sunmisc.utils.concurrent.maps.ConcurrentEnumMap;
+import sunmisc.utils.concurrent.sets.ConcurrentEnumSet;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * ConcurrentEnumSet against the key set of ConcurrentEnumMap and of
+ * ConcurrentHashMap, on an enum of 26 constants (a single word)
+ * and of 256 constants
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(2)
+@Fork(1)
+public class EnumSets {
+
+    private @Param SetType setType;
+    private @Param Universe universe;
+
+    private Set<Object> set;
+    private EnumSet<?> bulk;
+    private Enum<?>[] constants;
+
+    public enum SetType { HASH, ENUM_MAP, ENUM_SET }
+    public enum Universe { SMALL, LARGE }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(EnumSets.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void prepare() {
+        switch (universe) {
+            case SMALL -> {
+                set = create(Letter.class);
+                bulk = EnumSet.range(Letter.C, Letter.K);
+                constants = Letter.values();
+            }
+            case LARGE -> {
+                set = create(Key.class);
+                bulk = EnumSet.range(Key.K60, Key.K130);
+                constants = Key.values();
+            }
+        }
+        for (Enum<?> e : constants) {
+            if (ThreadLocalRandom.current().nextBoolean())
+                set.add(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <E extends Enum<E>> Set<Object> create(Class<E> type) {
+        Set<E> s = switch (setType) {
+            case HASH -> ConcurrentHashMap.newKeySet();
+            case ENUM_MAP -> Collections.newSetFromMap(new ConcurrentEnumMap<>(type));
+            case ENUM_SET -> new ConcurrentEnumSet<>(type);
+        };
+        return (Set<Object>) (Set<?>) s;
+    }
+
+    private Enum<?> next() {
+        Enum<?>[] cs = constants;
+        return cs[ThreadLocalRandom.current().nextInt(cs.length)];
+    }
+
+    public @Benchmark boolean addRemove() {
+        Enum<?> e = next();
+        return set.add(e) | set.remove(e);
+    }
+
+    public @Benchmark boolean contains() {
+        return set.contains(next());
+    }
+
+    public @Benchmark int size() {
+        return set.size();
+    }
+
+    public @Benchmark int forEach() {
+        int[] n = new int[1];
+        set.forEach(e -> n[0] += ((Enum<?>) e).ordinal());
+        return n[0];
+    }
+
+    public @Benchmark boolean addAll() {
+        return set.addAll(bulk);
+    }
+
+    public @Benchmark boolean containsAll() {
+        return set.containsAll(bulk);
+    }
+}
@@ -0,0 +1,82 @@
+package sunmisc.utils.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sunmisc.utils.concurrent.memory.ArrayMemory;
+import sunmisc.utils.concurrent.memory.FloatingSegmentMemory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * boxed: ArrayMemory<Double> with transform, a Double per update
+ * floating: CAS on the raw bits
+ * striped: the hot slot is inflated into a DoubleAdder
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(Threads.MAX)
+@Fork(1)
+public class FloatingAdd {
+
+    private static final int SIZE = 1 << 10;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(FloatingAdd.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+    private ArrayMemory<Double> boxed;
+    private FloatingSegmentMemory<Double> floating, striped;
+
+    @Setup
+    public void prepare() {
+        boxed = new ArrayMemory<>(SIZE);
+        boxed.fill(0, SIZE, 0.0);
+        floating = new FloatingSegmentMemory<>(double.class);
+        floating.realloc(SIZE);
+        striped = new FloatingSegmentMemory<>(double.class, true);
+        striped.realloc(SIZE);
+    }
+
+    @Benchmark
+    public void boxedHot() {
+        boxed.transform(0, x -> x + 1.5);
+    }
+
+    @Benchmark
+    public void floatingHot() {
+        floating.add(0, 1.5);
+    }
+
+    @Benchmark
+    public void stripedHot() {
+        striped.add(0, 1.5);
+    }
+
+    @Benchmark
+    public void boxedCold() {
+        final int r = ThreadLocalRandom.current().nextInt(SIZE);
+        boxed.transform(r, x -> x + 1.5);
+    }
+
+    @Benchmark
+    public void floatingCold() {
+        final int r = ThreadLocalRandom.current().nextInt(SIZE);
+        floating.add(r, 1.5);
+    }
+
+    @Benchmark
+    public double floatingMax() {
+        final ThreadLocalRandom r = ThreadLocalRandom.current();
+        return floating.fetchAndMaxDouble(r.nextInt(SIZE), r.nextDouble());
+    }
+}
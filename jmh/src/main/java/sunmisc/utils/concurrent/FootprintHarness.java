@@ -0,0 +1,77 @@
+package sunmisc.utils.concurrent;
+
+import sunmisc.utils.Footprint;
+import sunmisc.utils.Measurable;
+import sunmisc.utils.concurrent.lazy.ConcurrentLazy;
+import sunmisc.utils.concurrent.maps.ConcurrentEnumMap;
+import sunmisc.utils.concurrent.memory.ArrayMemory;
+import sunmisc.utils.concurrent.memory.BitwiseSegmentMemory;
+import sunmisc.utils.concurrent.memory.ImmutableSegmentsMemory;
+import sunmisc.utils.concurrent.memory.ModifiableMemory;
+import sunmisc.utils.concurrent.memory.ReferenceSegmentMemory;
+import sunmisc.utils.concurrent.sets.ConcurrentBitSet;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/*
+ * Bytes per element of every structure at a few sizes,
+ * measured with JOL rather than JMH: the footprint is deterministic,
+ * a change in these numbers is a footprint regression (or win).
+ * Every memory is filled with the same element,
+ * so the numbers are the overhead of the structure itself
+ * plus one shared element
+ */
+public class FootprintHarness {
+
+    private static final int[] SIZES = {16, 1 << 10, 1 << 16};
+    private static final Object ELEMENT = new Object();
+
+    public static void main(String[] args) {
+        System.out.printf("%-26s %8s %12s %10s %10s %14s%n",
+                "structure", "size", "retained", "elements", "slack", "bytes/element");
+        for (int size : SIZES) {
+            report("ArrayMemory", size, n -> fill(new ArrayMemory<>(n)));
+            report("ReferenceSegmentMemory", size, n -> {
+                ReferenceSegmentMemory<Object> memory = new ReferenceSegmentMemory<>();
+                memory.realloc(n);
+                return fill(memory);
+            });
+            report("ImmutableSegmentsMemory", size, n -> fill(new ImmutableSegmentsMemory<>(n)));
+            report("BitwiseSegmentMemory", size, n -> {
+                BitwiseSegmentMemory<Long> memory = new BitwiseSegmentMemory<>(long.class);
+                memory.realloc(n);
+                return memory;
+            });
+            report("ConcurrentBitSet", size, n -> {
+                ConcurrentBitSet set = new ConcurrentBitSet();
+                for (int i = 0; i < n; ++i)
+                    set.add(i);
+                return set;
+            });
+        }
+        report("ConcurrentEnumMap", TimeUnit.values().length, n -> {
+            ConcurrentEnumMap<TimeUnit, Object> map = new ConcurrentEnumMap<>(TimeUnit.class);
+            for (TimeUnit unit : TimeUnit.values())
+                map.put(unit, ELEMENT);
+            return map;
+        });
+        report("ConcurrentLazy (new)", 1, n -> new ConcurrentLazy<>(() -> ELEMENT));
+        report("ConcurrentLazy (completed)", 1, n -> {
+            ConcurrentLazy<Object, RuntimeException> lazy = new ConcurrentLazy<>(() -> ELEMENT);
+            lazy.value();
+            return lazy;
+        });
+    }
+
+    private static <T extends ModifiableMemory<Object>> T fill(T memory) {
+        memory.fill(0, memory.length(), ELEMENT);
+        return memory;
+    }
+
+    private static void report(String name, int size, IntFunction<Measurable> factory) {
+        Footprint f = factory.apply(size).footprint();
+        System.out.printf("%-26s %8d %12d %10d %10d %14.2f%n",
+                name, size, f.retainedBytes(), f.elements(), f.slack(), f.bytesPerElement());
+    }
+}
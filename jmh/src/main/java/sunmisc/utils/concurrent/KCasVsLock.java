@@ -0,0 +1,89 @@
+package sunmisc.utils.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sunmisc.utils.concurrent.memory.ArrayMemory;
+import sunmisc.utils.concurrent.memory.KCasMemory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Every operation moves a unit from the first of k random indexes
+ * to the others (k = words), either with a k-CAS or under a single lock
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(Threads.MAX)
+@Fork(1)
+public class KCasVsLock {
+
+    private static final int SIZE = 1 << 6;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(KCasVsLock.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+    private @Param({"2", "4", "8"}) int words;
+
+    private KCasMemory<Integer> kcas;
+    private ArrayMemory<Integer> locked;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    @Setup
+    public void prepare() {
+        kcas = new KCasMemory<>(SIZE);
+        locked = new ArrayMemory<>(SIZE);
+        for (int i = 0; i < SIZE; ++i) {
+            kcas.store(i, 0);
+            locked.store(i, 0);
+        }
+    }
+
+    private int[] indexes() {
+        return ThreadLocalRandom.current()
+                .ints(0, SIZE)
+                .distinct()
+                .limit(words)
+                .toArray();
+    }
+
+    @Benchmark
+    public boolean kcas() {
+        final int[] indexes = indexes();
+        final Integer[] expected = new Integer[words], values = new Integer[words];
+        do {
+            for (int i = 0; i < words; ++i) {
+                Integer x = kcas.fetch(indexes[i]);
+                expected[i] = x;
+                values[i] = i == 0 ? x - (words - 1) : x + 1;
+            }
+        } while (!kcas.compareAndStore(indexes, expected, values));
+        return true;
+    }
+
+    @Benchmark
+    public boolean lock() {
+        final int[] indexes = indexes();
+        lock.lock();
+        try {
+            for (int i = 0; i < words; ++i) {
+                int x = locked.fetch(indexes[i]);
+                locked.store(indexes[i], i == 0 ? x - (words - 1) : x + 1);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+}
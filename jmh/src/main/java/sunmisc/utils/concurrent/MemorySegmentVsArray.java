@@ -5,10 +5,7 @@ import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
-import sunmisc.utils.concurrent.memory.ArrayMemory;
-import sunmisc.utils.concurrent.memory.ImmutableSegmentsMemory;
-import sunmisc.utils.concurrent.memory.ModifiableMemory;
-import sunmisc.utils.concurrent.memory.ReferenceSegmentMemory;
+import sunmisc.utils.concurrent.memory.*;
 
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
@@ -23,6 +20,8 @@ import java.util.concurrent.TimeUnit;
 public class MemorySegmentVsArray {
 
     private static final int SIZE = 1 << 13;
+    // a handful of slots shared by all threads
+    private static final int HOT_SLOTS = 4;
 
 
     public static void main(String[] args) throws RunnerException {
@@ -32,7 +31,7 @@ public class MemorySegmentVsArray {
         new Runner(opt).run();
     }
 
-    public enum ContainerType { MALLOC, ARRAY, EXP }
+    public enum ContainerType { MALLOC, ARRAY, EXP, BITWISE, NATIVE }
     private @Param ContainerType containerType;
     private ModifiableMemory<Integer> memory;
 
@@ -49,6 +48,34 @@ public class MemorySegmentVsArray {
         return r;
     }
 
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Integer readContended() {
+        return read();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int writeContended() {
+        return write();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Integer addContended() {
+        final int r = ThreadLocalRandom.current().nextInt(HOT_SLOTS);
+        if (memory instanceof BitwiseModifiableMemory<Integer> bitwise)
+            return bitwise.fetchAndAdd(r, 1);
+        memory.transform(r, x -> x + 1);
+        return r;
+    }
+
+    @TearDown
+    public void close() throws Exception {
+        if (memory instanceof AutoCloseable closeable)
+            closeable.close();
+    }
+
     @Setup
     public void prepare() {
         memory = switch (containerType) {
@@ -60,6 +87,10 @@ public class MemorySegmentVsArray {
             }
             case ARRAY -> new ArrayMemory<>(SIZE);
             case EXP -> new ImmutableSegmentsMemory<>(SIZE);
+            case BITWISE -> new BitwiseSegmentMemory<>(int.class).realloc(SIZE);
+            case NATIVE -> new NativeSegmentMemory<>(int.class).realloc(SIZE);
         };
+        for (int i = 0; i < HOT_SLOTS; ++i)
+            memory.store(i, 0);
     }
 }
@@ -0,0 +1,88 @@
+package sunmisc.utils.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sunmisc.utils.concurrent.memory.ArrayMemory;
+import sunmisc.utils.concurrent.memory.BitwiseSegmentMemory;
+import sunmisc.utils.concurrent.memory.LongMemory;
+import sunmisc.utils.concurrent.memory.ModifiableMemory;
+import sunmisc.utils.concurrent.memory.PaddedArrayMemory;
+import sunmisc.utils.concurrent.memory.PaddedLongMemory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Every thread owns one index, the indexes are adjacent,
+ * so the packed layouts share cache lines between threads.
+ * The run is repeated for 1..N threads, the padded layouts
+ * are expected to scale linearly, the packed ones should not
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PackedVsPadded {
+
+    private static final int SLOTS = 64;
+
+    public static void main(String[] args) throws RunnerException {
+        final int max = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= max; threads <<= 1) {
+            Options opt = new OptionsBuilder()
+                    .include(PackedVsPadded.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(opt).run();
+        }
+    }
+
+    public enum Layout { PACKED, PADDED }
+    private @Param Layout layout;
+
+    private LongMemory counters;
+    private ModifiableMemory<Object> references;
+    private final AtomicInteger slots = new AtomicInteger();
+
+    @Setup
+    public void prepare() {
+        switch (layout) {
+            case PACKED -> {
+                BitwiseSegmentMemory<Long> memory
+                        = new BitwiseSegmentMemory<>(long.class);
+                memory.realloc(SLOTS);
+                counters = memory;
+                references = new ArrayMemory<>(SLOTS);
+            }
+            case PADDED -> {
+                counters = new PaddedLongMemory(SLOTS);
+                references = new PaddedArrayMemory<>(SLOTS);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Slot {
+        int index;
+
+        @Setup
+        public void prepare(PackedVsPadded bench) {
+            index = bench.slots.getAndIncrement() % SLOTS;
+        }
+    }
+
+    @Benchmark
+    public long increment(Slot slot) {
+        return counters.fetchAndAddLong(slot.index, 1L);
+    }
+
+    @Benchmark
+    public void store(Slot slot) {
+        references.store(slot.index, slot);
+    }
+}
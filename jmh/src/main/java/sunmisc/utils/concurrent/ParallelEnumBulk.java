@@ -0,0 +1,68 @@
+package sunmisc.utils.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sunmisc.utils.concurrent.SparseEnumMap.Key;
+import sunmisc.utils.concurrent.maps.ConcurrentEnumMap;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Bulk operations of ConcurrentEnumMap over every constant of a large enum
+ * with costly per-value work, sequential (Long.MAX_VALUE) and parallel (1)
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelEnumBulk {
+
+    @Param({"9223372036854775807", "1"})
+    private long threshold;
+
+    @Param({"16", "1024"})
+    private int work;
+
+    private ConcurrentEnumMap<Key, Long> map;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(ParallelEnumBulk.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void prepare() {
+        map = new ConcurrentEnumMap<>(Key.class);
+        for (Key k : Key.values())
+            map.put(k, (long) k.ordinal());
+    }
+
+    public @Benchmark void forEach() {
+        final int w = work;
+        map.forEach(threshold, (k,v) -> Blackhole.consumeCPU(w));
+    }
+
+    public @Benchmark Long reduce() {
+        final int w = work;
+        return map.reduce(threshold, (k,v) -> {
+            Blackhole.consumeCPU(w);
+            return v;
+        }, Long::sum);
+    }
+
+    public @Benchmark Key search() {
+        final int w = work;
+        return map.search(threshold, (k,v) -> {
+            Blackhole.consumeCPU(w);
+            return v == 200L ? k : null;
+        });
+    }
+}
@@ -0,0 +1,105 @@
+package sunmisc.utils.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sunmisc.utils.concurrent.maps.ConcurrentEnumMap;
+
+import java.util.Iterator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * ConcurrentEnumMap counted by the adder against the presence index
+ * on an enum of 256 constants with only a few of them mapped
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(2)
+@Fork(1)
+public class SparseEnumMap {
+
+    @Param({"2", "16", "128"})
+    private int present;
+
+    private @Param Counting counting;
+    private ConcurrentEnumMap<Key, String> map;
+    private Key toggled;
+
+    public enum Counting { ADDER, BITMASK }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(SparseEnumMap.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void prepare() {
+        map = counting == Counting.BITMASK
+                ? new ConcurrentEnumMap<>(Key.class, Backoff.NONE,
+                        ConcurrentEnumMap.Option.INDEXED)
+                : new ConcurrentEnumMap<>(Key.class);
+        Key[] keys = Key.values();
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        while (map.size() < present) {
+            Key k = keys[r.nextInt(keys.length)];
+            map.put(k, k.name());
+        }
+        do {
+            toggled = keys[r.nextInt(keys.length)];
+        } while (map.containsKey(toggled));
+    }
+
+    public @Benchmark int size() {
+        return map.size();
+    }
+
+    public @Benchmark boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    public @Benchmark int forEach() {
+        int[] n = new int[1];
+        map.forEach((k,v) -> n[0] += k.ordinal());
+        return n[0];
+    }
+
+    public @Benchmark Key iterator() {
+        Iterator<Key> it = map.keySet().iterator();
+        Key last = null;
+        while (it.hasNext())
+            last = it.next();
+        return last;
+    }
+
+    public @Benchmark String putRemove() {
+        map.put(toggled, "T");
+        return map.remove(toggled);
+    }
+
+    public enum Key {
+        K0, K1, K2, K3, K4, K5, K6, K7, K8, K9, K10, K11, K12, K13, K14, K15,
+        K16, K17, K18, K19, K20, K21, K22, K23, K24, K25, K26, K27, K28, K29, K30, K31,
+        K32, K33, K34, K35, K36, K37, K38, K39, K40, K41, K42, K43, K44, K45, K46, K47,
+        K48, K49, K50, K51, K52, K53, K54, K55, K56, K57, K58, K59, K60, K61, K62, K63,
+        K64, K65, K66, K67, K68, K69, K70, K71, K72, K73, K74, K75, K76, K77, K78, K79,
+        K80, K81, K82, K83, K84, K85, K86, K87, K88, K89, K90, K91, K92, K93, K94, K95,
+        K96, K97, K98, K99, K100, K101, K102, K103, K104, K105, K106, K107, K108, K109, K110, K111,
+        K112, K113, K114, K115, K116, K117, K118, K119, K120, K121, K122, K123, K124, K125, K126, K127,
+        K128, K129, K130, K131, K132, K133, K134, K135, K136, K137, K138, K139, K140, K141, K142, K143,
+        K144, K145, K146, K147, K148, K149, K150, K151, K152, K153, K154, K155, K156, K157, K158, K159,
+        K160, K161, K162, K163, K164, K165, K166, K167, K168, K169, K170, K171, K172, K173, K174, K175,
+        K176, K177, K178, K179, K180, K181, K182, K183, K184, K185, K186, K187, K188, K189, K190, K191,
+        K192, K193, K194, K195, K196, K197, K198, K199, K200, K201, K202, K203, K204, K205, K206, K207,
+        K208, K209, K210, K211, K212, K213, K214, K215, K216, K217, K218, K219, K220, K221, K222, K223,
+        K224, K225, K226, K227, K228, K229, K230, K231, K232, K233, K234, K235, K236, K237, K238, K239,
+        K240, K241, K242, K243, K244, K245, K246, K247, K248, K249, K250, K251, K252, K253, K254, K255
+    }
+}
@@ -0,0 +1,76 @@
+package sunmisc.utils.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sunmisc.utils.concurrent.memory.BitwiseSegmentMemory;
+import sunmisc.utils.concurrent.memory.PagedBitwiseMemory;
+import sunmisc.utils.concurrent.memory.PagedMemory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Ids clustered in about 1% of the range:
+ * the segment memory has to be grown up to the highest id,
+ * the paged memory only allocates the pages that are written.
+ * gc.alloc.rate.norm of fill is the cost of building the table
+ * (uniformly scattered ids would touch every page at this density)
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(1)
+@Fork(1)
+public class SparseWrites {
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(SparseWrites.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+
+    public enum ContainerType { SEGMENTS, PAGED }
+    private @Param ContainerType containerType;
+    private @Param({"16777216"}) int range;
+    private @Param({"100"}) int sparsity;
+
+    private int[] ids;
+
+    @Setup
+    public void prepare() {
+        final ThreadLocalRandom r = ThreadLocalRandom.current();
+        final int page = 1 << PagedMemory.DEFAULT_PAGE_SHIFT,
+                clusters = Math.max(1, range / page / sparsity);
+        ids = new int[range / sparsity];
+        for (int i = 0; i < ids.length; ++i)
+            ids[i] = r.nextInt(clusters) * sparsity * page + r.nextInt(page);
+    }
+
+    @Benchmark
+    public long fill() {
+        return switch (containerType) {
+            case SEGMENTS -> {
+                BitwiseSegmentMemory<Long> memory
+                        = new BitwiseSegmentMemory<>(long.class);
+                memory.realloc(range);
+                for (int id : ids)
+                    memory.fetchAndAddLong(id, 1L);
+                yield memory.fetchLong(ids[0]);
+            }
+            case PAGED -> {
+                PagedBitwiseMemory memory = new PagedBitwiseMemory(range);
+                for (int id : ids)
+                    memory.fetchAndAddLong(id, 1L);
+                yield memory.residentPages();
+            }
+        };
+    }
+}
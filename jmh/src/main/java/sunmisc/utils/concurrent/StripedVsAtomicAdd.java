@@ -0,0 +1,77 @@
+package sunmisc.utils.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sunmisc.utils.concurrent.memory.BitwiseSegmentMemory;
+import sunmisc.utils.concurrent.memory.StripedSegmentMemory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * hot: every thread increments the same index, the case from AtomicAddVsCas
+ * cold: random indexes, the striped memory should stay compact
+ * and cost about as much as a plain fetchAndAdd
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StripedVsAtomicAdd {
+
+    private static final int SIZE = 1 << 10;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(StripedVsAtomicAdd.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+    private BitwiseSegmentMemory<Long> bitwise;
+    private StripedSegmentMemory striped;
+
+    @Setup
+    public void prepare() {
+        bitwise = new BitwiseSegmentMemory<>(long.class);
+        bitwise.realloc(SIZE);
+        striped = new StripedSegmentMemory(SIZE);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long bitwiseHot() {
+        return bitwise.fetchAndAddLong(0, 1L);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void stripedHot() {
+        striped.increment(0);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long bitwiseCold() {
+        final int r = ThreadLocalRandom.current().nextInt(SIZE);
+        return bitwise.fetchAndAddLong(r, 1L);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void stripedCold() {
+        final int r = ThreadLocalRandom.current().nextInt(SIZE);
+        striped.increment(r);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long stripedSum() {
+        return striped.sum(0);
+    }
+}
@@ -5,12 +5,14 @@ import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sunmisc.utils.concurrent.maps.ConcurrentEnumLongMap;
 import sunmisc.utils.concurrent.maps.ConcurrentEnumMap;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 @State(Scope.Benchmark)
 @OutputTimeUnit(TimeUnit.MILLISECONDS)
@@ -115,6 +117,47 @@ public class ThreadSafeMaps {
         return map.equals(mismatch);
     }
 
+    /*
+     * Per-key counters: the current map of adders (get, then the adder),
+     * merge with boxed values, and the primitive map
+     */
+    @State(Scope.Benchmark)
+    public static class Counters {
+        public enum CounterType { ADDERS, MERGE, LONG, STRIPED }
+        private @Param CounterType counterType;
+
+        private ConcurrentEnumMap<Letter, LongAdder> adders;
+        private ConcurrentEnumMap<Letter, Long> boxed;
+        private ConcurrentEnumLongMap<Letter> longs;
+
+        @Setup
+        public void prepare() {
+            adders = new ConcurrentEnumMap<>(Letter.class);
+            for (Letter x : Letter.values())
+                adders.put(x, new LongAdder());
+            boxed = new ConcurrentEnumMap<>(Letter.class);
+            longs = new ConcurrentEnumLongMap<>(Letter.class,
+                    counterType == CounterType.STRIPED);
+        }
+    }
+
+    public @Benchmark long counterIncrement(Counters c) {
+        switch (c.counterType) {
+            case ADDERS -> c.adders.get(key).increment();
+            case MERGE -> c.boxed.merge(key, 1L, Long::sum);
+            case LONG, STRIPED -> c.longs.increment(key);
+        }
+        return 0L;
+    }
+
+    public @Benchmark long counterGet(Counters c) {
+        return switch (c.counterType) {
+            case ADDERS -> c.adders.get(key).sum();
+            case MERGE -> c.boxed.getOrDefault(key, 0L);
+            case LONG, STRIPED -> c.longs.get(key);
+        };
+    }
+
     public enum Letter {
         A, B, C, D, E, F, G, H, I, J, K, L, M, N, O, P, Q, R, S, T, U, V, W, X, Y, Z
     }
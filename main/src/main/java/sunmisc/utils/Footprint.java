@@ -0,0 +1,71 @@
+package sunmisc.utils;
+
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.List;
+
+/**
+ * Memory footprint of a data structure at the moment of the measurement
+ * <p>The retained size is measured with JOL: every object reachable from
+ * the structure, the elements included, except the objects it shares
+ * with the rest of the heap, such as classes and enum constants.
+ * The measurement walks the whole object graph, so it is meant
+ * for diagnostics and tests, not for hot paths
+ * <p>JOL cannot walk a record or an object of a hidden class with fields,
+ * such as a capturing lambda, since Unsafe refuses their field offsets,
+ * unless the JVM runs with {@code -Djol.magicFieldOffset=true}.
+ * The structures of this library keep no such objects, so they can be
+ * measured on any JVM. A graph that reaches a caller's lambda or record
+ * (an element, for instance) still needs the property
+ *
+ * @param retainedBytes the bytes reachable only through the structure
+ * @param elements the number of slots holding an element
+ * @param capacity the number of allocated slots
+ * @param segments the usage of every segment (array) of the structure
+ *
+ * @author Sunmisc Unsafe
+ */
+public record Footprint(
+        long retainedBytes,
+        long elements,
+        long capacity,
+        List<Segment> segments
+) {
+    public Footprint {
+        segments = List.copyOf(segments);
+    }
+
+    /**
+     * @return allocated slots that hold no element
+     */
+    public long slack() {
+        return capacity - elements;
+    }
+
+    public double bytesPerElement() {
+        return (double) retainedBytes / Math.max(1L, elements);
+    }
+
+    /**
+     * @param root the structure to measure
+     * @param shared the objects reachable from the structure that it does not own
+     * @return the size of the graph of {@code root} without the graph of {@code shared}
+     */
+    public static long retainedBytes(Object root, Object... shared) {
+        GraphLayout layout = GraphLayout.parseInstance(root);
+        if (shared.length > 0)
+            layout = layout.subtract(GraphLayout.parseInstance(shared));
+        return layout.totalSize();
+    }
+
+    /**
+     * @param capacity the number of slots of the segment
+     * @param used the number of slots holding an element
+     */
+    public record Segment(long capacity, long used) {
+
+        public long slack() {
+            return capacity - used;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package sunmisc.utils;
+
+/**
+ * A data structure that can report its own {@link Footprint}
+ */
+@FunctionalInterface
+public interface Measurable {
+
+    Footprint footprint();
+}
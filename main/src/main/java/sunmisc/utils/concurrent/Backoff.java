@@ -0,0 +1,62 @@
+package sunmisc.utils.concurrent;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Contention management for CAS retry loops
+ * <p>A loop calls {@link #pause(int)} after every failed attempt,
+ * with the number of failures so far (starting at {@code 0}).
+ * Backing off lowers the traffic on the contended cache line,
+ * so under heavy contention fewer attempts fail and the throughput grows,
+ * at the cost of latency when the contention is light
+ * <ul>
+ * <li>{@link #NONE} - retry immediately, the default of every structure
+ * <li>{@link #SPIN} - one {@link Thread#onSpinWait()} per failure
+ * <li>{@link #EXPONENTIAL} - {@code 2^attempt} spins, capped,
+ * then yields the processor
+ * <li>{@link #RANDOMIZED} - like {@link #EXPONENTIAL} but a random number
+ * of spins below the cap, so that the losers of one race
+ * do not collide again on the next attempt
+ * <li>{@link #YIELD} - {@link Thread#yield()} per failure
+ * </ul>
+ *
+ * <pre>{@code
+ * for (int attempt = 0;; backoff.pause(attempt++)) {
+ *     int v = x.get();
+ *     if (x.compareAndSet(v, v + 1))
+ *         return v;
+ * }
+ * }</pre>
+ *
+ * @author Sunmisc Unsafe
+ */
+public enum Backoff {
+    NONE, SPIN, EXPONENTIAL, RANDOMIZED, YIELD;
+
+    // up to 2^MAX_SHIFT spins per pause
+    private static final int MAX_SHIFT = 10;
+
+    /**
+     * @param attempt the number of failed attempts before this one
+     */
+    public void pause(int attempt) {
+        switch (this) {
+            case NONE -> { }
+            case SPIN -> Thread.onSpinWait();
+            case EXPONENTIAL -> {
+                if (attempt > MAX_SHIFT)
+                    Thread.yield();
+                else
+                    spin(1 << attempt);
+            }
+            case RANDOMIZED -> spin(ThreadLocalRandom.current()
+                    .nextInt(1 << Math.min(attempt + 1, MAX_SHIFT)));
+            case YIELD -> Thread.yield();
+        }
+    }
+
+    private static void spin(int n) {
+        for (int i = 0; i < n; ++i)
+            Thread.onSpinWait();
+    }
+}
@@ -80,6 +80,7 @@ public class UnblockingArrayBuffer<E>
 
     /* ---------------- Field -------------- */
     transient volatile ContainerBridge bridge; // current array claimant
+    transient Backoff backoff; // pause after a failed CAS of a slot
 
     // todo: delete the field,
     //  create a new object for each entrySet call,
@@ -88,7 +89,11 @@ public class UnblockingArrayBuffer<E>
 
 
     public UnblockingArrayBuffer(int size) {
+        this(size, Backoff.NONE);
+    }
+    public UnblockingArrayBuffer(int size, Backoff backoff) {
         this.bridge = new ContainerBridge(new Object[size]);
+        this.backoff = requireNonNull(backoff);
     }
     public UnblockingArrayBuffer(E[] array) {
         // parallelize copy using Stream API?
@@ -99,6 +104,7 @@ public class UnblockingArrayBuffer<E>
                 nodes[i] = new Cell<>(o);
         }
         this.bridge = new ContainerBridge(nodes);
+        this.backoff = Backoff.NONE;
     }
 
     /**
@@ -148,14 +154,17 @@ public class UnblockingArrayBuffer<E>
 
         Object[] arr = bridge.array;
         checkIndex(i, arr.length);
-        for (Object o;;) {
+        for (int attempt = 0;;) {
+            Object o;
             if ((o = arrayAt(arr, i)) == null) {
                 if (weakCasAt(arr, i, null,
                         new Cell<>(newValue)))
                     return null;
             }
-            else if (o instanceof ForwardingPointer f)
+            else if (o instanceof ForwardingPointer f) {
                 arr = helpTransfer(f, i);
+                continue;
+            }
             else if (o instanceof Cell n) {
                 Object val = n.value;
                 // Replacing a dead cell
@@ -165,6 +174,7 @@ public class UnblockingArrayBuffer<E>
                 } else if (n.cas(val, newValue))
                     return (E) val;
             }
+            backoff.pause(attempt++);
         }
     }
 
@@ -182,14 +192,17 @@ public class UnblockingArrayBuffer<E>
         int i = (int)c;
         Object[] arr = bridge.array;
         checkIndex(i, arr.length);
-        for (Object o;;) {
+        for (int attempt = 0;;) {
+            Object o;
             if ((o = arrayAt(arr, i)) == null)
                 return null;
             else if (o instanceof ForwardingPointer f)
                 arr = helpTransfer(f, i);
-            else if (o instanceof Cell<?> n &&
-                    weakCasAt(arr, i, o, null))
-                return (E) n.value;
+            else if (o instanceof Cell<?> n) {
+                if (weakCasAt(arr, i, o, null))
+                    return (E) n.value;
+                backoff.pause(attempt++);
+            }
         }
     }
 
@@ -201,14 +214,17 @@ public class UnblockingArrayBuffer<E>
 
         Object[] arr = bridge.array;
         checkIndex(i, arr.length);
-        for (Object o;;) {
+        for (int attempt = 0;;) {
+            Object o;
             if ((o = arrayAt(arr, i)) == null) {
                 if (weakCasAt(arr, i, null,
                         new Cell<>(val)))
                     return null;
             }
-            else if (o instanceof ForwardingPointer f)
+            else if (o instanceof ForwardingPointer f) {
                 arr = helpTransfer(f, i);
+                continue;
+            }
             else if (o instanceof Cell<?> n) {
                 Object v = n.value;
                 if (v == null) {
@@ -217,6 +233,7 @@ public class UnblockingArrayBuffer<E>
                 } else
                     return (E) v;
             }
+            backoff.pause(attempt++);
         }
     }
 
@@ -533,6 +550,7 @@ public class UnblockingArrayBuffer<E>
             }
         });
         s.writeObject(null);
+        s.writeObject(backoff);
     }
     @Serial
     private void readObject(ObjectInputStream s)
@@ -546,6 +564,7 @@ public class UnblockingArrayBuffer<E>
             list.add((int) k,v);
         }
         this.bridge = new ContainerBridge(list.toArray());
+        this.backoff = (Backoff) s.readObject();
     }
     /*
      * Atomic access methods are used for array elements as well
@@ -1,8 +1,11 @@
 package sunmisc.utils.concurrent.lazy;
 
+import sunmisc.utils.Footprint;
+import sunmisc.utils.Measurable;
 import sunmisc.utils.Scalar;
 import sunmisc.utils.lazy.Lazy;
 
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
@@ -19,7 +22,7 @@ import java.util.function.Supplier;
  * There is also an idea to write my own lightweight version of locking
  * on waiting for the first writer, but this idea may not be so promising
  */
-public final class ConcurrentLazy<V, E extends Throwable> implements Lazy<V,E> {
+public final class ConcurrentLazy<V, E extends Throwable> implements Lazy<V,E>, Measurable {
     // private volatile Object outcome;
     private volatile Lazy<V,E> outcome;
 
@@ -70,6 +73,28 @@ public final class ConcurrentLazy<V, E extends Throwable> implements Lazy<V,E> {
     public boolean completed() {
         return outcome.completed();
     }
+    // until completed the lock is retained, afterwards the value.
+    // The scalar is the caller's, often a capturing lambda that JOL cannot walk,
+    // so a pending lazy is measured on one of the same shape over an empty scalar
+    @Override
+    public Footprint footprint() {
+        final boolean completed = completed();
+        return new Footprint(
+                completed
+                        ? Footprint.retainedBytes(this)
+                        : Footprint.retainedBytes(new ConcurrentLazy<>(Empty.SCALAR), Empty.SCALAR),
+                completed ? 1 : 0, 1, List.of());
+    }
+
+    private enum Empty implements Scalar<Object, RuntimeException> {
+        SCALAR;
+
+        @Override
+        public Object value() {
+            return null;
+        }
+    }
+
     @Override
     public String toString() {
         return outcome.toString();
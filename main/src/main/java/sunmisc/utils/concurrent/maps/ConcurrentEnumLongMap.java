@@ -0,0 +1,178 @@
+package sunmisc.utils.concurrent.maps;
+
+import sunmisc.utils.concurrent.memory.StripedSegmentMemory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjLongConsumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A primitive sibling of {@link ConcurrentEnumMap}: a {@code long}
+ * per enumeration constant, e.g. per-status counters
+ * <p>The values live in a {@code long[]} indexed by ordinal,
+ * every key is present and starts at zero, so an update is a single
+ * atomic instruction on the array, with no lookup, no boxing
+ * and no {@link LongAdder} to dereference
+ * <p>In the striped mode the values are kept in a {@link StripedSegmentMemory}:
+ * a key is inflated into a {@link LongAdder} the first time its CAS fails,
+ * cold keys stay a single {@code long}.
+ * {@link #get} returns the sum of an inflated key, the operations that
+ * need a single current value ({@code put}, {@code getAndAdd} and its
+ * shortcuts, {@code compareAndSet}) still work on the keys that have
+ * never been inflated and throw {@link UnsupportedOperationException}
+ * on the inflated ones, see {@link StripedSegmentMemory}
+ *
+ * @author Sunmisc Unsafe
+ *
+ * @param <K> the type of keys maintained by this map
+ */
+public class ConcurrentEnumLongMap<K extends Enum<K>> {
+    // All the values comprising K
+    private final K[] keys;
+    // null in the striped mode
+    private final long[] table;
+    // null unless striped
+    private final StripedSegmentMemory cells;
+
+    public ConcurrentEnumLongMap(final Class<K> keyType) {
+        this(keyType, false);
+    }
+
+    /**
+     * @param striped whether contended keys are inflated into adders
+     */
+    public ConcurrentEnumLongMap(final Class<K> keyType, final boolean striped) {
+        this.keys = keyType.getEnumConstants();
+        if (striped) {
+            this.table = null;
+            this.cells = new StripedSegmentMemory(keys.length);
+        } else {
+            this.table = new long[keys.length];
+            this.cells = null;
+        }
+    }
+
+    public long get(final K key) {
+        final int i = key.ordinal();
+        final long[] tab = table;
+        return tab == null ? cells.sum(i) : (long) AA.getAcquire(tab, i);
+    }
+
+    /**
+     * @return the previous value
+     */
+    public long put(final K key, final long value) {
+        final int i = key.ordinal();
+        final long[] tab = table;
+        return tab == null
+                ? cells.fetchAndStore(i, value)
+                : (long) AA.getAndSet(tab, i, value);
+    }
+
+    public long getAndAdd(final K key, final long delta) {
+        final int i = key.ordinal();
+        final long[] tab = table;
+        return tab == null
+                ? cells.fetchAndAdd(i, delta)
+                : (long) AA.getAndAdd(tab, i, delta);
+    }
+
+    public long addAndGet(final K key, final long delta) {
+        return getAndAdd(key, delta) + delta;
+    }
+
+    public long getAndIncrement(final K key) {
+        return getAndAdd(key, 1L);
+    }
+
+    public long incrementAndGet(final K key) {
+        return getAndAdd(key, 1L) + 1L;
+    }
+
+    public long getAndDecrement(final K key) {
+        return getAndAdd(key, -1L);
+    }
+
+    public long decrementAndGet(final K key) {
+        return getAndAdd(key, -1L) - 1L;
+    }
+
+    public boolean compareAndSet(final K key, final long expected, final long value) {
+        final int i = key.ordinal();
+        final long[] tab = table;
+        return tab == null
+                ? cells.compareAndStore(i, expected, value)
+                : AA.compareAndSet(tab, i, expected, value);
+    }
+
+    /**
+     * Adds {@code delta} without returning a value,
+     * the only update that works on every key of the striped mode
+     */
+    public void add(final K key, final long delta) {
+        final int i = key.ordinal();
+        final long[] tab = table;
+        if (tab == null)
+            cells.add(i, delta);
+        else
+            AA.getAndAdd(tab, i, delta);
+    }
+
+    public void increment(final K key) {
+        add(key, 1L);
+    }
+
+    public void decrement(final K key) {
+        add(key, -1L);
+    }
+
+    /**
+     * Sets the value to zero, in the striped mode this is only exact
+     * in the absence of concurrent updates, like {@link LongAdder#reset()}
+     */
+    public void reset(final K key) {
+        final int i = key.ordinal();
+        final long[] tab = table;
+        if (tab == null)
+            cells.reset(i);
+        else
+            AA.setRelease(tab, i, 0L);
+    }
+
+    public void clear() {
+        for (K key : keys)
+            reset(key);
+    }
+
+    /**
+     * @return the sum of the values of all keys
+     */
+    public long sum() {
+        long s = 0L;
+        for (K key : keys)
+            s += get(key);
+        return s;
+    }
+
+    public void forEach(final ObjLongConsumer<? super K> action) {
+        requireNonNull(action);
+        for (K key : keys)
+            action.accept(key, get(key));
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        forEach((k,v) -> joiner.add(k + "=" + v));
+        return joiner.toString();
+    }
+
+    // VarHandle mechanics
+    private static final VarHandle AA
+            = MethodHandles.arrayElementVarHandle(long[].class);
+}
@@ -1,10 +1,18 @@
 package sunmisc.utils.concurrent.maps;
 
+import sunmisc.utils.Footprint;
+import sunmisc.utils.Measurable;
+import sunmisc.utils.concurrent.Backoff;
+
 import java.io.*;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.VarHandle;
 import java.util.*;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.*;
 
@@ -29,6 +37,23 @@ import static java.util.Objects.requireNonNull;
  * <p>Attempts to insert a null key will cause a {@link NullPointerException}.
  * <p>However, attempts to check for the presence of a null key or delete it will work properly.
  * <p>This map differs from EnumMap in that it is thread-safe and scales well
+ * <p>The retry loops of the atomic operations ({@code compute}, {@code merge},
+ * conditional {@code remove} and {@code replace}...) pause after every
+ * failed CAS according to the {@link Backoff} of the map, none by default
+ * <p>By default the mappings are counted in a {@link LongAdder}.
+ * A map created with {@link Option#INDEXED} keeps a bitmask instead,
+ * one bit per ordinal, so {@code size()} is a {@code bitCount}
+ * of {@code (n + 31) / 32} words and the iteration jumps straight
+ * to the occupied ordinals, which pays off on large sparsely populated enums.
+ * The bit of an ordinal is set before a write that fills its slot returns
+ * and stays set until the slot is emptied, so the scans never miss a mapping
+ * whose insertion has completed, and like the adder the bits may only
+ * lag behind an update in progress
+ * <p>Like {@link java.util.concurrent.ConcurrentHashMap} the map offers bulk
+ * operations ({@code forEach}, {@code search}, {@code reduce}) that take
+ * a parallelism threshold and split the ordinals across the common pool
+ * <p>A map created with {@link Option#VERSIONED} supports {@link #snapshot()},
+ * a linearizable copy that does not block the writers
  *
  * @author Sunmisc Unsafe
  *
@@ -37,17 +62,34 @@ import static java.util.Objects.requireNonNull;
  */
 @SuppressWarnings("unchecked")
 public class ConcurrentEnumMap<K extends Enum<K>,V>
-        implements ConcurrentMap<K,V>, Serializable {
+        implements ConcurrentMap<K,V>, Serializable, Measurable {
     @Serial
     private static final long serialVersionUID = 9193424923934859345L;
+    // a presence word holds 32 ordinals in the low half
+    private static final int PRESENCE_SHIFT = 5;
+    private static final int PRESENCE_ORDINALS = 1 << PRESENCE_SHIFT;
+    private static final long PRESENCE_BITS = 0xFFFFFFFFL;
+    private static final long PRESENCE_STAMP = 1L << 32;
     // An object of the class for the enumeration type of all the keys this map
     private transient Class<? extends K> keyType;
-    // element count
+    // element count, unused with the presence index
     private transient LongAdder counter;
+    /*
+     * Bit i % 32 of word i / 32 is set when table[i] is occupied,
+     * the high half of a word is a stamp, null unless indexed
+     */
+    private transient long[] presence;
     // All the values comprising K
     private transient K[] keys;
     // Array representation of this map. The ith element is the value to which universe[i]
     private transient V[] table;
+    // contention management of the CAS retry loops
+    private transient Backoff backoff;
+    /*
+     * The number of started writes of slot i at 2 * i and of finished
+     * writes at 2 * i + 1, each wraps on its own, null unless versioned
+     */
+    private transient int[] versions;
 
     @SuppressWarnings("forRemoval")
     private transient KeySetView<K,V> keySet;
@@ -57,17 +99,46 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
     private transient EntrySetView<K,V> entrySet;
 
     public ConcurrentEnumMap(final Class<? extends K> keyType) {
+        this(keyType, Backoff.NONE);
+    }
+    public ConcurrentEnumMap(final Class<? extends K> keyType,
+                             final Backoff backoff,
+                             final Option... options) {
         this.keyType = keyType;
         this.keys = keyType.getEnumConstants();
         this.table = (V[]) new Object[keys.length];
+        this.backoff = requireNonNull(backoff);
+        for (Option o : options) {
+            switch (o) {
+                case INDEXED -> presence = new long[presenceWords(keys.length)];
+                case VERSIONED -> versions = new int[keys.length << 1];
+            }
+        }
     }
     public ConcurrentEnumMap(final Map<? extends K, ? extends V> m) {
         this.keys = (K[]) m.keySet().toArray(Enum[]::new);
         this.keyType = keys[0].getDeclaringClass();
         this.table = (V[]) new Object[keyType.getEnumConstants().length];
+        this.backoff = Backoff.NONE;
         putAll(m);
     }
 
+    /**
+     * The optional internal structures of the map
+     */
+    public enum Option {
+        /**
+         * Track the mappings by a presence bitmask rather than count them
+         */
+        INDEXED,
+        /**
+         * Keep per-slot write versions for {@link #snapshot()},
+         * at the cost of two atomic increments per write
+         * that finds the value it expects
+         */
+        VERSIONED
+    }
+
     private void addCount(final long c) {
         if (c == 0L) return;
         LongAdder a = (LongAdder) ADDER.getOpaque(this);
@@ -81,8 +152,74 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
         a.add(c);
     }
 
+    /*
+     * Accounts for the transition of the slot i, c is +1 if it has been
+     * filled by the caller and -1 if it has been emptied
+     */
+    private void addCount(final int i, final long c) {
+        if (c == 0L) return;
+        final long[] bits = presence;
+        if (bits == null)
+            addCount(c);
+        else
+            syncPresence(bits, i);
+    }
+
+    private static int presenceWords(final int n) {
+        return (n + PRESENCE_ORDINALS - 1) >>> PRESENCE_SHIFT;
+    }
+
+    /*
+     * Makes bit i agree with the slot i. The slot is read after the word
+     * and every CAS advances the stamp of the word, so a thread that
+     * has read the slot before a later transition fails its CAS
+     * even if the bits have come back, and rereads the slot.
+     * The thread of the last transition therefore leaves the bit right,
+     * and no stale clear can hide a slot filled by a completed write
+     */
+    private void syncPresence(final long[] bits, final int i) {
+        final int w = i >>> PRESENCE_SHIFT;
+        final long m = 1L << (i & (PRESENCE_ORDINALS - 1));
+        final V[] tab = table;
+        for (;;) {
+            final long word = (long) LA.getVolatile(bits, w);
+            final long next = (tabAt(tab, i) != null
+                    ? word | m : word & ~m) + PRESENCE_STAMP;
+            if (LA.compareAndSet(bits, w, word, next))
+                return;
+        }
+    }
+
+    /*
+     * The first ordinal at or after i whose slot may be occupied,
+     * the length of the table if there is none.
+     * Without the presence index every ordinal may be
+     */
+    private int probe(final int i) {
+        final long[] bits = presence;
+        final int n = table.length;
+        if (bits == null || i >= n)
+            return i;
+        int w = i >>> PRESENCE_SHIFT;
+        long word = (long) LA.getAcquire(bits, w) & PRESENCE_BITS
+                & (-1L << (i & (PRESENCE_ORDINALS - 1)));
+        while (word == 0L) {
+            if (++w == bits.length)
+                return n;
+            word = (long) LA.getAcquire(bits, w) & PRESENCE_BITS;
+        }
+        return (w << PRESENCE_SHIFT) + Long.numberOfTrailingZeros(word);
+    }
+
     @Override
     public int size() {
+        final long[] bits = presence;
+        if (bits != null) {
+            int sz = 0;
+            for (int w = 0, n = bits.length; w < n; ++w)
+                sz += Long.bitCount((long) LA.getAcquire(bits, w) & PRESENCE_BITS);
+            return sz;
+        }
         final LongAdder a = (LongAdder) ADDER.getOpaque(this);
         return a == null ? 0
                 // let's handle the overflow
@@ -91,10 +228,38 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
 
     @Override
     public boolean isEmpty() {
+        final long[] bits = presence;
+        if (bits != null) {
+            for (int w = 0, n = bits.length; w < n; ++w) {
+                if (((long) LA.getAcquire(bits, w) & PRESENCE_BITS) != 0L)
+                    return false;
+            }
+            return true;
+        }
         final LongAdder a = (LongAdder) ADDER.getOpaque(this);
         return a == null || a.sum() <= 0L;
     }
 
+    /**
+     * The enum constants and the key class are shared with the rest
+     * of the heap, so they are not counted as retained by the map
+     */
+    @Override
+    public Footprint footprint() {
+        final V[] tab = table;
+        int used = 0;
+        for (int i = probe(0), n = tab.length; i < n; i = probe(i + 1)) {
+            if (tabAt(tab, i) != null)
+                ++used;
+        }
+        final Object[] shared = Arrays.copyOf(keys, keys.length + 1, Object[].class);
+        shared[keys.length] = keyType;
+        return new Footprint(
+                Footprint.retainedBytes(this, shared),
+                used, tab.length,
+                List.of(new Footprint.Segment(tab.length, used)));
+    }
+
     @Override
     public V get(final Object key) {
         return checkKey(key)
@@ -109,7 +274,7 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
         final int i = key.ordinal();
         final V prev = getAndSetAt(table, i, value);
         if (prev == null)
-            addCount(1L);
+            addCount(i, 1L);
         return prev;
     }
 
@@ -118,13 +283,18 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
         requireNonNull(m);
 
         long delta = 0L;
-        final V[] tab = table;
+        final V[] tab = table; final long[] bits = presence;
         for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
             Enum<?> key = e.getKey(); Object val = e.getValue();
-            if (getAndSetAt(tab, key.ordinal(), val) == null)
+            final int i = key.ordinal();
+            if (getAndSetAt(tab, i, val) == null) {
+                if (bits != null)
+                    syncPresence(bits, i);
                 ++delta;
+            }
         }
-        addCount(delta);
+        if (bits == null)
+            addCount(delta);
     }
 
     @Override
@@ -132,7 +302,7 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
         requireNonNull(action);
 
         final K[] ks = keys; final V[] tab = table;
-        for (int i = 0, len = tab.length; i < len; ++i) {
+        for (int i = probe(0), len = tab.length; i < len; i = probe(i + 1)) {
             V v = tabAt(tab, i);
             if (v == null)
                 continue;
@@ -143,13 +313,17 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
     @Override
     public void clear() {
         long delta = 0L;
-        final V[] tab = table;
-        for (int i = 0, len = tab.length; i < len; ++i) {
+        final V[] tab = table; final long[] bits = presence;
+        for (int i = probe(0), len = tab.length; i < len; i = probe(i + 1)) {
             if (tabAt(tab, i) != null &&
-                    getAndSetAt(tab, i, null) != null)
+                    getAndSetAt(tab, i, null) != null) {
+                if (bits != null)
+                    syncPresence(bits, i);
                 --delta;
+            }
         }
-        addCount(delta);
+        if (bits == null)
+            addCount(delta);
     }
 
     @Override
@@ -159,7 +333,7 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
             final V[] tab = table; V p = null;
             if (tabAt(tab, i) != null &&
                     (p = getAndSetAt(tab, i, null)) != null)
-                addCount(-1L);
+                addCount(i, -1L);
             return p;
         }
         return null;
@@ -175,7 +349,7 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
         requireNonNull(value);
 
         final V[] tab = table;
-        for (int i = 0, len = tab.length; i < len; ++i) {
+        for (int i = probe(0), len = tab.length; i < len; i = probe(i + 1)) {
             if (Objects.equals(tabAt(tab, i), value))
                 return true;
         }
@@ -191,7 +365,7 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
         final V[] tab = table; V p;
         if ((p = tabAt(tab, i)) == null &&
                 (p = caeTabAt(tab, i, null, value)) == null)
-            addCount(1L);
+            addCount(i, 1L);
         return p;
     }
 
@@ -203,12 +377,14 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
 
         final int i = key.ordinal();
         final V[] tab = table;
-        for (V oldVal;;) {
-            final V newVal = remappingFunction.apply(key,
-                    oldVal = tabAt(tab, i));
+        for (int attempt = 0;; backoff.pause(attempt++)) {
+            final V oldVal = tabAt(tab, i),
+                    newVal = remappingFunction.apply(key, oldVal);
             // strong CAS to minimize function call
             if (casTabAt(tab, i, oldVal, newVal)) {
-                addCount(oldVal == null ? 1L : newVal == null ? -1L : 0);
+                addCount(i, oldVal == null
+                        ? (newVal == null ? 0L : 1L)
+                        : (newVal == null ? -1L : 0L));
                 return newVal;
             }
         }
@@ -228,7 +404,7 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
         // strong CAS to minimize function call
         final V witness = caeTabAt(tab, i, null, newVal);
         if (witness == null) {
-            addCount(1L);
+            addCount(i, 1L);
             return newVal;
         }
         return witness;
@@ -240,7 +416,8 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
         requireNonNull(remappingFunction);
 
         final int i = key.ordinal();
-        for (final V[] tab = table;;) {
+        final V[] tab = table;
+        for (int attempt = 0;; backoff.pause(attempt++)) {
             final V oldVal = tabAt(tab, i);
             if (oldVal == null)
                 return null;
@@ -250,7 +427,7 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
 
             if (witness == oldVal) {
                 if (newVal == null)
-                    addCount(-1L);
+                    addCount(i, -1L);
                 return newVal;
             } else if (witness == null)
                 return null;
@@ -264,11 +441,12 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
         requireNonNull(remappingFunction);
 
         final int i = key.ordinal();
-        for (final V[] tab = table;;) {
+        final V[] tab = table;
+        for (int attempt = 0;; backoff.pause(attempt++)) {
             final V oldVal = tabAt(tab, i);
             if (oldVal == null) {
                 if (weakCasTabAt(tab, i, null, value)) {
-                    addCount(1L);
+                    addCount(i, 1L);
                     return value;
                 }
             } else {
@@ -276,7 +454,7 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
                 // strong CAS to minimize function call
                 if (casTabAt(tab, i, oldVal, newVal)) {
                     if (newVal == null)
-                        addCount(-1L);
+                        addCount(i, -1L);
                     return newVal;
                 }
             }
@@ -289,12 +467,13 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
 
         if (checkKey(key)) {
             final int i = ((Enum<?>) key).ordinal();
-            for (final V[] tab = table;;) {
+            final V[] tab = table;
+            for (int attempt = 0;; backoff.pause(attempt++)) {
                 final V v = tabAt(tab, i);
                 if (Objects.equals(v, value)) {
                     final V witness = caeTabAt(tab, i, v, null);
                     if (witness == v) {
-                        addCount(-1);
+                        addCount(i, -1L);
                         return true;
                     } else if (witness == null)
                         return false;
@@ -312,7 +491,8 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
         requireNonNull(newValue);
 
         final int i = key.ordinal();
-        for (final V[] tab = table;;) {
+        final V[] tab = table;
+        for (int attempt = 0;; backoff.pause(attempt++)) {
             final V v = tabAt(tab, i);
             if (Objects.equals(v, oldValue)) {
                 final V witness = caeTabAt(tab, i, v, newValue);
@@ -336,8 +516,8 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
         requireNonNull(function);
 
         final K[] ks = keys; final V[] tab = table;
-        for (int i = 0, len = tab.length; i < len; ++i) {
-            for (;;) {
+        for (int i = probe(0), len = tab.length; i < len; i = probe(i + 1)) {
+            for (int attempt = 0;; backoff.pause(attempt++)) {
                 final V oldVal = tabAt(tab, i);
                 if (oldVal == null)
                     break;
@@ -379,7 +559,7 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
 
         boolean removed = false;
         final K[] ks = keys; final V[] tab = table;
-        for (int i = 0, len = tab.length; i < len; ++i) {
+        for (int i = probe(0), len = tab.length; i < len; i = probe(i + 1)) {
             final V v = tabAt(tab, i);
             if (v == null) continue;
             final K k = ks[i];
@@ -396,7 +576,7 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
 
         boolean removed = false;
         final K[] ks = keys; final V[] tab = table;
-        for (int i = 0, len = tab.length; i < len; ++i) {
+        for (int i = probe(0), len = tab.length; i < len; i = probe(i + 1)) {
             final V v = tabAt(tab, i);
             if (v != null &&
                     function.test(v) &&
@@ -406,6 +586,226 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
         return removed;
     }
 
+    /**
+     * Returns an unmodifiable copy of the mappings at a single point in time
+     * <p>Every write brackets its atomic update of a slot with increments
+     * of the started and the finished counts of the slot, a CAS that
+     * does not find the expected value fails without them.
+     * The snapshot collects the slots, skipping none in the middle of a write,
+     * then checks that no write has started on any of them since:
+     * every slot has kept its value from its first read until the check,
+     * so the copy is the content of the map at the moment between them.
+     * Writers never wait, the snapshot retries (pausing according to
+     * the {@link Backoff} of the map) while they interfere
+     *
+     * @throws UnsupportedOperationException if the map is not {@link Option#VERSIONED}
+     */
+    public Map<K,V> snapshot() {
+        final int[] vs = versions;
+        if (vs == null)
+            throw new UnsupportedOperationException("Unversioned map");
+        final V[] tab = table;
+        final int n = tab.length;
+        final int[] seen = new int[n];
+        final V[] copy = (V[]) new Object[n];
+        outer: for (int attempt = 0;; backoff.pause(attempt++)) {
+            for (int i = 0; i < n; ++i) {
+                /*
+                 * Finished before started: no write can finish
+                 * without having started, so equal counts mean
+                 * that no write was in progress in between
+                 */
+                final int finished = (int) IA.getVolatile(vs, (i << 1) + 1),
+                        started = (int) IA.getVolatile(vs, i << 1);
+                if (started != finished)
+                    continue outer; // a write is in progress
+                seen[i] = started;
+                copy[i] = tabAt(tab, i);
+            }
+            for (int i = 0; i < n; ++i) {
+                if ((int) IA.getVolatile(vs, i << 1) != seen[i])
+                    continue outer;
+            }
+            break;
+        }
+        final EnumMap<K,V> m = new EnumMap<>((Class<K>) keyType);
+        final K[] ks = keys;
+        for (int i = 0; i < n; ++i) {
+            if (copy[i] != null)
+                m.put(ks[i], copy[i]);
+        }
+        return Collections.unmodifiableMap(m);
+    }
+
+    /* --------------------- Bulk operations --------------------- */
+
+    /*
+     * Like ConcurrentHashMap, a bulk operation runs sequentially in the
+     * calling thread when the map has fewer than parallelismThreshold
+     * mappings (Long.MAX_VALUE suppresses the parallelism, 1 maximizes it),
+     * otherwise the ordinal range is split in halves across the common pool
+     * down to batches of about length / (parallelism * 4) ordinals.
+     * The traversal is as weakly consistent as forEach
+     */
+
+    private int batch(final long parallelismThreshold) {
+        final int n = table.length, p = ForkJoinPool.getCommonPoolParallelism();
+        return p <= 1 || size() < parallelismThreshold
+                ? n
+                : Math.max(1, n / (p << 2));
+    }
+
+    /**
+     * Performs the given action for each mapping, possibly concurrently
+     *
+     * @param parallelismThreshold the (estimated) number of mappings
+     *                             needed for this operation to be executed in parallel
+     */
+    public void forEach(final long parallelismThreshold,
+                        final BiConsumer<? super K, ? super V> action) {
+        requireNonNull(action);
+        new ForEachTask<>(null, this, 0, table.length,
+                batch(parallelismThreshold), action).invoke();
+    }
+
+    /**
+     * @return a non-null result of applying the given search function
+     *         on some mapping, {@code null} if there is none.
+     *         Further computation is suppressed once a result is found
+     */
+    public <U> U search(final long parallelismThreshold,
+                        final BiFunction<? super K, ? super V, ? extends U> searchFunction) {
+        requireNonNull(searchFunction);
+        final AtomicReference<U> found = new AtomicReference<>();
+        new ReduceTask<K,V,U>(this, 0, table.length,
+                batch(parallelismThreshold), searchFunction,
+                (a,b) -> a, found).invoke();
+        return found.get();
+    }
+
+    /**
+     * @param transformer a function returning the transformation of a mapping,
+     *                    or {@code null} if there is none (in which case it is not combined)
+     * @param reducer     a commutative associative combining function
+     * @return the result of accumulating the given transformation of all mappings,
+     *         {@code null} if there is none
+     */
+    public <U> U reduce(final long parallelismThreshold,
+                        final BiFunction<? super K, ? super V, ? extends U> transformer,
+                        final BiFunction<? super U, ? super U, ? extends U> reducer) {
+        requireNonNull(transformer);
+        requireNonNull(reducer);
+        return new ReduceTask<K,V,U>(this, 0, table.length,
+                batch(parallelismThreshold), transformer,
+                reducer, null).invoke();
+    }
+
+    /**
+     * @return the result of accumulating all values, {@code null} if the map is empty
+     */
+    public V reduceValues(final long parallelismThreshold,
+                          final BiFunction<? super V, ? super V, ? extends V> reducer) {
+        return reduce(parallelismThreshold, (k,v) -> v, reducer);
+    }
+
+    private static final class ForEachTask<K extends Enum<K>,V>
+            extends CountedCompleter<Void> {
+        private final ConcurrentEnumMap<K,V> map;
+        private final BiConsumer<? super K, ? super V> action;
+        private final int lo, batch;
+        private int hi;
+
+        ForEachTask(CountedCompleter<?> parent,
+                    ConcurrentEnumMap<K,V> map,
+                    int lo, int hi, int batch,
+                    BiConsumer<? super K, ? super V> action) {
+            super(parent);
+            this.map = map;
+            this.lo = lo; this.hi = hi;
+            this.batch = batch;
+            this.action = action;
+        }
+
+        @Override
+        public void compute() {
+            for (int mid; hi - lo > batch; ) {
+                addToPendingCount(1);
+                mid = (lo + hi) >>> 1;
+                new ForEachTask<>(this, map, mid, hi, batch, action).fork();
+                hi = mid;
+            }
+            final ConcurrentEnumMap<K,V> m = map;
+            final K[] ks = m.keys; final V[] tab = m.table;
+            for (int i = m.probe(lo), h = hi; i < h; i = m.probe(i + 1)) {
+                final V v = tabAt(tab, i);
+                if (v != null)
+                    action.accept(ks[i], v);
+            }
+            propagateCompletion();
+        }
+    }
+
+    /*
+     * Reduces the range of ordinals, with found it is a search
+     * that stops at the first result
+     */
+    private static final class ReduceTask<K extends Enum<K>,V,U>
+            extends RecursiveTask<U> {
+        private final ConcurrentEnumMap<K,V> map;
+        private final BiFunction<? super K, ? super V, ? extends U> transformer;
+        private final BiFunction<? super U, ? super U, ? extends U> reducer;
+        private final AtomicReference<U> found;
+        private final int lo, hi, batch;
+
+        ReduceTask(ConcurrentEnumMap<K,V> map,
+                   int lo, int hi, int batch,
+                   BiFunction<? super K, ? super V, ? extends U> transformer,
+                   BiFunction<? super U, ? super U, ? extends U> reducer,
+                   AtomicReference<U> found) {
+            this.map = map;
+            this.lo = lo; this.hi = hi;
+            this.batch = batch;
+            this.transformer = transformer;
+            this.reducer = reducer;
+            this.found = found;
+        }
+
+        @Override
+        protected U compute() {
+            final AtomicReference<U> f = found;
+            if (f != null && f.get() != null)
+                return null;
+            if (hi - lo > batch) {
+                final int mid = (lo + hi) >>> 1;
+                final ReduceTask<K,V,U> right = new ReduceTask<>(
+                        map, mid, hi, batch, transformer, reducer, f);
+                right.fork();
+                final U l = new ReduceTask<>(
+                        map, lo, mid, batch, transformer, reducer, f).compute();
+                return combine(l, right.join());
+            }
+            final ConcurrentEnumMap<K,V> m = map;
+            final K[] ks = m.keys; final V[] tab = m.table;
+            U r = null;
+            for (int i = m.probe(lo); i < hi; i = m.probe(i + 1)) {
+                final V v = tabAt(tab, i);
+                final U u;
+                if (v == null || (u = transformer.apply(ks[i], v)) == null)
+                    continue;
+                if (f != null) {
+                    f.compareAndSet(null, u);
+                    return u;
+                }
+                r = combine(r, u);
+            }
+            return r;
+        }
+
+        private U combine(U a, U b) {
+            return a == null ? b : b == null ? a : reducer.apply(a, b);
+        }
+    }
+
     /* --------------------- Views --------------------- */
 
     private static final class KeySetView<K extends Enum<K>,V>
@@ -493,13 +893,13 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
             requireNonNull(o);
 
             final V[] tab = map.table;
-            for (int i = 0, len = tab.length; i < len; ++i) {
-                for (;;) {
+            for (int i = map.probe(0), len = tab.length; i < len; i = map.probe(i + 1)) {
+                for (int attempt = 0;; map.backoff.pause(attempt++)) {
                     V val = tabAt(tab, i);
                     if (Objects.equals(val, o)) {
-                        V witness = caeTabAt(tab, i, val, null);
+                        V witness = map.caeTabAt(tab, i, val, null);
                         if (witness == val) {
-                            map.addCount(-1L);
+                            map.addCount(i, -1L);
                             return true;
                         } else if (witness == null)
                             break;
@@ -651,7 +1051,7 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
 
             int i = index;
             do {
-                i++;
+                i = map.probe(i + 1);
             } while (i < len && (e = tabAt(tab, i)) == null);
             index = i;
             item = e;
@@ -669,8 +1069,8 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
                 throw new IllegalStateException();
             final V[] tab = map.table;
             if (tabAt(tab, l) != null &&
-                    getAndSetAt(tab, l, null) != null)
-                map.addCount(-1L);
+                    map.getAndSetAt(tab, l, null) != null)
+                map.addCount(l, -1L);
             lastRet = -1;
         }
     }
@@ -679,7 +1079,7 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
     public int hashCode() {
         int h = 0;
         final K[] ks = keys; final V[] tab = table;
-        for (int i = 0, len = tab.length; i < len; ++i) {
+        for (int i = probe(0), len = tab.length; i < len; i = probe(i + 1)) {
             V val;
             if ((val = tabAt(tab, i)) == null)
                 continue;
@@ -697,7 +1097,7 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
             int maxSize = ks.length, sz = m.size();
             if (sz > maxSize || sz != size())
                 return false;
-            for (int i = 0, n = tab.length; i < n; ++i) {
+            for (int i = probe(0), n = tab.length; i < n; i = probe(i + 1)) {
                 V value = tabAt(tab, i);
                 if (value != null &&
                         !value.equals(m.get(ks[i])))
@@ -721,6 +1121,9 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
         });
         s.writeObject(null);
         s.writeObject(null);
+        s.writeObject(backoff);
+        s.writeBoolean(presence != null);
+        s.writeBoolean(versions != null);
     }
     @Serial
     private void readObject(ObjectInputStream s)
@@ -736,9 +1139,31 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
                     ++delta;
             } else {
                 addCount(delta);
-                return;
+                break;
+            }
+        }
+        // a stream of a map without options ends with the pairs
+        final Backoff backoff;
+        try {
+            backoff = (Backoff) s.readObject();
+        } catch (OptionalDataException e) {
+            if (!e.eof)
+                throw e;
+            this.backoff = Backoff.NONE;
+            return;
+        }
+        this.backoff = backoff;
+        if (s.readBoolean()) {
+            final long[] bits = new long[presenceWords(keys.length)];
+            for (int i = 0, n = table.length; i < n; ++i) {
+                if (table[i] != null)
+                    bits[i >>> PRESENCE_SHIFT] |= 1L << (i & (PRESENCE_ORDINALS - 1));
             }
+            this.presence = bits;
+            this.counter = null;
         }
+        if (s.readBoolean())
+            this.versions = new int[keys.length << 1];
     }
     @Override
     public String toString() {
@@ -756,29 +1181,75 @@ public class ConcurrentEnumMap<K extends Enum<K>,V>
     }
 
     /*
-     * Atomic access methods are used for an array
+     * Atomic access methods are used for an array,
+     * the writes of a versioned map are bracketed for the snapshot.
+     * A CAS that does not find the expected value cannot succeed,
+     * it fails at that read without touching the versions
      */
     private static <V> V tabAt(V[] tab, int i) {
         return (V) AA.getAcquire(tab, i);
     }
-    private static <V> boolean casTabAt(V[] tab, int i, V c, V v) {
-        return AA.compareAndSet(tab, i, c, v);
+    private boolean casTabAt(V[] tab, int i, V c, V v) {
+        final int[] vs = versions;
+        if (vs == null)
+            return AA.compareAndSet(tab, i, c, v);
+        if (tabAt(tab, i) != c)
+            return false;
+        IA.getAndAdd(vs, i << 1, 1);
+        try {
+            return AA.compareAndSet(tab, i, c, v);
+        } finally {
+            IA.getAndAdd(vs, (i << 1) + 1, 1);
+        }
     }
-    private static <V> boolean weakCasTabAt(V[] tab, int i, V c, V v) {
-        return AA.weakCompareAndSet(tab, i, c, v);
+    private boolean weakCasTabAt(V[] tab, int i, V c, V v) {
+        final int[] vs = versions;
+        if (vs == null)
+            return AA.weakCompareAndSet(tab, i, c, v);
+        if (tabAt(tab, i) != c)
+            return false;
+        IA.getAndAdd(vs, i << 1, 1);
+        try {
+            return AA.weakCompareAndSet(tab, i, c, v);
+        } finally {
+            IA.getAndAdd(vs, (i << 1) + 1, 1);
+        }
     }
 
-    private static <V> V caeTabAt(V[] tab, int i, V c, V v) {
-        return (V) AA.compareAndExchange(tab, i, c, v);
+    private V caeTabAt(V[] tab, int i, V c, V v) {
+        final int[] vs = versions;
+        if (vs == null)
+            return (V) AA.compareAndExchange(tab, i, c, v);
+        final V witness = tabAt(tab, i);
+        if (witness != c)
+            return witness;
+        IA.getAndAdd(vs, i << 1, 1);
+        try {
+            return (V) AA.compareAndExchange(tab, i, c, v);
+        } finally {
+            IA.getAndAdd(vs, (i << 1) + 1, 1);
+        }
     }
 
-    private static <V> V getAndSetAt(V[] tab, int i, V v) {
-        return (V) AA.getAndSet(tab, i, v);
+    private V getAndSetAt(V[] tab, int i, Object v) {
+        final int[] vs = versions;
+        if (vs == null)
+            return (V) AA.getAndSet(tab, i, v);
+        IA.getAndAdd(vs, i << 1, 1);
+        try {
+            return (V) AA.getAndSet(tab, i, v);
+        } finally {
+            IA.getAndAdd(vs, (i << 1) + 1, 1);
+        }
     }
 
     // VarHandle mechanics
     private static final VarHandle AA
             = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final VarHandle LA
+            = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle IA
+            = MethodHandles.arrayElementVarHandle(int[].class);
     private static final VarHandle ADDER;
 
     static {
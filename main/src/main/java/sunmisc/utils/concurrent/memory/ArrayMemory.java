@@ -1,20 +1,30 @@
 package sunmisc.utils.concurrent.memory;
 
+import sunmisc.utils.Footprint;
+import sunmisc.utils.Measurable;
+
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.VarHandle;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 import java.util.StringJoiner;
+import java.util.function.Consumer;
 
 @SuppressWarnings("unchecked")
-public final class ArrayMemory<E> implements ModifiableMemory<E> {
+public final class ArrayMemory<E> implements ModifiableMemory<E>, Measurable {
     private final E[] array;
+    private final MemoryOrder order;
 
     public ArrayMemory(int size) {
-        this((E[]) new Object[size]);
+        this(size, MemoryOrder.ACQUIRE_RELEASE);
+    }
+    public ArrayMemory(int size, MemoryOrder order) {
+        this((E[]) new Object[size], order);
     }
-    private ArrayMemory(E[] array) {
+    private ArrayMemory(E[] array, MemoryOrder order) {
         this.array = array;
+        this.order = Objects.requireNonNull(order);
     }
 
     @Override
@@ -24,12 +34,12 @@ public final class ArrayMemory<E> implements ModifiableMemory<E> {
 
     @Override
     public E fetch(int index) {
-        return (E) AA.getAcquire(array, index);
+        return (E) order.fetch(AA, array, index);
     }
 
     @Override
     public void store(int index, E value) {
-        AA.setRelease(array, index, value);
+        order.store(AA, array, index, value);
     }
 
     @Override
@@ -53,13 +63,67 @@ public final class ArrayMemory<E> implements ModifiableMemory<E> {
         return AA.compareAndSet(array, index, expectedValue, newValue);
     }
 
+    @Override
+    public void fetchRange(int index, E[] dst, int offset, int length) {
+        System.arraycopy(array, index, dst, offset, length);
+        VarHandle.acquireFence();
+    }
+
+    @Override
+    public void storeRange(int index, E[] src, int offset, int length) {
+        VarHandle.releaseFence();
+        System.arraycopy(src, offset, array, index, length);
+    }
+
+    @Override
+    public void fill(int from, int to, E value) {
+        VarHandle.releaseFence();
+        Arrays.fill(array, from, to, value);
+    }
+
+    @Override
+    public void copy(int index,
+                     ModifiableMemory<? super E> dst,
+                     int dstIndex,
+                     int length) {
+        Objects.checkFromIndexSize(index, length, array.length);
+        dst.storeRange(dstIndex, array, index, length);
+    }
+
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        final E[] a = array;
+        for (int i = 0, n = a.length; i < n; ++i)
+            action.accept((E) order.fetch(AA, a, i));
+    }
+
     @Override
     public ModifiableMemory<E> realloc(int size) throws OutOfMemoryError {
         return new ArrayMemory<>(
-                Arrays.copyOf(array, size)
+                Arrays.copyOf(array, size), order
         );
     }
 
+    @Override
+    public Footprint footprint() {
+        final int used = used();
+        return new Footprint(
+                Footprint.retainedBytes(this, order),
+                used, array.length,
+                List.of(new Footprint.Segment(array.length, used)));
+    }
+
+    // the number of non-null elements
+    int used() {
+        int used = 0;
+        for (int i = 0, n = array.length; i < n; ++i) {
+            if (AA.getOpaque(array, i) != null)
+                ++used;
+        }
+        return used;
+    }
+
     @Override
     public String toString() {
         StringJoiner joiner = new StringJoiner(
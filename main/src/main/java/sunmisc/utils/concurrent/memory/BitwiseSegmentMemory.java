@@ -1,21 +1,28 @@
 package sunmisc.utils.concurrent.memory;
 
+import sunmisc.utils.Footprint;
+import sunmisc.utils.Measurable;
+
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
+import java.util.Spliterator;
 import java.util.StringJoiner;
-import java.util.function.BiFunction;
-import java.util.function.Function;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 import static java.lang.Integer.numberOfLeadingZeros;
 
 @SuppressWarnings("unchecked")
 public final class BitwiseSegmentMemory<E extends Number>
-        implements BitwiseModifiableMemory<E> {
+        implements BitwiseModifiableMemory<E>, LongMemory, IntMemory, Measurable {
 
     private static final int MAXIMUM_CAPACITY = 1 << 30;
     private static final VarHandle AA
-            = MethodHandles.arrayElementVarHandle(BitwiseModifiableMemory[].class);
+            = MethodHandles.arrayElementVarHandle(Area[].class);
     private static final VarHandle CTL;
 
     static {
@@ -28,35 +35,57 @@ public final class BitwiseSegmentMemory<E extends Number>
         }
     }
 
-    private final BitwiseModifiableMemory<E>[] areas;
-    private final Function<Integer, Area<E>> mapping;
+    private final Area<E>[] areas;
     private volatile int ctl = 2;
 
     public BitwiseSegmentMemory(Class<E> componentType) {
-        Function<Integer, Area<E>> map;
+        this(componentType, MemoryOrder.ACQUIRE_RELEASE);
+    }
+
+    /**
+     * @param componentType {@code byte}, {@code short}, {@code int} or {@code long} class
+     * @param order the ordering of {@code fetch} and {@code store} in every area
+     */
+    public BitwiseSegmentMemory(Class<E> componentType, MemoryOrder order) {
+        Objects.requireNonNull(order);
+        Area<?> first;
         if (componentType == byte.class)
-            map = len -> (Area<E>) new AreaBytes(new byte[len]);
+            first = new AreaBytes(new byte[2], order);
         else if (componentType == short.class)
-            map = len -> (Area<E>) new AreaShorts(new short[len]);
+            first = new AreaShorts(new short[2], order);
         else if (componentType == int.class)
-            map = len -> (Area<E>) new AreaInts(new int[len]);
+            first = new AreaInts(new int[2], order);
         else if (componentType == long.class)
-            map = len -> (Area<E>) new AreaLongs(new long[len]);
+            first = new AreaLongs(new long[2], order);
         else
             throw new IllegalArgumentException("Component type is not bitwise");
-        BitwiseModifiableMemory<E>[] areas = new BitwiseModifiableMemory[30];
-        areas[0] = map.apply(2);
+        Area<E>[] areas = new Area[30];
+        // the first area is never freed, every other one is allocated like it
+        areas[0] = (Area<E>) first;
         this.areas = areas;
-        this.mapping = map;
     }
 
-    private int indexForArea(final BitwiseModifiableMemory<E> area, final int index) {
+    private static int indexForArea(final Area<?> area, final int index) {
         return index < 2 ? index : index - area.length();
     }
     private static int areaForIndex(final int index) {
         return index < 2 ? 0 : 31 - numberOfLeadingZeros(index);
     }
 
+    /*
+     * Plain dispatch instead of a capturing lambda,
+     * so that the primitive paths stay allocation-free.
+     * A shrink lowers ctl before it unlinks the area,
+     * so an index that has just been dropped may find no area
+     */
+    private Area<E> area(final int index) {
+        Objects.checkIndex(index, length());
+        Area<E> area = areas[areaForIndex(index)];
+        if (area == null)
+            throw new IndexOutOfBoundsException(index);
+        return area;
+    }
+
     @Override
     public ModifiableMemory<E> realloc(int size) {
         size = Math.max(2, size);
@@ -67,14 +96,14 @@ public final class BitwiseSegmentMemory<E extends Number>
         while ((c = ctl) != n) {
             if (c > n) {
                 int index = areaForIndex(c - 1);
-                BitwiseModifiableMemory<E> area = areas[index];
+                Area<E> area = areas[index];
                 if (area != null &&
                         CTL.weakCompareAndSet(this, c, c >> 1))
                     // casSegmentAt(r, segment, null);
                     freeSegment(index);
             } else {
                 int index = areaForIndex(c);
-                var h = mapping.apply(1 << index);
+                var h = areas[0].allocate(1 << index);
                 if (casSegmentAt(index, null, h)) {
                     int k = (int) CTL.compareAndExchange(this, c, c << 1);
                     if (k < c)
@@ -87,45 +116,315 @@ public final class BitwiseSegmentMemory<E extends Number>
 
     @Override
     public E fetch(int index) {
-        return compute(index, (i,area) -> area.fetch(i));
+        Area<E> area = area(index);
+        return area.fetch(indexForArea(area, index));
     }
 
     @Override
     public void store(int index, E value) {
-        compute(index, (i,area) -> {
-            area.store(i, value);
-            return value;
-        });
+        Area<E> area = area(index);
+        area.store(indexForArea(area, index), value);
     }
 
     @Override
     public E compareAndExchange(int index, E expected, E value) {
-        return compute(index, (i, area) -> area.compareAndExchange(i, expected, value));
+        Area<E> area = area(index);
+        return area.compareAndExchange(indexForArea(area, index), expected, value);
     }
 
     @Override
     public E fetchAndStore(int index, E value) {
-        return compute(index, (i, area) -> area.fetchAndStore(i, value));
+        Area<E> area = area(index);
+        return area.fetchAndStore(indexForArea(area, index), value);
     }
 
     @Override
     public E fetchAndAdd(int index, E value) {
-        return compute(index, (i,area) -> area.fetchAndAdd(i, value));
+        Area<E> area = area(index);
+        return area.fetchAndAdd(indexForArea(area, index), value);
     }
 
     @Override
     public E fetchAndBitwiseOr(int index, E mask) {
-        return compute(index, (i,area) -> area.fetchAndBitwiseOr(i, mask));
+        Area<E> area = area(index);
+        return area.fetchAndBitwiseOr(indexForArea(area, index), mask);
     }
 
     @Override
     public E fetchAndBitwiseAnd(int index, E mask) {
-        return compute(index, (i,area) -> area.fetchAndBitwiseAnd(i, mask));
+        Area<E> area = area(index);
+        return area.fetchAndBitwiseAnd(indexForArea(area, index), mask);
     }
 
     @Override
     public E fetchAndBitwiseXor(int index, E mask) {
-        return compute(index, (i,area) -> area.fetchAndBitwiseXor(i, mask));
+        Area<E> area = area(index);
+        return area.fetchAndBitwiseXor(indexForArea(area, index), mask);
+    }
+
+    /* ---------------- primitive long view -------------- */
+
+    @Override
+    public long fetchLong(int index) {
+        Area<E> area = area(index);
+        return area.fetchLong(indexForArea(area, index));
+    }
+
+    @Override
+    public void storeLong(int index, long value) {
+        Area<E> area = area(index);
+        area.storeLong(indexForArea(area, index), value);
+    }
+
+    @Override
+    public long fetchAndStoreLong(int index, long value) {
+        Area<E> area = area(index);
+        return area.fetchAndStoreLong(indexForArea(area, index), value);
+    }
+
+    @Override
+    public long compareAndExchangeLong(int index, long expected, long value) {
+        Area<E> area = area(index);
+        return area.compareAndExchangeLong(indexForArea(area, index), expected, value);
+    }
+
+    @Override
+    public boolean compareAndStoreLong(int index, long expected, long value) {
+        Area<E> area = area(index);
+        return area.compareAndStoreLong(indexForArea(area, index), expected, value);
+    }
+
+    @Override
+    public long fetchAndAddLong(int index, long value) {
+        Area<E> area = area(index);
+        return area.fetchAndAddLong(indexForArea(area, index), value);
+    }
+
+    @Override
+    public long fetchAndBitwiseOrLong(int index, long mask) {
+        Area<E> area = area(index);
+        return area.fetchAndBitwiseOrLong(indexForArea(area, index), mask);
+    }
+
+    @Override
+    public long fetchAndBitwiseAndLong(int index, long mask) {
+        Area<E> area = area(index);
+        return area.fetchAndBitwiseAndLong(indexForArea(area, index), mask);
+    }
+
+    @Override
+    public long fetchAndBitwiseXorLong(int index, long mask) {
+        Area<E> area = area(index);
+        return area.fetchAndBitwiseXorLong(indexForArea(area, index), mask);
+    }
+
+    /*
+     * The bulk operations walk whole areas, the fence is issued once
+     * for the range, the areas themselves use plain access
+     */
+
+    @Override
+    public void fetchRangeLong(int index, long[] dst, int offset, int length) {
+        Objects.checkFromIndexSize(index, length, length());
+        Objects.checkFromIndexSize(offset, length, dst.length);
+        for (int end = index + length; index < end; ) {
+            final Area<E> area = area(index);
+            final int i = indexForArea(area, index),
+                    n = Math.min(area.length() - i, end - index);
+            area.fetchRangeLong(i, dst, offset, n);
+            offset += n; index += n;
+        }
+        VarHandle.acquireFence();
+    }
+
+    @Override
+    public void storeRangeLong(int index, long[] src, int offset, int length) {
+        Objects.checkFromIndexSize(index, length, length());
+        Objects.checkFromIndexSize(offset, length, src.length);
+        VarHandle.releaseFence();
+        for (int end = index + length; index < end; ) {
+            final Area<E> area = area(index);
+            final int i = indexForArea(area, index),
+                    n = Math.min(area.length() - i, end - index);
+            area.storeRangeLong(i, src, offset, n);
+            offset += n; index += n;
+        }
+    }
+
+    @Override
+    public void fillLong(int from, int to, long value) {
+        Objects.checkFromToIndex(from, to, length());
+        VarHandle.releaseFence();
+        while (from < to) {
+            final Area<E> area = area(from);
+            final int i = indexForArea(area, from),
+                    n = Math.min(area.length() - i, to - from);
+            area.fillLong(i, i + n, value);
+            from += n;
+        }
+    }
+
+    @Override
+    public void fill(int from, int to, E value) {
+        fillLong(from, to, value.longValue());
+    }
+
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        for (int k = 0, n = areaForIndex(ctl - 1); k <= n; ++k) {
+            final Area<E> area = areas[k];
+            if (area == null)
+                return;
+            for (int i = 0, m = area.length(); i < m; ++i)
+                action.accept(area.fetch(i));
+        }
+    }
+
+    @Override
+    public void forEachLong(LongConsumer action) {
+        Objects.requireNonNull(action);
+        for (int k = 0, n = areaForIndex(ctl - 1); k <= n; ++k) {
+            final Area<E> area = areas[k];
+            if (area == null)
+                return;
+            for (int i = 0, m = area.length(); i < m; ++i)
+                action.accept(area.fetchLong(i));
+        }
+    }
+
+    /*
+     * Range-wide combinators, see BulkBitwise.
+     * The areas of both memories are walked in step,
+     * each pair of overlapping chunks is combined as plain arrays
+     */
+
+    /**
+     * {@code this[index + k] &= src[srcIndex + k]} for {@code k} in {@code [0, length)}
+     * <p>Unlike {@link #fetchAndBitwiseAnd} the elements are read and written
+     * with plain access and vectorized where possible, so neither the range
+     * nor a single element is updated atomically: a concurrent update of
+     * either range may be lost or partially observed.
+     * The combinators are meant for quiescent memories or for snapshots
+     * taken with {@link #fetchRangeLong}: the loads are preceded by an
+     * acquire fence and the stores are followed by a release fence,
+     * so a range published before the call is seen in full
+     * and the result can be published by a later store
+     *
+     * @param index the first element of this memory
+     * @param src the memory of the same component type to combine with,
+     *            may be this memory if the ranges do not overlap
+     * @param srcIndex the first element of {@code src}
+     * @param length the number of elements
+     * @throws IndexOutOfBoundsException if either range is out of bounds
+     */
+    public void andRange(int index, BitwiseSegmentMemory<E> src, int srcIndex, int length) {
+        combine(BulkBitwise.AND, index, src, srcIndex, length);
+    }
+
+    /**
+     * {@code this[index + k] |= src[srcIndex + k]}, see {@link #andRange}
+     */
+    public void orRange(int index, BitwiseSegmentMemory<E> src, int srcIndex, int length) {
+        combine(BulkBitwise.OR, index, src, srcIndex, length);
+    }
+
+    /**
+     * {@code this[index + k] ^= src[srcIndex + k]}, see {@link #andRange}
+     */
+    public void xorRange(int index, BitwiseSegmentMemory<E> src, int srcIndex, int length) {
+        combine(BulkBitwise.XOR, index, src, srcIndex, length);
+    }
+
+    /**
+     * {@code this[index + k] &= ~src[srcIndex + k]}, see {@link #andRange}
+     */
+    public void andNotRange(int index, BitwiseSegmentMemory<E> src, int srcIndex, int length) {
+        combine(BulkBitwise.AND_NOT, index, src, srcIndex, length);
+    }
+
+    /**
+     * @return the number of set bits of the elements
+     * from {@code from} (inclusive) to {@code to} (exclusive),
+     * read with plain access after an acquire fence
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    public long bitCount(int from, int to) {
+        Objects.checkFromToIndex(from, to, length());
+        VarHandle.acquireFence();
+        long count = 0;
+        while (from < to) {
+            final Area<E> area = area(from);
+            final int i = indexForArea(area, from),
+                    n = Math.min(area.length() - i, to - from);
+            count += BulkBitwise.bitCount(area.array(), i, n);
+            from += n;
+        }
+        return count;
+    }
+
+    private void combine(int op, int index,
+                         BitwiseSegmentMemory<E> src, int srcIndex, int length) {
+        Objects.checkFromIndexSize(index, length, length());
+        Objects.checkFromIndexSize(srcIndex, length, src.length());
+        if (src.areas[0].getClass() != areas[0].getClass())
+            throw new IllegalArgumentException("Component types differ");
+        VarHandle.acquireFence();
+        for (int end = index + length; index < end; ) {
+            final Area<E> a = area(index), b = src.area(srcIndex);
+            final int i = indexForArea(a, index), j = indexForArea(b, srcIndex),
+                    n = Math.min(Math.min(a.length() - i, b.length() - j), end - index);
+            BulkBitwise.combine(op, a.array(), i, b.array(), j, n);
+            index += n; srcIndex += n;
+        }
+        VarHandle.releaseFence();
+    }
+
+    /* ---------------- primitive int view -------------- */
+
+    @Override
+    public int fetchInt(int index) {
+        return (int) fetchLong(index);
+    }
+
+    @Override
+    public void storeInt(int index, int value) {
+        storeLong(index, value);
+    }
+
+    @Override
+    public int fetchAndStoreInt(int index, int value) {
+        return (int) fetchAndStoreLong(index, value);
+    }
+
+    @Override
+    public int compareAndExchangeInt(int index, int expected, int value) {
+        return (int) compareAndExchangeLong(index, expected, value);
+    }
+
+    @Override
+    public boolean compareAndStoreInt(int index, int expected, int value) {
+        return compareAndStoreLong(index, expected, value);
+    }
+
+    @Override
+    public int fetchAndAddInt(int index, int value) {
+        return (int) fetchAndAddLong(index, value);
+    }
+
+    @Override
+    public int fetchAndBitwiseOrInt(int index, int mask) {
+        return (int) fetchAndBitwiseOrLong(index, mask);
+    }
+
+    @Override
+    public int fetchAndBitwiseAndInt(int index, int mask) {
+        return (int) fetchAndBitwiseAndLong(index, mask);
+    }
+
+    @Override
+    public int fetchAndBitwiseXorInt(int index, int mask) {
+        return (int) fetchAndBitwiseXorLong(index, mask);
     }
 
     @Override
@@ -133,20 +432,36 @@ public final class BitwiseSegmentMemory<E extends Number>
         return (int) CTL.getAcquire(this);
     }
 
-    private E compute(int index,
-            BiFunction<Integer, BitwiseModifiableMemory<E>, E> consumer) {
-        Objects.checkIndex(index, length());
-
-        int exponent = areaForIndex(index);
-        BitwiseModifiableMemory<E> area = areas[exponent];
+    @Override
+    public Spliterator<E> spliterator() {
+        return new MemorySpliterator<>(this, 0, length(), 0);
+    }
 
-        int i = indexForArea(area, index);
-        return consumer.apply(i, area);
+    /*
+     * Every slot of a primitive area holds a value,
+     * so an area is used up to the length
+     */
+    @Override
+    public Footprint footprint() {
+        final List<Footprint.Segment> usage = new ArrayList<>();
+        final int length = length();
+        long capacity = 0;
+        for (Area<E> area : areas) {
+            if (area == null) break;
+            final int c = area.length();
+            usage.add(new Footprint.Segment(c,
+                    Math.clamp(length - capacity, 0, c)));
+            capacity += c;
+        }
+        return new Footprint(
+                Footprint.retainedBytes(this, (Object[]) MemoryOrder.values()),
+                Math.min(length, capacity), capacity, usage);
     }
+
     @Override
     public String toString() {
         StringJoiner joiner = new StringJoiner("\n");
-        for (BitwiseModifiableMemory<E> area : areas) {
+        for (Area<E> area : areas) {
             if (area == null) break;
             joiner.add(area.toString());
         }
@@ -165,25 +480,48 @@ public final class BitwiseSegmentMemory<E extends Number>
 
 
     private interface Area<E extends Number>
-            extends BitwiseModifiableMemory<E> {
+            extends BitwiseModifiableMemory<E>, LongMemory {
+        // the backing primitive array
+        Object array();
+
+        // a zeroed area of the same type and order
+        Area<E> allocate(int length);
+
         @Override
         default ModifiableMemory<E> realloc(int size) throws OutOfMemoryError {
             throw new UnsupportedOperationException();
         }
     }
 
-    private record AreaLongs(long[] array) implements Area<Long> {
+    private static final class AreaLongs implements Area<Long> {
         private static final VarHandle
                 LONGS = MethodHandles.arrayElementVarHandle(long[].class);
 
+        private final long[] array;
+        private final MemoryOrder order;
+
+        AreaLongs(long[] array, MemoryOrder order) {
+            this.array = array;
+            this.order = order;
+        }
+
+        @Override public long[] array()
+        { return array; }
+
+        @Override public String toString()
+        { return Arrays.toString(array); }
+
+        @Override public AreaLongs allocate(int length)
+        { return new AreaLongs(new long[length], order); }
+
         @Override public int length()
         { return array.length; }
 
         @Override public Long fetch(int index)
-        { return (long) LONGS.getAcquire(array, index); }
+        { return order.fetch(LONGS, array, index); }
 
         @Override public void store(int index, Long value)
-        { LONGS.setRelease(array, index, value); }
+        { order.store(LONGS, array, index, value); }
 
         @Override public Long fetchAndStore(int index, Long value)
         { return (long) LONGS.getAndSet(array, index, value); }
@@ -202,19 +540,72 @@ public final class BitwiseSegmentMemory<E extends Number>
 
         @Override public Long fetchAndBitwiseXor(int index, Long mask)
         { return (long) LONGS.getAndBitwiseXor(array, index, mask); }
+
+        @Override public long fetchLong(int index)
+        { return order.fetch(LONGS, array, index); }
+
+        @Override public void storeLong(int index, long value)
+        { order.store(LONGS, array, index, value); }
+
+        @Override public long fetchAndStoreLong(int index, long value)
+        { return (long) LONGS.getAndSet(array, index, value); }
+
+        @Override public long compareAndExchangeLong(int i, long expected, long value)
+        { return (long) LONGS.compareAndExchange(array, i, expected, value); }
+
+        @Override public boolean compareAndStoreLong(int i, long expected, long value)
+        { return LONGS.compareAndSet(array, i, expected, value); }
+
+        @Override public long fetchAndAddLong(int i, long value)
+        { return (long) LONGS.getAndAdd(array, i, value); }
+
+        @Override public long fetchAndBitwiseOrLong(int index, long mask)
+        { return (long) LONGS.getAndBitwiseOr(array, index, mask); }
+
+        @Override public long fetchAndBitwiseAndLong(int index, long mask)
+        { return (long) LONGS.getAndBitwiseAnd(array, index, mask); }
+
+        @Override public long fetchAndBitwiseXorLong(int index, long mask)
+        { return (long) LONGS.getAndBitwiseXor(array, index, mask); }
+
+        @Override public void fetchRangeLong(int index, long[] dst, int offset, int length)
+        { System.arraycopy(array, index, dst, offset, length); }
+
+        @Override public void storeRangeLong(int index, long[] src, int offset, int length)
+        { System.arraycopy(src, offset, array, index, length); }
+
+        @Override public void fillLong(int from, int to, long value)
+        { Arrays.fill(array, from, to, value); }
     }
-    private record AreaInts(int[] array) implements Area<Integer> {
+    private static final class AreaInts implements Area<Integer> {
         private static final VarHandle
                 INTEGERS = MethodHandles.arrayElementVarHandle(int[].class);
 
+        private final int[] array;
+        private final MemoryOrder order;
+
+        AreaInts(int[] array, MemoryOrder order) {
+            this.array = array;
+            this.order = order;
+        }
+
+        @Override public int[] array()
+        { return array; }
+
+        @Override public String toString()
+        { return Arrays.toString(array); }
+
+        @Override public AreaInts allocate(int length)
+        { return new AreaInts(new int[length], order); }
+
         @Override public int length()
         { return array.length; }
 
         @Override public Integer fetch(int index)
-        { return (int) INTEGERS.getAcquire(array, index); }
+        { return order.fetch(INTEGERS, array, index); }
 
         @Override public void store(int index, Integer value)
-        { INTEGERS.setRelease(array, index, value); }
+        { order.store(INTEGERS, array, index, value); }
 
         @Override public Integer fetchAndStore(int index, Integer value)
         { return (int) INTEGERS.getAndSet(array, index, value); }
@@ -233,19 +624,76 @@ public final class BitwiseSegmentMemory<E extends Number>
 
         @Override public Integer fetchAndBitwiseXor(int index, Integer mask)
         { return (int) INTEGERS.getAndBitwiseXor(array, index, mask); }
+
+        @Override public long fetchLong(int index)
+        { return order.fetch(INTEGERS, array, index); }
+
+        @Override public void storeLong(int index, long value)
+        { order.store(INTEGERS, array, index, (int) value); }
+
+        @Override public long fetchAndStoreLong(int index, long value)
+        { return (int) INTEGERS.getAndSet(array, index, (int) value); }
+
+        // an expected value out of the range of int matches nothing
+        @Override public long compareAndExchangeLong(int i, long expected, long value)
+        { return expected == (int) expected
+                ? (int) INTEGERS.compareAndExchange(array, i, (int) expected, (int) value)
+                : (int) INTEGERS.getVolatile(array, i); }
+
+        @Override public boolean compareAndStoreLong(int i, long expected, long value)
+        { return expected == (int) expected &&
+                INTEGERS.compareAndSet(array, i, (int) expected, (int) value); }
+
+        @Override public long fetchAndAddLong(int i, long value)
+        { return (int) INTEGERS.getAndAdd(array, i, (int) value); }
+
+        @Override public long fetchAndBitwiseOrLong(int index, long mask)
+        { return (int) INTEGERS.getAndBitwiseOr(array, index, (int) mask); }
+
+        @Override public long fetchAndBitwiseAndLong(int index, long mask)
+        { return (int) INTEGERS.getAndBitwiseAnd(array, index, (int) mask); }
+
+        @Override public long fetchAndBitwiseXorLong(int index, long mask)
+        { return (int) INTEGERS.getAndBitwiseXor(array, index, (int) mask); }
+
+        @Override public void fetchRangeLong(int index, long[] dst, int offset, int length)
+        { for (int k = 0; k < length; ++k) dst[offset + k] = array[index + k]; }
+
+        @Override public void storeRangeLong(int index, long[] src, int offset, int length)
+        { for (int k = 0; k < length; ++k) array[index + k] = (int) src[offset + k]; }
+
+        @Override public void fillLong(int from, int to, long value)
+        { Arrays.fill(array, from, to, (int) value); }
     }
-    private record AreaShorts(short[] array) implements Area<Short> {
+    private static final class AreaShorts implements Area<Short> {
         private static final VarHandle
                 SHORTS = MethodHandles.arrayElementVarHandle(short[].class);
 
+        private final short[] array;
+        private final MemoryOrder order;
+
+        AreaShorts(short[] array, MemoryOrder order) {
+            this.array = array;
+            this.order = order;
+        }
+
+        @Override public short[] array()
+        { return array; }
+
+        @Override public String toString()
+        { return Arrays.toString(array); }
+
+        @Override public AreaShorts allocate(int length)
+        { return new AreaShorts(new short[length], order); }
+
         @Override public int length()
         { return array.length; }
 
         @Override public Short fetch(int index)
-        { return (short) SHORTS.getAcquire(array, index); }
+        { return order.fetch(SHORTS, array, index); }
 
         @Override public void store(int index, Short value)
-        { SHORTS.setRelease(array, index, value); }
+        { order.store(SHORTS, array, index, value); }
 
         @Override public Short fetchAndStore(int index, Short value)
         { return (short) SHORTS.getAndSet(array, index, value); }
@@ -264,19 +712,76 @@ public final class BitwiseSegmentMemory<E extends Number>
 
         @Override public Short fetchAndBitwiseXor(int index, Short mask)
         { return (short) SHORTS.getAndBitwiseXor(array, index, mask); }
+
+        @Override public long fetchLong(int index)
+        { return order.fetch(SHORTS, array, index); }
+
+        @Override public void storeLong(int index, long value)
+        { order.store(SHORTS, array, index, (short) value); }
+
+        @Override public long fetchAndStoreLong(int index, long value)
+        { return (short) SHORTS.getAndSet(array, index, (short) value); }
+
+        // an expected value out of the range of short matches nothing
+        @Override public long compareAndExchangeLong(int i, long expected, long value)
+        { return expected == (short) expected
+                ? (short) SHORTS.compareAndExchange(array, i, (short) expected, (short) value)
+                : (short) SHORTS.getVolatile(array, i); }
+
+        @Override public boolean compareAndStoreLong(int i, long expected, long value)
+        { return expected == (short) expected &&
+                SHORTS.compareAndSet(array, i, (short) expected, (short) value); }
+
+        @Override public long fetchAndAddLong(int i, long value)
+        { return (short) SHORTS.getAndAdd(array, i, (short) value); }
+
+        @Override public long fetchAndBitwiseOrLong(int index, long mask)
+        { return (short) SHORTS.getAndBitwiseOr(array, index, (short) mask); }
+
+        @Override public long fetchAndBitwiseAndLong(int index, long mask)
+        { return (short) SHORTS.getAndBitwiseAnd(array, index, (short) mask); }
+
+        @Override public long fetchAndBitwiseXorLong(int index, long mask)
+        { return (short) SHORTS.getAndBitwiseXor(array, index, (short) mask); }
+
+        @Override public void fetchRangeLong(int index, long[] dst, int offset, int length)
+        { for (int k = 0; k < length; ++k) dst[offset + k] = array[index + k]; }
+
+        @Override public void storeRangeLong(int index, long[] src, int offset, int length)
+        { for (int k = 0; k < length; ++k) array[index + k] = (short) src[offset + k]; }
+
+        @Override public void fillLong(int from, int to, long value)
+        { Arrays.fill(array, from, to, (short) value); }
     }
-    private record AreaBytes(byte[] array) implements Area<Byte> {
+    private static final class AreaBytes implements Area<Byte> {
         private static final VarHandle
                 BYTES = MethodHandles.arrayElementVarHandle(byte[].class);
 
+        private final byte[] array;
+        private final MemoryOrder order;
+
+        AreaBytes(byte[] array, MemoryOrder order) {
+            this.array = array;
+            this.order = order;
+        }
+
+        @Override public byte[] array()
+        { return array; }
+
+        @Override public String toString()
+        { return Arrays.toString(array); }
+
+        @Override public AreaBytes allocate(int length)
+        { return new AreaBytes(new byte[length], order); }
+
         @Override public int length()
         { return array.length; }
 
         @Override public Byte fetch(int index)
-        { return (byte) BYTES.getAcquire(array, index); }
+        { return order.fetch(BYTES, array, index); }
 
         @Override public void store(int index, Byte value)
-        { BYTES.setRelease(array, index, value); }
+        { order.store(BYTES, array, index, value); }
 
         @Override public Byte fetchAndStore(int index, Byte value)
         { return (byte) BYTES.getAndSet(array, index, value); }
@@ -295,5 +800,45 @@ public final class BitwiseSegmentMemory<E extends Number>
 
         @Override public Byte fetchAndBitwiseXor(int index, Byte mask)
         { return (byte) BYTES.getAndBitwiseXor(array, index, mask); }
+
+        @Override public long fetchLong(int index)
+        { return order.fetch(BYTES, array, index); }
+
+        @Override public void storeLong(int index, long value)
+        { order.store(BYTES, array, index, (byte) value); }
+
+        @Override public long fetchAndStoreLong(int index, long value)
+        { return (byte) BYTES.getAndSet(array, index, (byte) value); }
+
+        // an expected value out of the range of byte matches nothing
+        @Override public long compareAndExchangeLong(int i, long expected, long value)
+        { return expected == (byte) expected
+                ? (byte) BYTES.compareAndExchange(array, i, (byte) expected, (byte) value)
+                : (byte) BYTES.getVolatile(array, i); }
+
+        @Override public boolean compareAndStoreLong(int i, long expected, long value)
+        { return expected == (byte) expected &&
+                BYTES.compareAndSet(array, i, (byte) expected, (byte) value); }
+
+        @Override public long fetchAndAddLong(int i, long value)
+        { return (byte) BYTES.getAndAdd(array, i, (byte) value); }
+
+        @Override public long fetchAndBitwiseOrLong(int index, long mask)
+        { return (byte) BYTES.getAndBitwiseOr(array, index, (byte) mask); }
+
+        @Override public long fetchAndBitwiseAndLong(int index, long mask)
+        { return (byte) BYTES.getAndBitwiseAnd(array, index, (byte) mask); }
+
+        @Override public long fetchAndBitwiseXorLong(int index, long mask)
+        { return (byte) BYTES.getAndBitwiseXor(array, index, (byte) mask); }
+
+        @Override public void fetchRangeLong(int index, long[] dst, int offset, int length)
+        { for (int k = 0; k < length; ++k) dst[offset + k] = array[index + k]; }
+
+        @Override public void storeRangeLong(int index, long[] src, int offset, int length)
+        { for (int k = 0; k < length; ++k) array[index + k] = (byte) src[offset + k]; }
+
+        @Override public void fillLong(int from, int to, long value)
+        { Arrays.fill(array, from, to, (byte) value); }
     }
 }
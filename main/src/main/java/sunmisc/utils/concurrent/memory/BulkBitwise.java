@@ -0,0 +1,149 @@
+package sunmisc.utils.concurrent.memory;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Plain range-wide bitwise operations over the arrays of the areas
+ * <p>{@code long[]} and {@code int[]} ranges are processed with
+ * {@code jdk.incubator.vector} when the module is in the boot layer
+ * ({@code --add-modules jdk.incubator.vector}), the tails and
+ * every other case use a scalar loop.
+ * No access is atomic, the callers issue the fences
+ *
+ * @author Sunmisc Unsafe
+ */
+final class BulkBitwise {
+    static final int AND = 0, OR = 1, XOR = 2, AND_NOT = 3;
+
+    /*
+     * The vector classes are only touched through the holder,
+     * without the module it is never initialized
+     */
+    private static final boolean VECTORIZED = ModuleLayer.boot()
+            .findModule("jdk.incubator.vector")
+            .isPresent();
+
+    private BulkBitwise() {}
+
+    // a[i, i + n) = a[i, i + n) op b[j, j + n), a and b are arrays of the same type
+    static void combine(int op, Object a, int i, Object b, int j, int n) {
+        switch (a) {
+            case long[] x -> combine(op, x, i, (long[]) b, j, n);
+            case int[] x -> combine(op, x, i, (int[]) b, j, n);
+            case short[] x -> {
+                short[] y = (short[]) b;
+                for (int k = 0; k < n; ++k)
+                    x[i + k] = (short) apply(op, x[i + k], y[j + k]);
+            }
+            case byte[] x -> {
+                byte[] y = (byte[]) b;
+                for (int k = 0; k < n; ++k)
+                    x[i + k] = (byte) apply(op, x[i + k], y[j + k]);
+            }
+            default -> throw new IllegalArgumentException();
+        }
+    }
+
+    static long bitCount(Object a, int i, int n) {
+        long count = 0;
+        switch (a) {
+            case long[] x -> {
+                int k = 0;
+                if (VECTORIZED) {
+                    k = Vectors.LONGS.loopBound(n);
+                    count = Vectors.bitCount(x, i, k);
+                }
+                for (; k < n; ++k)
+                    count += Long.bitCount(x[i + k]);
+            }
+            case int[] x -> {
+                for (int k = 0; k < n; ++k)
+                    count += Integer.bitCount(x[i + k]);
+            }
+            case short[] x -> {
+                for (int k = 0; k < n; ++k)
+                    count += Integer.bitCount(x[i + k] & 0xFFFF);
+            }
+            case byte[] x -> {
+                for (int k = 0; k < n; ++k)
+                    count += Integer.bitCount(x[i + k] & 0xFF);
+            }
+            default -> throw new IllegalArgumentException();
+        }
+        return count;
+    }
+
+    private static void combine(int op, long[] a, int i, long[] b, int j, int n) {
+        int k = VECTORIZED ? Vectors.combine(op, a, i, b, j, n) : 0;
+        for (; k < n; ++k)
+            a[i + k] = apply(op, a[i + k], b[j + k]);
+    }
+
+    private static void combine(int op, int[] a, int i, int[] b, int j, int n) {
+        int k = VECTORIZED ? Vectors.combine(op, a, i, b, j, n) : 0;
+        for (; k < n; ++k)
+            a[i + k] = (int) apply(op, a[i + k], b[j + k]);
+    }
+
+    private static long apply(int op, long x, long y) {
+        return switch (op) {
+            case AND -> x & y;
+            case OR -> x | y;
+            case XOR -> x ^ y;
+            case AND_NOT -> x & ~y;
+            default -> throw new IllegalArgumentException();
+        };
+    }
+
+    // combine returns the number of elements processed, a multiple of the lane count
+    private static final class Vectors {
+        static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+        static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+        static VectorOperators.Binary operator(int op) {
+            return switch (op) {
+                case AND -> VectorOperators.AND;
+                case OR -> VectorOperators.OR;
+                case XOR -> VectorOperators.XOR;
+                case AND_NOT -> VectorOperators.AND_NOT;
+                default -> throw new IllegalArgumentException();
+            };
+        }
+
+        static int combine(int op, long[] a, int i, long[] b, int j, int n) {
+            final VectorOperators.Binary operator = operator(op);
+            final int step = LONGS.length(), bound = LONGS.loopBound(n);
+            int k = 0;
+            for (; k < bound; k += step) {
+                LongVector x = LongVector.fromArray(LONGS, a, i + k),
+                        y = LongVector.fromArray(LONGS, b, j + k);
+                x.lanewise(operator, y).intoArray(a, i + k);
+            }
+            return k;
+        }
+
+        static int combine(int op, int[] a, int i, int[] b, int j, int n) {
+            final VectorOperators.Binary operator = operator(op);
+            final int step = INTS.length(), bound = INTS.loopBound(n);
+            int k = 0;
+            for (; k < bound; k += step) {
+                IntVector x = IntVector.fromArray(INTS, a, i + k),
+                        y = IntVector.fromArray(INTS, b, j + k);
+                x.lanewise(operator, y).intoArray(a, i + k);
+            }
+            return k;
+        }
+
+        // n is a multiple of the lane count
+        static long bitCount(long[] a, int i, int n) {
+            LongVector sum = LongVector.zero(LONGS);
+            for (int k = 0, step = LONGS.length(); k < n; k += step)
+                sum = sum.add(LongVector.fromArray(LONGS, a, i + k)
+                        .lanewise(VectorOperators.BIT_COUNT));
+            return sum.reduceLanes(VectorOperators.ADD);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Epoch-based reclamation of the parts of a structure that
+ * readers may still be using after they have been unlinked
+ * <p>Readers bracket every access with {@link #enter()} and {@link Reader#exit()}.
+ * Every thread has one {@link Reader} slot, created on its first entry
+ * into any reclaimer and shared by all of them, so a thread costs one slot
+ * however many structures it touches. Entering publishes the reclaimer and
+ * the current epoch in the slot followed by a full fence, exiting is a release
+ * store. No cache line is shared between readers, so reads do not contend
+ * with each other, and readers never wait.
+ * A reclaimer first unlinks the part from the structure, then calls
+ * {@link #synchronize()}, and after that may free the part: every reader
+ * that could have observed it has left, and every later reader
+ * observes the structure without it
+ * <p>The epoch is global, a reclaimer advances it and waits only for its own
+ * readers that entered in an earlier epoch, so a steady stream of new readers
+ * does not starve it and the readers of other reclaimers do not delay it.
+ * Reclaimers may run concurrently and may block.
+ * Entries may nest, a thread only publishes the epoch of its outermost entry,
+ * and an entry nested into another reclaimer makes the slot count as a reader
+ * of every reclaimer until the outermost exit.
+ * A thread that synchronizes while inside the reclaimer waits for itself forever
+ * <p>{@link #synchronize()} waits as long as a reader stays inside,
+ * except for a reader whose thread has terminated: it reads nothing anymore.
+ * The slots of terminated threads are unlinked by the reclaimers
+ *
+ * <pre>{@code
+ * EpochReclaimer.Reader reader = reclaimer.enter();
+ * try {
+ *     // read the structure
+ * } finally {
+ *     reader.exit();
+ * }
+ * }</pre>
+ *
+ * @author Sunmisc Unsafe
+ */
+public final class EpochReclaimer {
+    private static final int MAX_SPINS = 1 << 6;
+    // the epoch of a reader outside, above any epoch a reclaimer waits for
+    private static final long IDLE = Long.MAX_VALUE;
+    private static final ThreadLocal<Reader> LOCAL
+            = ThreadLocal.withInitial(EpochReclaimer::register);
+    // held while unlinking the slots of terminated threads
+    private static final ReentrantLock SWEEP = new ReentrantLock();
+    // a stack of the slots of all the threads that have entered
+    private static volatile Reader head;
+    private static volatile long epoch;
+
+    /**
+     * @return the slot of the current thread to {@link Reader#exit() exit} with
+     */
+    public Reader enter() {
+        final Reader r = LOCAL.get();
+        if (r.depth++ == 0) {
+            if (r.reclaimer != this)
+                R_RECLAIMER.setOpaque(r, this);
+            R_EPOCH.setRelease(r, epoch);
+            // the slot must be visible before the structure is read
+            VarHandle.fullFence();
+        } else if (r.reclaimer != this && r.reclaimer != null) {
+            // nested into another reclaimer, now a reader of every one
+            R_RECLAIMER.setOpaque(r, null);
+            VarHandle.fullFence();
+        }
+        return r;
+    }
+
+    /**
+     * Waits until every reader that entered before this call has exited
+     */
+    public void synchronize() {
+        final long e = (long) EPOCH.getAndAdd(1L);
+        // the epoch store must not pass the slot loads
+        VarHandle.fullFence();
+        for (Reader r = head; r != null; r = r.next) {
+            for (int spins = 0; r.holds(this, e); ++spins) {
+                if (spins < MAX_SPINS)
+                    Thread.onSpinWait();
+                else if (r.terminated())
+                    break;
+                else
+                    Thread.yield();
+            }
+        }
+        sweep();
+    }
+
+    /**
+     * Runs the {@code action} once no reader can observe
+     * what it frees, on the calling thread
+     */
+    public void retire(Runnable action) {
+        synchronize();
+        action.run();
+    }
+
+    private static Reader register() {
+        final Reader r = new Reader(Thread.currentThread());
+        for (Reader h;;) {
+            r.next = h = head;
+            if (HEAD.weakCompareAndSet(h, r))
+                return r;
+        }
+    }
+
+    // the head belongs to the registrations, the rest to the sweeper
+    private static void sweep() {
+        if (!SWEEP.tryLock())
+            return;
+        try {
+            for (Reader r = head, prev = null; r != null; r = r.next) {
+                if (prev != null && r.terminated())
+                    prev.next = r.next;
+                else
+                    prev = r;
+            }
+        } finally {
+            SWEEP.unlock();
+        }
+    }
+
+    /**
+     * The slot of a thread, only touched by its owner and the reclaimers
+     */
+    public static final class Reader {
+        private final WeakReference<Thread> owner;
+        // the epoch of the outermost entry, IDLE outside
+        private volatile long epoch = IDLE;
+        // the reclaimer of the outermost entry, null once nested into another
+        private EpochReclaimer reclaimer;
+        private int depth;
+        private Reader next;
+
+        private Reader(Thread owner) {
+            this.owner = new WeakReference<>(owner);
+        }
+
+        public void exit() {
+            if (--depth == 0)
+                R_EPOCH.setRelease(this, IDLE);
+        }
+
+        // the reclaimer is read after the epoch that was published with it
+        boolean holds(EpochReclaimer reclaimer, long e) {
+            if ((long) R_EPOCH.getAcquire(this) > e)
+                return false;
+            final Object r = R_RECLAIMER.getOpaque(this);
+            return r == reclaimer || r == null;
+        }
+
+        boolean terminated() {
+            final Thread t = owner.get();
+            return t == null || !t.isAlive();
+        }
+    }
+
+    // VarHandle mechanics
+    private static final VarHandle EPOCH;
+    private static final VarHandle HEAD;
+    private static final VarHandle R_EPOCH;
+    private static final VarHandle R_RECLAIMER;
+
+    static {
+        try {
+            MethodHandles.Lookup l = MethodHandles.lookup();
+            EPOCH = l.findStaticVarHandle(EpochReclaimer.class,
+                    "epoch", long.class);
+            HEAD = l.findStaticVarHandle(EpochReclaimer.class,
+                    "head", Reader.class);
+            R_EPOCH = l.findVarHandle(Reader.class,
+                    "epoch", long.class);
+            R_RECLAIMER = l.findVarHandle(Reader.class,
+                    "reclaimer", EpochReclaimer.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
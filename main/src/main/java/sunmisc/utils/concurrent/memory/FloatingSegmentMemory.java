@@ -0,0 +1,243 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Memory of {@code double} or {@code float} elements
+ * <p>The elements are kept as raw bits in a {@link BitwiseSegmentMemory}
+ * of {@code long} or {@code int}, the arithmetic is a CAS loop on the bits,
+ * so nothing is boxed on the primitive paths.
+ * Expected values are compared by their raw bits: {@code 0.0} does not
+ * match {@code -0.0} and, unlike {@link Double#equals}, which collapses
+ * every {@code NaN} to the canonical one, two {@code NaN}s with
+ * different payloads do not match
+ * <p>In the striped mode a slot is inflated into a {@link DoubleAdder}
+ * the first time a CAS of {@link #add} fails, like {@link StripedSegmentMemory}.
+ * The memory is then an accumulator: {@link #fetchDouble} returns the sum
+ * with the guarantees of {@link DoubleAdder#sum()}, {@link #storeDouble}
+ * resets the slot and the operations that need a single current value
+ * ({@code fetchAndAdd}, {@code fetchAndStore}, compare-and-swap, min, max)
+ * fail with {@link UnsupportedOperationException} on an inflated slot.
+ * They work on a slot that has never been inflated, one that is inflated
+ * while they run keeps their effect in its compact part.
+ * For {@code float} memories the sums are accumulated in {@code double}
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> {@link Double} or {@link Float}
+ */
+@SuppressWarnings("unchecked")
+public final class FloatingSegmentMemory<E extends Number> implements ModifiableMemory<E> {
+    private final BitwiseSegmentMemory<?> bits;
+    private final boolean single;
+    // null unless striped
+    private final ReferenceSegmentMemory<DoubleAdder> cells;
+
+    public FloatingSegmentMemory(Class<E> componentType) {
+        this(componentType, false);
+    }
+
+    /**
+     * @param componentType {@code double} or {@code float} class
+     * @param striped whether hot slots are inflated into adders
+     */
+    public FloatingSegmentMemory(Class<E> componentType, boolean striped) {
+        if (componentType == double.class)
+            bits = new BitwiseSegmentMemory<>(long.class);
+        else if (componentType == float.class)
+            bits = new BitwiseSegmentMemory<>(int.class);
+        else
+            throw new IllegalArgumentException("Component type is not floating");
+        single = componentType == float.class;
+        if (striped) {
+            cells = new ReferenceSegmentMemory<>();
+            cells.realloc(bits.length());
+        } else
+            cells = null;
+    }
+
+    private long encode(double x) {
+        return single
+                ? Float.floatToRawIntBits((float) x)
+                : Double.doubleToRawLongBits(x);
+    }
+
+    private double decode(long bits) {
+        return single
+                ? Float.intBitsToFloat((int) bits)
+                : Double.longBitsToDouble(bits);
+    }
+
+    private E box(double x) {
+        return (E) (single ? (Number) (float) x : (Number) x);
+    }
+
+    private void ensureCompact(int index) {
+        if (isStriped(index))
+            throw new UnsupportedOperationException("Striped slot " + index);
+    }
+
+    @Override
+    public int length() {
+        return bits.length();
+    }
+
+    @Override
+    public E fetch(int index) {
+        return box(fetchDouble(index));
+    }
+
+    @Override
+    public void store(int index, E value) {
+        storeDouble(index, value.doubleValue());
+    }
+
+    @Override
+    public E fetchAndStore(int index, E value) {
+        return box(fetchAndStoreDouble(index, value.doubleValue()));
+    }
+
+    @Override
+    public E compareAndExchange(int index, E expected, E value) {
+        ensureCompact(index);
+        return box(decode(bits.compareAndExchangeLong(index,
+                encode(expected.doubleValue()),
+                encode(value.doubleValue()))));
+    }
+
+    @Override
+    public boolean compareAndStore(int index, E expected, E value) {
+        return compareAndStoreDouble(index,
+                expected.doubleValue(),
+                value.doubleValue());
+    }
+
+    /* ---------------- primitive double view -------------- */
+
+    public double fetchDouble(int index) {
+        final double x = decode(bits.fetchLong(index));
+        DoubleAdder adder = adder(index);
+        return adder == null ? x : x + adder.sum();
+    }
+
+    /**
+     * In the striped mode also resets the slot, exact
+     * only in the absence of concurrent updates
+     */
+    public void storeDouble(int index, double value) {
+        if (adder(index) != null)
+            cells.store(index, null);
+        bits.storeLong(index, encode(value));
+    }
+
+    public double fetchAndStoreDouble(int index, double value) {
+        ensureCompact(index);
+        return decode(bits.fetchAndStoreLong(index, encode(value)));
+    }
+
+    public boolean compareAndStoreDouble(int index, double expected, double value) {
+        ensureCompact(index);
+        return bits.compareAndStoreLong(index, encode(expected), encode(value));
+    }
+
+    public double fetchAndAddDouble(int index, double value) {
+        ensureCompact(index);
+        for (long v;;) {
+            v = bits.fetchLong(index);
+            final double x = decode(v);
+            if (bits.compareAndStoreLong(index, v, encode(x + value)))
+                return x;
+        }
+    }
+
+    /**
+     * Atomically replaces the element with {@code operator(element, x)}
+     * unless the result has the same bits, in which case nothing is written
+     *
+     * @return the previous value
+     */
+    public double fetchAndAccumulateDouble(int index, double x,
+                                           DoubleBinaryOperator operator) {
+        ensureCompact(index);
+        for (long v;;) {
+            v = bits.fetchLong(index);
+            final double prev = decode(v);
+            final long next = encode(operator.applyAsDouble(prev, x));
+            if (next == v || bits.compareAndStoreLong(index, v, next))
+                return prev;
+        }
+    }
+
+    /**
+     * @return the previous value, the element becomes {@link Math#min} of both
+     */
+    public double fetchAndMinDouble(int index, double x) {
+        return fetchAndAccumulateDouble(index, x, Math::min);
+    }
+
+    /**
+     * @return the previous value, the element becomes {@link Math#max} of both
+     */
+    public double fetchAndMaxDouble(int index, double x) {
+        return fetchAndAccumulateDouble(index, x, Math::max);
+    }
+
+    /**
+     * Adds {@code x} to the element, in the striped mode
+     * a contended slot is inflated into a {@link DoubleAdder}
+     */
+    public void add(int index, double x) {
+        if (cells == null) {
+            fetchAndAddDouble(index, x);
+            return;
+        }
+        DoubleAdder adder = adder(index);
+        if (adder == null) {
+            long v = bits.fetchLong(index);
+            if (bits.compareAndStoreLong(index, v, encode(decode(v) + x)))
+                return;
+            adder = inflate(index);
+        }
+        adder.add(x);
+    }
+
+    public boolean isStriped(int index) {
+        return adder(index) != null;
+    }
+
+    /*
+     * The side table may lag behind a concurrent growth of the bits,
+     * its missing indexes have no adder
+     */
+    private DoubleAdder adder(int index) {
+        return cells == null || index >= cells.length() ? null : cells.fetch(index);
+    }
+
+    private DoubleAdder inflate(int index) {
+        if (index >= cells.length())
+            cells.realloc(Math.max(index + 1, bits.length()));
+        DoubleAdder adder = new DoubleAdder(),
+                witness = cells.compareAndExchange(index, null, adder);
+        return witness == null ? adder : witness;
+    }
+
+    @Override
+    public FloatingSegmentMemory<E> realloc(int size) {
+        bits.realloc(size);
+        // the bits round up to a power of two, the cells to one less
+        if (cells != null)
+            cells.realloc(bits.length());
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        for (int i = 0, n = length(); i < n; ++i)
+            joiner.add(Objects.toString(fetch(i)));
+        return joiner.toString();
+    }
+}
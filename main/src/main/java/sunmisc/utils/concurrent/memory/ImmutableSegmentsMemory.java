@@ -1,47 +1,71 @@
 package sunmisc.utils.concurrent.memory;
 
-import sunmisc.utils.memory.ModifiableMemory;
+import sunmisc.utils.Footprint;
+import sunmisc.utils.Measurable;
 
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
 import java.util.StringJoiner;
+import java.util.function.Consumer;
 
 import static java.lang.Integer.numberOfLeadingZeros;
 
+/**
+ * Memory whose segment table is never modified, {@link #realloc} builds a new table
+ * <p>The new memory shares the segments of the old one, so a store through
+ * either of them is visible through both: the old memory is not a snapshot.
+ * Use {@link PersistentMemory} for point-in-time views
+ *
+ * @param <E> The base class of elements held in this array
+ */
 @SuppressWarnings("unchecked")
-public class ImmutableSegmentsMemory<E> implements ModifiableMemory<E> {
+public class ImmutableSegmentsMemory<E> implements ModifiableMemory<E>, Measurable {
     private final Object[][] segments;
+    private final MemoryOrder order;
 
     public ImmutableSegmentsMemory(int size) {
-        this(make(size));
+        this(size, MemoryOrder.ACQUIRE_RELEASE);
     }
-    private ImmutableSegmentsMemory(Object[][] segments) {
+    public ImmutableSegmentsMemory(int size, MemoryOrder order) {
+        this(make(size), order);
+    }
+    private ImmutableSegmentsMemory(Object[][] segments, MemoryOrder order) {
         this.segments = segments;
+        this.order = Objects.requireNonNull(order);
     }
 
     // O(30)
     @Override
     public ImmutableSegmentsMemory<E> realloc(int size) {
-        size = 32 - numberOfLeadingZeros(size);
+        size = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
         final Object[][] prev = segments;
-        int p = prev.length - 1;
         final Object[][] copy = Arrays.copyOf(prev, size);
-        for (; p < size; ++p)
+        // the kept segments are shared, only the missing ones are allocated
+        for (int p = prev.length; p < size; ++p)
             copy[p] = new Object[1 << p];
-        return new ImmutableSegmentsMemory<>(copy);
+        return new ImmutableSegmentsMemory<>(copy, order);
     }
     @Override
     public int length() {
         return 1 << segments.length;
     }
 
+    @Override
+    public Spliterator<E> spliterator() {
+        return new MemorySpliterator<>(this, 0, length(), 0);
+    }
+
     @Override
     public E fetch(int index) {
         final int exponent = segmentForIndex(index);
         final Object[] segment = segments[exponent];
         final int i = indexForSegment(segment, index);
-        return (E) AA.getAcquire(segment, i);
+        return (E) order.fetch(AA, segment, i);
     }
 
     @Override
@@ -71,7 +95,91 @@ public class ImmutableSegmentsMemory<E> implements ModifiableMemory<E> {
         final Object[] segment = segments[exponent];
         final int i = indexForSegment(segment, index);
 
-        AA.setRelease(segment, i, val);
+        order.store(AA, segment, i, val);
+    }
+
+    @Override
+    public void fetchRange(int index, E[] dst, int offset, int length) {
+        Objects.checkFromIndexSize(index, length, length());
+        Objects.checkFromIndexSize(offset, length, dst.length);
+        for (int end = index + length; index < end; ) {
+            final Object[] segment = segments[segmentForIndex(index)];
+            final int i = indexForSegment(segment, index),
+                    n = Math.min(segment.length - i, end - index);
+            System.arraycopy(segment, i, dst, offset, n);
+            offset += n; index += n;
+        }
+        VarHandle.acquireFence();
+    }
+
+    @Override
+    public void storeRange(int index, E[] src, int offset, int length) {
+        Objects.checkFromIndexSize(index, length, length());
+        Objects.checkFromIndexSize(offset, length, src.length);
+        VarHandle.releaseFence();
+        for (int end = index + length; index < end; ) {
+            final Object[] segment = segments[segmentForIndex(index)];
+            final int i = indexForSegment(segment, index),
+                    n = Math.min(segment.length - i, end - index);
+            System.arraycopy(src, offset, segment, i, n);
+            offset += n; index += n;
+        }
+    }
+
+    @Override
+    public void fill(int from, int to, E value) {
+        Objects.checkFromToIndex(from, to, length());
+        VarHandle.releaseFence();
+        while (from < to) {
+            final Object[] segment = segments[segmentForIndex(from)];
+            final int i = indexForSegment(segment, from),
+                    n = Math.min(segment.length - i, to - from);
+            Arrays.fill(segment, i, i + n, value);
+            from += n;
+        }
+    }
+
+    @Override
+    public void copy(int index,
+                     ModifiableMemory<? super E> dst,
+                     int dstIndex,
+                     int length) {
+        Objects.checkFromIndexSize(index, length, length());
+        Objects.checkFromIndexSize(dstIndex, length, dst.length());
+        for (int end = index + length; index < end; ) {
+            final Object[] segment = segments[segmentForIndex(index)];
+            final int i = indexForSegment(segment, index),
+                    n = Math.min(segment.length - i, end - index);
+            dst.storeRange(dstIndex, (E[]) segment, i, n);
+            dstIndex += n; index += n;
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        for (Object[] segment : segments) {
+            for (int i = 0, n = segment.length; i < n; ++i)
+                action.accept((E) order.fetch(AA, segment, i));
+        }
+    }
+
+    @Override
+    public Footprint footprint() {
+        final List<Footprint.Segment> usage = new ArrayList<>();
+        long used = 0, capacity = 0;
+        for (Object[] segment : segments) {
+            int u = 0;
+            for (int i = 0, n = segment.length; i < n; ++i) {
+                if (AA.getOpaque(segment, i) != null)
+                    ++u;
+            }
+            usage.add(new Footprint.Segment(segment.length, u));
+            used += u; capacity += segment.length;
+        }
+        return new Footprint(
+                Footprint.retainedBytes(this, order),
+                used, capacity, usage);
     }
 
     @Override
@@ -0,0 +1,36 @@
+package sunmisc.utils.concurrent.memory;
+
+/**
+ * Primitive view of a memory in terms of {@code int}
+ * <p>Unlike {@link BitwiseModifiableMemory} nothing is boxed here,
+ * so the operations do not allocate.
+ * Elements are converted to and from {@code int} like a cast
+ */
+public interface IntMemory {
+
+    int length();
+
+    int fetchInt(int index) throws IndexOutOfBoundsException;
+
+    void storeInt(int index, int value) throws IndexOutOfBoundsException;
+
+    int fetchAndStoreInt(int index, int value) throws IndexOutOfBoundsException;
+
+    int compareAndExchangeInt(int index,
+                              int expectedValue,
+                              int newValue
+    ) throws IndexOutOfBoundsException;
+
+    boolean compareAndStoreInt(int index,
+                               int expectedValue,
+                               int newValue
+    ) throws IndexOutOfBoundsException;
+
+    int fetchAndAddInt(int index, int value) throws IndexOutOfBoundsException;
+
+    int fetchAndBitwiseOrInt(int index, int mask) throws IndexOutOfBoundsException;
+
+    int fetchAndBitwiseAndInt(int index, int mask) throws IndexOutOfBoundsException;
+
+    int fetchAndBitwiseXorInt(int index, int mask) throws IndexOutOfBoundsException;
+}
@@ -0,0 +1,247 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * Memory with a lock-free multi-word compare-and-swap
+ * <p>{@link #compareAndStore(int[], Object[], Object[])} atomically replaces
+ * the elements at several indexes if all of them hold the expected values.
+ * The algorithm is the descriptor-based MCAS of Harris, Fraser and Pratt:
+ * every index is first claimed by installing the operation descriptor
+ * with a restricted double-compare single-swap (RDCSS),
+ * conditional on the operation still being undecided,
+ * then the outcome is decided with a single CAS of the status,
+ * and finally the descriptors are replaced with the new or the old values.
+ * Any thread that finds a descriptor helps to complete the operation,
+ * so a stalled thread never blocks the others
+ * <p>The indexes are claimed in ascending order,
+ * so two operations never help each other in a cycle.
+ * Values are compared by identity, as with {@link ModifiableMemory#compareAndStore}
+ * <p>All access must go through this memory: the backing memory
+ * may contain descriptors that only this memory knows how to resolve.
+ * {@link #realloc} must not run concurrently with multi-word operations
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> The base class of elements held in this memory
+ */
+@SuppressWarnings("unchecked")
+public final class KCasMemory<E> implements ModifiableMemory<E> {
+    private static final int UNDECIDED = 0, SUCCEEDED = 1, FAILED = 2;
+    private final ModifiableMemory<Object> memory;
+
+    public KCasMemory(int size) {
+        this(new ArrayMemory<>(size));
+    }
+
+    /**
+     * @param memory the backing memory, must not be accessed directly afterwards
+     */
+    public KCasMemory(ModifiableMemory<Object> memory) {
+        this.memory = Objects.requireNonNull(memory);
+    }
+
+    @Override
+    public int length() {
+        return memory.length();
+    }
+
+    @Override
+    public E fetch(int index) {
+        for (;;) {
+            Object v = read(index);
+            if (v instanceof KCasMemory<?>.Descriptor d)
+                d.help();
+            else
+                return (E) v;
+        }
+    }
+
+    @Override
+    public E fetchAndStore(int index, E value) {
+        for (E current;;) {
+            if (compareAndStore(index, current = fetch(index), value))
+                return current;
+        }
+    }
+
+    @Override
+    public E compareAndExchange(int index, E expectedValue, E newValue) {
+        for (;;) {
+            Object v = memory.compareAndExchange(index, expectedValue, newValue);
+            if (v instanceof KCasMemory<?>.Descriptor d)
+                d.help();
+            else if (v instanceof KCasMemory<?>.Claim c)
+                c.complete();
+            else
+                return (E) v;
+        }
+    }
+
+    /**
+     * Atomically sets the elements at {@code indexes} to {@code values}
+     * if every element holds the corresponding {@code expected} value
+     *
+     * @param indexes distinct indexes, in any order
+     * @return {@code true} if the elements have been replaced
+     * @throws IllegalArgumentException if the arrays differ in length
+     *         or an index repeats
+     * @throws IndexOutOfBoundsException if an index is out of bounds
+     */
+    public boolean compareAndStore(int[] indexes, E[] expected, E[] values) {
+        final int k = indexes.length;
+        if (expected.length != k || values.length != k)
+            throw new IllegalArgumentException();
+        final Entry[] entries = new Entry[k];
+        for (int i = 0; i < k; ++i)
+            entries[i] = new Entry(
+                    Objects.checkIndex(indexes[i], length()),
+                    expected[i], values[i]);
+        Arrays.sort(entries, (a, b) -> Integer.compare(a.index, b.index));
+        for (int i = 1; i < k; ++i) {
+            if (entries[i - 1].index == entries[i].index)
+                throw new IllegalArgumentException("Duplicate index " + entries[i].index);
+        }
+        return k == 0 || new Descriptor(entries).help();
+    }
+
+    /**
+     * Double-word form of {@link #compareAndStore(int[], Object[], Object[])}
+     */
+    public boolean compareAndStore(int i, E expectedI, E newI,
+                                   int j, E expectedJ, E newJ) {
+        return compareAndStore(
+                new int[] {i, j},
+                (E[]) new Object[] {expectedI, expectedJ},
+                (E[]) new Object[] {newI, newJ});
+    }
+
+    /**
+     * Atomically exchanges the elements at {@code i} and {@code j}
+     */
+    public void swap(int i, int j) {
+        if (Objects.checkIndex(i, length()) == Objects.checkIndex(j, length()))
+            return;
+        for (E a, b;;) {
+            a = fetch(i); b = fetch(j);
+            if (compareAndStore(i, a, b, j, b, a))
+                return;
+        }
+    }
+
+    @Override
+    public ModifiableMemory<E> realloc(int size) {
+        return new KCasMemory<>(memory.realloc(size));
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        for (int i = 0, n = length(); i < n; ++i)
+            joiner.add(Objects.toString(fetch(i)));
+        return joiner.toString();
+    }
+
+    // reads the element, completing a claim in progress
+    private Object read(int index) {
+        for (;;) {
+            Object v = memory.fetch(index);
+            if (v instanceof KCasMemory<?>.Claim c)
+                c.complete();
+            else
+                return v;
+        }
+    }
+
+    private record Entry(int index, Object expected, Object value) { }
+
+    /* ---------------- MCAS -------------- */
+
+    private final class Descriptor {
+        final Entry[] entries;
+        volatile int status; // UNDECIDED
+
+        Descriptor(Entry[] entries) {
+            this.entries = entries;
+        }
+
+        boolean help() {
+            if (status == UNDECIDED) {
+                int s = SUCCEEDED;
+                claim:
+                for (Entry e : entries) {
+                    for (;;) {
+                        Object v = new Claim(this, e).install();
+                        if (v == this)
+                            break;
+                        else if (v instanceof KCasMemory<?>.Descriptor d)
+                            d.help();
+                        else {
+                            s = FAILED;
+                            break claim;
+                        }
+                    }
+                }
+                STATUS.compareAndSet(this, UNDECIDED, s);
+            }
+            final boolean success = status == SUCCEEDED;
+            for (Entry e : entries)
+                memory.compareAndExchange(e.index, this,
+                        success ? e.value : e.expected);
+            return success;
+        }
+    }
+
+    /*
+     * RDCSS: installs the descriptor at the index of the entry
+     * only if the element is the expected one
+     * and the descriptor is still undecided
+     */
+    private final class Claim {
+        final Descriptor descriptor;
+        final Entry entry;
+
+        Claim(Descriptor descriptor, Entry entry) {
+            this.descriptor = descriptor;
+            this.entry = entry;
+        }
+
+        // returns the element found, the descriptor if it has been installed
+        Object install() {
+            for (;;) {
+                Object v = memory.compareAndExchange(entry.index, entry.expected, this);
+                if (v instanceof KCasMemory<?>.Claim c)
+                    c.complete();
+                else {
+                    if (v == entry.expected) {
+                        complete();
+                        return descriptor;
+                    }
+                    return v;
+                }
+            }
+        }
+
+        void complete() {
+            memory.compareAndExchange(entry.index, this,
+                    descriptor.status == UNDECIDED ? descriptor : entry.expected);
+        }
+    }
+
+    // VarHandle mechanics
+    private static final VarHandle STATUS;
+
+    static {
+        try {
+            MethodHandles.Lookup l = MethodHandles.lookup();
+            STATUS = l.findVarHandle(KCasMemory.Descriptor.class,
+                    "status", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
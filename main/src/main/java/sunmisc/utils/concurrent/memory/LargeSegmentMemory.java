@@ -0,0 +1,557 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import static java.nio.file.StandardOpenOption.*;
+
+import static java.lang.Long.numberOfLeadingZeros;
+
+/**
+ * {@code long}-indexed counterpart of {@link NativeSegmentMemory}
+ * for tables with more than {@code 2^30} elements
+ * <p>The areas follow the same geometric progression, area {@code k > 0}
+ * holds {@code 2^k} elements and is a single off-heap segment,
+ * so an element is still found in {@code O(1)} with one {@code log2}
+ * and growth is still a lock-free CAS of the length.
+ * The length is only limited by {@value #MAXIMUM_AREAS} areas
+ * and by the native memory available
+ * <p>{@link NativeSegmentMemory} is an {@code int}-indexed view
+ * of this memory, so everything said there about component types,
+ * shrinking, closing and {@link #map(Class, Path) mapping} holds here
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> The boxed type of elements held in this memory
+ */
+@SuppressWarnings("unchecked")
+public final class LargeSegmentMemory<E extends Number> implements AutoCloseable {
+    private static final int MAXIMUM_AREAS = 62;
+
+    private final NativeArea<E>[] areas = NativeArea.newTable(MAXIMUM_AREAS);
+    private final NativeArea.Allocator<E> allocator;
+    private final EpochReclaimer reclaimer = new EpochReclaimer();
+    private volatile long ctl = 2;
+
+    public LargeSegmentMemory(Class<E> componentType) {
+        NativeArea.Allocator<E> allocator
+                = NativeArea.allocator(componentType);
+        this.areas[0] = allocator.allocate(0);
+        this.allocator = allocator;
+    }
+    private LargeSegmentMemory(NativeArea.Allocator<E> allocator,
+                               NativeArea<E>[] areas, long ctl) {
+        System.arraycopy(areas, 0, this.areas, 0, areas.length);
+        this.allocator = allocator;
+        this.ctl = ctl;
+    }
+
+    /**
+     * Maps the memory onto the files of the {@code directory},
+     * see {@link NativeSegmentMemory#map(Class, Path)}
+     *
+     * @param componentType {@code int.class} or {@code long.class}
+     * @param directory the directory for the area files, created if necessary
+     * @return memory backed by the files of the directory
+     * @throws IOException if a file cannot be created or mapped
+     */
+    public static <E extends Number> LargeSegmentMemory<E>
+    map(Class<E> componentType, Path directory) throws IOException {
+        return map(componentType, directory, MAXIMUM_AREAS);
+    }
+
+    // restores at most maxAreas areas
+    static <E extends Number> LargeSegmentMemory<E>
+    map(Class<E> componentType, Path directory, int maxAreas) throws IOException {
+        Files.createDirectories(directory);
+        MappedAreas<E> allocator = new MappedAreas<>(componentType, directory);
+        NativeArea<E>[] restored = NativeArea.newTable(maxAreas);
+        int n = 0;
+        try {
+            for (long bytes = allocator.scale * NativeArea.lengthOf(n);
+                 n < restored.length &&
+                         Files.isRegularFile(allocator.path(n)) &&
+                         Files.size(allocator.path(n)) == bytes;
+                 bytes = allocator.scale * NativeArea.lengthOf(++n))
+                restored[n] = allocator.map(n, false);
+            if (n == 0)
+                restored[n++] = allocator.map(0, true);
+        } catch (IOException | RuntimeException e) {
+            for (NativeArea<E> area : restored) {
+                if (area != null)
+                    area.close();
+            }
+            throw e;
+        }
+        return new LargeSegmentMemory<>(allocator, restored, 1L << n);
+    }
+
+    private static int areaForIndex(final long index) {
+        return index < 2 ? 0 : 63 - numberOfLeadingZeros(index);
+    }
+    private static long indexForArea(final NativeArea<?> area, final long index) {
+        return index < 2 ? index : index - area.length();
+    }
+
+    /*
+     * Must be called between enter and exit of the reclaimer,
+     * the volatile read of ctl after entering either observes a shrink
+     * or the area is not released until the caller exits.
+     * A shrink unlinks the area right after lowering ctl,
+     * so an index that has just been dropped may find no area
+     */
+    private NativeArea<E> area(final long index) {
+        Objects.checkIndex(index, ctl);
+        NativeArea<E> area = areaAt(areaForIndex(index));
+        if (area == null)
+            throw new IndexOutOfBoundsException(index);
+        return area;
+    }
+
+    public long length() {
+        return (long) CTL.getAcquire(this);
+    }
+
+    public LargeSegmentMemory<E> realloc(long size) {
+        size = Math.max(2, size);
+        long n = -1L >>> numberOfLeadingZeros(size - 1);
+        if (n < 0 || areaForIndex(n) >= MAXIMUM_AREAS)
+            throw new OutOfMemoryError("Required array size too large");
+        long c; ++n;
+        while ((c = ctl) != n) {
+            allocator.lock();
+            try {
+                if (c != ctl)
+                    continue;
+                if (c > n) {
+                    int index = areaForIndex(c - 1);
+                    NativeArea<E> area = areaAt(index);
+                    if (area != null &&
+                            CTL.weakCompareAndSet(this, c, c >> 1) &&
+                            casAreaAt(index, area, null)) {
+                        reclaimer.synchronize();
+                        allocator.release(index, area);
+                    }
+                } else {
+                    int index = areaForIndex(c);
+                    NativeArea<E> h = allocator.allocate(index);
+                    if (casAreaAt(index, null, h)) {
+                        long k = (long) CTL.compareAndExchange(this, c, c << 1);
+                        if (k < c && casAreaAt(index, h, null))
+                            allocator.release(index, h);
+                    } else
+                        h.close();
+                }
+            } finally {
+                allocator.unlock();
+            }
+        }
+        return this;
+    }
+
+    public E fetch(long index) {
+        final EpochReclaimer.Reader reader = reclaimer.enter();
+        try {
+            NativeArea<E> area = area(index);
+            return area.fetch(indexForArea(area, index));
+        } finally {
+            reader.exit();
+        }
+    }
+
+    public void store(long index, E value) {
+        final EpochReclaimer.Reader reader = reclaimer.enter();
+        try {
+            NativeArea<E> area = area(index);
+            area.store(indexForArea(area, index), value);
+        } finally {
+            reader.exit();
+        }
+    }
+
+    public E fetchAndStore(long index, E value) {
+        final EpochReclaimer.Reader reader = reclaimer.enter();
+        try {
+            NativeArea<E> area = area(index);
+            return area.fetchAndStore(indexForArea(area, index), value);
+        } finally {
+            reader.exit();
+        }
+    }
+
+    public E compareAndExchange(long index, E expected, E value) {
+        final EpochReclaimer.Reader reader = reclaimer.enter();
+        try {
+            NativeArea<E> area = area(index);
+            return area.compareAndExchange(indexForArea(area, index), expected, value);
+        } finally {
+            reader.exit();
+        }
+    }
+
+    public E fetchAndAdd(long index, E value) {
+        final EpochReclaimer.Reader reader = reclaimer.enter();
+        try {
+            NativeArea<E> area = area(index);
+            return area.fetchAndAdd(indexForArea(area, index), value);
+        } finally {
+            reader.exit();
+        }
+    }
+
+    public E fetchAndBitwiseOr(long index, E mask) {
+        final EpochReclaimer.Reader reader = reclaimer.enter();
+        try {
+            NativeArea<E> area = area(index);
+            return area.fetchAndBitwiseOr(indexForArea(area, index), mask);
+        } finally {
+            reader.exit();
+        }
+    }
+
+    public E fetchAndBitwiseAnd(long index, E mask) {
+        final EpochReclaimer.Reader reader = reclaimer.enter();
+        try {
+            NativeArea<E> area = area(index);
+            return area.fetchAndBitwiseAnd(indexForArea(area, index), mask);
+        } finally {
+            reader.exit();
+        }
+    }
+
+    public E fetchAndBitwiseXor(long index, E mask) {
+        final EpochReclaimer.Reader reader = reclaimer.enter();
+        try {
+            NativeArea<E> area = area(index);
+            return area.fetchAndBitwiseXor(indexForArea(area, index), mask);
+        } finally {
+            reader.exit();
+        }
+    }
+
+    /* ---------------- primitive long view -------------- */
+
+    public long fetchLong(long index) {
+        final EpochReclaimer.Reader reader = reclaimer.enter();
+        try {
+            NativeArea<E> area = area(index);
+            return area.fetchLong(indexForArea(area, index));
+        } finally {
+            reader.exit();
+        }
+    }
+
+    public void storeLong(long index, long value) {
+        final EpochReclaimer.Reader reader = reclaimer.enter();
+        try {
+            NativeArea<E> area = area(index);
+            area.storeLong(indexForArea(area, index), value);
+        } finally {
+            reader.exit();
+        }
+    }
+
+    public long fetchAndStoreLong(long index, long value) {
+        final EpochReclaimer.Reader reader = reclaimer.enter();
+        try {
+            NativeArea<E> area = area(index);
+            return area.fetchAndStoreLong(indexForArea(area, index), value);
+        } finally {
+            reader.exit();
+        }
+    }
+
+    public long compareAndExchangeLong(long index, long expected, long value) {
+        final EpochReclaimer.Reader reader = reclaimer.enter();
+        try {
+            NativeArea<E> area = area(index);
+            return area.compareAndExchangeLong(indexForArea(area, index), expected, value);
+        } finally {
+            reader.exit();
+        }
+    }
+
+    public boolean compareAndStoreLong(long index, long expected, long value) {
+        final EpochReclaimer.Reader reader = reclaimer.enter();
+        try {
+            NativeArea<E> area = area(index);
+            return area.compareAndStoreLong(indexForArea(area, index), expected, value);
+        } finally {
+            reader.exit();
+        }
+    }
+
+    public long fetchAndAddLong(long index, long value) {
+        final EpochReclaimer.Reader reader = reclaimer.enter();
+        try {
+            NativeArea<E> area = area(index);
+            return area.fetchAndAddLong(indexForArea(area, index), value);
+        } finally {
+            reader.exit();
+        }
+    }
+
+    public long fetchAndBitwiseOrLong(long index, long mask) {
+        final EpochReclaimer.Reader reader = reclaimer.enter();
+        try {
+            NativeArea<E> area = area(index);
+            return area.fetchAndBitwiseOrLong(indexForArea(area, index), mask);
+        } finally {
+            reader.exit();
+        }
+    }
+
+    public long fetchAndBitwiseAndLong(long index, long mask) {
+        final EpochReclaimer.Reader reader = reclaimer.enter();
+        try {
+            NativeArea<E> area = area(index);
+            return area.fetchAndBitwiseAndLong(indexForArea(area, index), mask);
+        } finally {
+            reader.exit();
+        }
+    }
+
+    public long fetchAndBitwiseXorLong(long index, long mask) {
+        final EpochReclaimer.Reader reader = reclaimer.enter();
+        try {
+            NativeArea<E> area = area(index);
+            return area.fetchAndBitwiseXorLong(indexForArea(area, index), mask);
+        } finally {
+            reader.exit();
+        }
+    }
+
+    public void fetchRangeLong(long index, long[] dst, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, dst.length);
+        final EpochReclaimer.Reader reader = reclaimer.enter();
+        try {
+            Objects.checkFromIndexSize(index, length, ctl);
+            for (long end = index + length; index < end; ) {
+                final NativeArea<E> area = area(index);
+                final long i = indexForArea(area, index);
+                final int n = (int) Math.min(area.length() - i, end - index);
+                area.fetchRangeLong(i, dst, offset, n);
+                offset += n; index += n;
+            }
+        } finally {
+            reader.exit();
+        }
+        VarHandle.acquireFence();
+    }
+
+    public void storeRangeLong(long index, long[] src, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, src.length);
+        VarHandle.releaseFence();
+        final EpochReclaimer.Reader reader = reclaimer.enter();
+        try {
+            Objects.checkFromIndexSize(index, length, ctl);
+            for (long end = index + length; index < end; ) {
+                final NativeArea<E> area = area(index);
+                final long i = indexForArea(area, index);
+                final int n = (int) Math.min(area.length() - i, end - index);
+                area.storeRangeLong(i, src, offset, n);
+                offset += n; index += n;
+            }
+        } finally {
+            reader.exit();
+        }
+    }
+
+    public void fillLong(long from, long to, long value) {
+        VarHandle.releaseFence();
+        final EpochReclaimer.Reader reader = reclaimer.enter();
+        try {
+            Objects.checkFromToIndex(from, to, ctl);
+            while (from < to) {
+                final NativeArea<E> area = area(from);
+                final long i = indexForArea(area, from),
+                        n = Math.min(area.length() - i, to - from);
+                area.fillLong(i, i + n, value);
+                from += n;
+            }
+        } finally {
+            reader.exit();
+        }
+    }
+
+    /*
+     * The reader is inside for one area at a time,
+     * so a slow action delays a shrink by one area at most
+     */
+    public void forEach(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        for (int k = 0, n = areaForIndex(ctl - 1); k <= n; ++k) {
+            final EpochReclaimer.Reader reader = reclaimer.enter();
+            try {
+                final NativeArea<E> area = areaAt(k);
+                if (area == null)
+                    return;
+                for (long i = 0, m = area.length(); i < m; ++i)
+                    action.accept(area.fetch(i));
+            } finally {
+                reader.exit();
+            }
+        }
+    }
+
+    public void forEachLong(LongConsumer action) {
+        Objects.requireNonNull(action);
+        for (int k = 0, n = areaForIndex(ctl - 1); k <= n; ++k) {
+            final EpochReclaimer.Reader reader = reclaimer.enter();
+            try {
+                final NativeArea<E> area = areaAt(k);
+                if (area == null)
+                    return;
+                for (long i = 0, m = area.length(); i < m; ++i)
+                    action.accept(area.fetchLong(i));
+            } finally {
+                reader.exit();
+            }
+        }
+    }
+
+    /**
+     * Forces the contents of the mapped areas to be written
+     * to the storage device, does nothing for anonymous memory
+     */
+    public void force() {
+        for (int i = 0, n = areas.length; i < n; ++i) {
+            NativeArea<E> area = areaAt(i);
+            if (area == null) break;
+            MemorySegment segment = area.segment();
+            if (segment.isMapped())
+                segment.force();
+        }
+    }
+
+    /**
+     * Releases the native memory of all areas,
+     * the files of a mapped memory are kept
+     */
+    @Override
+    public void close() {
+        for (int i = 0, n = areas.length; i < n; ++i) {
+            NativeArea<E> area = areaAt(i);
+            if (area != null && casAreaAt(i, area, null))
+                area.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        for (long i = 0, n = Math.min(length(), 1 << 10); i < n; ++i)
+            joiner.add(Long.toString(fetchLong(i)));
+        if (length() > 1 << 10)
+            joiner.add("...");
+        return joiner.toString();
+    }
+
+    private NativeArea<E> areaAt(int i) {
+        return (NativeArea<E>) AA.getAcquire(areas, i);
+    }
+
+    private boolean
+    casAreaAt(int i, NativeArea<E> expected, NativeArea<E> area) {
+        return AA.compareAndSet(areas, i, expected, area);
+    }
+
+    /*
+     * The file of an area is named after its index, so a grow that maps
+     * area k while a shrink still holds the unlinked area k would share
+     * its file, with stale contents, and lose it to the shrink's delete.
+     * Every change of the areas runs under the lock: a new area is only
+     * mapped when no area k is linked or being released, so its file can
+     * be truncated, and a released file is deleted before anyone maps it again
+     */
+    private static final class MappedAreas<E extends Number>
+            implements NativeArea.Allocator<E> {
+        final ReentrantLock lock = new ReentrantLock();
+        final Class<E> componentType;
+        final Path directory;
+        final long scale;
+
+        MappedAreas(Class<E> componentType, Path directory) {
+            this.scale = NativeArea.byteSize(componentType);
+            this.componentType = componentType;
+            this.directory = directory;
+        }
+
+        Path path(int area) {
+            return directory.resolve("area-" + area);
+        }
+
+        // a fresh area starts zeroed, whatever was left in its file
+        NativeArea<E> map(int area, boolean fresh) throws IOException {
+            Arena arena = Arena.ofShared();
+            try (FileChannel channel = fresh
+                    ? FileChannel.open(path(area), CREATE, READ, WRITE, TRUNCATE_EXISTING)
+                    : FileChannel.open(path(area), CREATE, READ, WRITE)) {
+                // the mapping outlives the channel
+                MemorySegment segment = channel.map(
+                        FileChannel.MapMode.READ_WRITE, 0,
+                        scale * NativeArea.lengthOf(area), arena);
+                return NativeArea.wrap(componentType, arena, segment);
+            } catch (IOException | RuntimeException e) {
+                arena.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public NativeArea<E> allocate(int area) {
+            try {
+                return map(area, true);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void release(int area, NativeArea<E> segment) {
+            segment.close();
+            try {
+                Files.deleteIfExists(path(area));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void lock() {
+            lock.lock();
+        }
+
+        @Override
+        public void unlock() {
+            lock.unlock();
+        }
+    }
+
+    // VarHandle mechanics
+    private static final VarHandle AA
+            = MethodHandles.arrayElementVarHandle(NativeArea[].class);
+    private static final VarHandle CTL;
+
+    static {
+        try {
+            MethodHandles.Lookup l = MethodHandles.lookup();
+            CTL = l.findVarHandle(LargeSegmentMemory.class,
+                    "ctl", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
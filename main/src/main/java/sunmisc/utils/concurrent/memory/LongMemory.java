@@ -0,0 +1,77 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Objects;
+import java.util.function.LongConsumer;
+
+/**
+ * Primitive view of a memory whose elements fit into {@code long}
+ * <p>Unlike {@link BitwiseModifiableMemory} nothing is boxed here,
+ * so the operations do not allocate.
+ * Narrower elements are widened on reads and narrowed (like a cast) on writes,
+ * an expected value out of the range of the element matches nothing
+ */
+public interface LongMemory {
+
+    int length();
+
+    long fetchLong(int index) throws IndexOutOfBoundsException;
+
+    void storeLong(int index, long value) throws IndexOutOfBoundsException;
+
+    long fetchAndStoreLong(int index, long value) throws IndexOutOfBoundsException;
+
+    long compareAndExchangeLong(int index,
+                                long expectedValue,
+                                long newValue
+    ) throws IndexOutOfBoundsException;
+
+    boolean compareAndStoreLong(int index,
+                            long expectedValue,
+                            long newValue
+    ) throws IndexOutOfBoundsException;
+
+    long fetchAndAddLong(int index, long value) throws IndexOutOfBoundsException;
+
+    long fetchAndBitwiseOrLong(int index, long mask) throws IndexOutOfBoundsException;
+
+    long fetchAndBitwiseAndLong(int index, long mask) throws IndexOutOfBoundsException;
+
+    long fetchAndBitwiseXorLong(int index, long mask) throws IndexOutOfBoundsException;
+
+    /**
+     * Bulk counterpart of {@link #fetchLong}, each element is read atomically,
+     * the range as a whole is not. The read is followed by an acquire fence
+     */
+    void fetchRangeLong(int index, long[] dst, int offset, int length)
+            throws IndexOutOfBoundsException;
+
+    /**
+     * Bulk counterpart of {@link #storeLong}, each element is written atomically,
+     * the range as a whole is not. The write is preceded by a release fence
+     */
+    void storeRangeLong(int index, long[] src, int offset, int length)
+            throws IndexOutOfBoundsException;
+
+    /**
+     * Assigns {@code value} to every element from {@code from} (inclusive)
+     * to {@code to} (exclusive), with the same atomicity as {@link #storeRangeLong}
+     */
+    void fillLong(int from, int to, long value) throws IndexOutOfBoundsException;
+
+    /**
+     * Applies the {@code action} to every element in index order without boxing,
+     * with the same guarantees as {@link ReadableMemory#forEach}
+     */
+    default void forEachLong(LongConsumer action) {
+        Objects.requireNonNull(action);
+        for (int i = 0, n = length(); i < n; ++i) {
+            final long x;
+            try {
+                x = fetchLong(i);
+            } catch (IndexOutOfBoundsException ex) {
+                return;
+            }
+            action.accept(x);
+        }
+    }
+}
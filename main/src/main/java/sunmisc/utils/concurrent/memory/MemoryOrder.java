@@ -0,0 +1,114 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * Memory ordering of the {@code fetch} and {@code store} operations of a memory
+ * <p>Read-modify-write operations (CAS, fetchAndAdd...) are always volatile,
+ * the order only relaxes or strengthens plain loads and stores
+ * <ul>
+ * <li>{@link #PLAIN} - no ordering and no visibility guarantees,
+ * suitable for single-threaded phases or data published by a later fence
+ * <li>{@link #OPAQUE} - coherent per element and never torn, but unordered
+ * with respect to other elements, e.g. single-writer statistics
+ * <li>{@link #ACQUIRE_RELEASE} - the default, a fetch that observes a store
+ * also observes everything written before that store
+ * <li>{@link #VOLATILE} - sequentially consistent,
+ * also orders a store followed by a fetch of another element
+ * </ul>
+ *
+ * @author Sunmisc Unsafe
+ */
+public enum MemoryOrder {
+    PLAIN, OPAQUE, ACQUIRE_RELEASE, VOLATILE;
+
+    /*
+     * VarHandle invocations are signature polymorphic,
+     * so every array type gets its own pair of accessors
+     */
+
+    Object fetch(VarHandle handle, Object[] array, int index) {
+        return switch (this) {
+            case PLAIN -> handle.get(array, index);
+            case OPAQUE -> handle.getOpaque(array, index);
+            case ACQUIRE_RELEASE -> handle.getAcquire(array, index);
+            case VOLATILE -> handle.getVolatile(array, index);
+        };
+    }
+    void store(VarHandle handle, Object[] array, int index, Object value) {
+        switch (this) {
+            case PLAIN -> handle.set(array, index, value);
+            case OPAQUE -> handle.setOpaque(array, index, value);
+            case ACQUIRE_RELEASE -> handle.setRelease(array, index, value);
+            case VOLATILE -> handle.setVolatile(array, index, value);
+        }
+    }
+
+    long fetch(VarHandle handle, long[] array, int index) {
+        return switch (this) {
+            case PLAIN -> (long) handle.get(array, index);
+            case OPAQUE -> (long) handle.getOpaque(array, index);
+            case ACQUIRE_RELEASE -> (long) handle.getAcquire(array, index);
+            case VOLATILE -> (long) handle.getVolatile(array, index);
+        };
+    }
+    void store(VarHandle handle, long[] array, int index, long value) {
+        switch (this) {
+            case PLAIN -> handle.set(array, index, value);
+            case OPAQUE -> handle.setOpaque(array, index, value);
+            case ACQUIRE_RELEASE -> handle.setRelease(array, index, value);
+            case VOLATILE -> handle.setVolatile(array, index, value);
+        }
+    }
+
+    int fetch(VarHandle handle, int[] array, int index) {
+        return switch (this) {
+            case PLAIN -> (int) handle.get(array, index);
+            case OPAQUE -> (int) handle.getOpaque(array, index);
+            case ACQUIRE_RELEASE -> (int) handle.getAcquire(array, index);
+            case VOLATILE -> (int) handle.getVolatile(array, index);
+        };
+    }
+    void store(VarHandle handle, int[] array, int index, int value) {
+        switch (this) {
+            case PLAIN -> handle.set(array, index, value);
+            case OPAQUE -> handle.setOpaque(array, index, value);
+            case ACQUIRE_RELEASE -> handle.setRelease(array, index, value);
+            case VOLATILE -> handle.setVolatile(array, index, value);
+        }
+    }
+
+    short fetch(VarHandle handle, short[] array, int index) {
+        return switch (this) {
+            case PLAIN -> (short) handle.get(array, index);
+            case OPAQUE -> (short) handle.getOpaque(array, index);
+            case ACQUIRE_RELEASE -> (short) handle.getAcquire(array, index);
+            case VOLATILE -> (short) handle.getVolatile(array, index);
+        };
+    }
+    void store(VarHandle handle, short[] array, int index, short value) {
+        switch (this) {
+            case PLAIN -> handle.set(array, index, value);
+            case OPAQUE -> handle.setOpaque(array, index, value);
+            case ACQUIRE_RELEASE -> handle.setRelease(array, index, value);
+            case VOLATILE -> handle.setVolatile(array, index, value);
+        }
+    }
+
+    byte fetch(VarHandle handle, byte[] array, int index) {
+        return switch (this) {
+            case PLAIN -> (byte) handle.get(array, index);
+            case OPAQUE -> (byte) handle.getOpaque(array, index);
+            case ACQUIRE_RELEASE -> (byte) handle.getAcquire(array, index);
+            case VOLATILE -> (byte) handle.getVolatile(array, index);
+        };
+    }
+    void store(VarHandle handle, byte[] array, int index, byte value) {
+        switch (this) {
+            case PLAIN -> handle.set(array, index, value);
+            case OPAQUE -> handle.setOpaque(array, index, value);
+            case ACQUIRE_RELEASE -> handle.setRelease(array, index, value);
+            case VOLATILE -> handle.setVolatile(array, index, value);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over a range of indexes of a memory
+ * <p>For the geometric layouts the range is split at the start of a segment
+ * whenever one lies close enough to the middle, so that both halves
+ * walk whole segments. Since every segment is as large as all the
+ * preceding ones together, splitting a memory from its origin
+ * is always balanced, inside a single segment the middle is used
+ * <p>The length is bound when the spliterator is created,
+ * a concurrent shrink makes the traversal fail with {@link IndexOutOfBoundsException}
+ *
+ * @param <E> the type of elements of the memory
+ */
+final class MemorySpliterator<E> implements Spliterator<E> {
+    // no segments, split in the middle
+    static final int FLAT = -1;
+    private final ReadableMemory<E> memory;
+    private final int fence, bias;
+    private int index;
+
+    /**
+     * @param bias {@link #FLAT} or the offset at which segment {@code k}
+     *             starts at index {@code 2^k - bias}
+     */
+    MemorySpliterator(ReadableMemory<E> memory, int index, int fence, int bias) {
+        this.memory = memory;
+        this.index = index;
+        this.fence = fence;
+        this.bias = bias;
+    }
+
+    @Override
+    public Spliterator<E> trySplit() {
+        final int lo = index, hi = fence, n = hi - lo;
+        if (n < 2)
+            return null;
+        int mid = (lo + hi) >>> 1;
+        if (bias != FLAT) {
+            // the start of the segment holding the last element
+            int b = Integer.highestOneBit(hi - 1 + bias) - bias;
+            if (b > lo && Math.abs(b - mid) <= n >>> 2)
+                mid = b;
+        }
+        index = mid;
+        return new MemorySpliterator<>(memory, lo, mid, bias);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        if (index >= fence)
+            return false;
+        action.accept(memory.fetch(index++));
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        for (int i = index, hi = fence; i < hi; ++i)
+            action.accept(memory.fetch(i));
+        index = fence;
+    }
+
+    @Override
+    public long estimateSize() {
+        return fence - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED;
+    }
+}
@@ -0,0 +1,81 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Spliterator;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+
+/**
+ * Fork-join traversals of a memory, a task keeps splitting
+ * its spliterator until at most {@link #THRESHOLD} elements are left
+ */
+final class MemoryTasks {
+    static final int THRESHOLD = 1 << 12;
+
+    private MemoryTasks() {}
+
+    static final class ForEach<E> extends CountedCompleter<Void> {
+        private final Spliterator<E> spliterator;
+        private final Consumer<? super E> action;
+
+        ForEach(CountedCompleter<?> parent,
+                Spliterator<E> spliterator,
+                Consumer<? super E> action) {
+            super(parent);
+            this.spliterator = spliterator;
+            this.action = action;
+        }
+
+        @Override
+        public void compute() {
+            final Spliterator<E> s = spliterator;
+            for (Spliterator<E> p;
+                 s.estimateSize() > THRESHOLD && (p = s.trySplit()) != null; ) {
+                addToPendingCount(1);
+                new ForEach<>(this, p, action).fork();
+            }
+            s.forEachRemaining(action);
+            propagateCompletion();
+        }
+    }
+
+    static final class Reduce<E, R>
+            extends RecursiveTask<R> implements Consumer<E> {
+        private final Spliterator<E> spliterator;
+        private final BiFunction<R, ? super E, R> accumulator;
+        private final BinaryOperator<R> combiner;
+        private R result;
+
+        Reduce(Spliterator<E> spliterator,
+               R identity,
+               BiFunction<R, ? super E, R> accumulator,
+               BinaryOperator<R> combiner) {
+            this.spliterator = spliterator;
+            this.result = identity;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected R compute() {
+            final Spliterator<E> s = spliterator;
+            final Spliterator<E> p;
+            if (s.estimateSize() <= THRESHOLD || (p = s.trySplit()) == null) {
+                s.forEachRemaining(this);
+                return result;
+            }
+            // the prefix goes to the left operand of the combiner
+            final Reduce<E, R> left = new Reduce<>(p, result, accumulator, combiner);
+            left.fork();
+            final R right = new Reduce<>(s, result, accumulator, combiner).compute();
+            return combiner.apply(left.join(), right);
+        }
+
+        @Override
+        public void accept(E e) {
+            result = accumulator.apply(result, e);
+        }
+    }
+}
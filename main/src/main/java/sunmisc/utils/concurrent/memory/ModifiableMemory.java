@@ -1,5 +1,8 @@
 package sunmisc.utils.concurrent.memory;
 
+import sunmisc.utils.concurrent.Backoff;
+
+import java.util.Objects;
 import java.util.function.UnaryOperator;
 
 public interface ModifiableMemory<E> extends ReadableMemory<E> {
@@ -28,6 +31,38 @@ public interface ModifiableMemory<E> extends ReadableMemory<E> {
         fetchAndStore(index, value);
     }
 
+    /**
+     * Writes {@code length} elements of {@code src} starting at {@code index}
+     * <p>Each element is written atomically, the range as a whole is not:
+     * concurrent readers may observe a partially written range.
+     * Implementations backed by arrays copy whole segments at once
+     * preceded by a release fence
+     *
+     * @param index the first element to write
+     * @param src the source array
+     * @param offset the first position in {@code src}
+     * @param length the number of elements
+     * @throws IndexOutOfBoundsException if either range is out of bounds
+     */
+    default void storeRange(int index, E[] src, int offset, int length) {
+        Objects.checkFromIndexSize(index, length, length());
+        Objects.checkFromIndexSize(offset, length, src.length);
+        for (int i = 0; i < length; ++i)
+            store(index + i, src[offset + i]);
+    }
+
+    /**
+     * Assigns {@code value} to every element from {@code from} (inclusive)
+     * to {@code to} (exclusive), with the same atomicity as {@link #storeRange}
+     *
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    default void fill(int from, int to, E value) {
+        Objects.checkFromToIndex(from, to, length());
+        for (int i = from; i < to; ++i)
+            store(i, value);
+    }
+
     // base operations
 
     ModifiableMemory<E> realloc(int size) throws OutOfMemoryError;
@@ -35,10 +70,20 @@ public interface ModifiableMemory<E> extends ReadableMemory<E> {
     default void transform(
             int index, UnaryOperator<E> operator
     ) throws IndexOutOfBoundsException {
-        for (E current;
-             !compareAndStore(index,
-                     current = fetch(index),
-                     operator.apply(current)
-             ););
+        transform(index, operator, Backoff.NONE);
+    }
+
+    /**
+     * Same as {@link #transform(int, UnaryOperator)},
+     * pausing with {@code backoff} after every failed CAS
+     */
+    default void transform(
+            int index, UnaryOperator<E> operator, Backoff backoff
+    ) throws IndexOutOfBoundsException {
+        for (int attempt = 0;; backoff.pause(attempt++)) {
+            E current = fetch(index);
+            if (compareAndStore(index, current, operator.apply(current)))
+                return;
+        }
     }
 }
@@ -0,0 +1,286 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Off-heap area of a segmented memory.
+ * <p>Every area is the only owner of its segment, so it can be
+ * released independently of the other areas of the same memory
+ *
+ * @param <E> the boxed type of the elements held in this area
+ */
+sealed interface NativeArea<E extends Number> extends AutoCloseable {
+
+    long length();
+
+    E fetch(long index);
+
+    void store(long index, E value);
+
+    E fetchAndStore(long index, E value);
+
+    E compareAndExchange(long index, E expected, E value);
+
+    E fetchAndAdd(long index, E value);
+
+    E fetchAndBitwiseOr(long index, E mask);
+
+    E fetchAndBitwiseAnd(long index, E mask);
+
+    E fetchAndBitwiseXor(long index, E mask);
+
+    long fetchLong(long index);
+
+    void storeLong(long index, long value);
+
+    long fetchAndStoreLong(long index, long value);
+
+    long compareAndExchangeLong(long index, long expected, long value);
+
+    boolean compareAndStoreLong(long index, long expected, long value);
+
+    long fetchAndAddLong(long index, long value);
+
+    long fetchAndBitwiseOrLong(long index, long mask);
+
+    long fetchAndBitwiseAndLong(long index, long mask);
+
+    long fetchAndBitwiseXorLong(long index, long mask);
+
+    void fetchRangeLong(long index, long[] dst, int offset, int length);
+
+    void storeRangeLong(long index, long[] src, int offset, int length);
+
+    void fillLong(long from, long to, long value);
+
+    MemorySegment segment();
+
+    @Override
+    void close();
+
+    static long lengthOf(int area) {
+        return area == 0 ? 2 : 1L << area;
+    }
+
+    /*
+     * Atomic (CAS, add, bitwise) access modes of the memory segment
+     * var handles are only available for int and long carriers
+     */
+    static long byteSize(Class<?> componentType) {
+        if (componentType == int.class)
+            return ValueLayout.JAVA_INT.byteSize();
+        else if (componentType == long.class)
+            return ValueLayout.JAVA_LONG.byteSize();
+        else
+            throw new IllegalArgumentException(
+                    "Component type is not supported off-heap");
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E extends Number> NativeArea<E>
+    wrap(Class<E> componentType, Arena arena, MemorySegment segment) {
+        return (NativeArea<E>) (componentType == int.class
+                ? new NativeInts(arena, segment)
+                : new NativeLongs(arena, segment));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static <E extends Number> NativeArea<E>[] newTable(int length) {
+        return (NativeArea<E>[]) new NativeArea[length];
+    }
+
+    static <E extends Number> Allocator<E> allocator(Class<E> componentType) {
+        final long scale = byteSize(componentType);
+        return area -> {
+            Arena arena = Arena.ofShared();
+            return wrap(componentType, arena,
+                    arena.allocate(scale * lengthOf(area), scale));
+        };
+    }
+
+    @FunctionalInterface
+    interface Allocator<E extends Number> {
+
+        NativeArea<E> allocate(int area);
+
+        // the area is no longer part of the memory
+        default void release(int area, NativeArea<E> segment) {
+            segment.close();
+        }
+
+        // held around every change of the areas, for allocators
+        // whose areas cannot be changed concurrently
+        default void lock() { }
+
+        default void unlock() { }
+    }
+
+    record NativeLongs(Arena arena, MemorySegment segment)
+            implements NativeArea<Long> {
+        private static final VarHandle
+                LONGS = ValueLayout.JAVA_LONG.varHandle();
+
+        private static long offset(long index)
+        { return index * Long.BYTES; }
+
+        @Override public long length()
+        { return segment.byteSize() / Long.BYTES; }
+
+        @Override public Long fetch(long index)
+        { return (long) LONGS.getAcquire(segment, offset(index)); }
+
+        @Override public void store(long index, Long value)
+        { LONGS.setRelease(segment, offset(index), (long) value); }
+
+        @Override public Long fetchAndStore(long index, Long value)
+        { return (long) LONGS.getAndSet(segment, offset(index), (long) value); }
+
+        @Override public Long compareAndExchange(long index, Long expected, Long value)
+        { return (long) LONGS.compareAndExchange(segment, offset(index), (long) expected, (long) value); }
+
+        @Override public Long fetchAndAdd(long index, Long value)
+        { return (long) LONGS.getAndAdd(segment, offset(index), (long) value); }
+
+        @Override public Long fetchAndBitwiseOr(long index, Long mask)
+        { return (long) LONGS.getAndBitwiseOr(segment, offset(index), (long) mask); }
+
+        @Override public Long fetchAndBitwiseAnd(long index, Long mask)
+        { return (long) LONGS.getAndBitwiseAnd(segment, offset(index), (long) mask); }
+
+        @Override public Long fetchAndBitwiseXor(long index, Long mask)
+        { return (long) LONGS.getAndBitwiseXor(segment, offset(index), (long) mask); }
+
+        @Override public long fetchLong(long index)
+        { return (long) LONGS.getAcquire(segment, offset(index)); }
+
+        @Override public void storeLong(long index, long value)
+        { LONGS.setRelease(segment, offset(index), value); }
+
+        @Override public long fetchAndStoreLong(long index, long value)
+        { return (long) LONGS.getAndSet(segment, offset(index), value); }
+
+        @Override public long compareAndExchangeLong(long index, long expected, long value)
+        { return (long) LONGS.compareAndExchange(segment, offset(index), expected, value); }
+
+        @Override public boolean compareAndStoreLong(long index, long expected, long value)
+        { return LONGS.compareAndSet(segment, offset(index), expected, value); }
+
+        @Override public long fetchAndAddLong(long index, long value)
+        { return (long) LONGS.getAndAdd(segment, offset(index), value); }
+
+        @Override public long fetchAndBitwiseOrLong(long index, long mask)
+        { return (long) LONGS.getAndBitwiseOr(segment, offset(index), mask); }
+
+        @Override public long fetchAndBitwiseAndLong(long index, long mask)
+        { return (long) LONGS.getAndBitwiseAnd(segment, offset(index), mask); }
+
+        @Override public long fetchAndBitwiseXorLong(long index, long mask)
+        { return (long) LONGS.getAndBitwiseXor(segment, offset(index), mask); }
+
+        @Override public void fetchRangeLong(long index, long[] dst, int offset, int length)
+        { MemorySegment.copy(segment, ValueLayout.JAVA_LONG, offset(index), dst, offset, length); }
+
+        @Override public void storeRangeLong(long index, long[] src, int offset, int length)
+        { MemorySegment.copy(src, offset, segment, ValueLayout.JAVA_LONG, offset(index), length); }
+
+        @Override public void fillLong(long from, long to, long value) {
+            if (value == 0L)
+                segment.asSlice(offset(from), offset(to - from)).fill((byte) 0);
+            else for (; from < to; ++from)
+                segment.setAtIndex(ValueLayout.JAVA_LONG, from, value);
+        }
+
+        @Override public void close()
+        { arena.close(); }
+    }
+
+    record NativeInts(Arena arena, MemorySegment segment)
+            implements NativeArea<Integer> {
+        private static final VarHandle
+                INTEGERS = ValueLayout.JAVA_INT.varHandle();
+
+        private static long offset(long index)
+        { return index * Integer.BYTES; }
+
+        @Override public long length()
+        { return segment.byteSize() / Integer.BYTES; }
+
+        @Override public Integer fetch(long index)
+        { return (int) INTEGERS.getAcquire(segment, offset(index)); }
+
+        @Override public void store(long index, Integer value)
+        { INTEGERS.setRelease(segment, offset(index), (int) value); }
+
+        @Override public Integer fetchAndStore(long index, Integer value)
+        { return (int) INTEGERS.getAndSet(segment, offset(index), (int) value); }
+
+        @Override public Integer compareAndExchange(long index, Integer expected, Integer value)
+        { return (int) INTEGERS.compareAndExchange(segment, offset(index), (int) expected, (int) value); }
+
+        @Override public Integer fetchAndAdd(long index, Integer value)
+        { return (int) INTEGERS.getAndAdd(segment, offset(index), (int) value); }
+
+        @Override public Integer fetchAndBitwiseOr(long index, Integer mask)
+        { return (int) INTEGERS.getAndBitwiseOr(segment, offset(index), (int) mask); }
+
+        @Override public Integer fetchAndBitwiseAnd(long index, Integer mask)
+        { return (int) INTEGERS.getAndBitwiseAnd(segment, offset(index), (int) mask); }
+
+        @Override public Integer fetchAndBitwiseXor(long index, Integer mask)
+        { return (int) INTEGERS.getAndBitwiseXor(segment, offset(index), (int) mask); }
+
+        @Override public long fetchLong(long index)
+        { return (int) INTEGERS.getAcquire(segment, offset(index)); }
+
+        @Override public void storeLong(long index, long value)
+        { INTEGERS.setRelease(segment, offset(index), (int) value); }
+
+        @Override public long fetchAndStoreLong(long index, long value)
+        { return (int) INTEGERS.getAndSet(segment, offset(index), (int) value); }
+
+        // an expected value out of the range of int matches nothing
+        @Override public long compareAndExchangeLong(long index, long expected, long value)
+        { return expected == (int) expected
+                ? (int) INTEGERS.compareAndExchange(segment, offset(index), (int) expected, (int) value)
+                : (int) INTEGERS.getVolatile(segment, offset(index)); }
+
+        @Override public boolean compareAndStoreLong(long index, long expected, long value)
+        { return expected == (int) expected &&
+                INTEGERS.compareAndSet(segment, offset(index), (int) expected, (int) value); }
+
+        @Override public long fetchAndAddLong(long index, long value)
+        { return (int) INTEGERS.getAndAdd(segment, offset(index), (int) value); }
+
+        @Override public long fetchAndBitwiseOrLong(long index, long mask)
+        { return (int) INTEGERS.getAndBitwiseOr(segment, offset(index), (int) mask); }
+
+        @Override public long fetchAndBitwiseAndLong(long index, long mask)
+        { return (int) INTEGERS.getAndBitwiseAnd(segment, offset(index), (int) mask); }
+
+        @Override public long fetchAndBitwiseXorLong(long index, long mask)
+        { return (int) INTEGERS.getAndBitwiseXor(segment, offset(index), (int) mask); }
+
+        @Override public void fetchRangeLong(long index, long[] dst, int offset, int length) {
+            for (int k = 0; k < length; ++k)
+                dst[offset + k] = segment.getAtIndex(ValueLayout.JAVA_INT, index + k);
+        }
+
+        @Override public void storeRangeLong(long index, long[] src, int offset, int length) {
+            for (int k = 0; k < length; ++k)
+                segment.setAtIndex(ValueLayout.JAVA_INT, index + k, (int) src[offset + k]);
+        }
+
+        @Override public void fillLong(long from, long to, long value) {
+            if (value == 0L)
+                segment.asSlice(offset(from), offset(to - from)).fill((byte) 0);
+            else for (; from < to; ++from)
+                segment.setAtIndex(ValueLayout.JAVA_INT, from, (int) value);
+        }
+
+        @Override public void close()
+        { arena.close(); }
+    }
+}
@@ -0,0 +1,278 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.StringJoiner;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Off-heap counterpart of {@link BitwiseSegmentMemory}
+ * <p>The areas follow the same geometric progression, but each of them
+ * is a {@link java.lang.foreign.MemorySegment} allocated in its own shared arena,
+ * so the contents are invisible to the garbage collector
+ * and do not inflate marking time however large the memory grows
+ * <p>Only {@code int} and {@code long} component types are supported,
+ * since atomic access modes of the memory segment var handles
+ * are not available for narrower carriers
+ * <p>Shrinking releases the native memory of the dropped areas only after
+ * the operations that may still be using them have completed ({@link EpochReclaimer}),
+ * a concurrent access to a dropped index fails with {@link IndexOutOfBoundsException}
+ * <p>The memory must be {@link #close() closed} to free the native memory,
+ * after that any access fails with {@link IndexOutOfBoundsException},
+ * like an access to a dropped index, one that races with the close
+ * may instead fail with {@link IllegalStateException} of the released arena
+ * <p>A memory created by {@link #map(Class, Path)} keeps every area
+ * in its own file, so its contents survive restarts of the process
+ * <p>The memory is an {@code int}-indexed view of a {@link LargeSegmentMemory}
+ * limited to {@code 2^30} elements, so both share one implementation
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> The boxed type of elements held in this memory
+ */
+public final class NativeSegmentMemory<E extends Number>
+        implements BitwiseModifiableMemory<E>, LongMemory, IntMemory, AutoCloseable {
+
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private final LargeSegmentMemory<E> memory;
+
+    public NativeSegmentMemory(Class<E> componentType) {
+        this.memory = new LargeSegmentMemory<>(componentType);
+    }
+    private NativeSegmentMemory(LargeSegmentMemory<E> memory) {
+        this.memory = memory;
+    }
+
+    /**
+     * Maps the memory onto the files of the {@code directory},
+     * one file per area: {@code area-0, area-1 ... area-k},
+     * the file of the area {@code k > 0} holds {@code 2^k} elements
+     * <p>The areas left by a previous process are mapped back,
+     * so the memory starts with the length it had before
+     * <p>Growth maps new files, shrinking deletes the files of the dropped areas.
+     * Unlike the anonymous memory, these changes of the length are serialized
+     * by a lock, a new file is always zeroed.
+     * Changes reach the storage device at the latest on {@link #force()}
+     *
+     * @param componentType {@code int.class} or {@code long.class}
+     * @param directory the directory for the area files, created if necessary
+     * @return memory backed by the files of the directory
+     * @throws IOException if a file cannot be created or mapped
+     */
+    public static <E extends Number> NativeSegmentMemory<E>
+    map(Class<E> componentType, Path directory) throws IOException {
+        return new NativeSegmentMemory<>(LargeSegmentMemory.map(
+                componentType, directory,
+                Integer.numberOfTrailingZeros(MAXIMUM_CAPACITY)));
+    }
+
+    @Override
+    public ModifiableMemory<E> realloc(int size) {
+        if (size > MAXIMUM_CAPACITY)
+            throw new OutOfMemoryError("Required array size too large");
+        memory.realloc(size);
+        return this;
+    }
+
+    @Override
+    public E fetch(int index) {
+        return memory.fetch(index);
+    }
+
+    @Override
+    public void store(int index, E value) {
+        memory.store(index, value);
+    }
+
+    @Override
+    public E compareAndExchange(int index, E expected, E value) {
+        return memory.compareAndExchange(index, expected, value);
+    }
+
+    @Override
+    public E fetchAndStore(int index, E value) {
+        return memory.fetchAndStore(index, value);
+    }
+
+    @Override
+    public E fetchAndAdd(int index, E value) {
+        return memory.fetchAndAdd(index, value);
+    }
+
+    @Override
+    public E fetchAndBitwiseOr(int index, E mask) {
+        return memory.fetchAndBitwiseOr(index, mask);
+    }
+
+    @Override
+    public E fetchAndBitwiseAnd(int index, E mask) {
+        return memory.fetchAndBitwiseAnd(index, mask);
+    }
+
+    @Override
+    public E fetchAndBitwiseXor(int index, E mask) {
+        return memory.fetchAndBitwiseXor(index, mask);
+    }
+
+    /* ---------------- primitive long view -------------- */
+
+    @Override
+    public long fetchLong(int index) {
+        return memory.fetchLong(index);
+    }
+
+    @Override
+    public void storeLong(int index, long value) {
+        memory.storeLong(index, value);
+    }
+
+    @Override
+    public long fetchAndStoreLong(int index, long value) {
+        return memory.fetchAndStoreLong(index, value);
+    }
+
+    @Override
+    public long compareAndExchangeLong(int index, long expected, long value) {
+        return memory.compareAndExchangeLong(index, expected, value);
+    }
+
+    @Override
+    public boolean compareAndStoreLong(int index, long expected, long value) {
+        return memory.compareAndStoreLong(index, expected, value);
+    }
+
+    @Override
+    public long fetchAndAddLong(int index, long value) {
+        return memory.fetchAndAddLong(index, value);
+    }
+
+    @Override
+    public long fetchAndBitwiseOrLong(int index, long mask) {
+        return memory.fetchAndBitwiseOrLong(index, mask);
+    }
+
+    @Override
+    public long fetchAndBitwiseAndLong(int index, long mask) {
+        return memory.fetchAndBitwiseAndLong(index, mask);
+    }
+
+    @Override
+    public long fetchAndBitwiseXorLong(int index, long mask) {
+        return memory.fetchAndBitwiseXorLong(index, mask);
+    }
+
+    @Override
+    public void fetchRangeLong(int index, long[] dst, int offset, int length) {
+        memory.fetchRangeLong(index, dst, offset, length);
+    }
+
+    @Override
+    public void storeRangeLong(int index, long[] src, int offset, int length) {
+        memory.storeRangeLong(index, src, offset, length);
+    }
+
+    @Override
+    public void fillLong(int from, int to, long value) {
+        memory.fillLong(from, to, value);
+    }
+
+    @Override
+    public void fill(int from, int to, E value) {
+        fillLong(from, to, value.longValue());
+    }
+
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        memory.forEach(action);
+    }
+
+    @Override
+    public void forEachLong(LongConsumer action) {
+        memory.forEachLong(action);
+    }
+
+    /* ---------------- primitive int view -------------- */
+
+    @Override
+    public int fetchInt(int index) {
+        return (int) fetchLong(index);
+    }
+
+    @Override
+    public void storeInt(int index, int value) {
+        storeLong(index, value);
+    }
+
+    @Override
+    public int fetchAndStoreInt(int index, int value) {
+        return (int) fetchAndStoreLong(index, value);
+    }
+
+    @Override
+    public int compareAndExchangeInt(int index, int expected, int value) {
+        return (int) compareAndExchangeLong(index, expected, value);
+    }
+
+    @Override
+    public boolean compareAndStoreInt(int index, int expected, int value) {
+        return compareAndStoreLong(index, expected, value);
+    }
+
+    @Override
+    public int fetchAndAddInt(int index, int value) {
+        return (int) fetchAndAddLong(index, value);
+    }
+
+    @Override
+    public int fetchAndBitwiseOrInt(int index, int mask) {
+        return (int) fetchAndBitwiseOrLong(index, mask);
+    }
+
+    @Override
+    public int fetchAndBitwiseAndInt(int index, int mask) {
+        return (int) fetchAndBitwiseAndLong(index, mask);
+    }
+
+    @Override
+    public int fetchAndBitwiseXorInt(int index, int mask) {
+        return (int) fetchAndBitwiseXorLong(index, mask);
+    }
+
+    @Override
+    public int length() {
+        return (int) memory.length();
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return new MemorySpliterator<>(this, 0, length(), 0);
+    }
+
+    /**
+     * Forces the contents of the mapped areas to be written
+     * to the storage device, does nothing for anonymous memory
+     */
+    public void force() {
+        memory.force();
+    }
+
+    /**
+     * Releases the native memory of all areas,
+     * the files of a mapped memory are kept
+     */
+    @Override
+    public void close() {
+        memory.close();
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        forEach(x -> joiner.add(Objects.toString(x)));
+        return joiner.toString();
+    }
+}
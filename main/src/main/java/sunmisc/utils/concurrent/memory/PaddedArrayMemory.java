@@ -0,0 +1,103 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * {@link ArrayMemory} in which every logical index occupies its own cache line
+ * <p>Element {@code i} is stored at {@code (i + 1) * stride} of the backing array,
+ * the rest of the line is never touched. The leading and trailing strides
+ * separate the first and the last elements from the array header
+ * and from whatever the allocator puts next to the array
+ * <p>The default stride of {@value #DEFAULT_STRIDE} slots covers 64 bytes
+ * with compressed references and 128 bytes without them,
+ * which also defeats the adjacent line prefetcher.
+ * Memory usage grows by the stride, so the layout is only worth it
+ * for small memories of per-thread or per-shard values
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> The base class of elements held in this array
+ */
+@SuppressWarnings("unchecked")
+public final class PaddedArrayMemory<E> implements ModifiableMemory<E> {
+    public static final int DEFAULT_STRIDE = 16;
+    private final Object[] array;
+    private final int length, stride;
+
+    public PaddedArrayMemory(int size) {
+        this(size, DEFAULT_STRIDE);
+    }
+
+    /**
+     * @param size the number of logical elements
+     * @param stride the number of array slots per element
+     */
+    public PaddedArrayMemory(int size, int stride) {
+        if (size < 0 || stride < 1)
+            throw new IllegalArgumentException();
+        this.array = new Object[Math.multiplyExact(size + 2, stride)];
+        this.length = size;
+        this.stride = stride;
+    }
+
+    private int offset(int index) {
+        return (Objects.checkIndex(index, length) + 1) * stride;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    public int stride() {
+        return stride;
+    }
+
+    @Override
+    public E fetch(int index) {
+        return (E) AA.getAcquire(array, offset(index));
+    }
+
+    @Override
+    public void store(int index, E value) {
+        AA.setRelease(array, offset(index), value);
+    }
+
+    @Override
+    public E fetchAndStore(int index, E value) {
+        return (E) AA.getAndSet(array, offset(index), value);
+    }
+
+    @Override
+    public E compareAndExchange(int index, E expectedValue, E newValue) {
+        return (E) AA.compareAndExchange(array, offset(index), expectedValue, newValue);
+    }
+
+    @Override
+    public boolean compareAndStore(int index, E expectedValue, E newValue) {
+        return AA.compareAndSet(array, offset(index), expectedValue, newValue);
+    }
+
+    @Override
+    public ModifiableMemory<E> realloc(int size) throws OutOfMemoryError {
+        PaddedArrayMemory<E> memory = new PaddedArrayMemory<>(size, stride);
+        for (int i = 0, n = Math.min(size, length); i < n; ++i)
+            memory.array[(i + 1) * stride] = array[(i + 1) * stride];
+        VarHandle.releaseFence();
+        return memory;
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        forEach(x -> joiner.add(Objects.toString(x)));
+        return joiner.toString();
+    }
+
+    // VarHandle mechanics
+    private static final VarHandle AA
+            = MethodHandles.arrayElementVarHandle(Object[].class);
+}
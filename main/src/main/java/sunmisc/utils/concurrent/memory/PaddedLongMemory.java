@@ -0,0 +1,202 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * Padded counterpart of a {@code long} area of {@link BitwiseSegmentMemory}:
+ * every logical index occupies its own cache line
+ * <p>Element {@code i} is stored at {@code (i + 1) * stride} of the backing array,
+ * see {@link PaddedArrayMemory} for the layout.
+ * The default stride of {@value #DEFAULT_STRIDE} longs is 128 bytes,
+ * the same amount {@code @Contended} pads fields with
+ *
+ * @author Sunmisc Unsafe
+ */
+public final class PaddedLongMemory
+        implements BitwiseModifiableMemory<Long>, LongMemory {
+    public static final int DEFAULT_STRIDE = 16;
+    private final long[] array;
+    private final int length, stride;
+
+    public PaddedLongMemory(int size) {
+        this(size, DEFAULT_STRIDE);
+    }
+
+    /**
+     * @param size the number of logical elements
+     * @param stride the number of longs per element
+     */
+    public PaddedLongMemory(int size, int stride) {
+        if (size < 0 || stride < 1)
+            throw new IllegalArgumentException();
+        this.array = new long[Math.multiplyExact(size + 2, stride)];
+        this.length = size;
+        this.stride = stride;
+    }
+
+    private int offset(int index) {
+        return (Objects.checkIndex(index, length) + 1) * stride;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    public int stride() {
+        return stride;
+    }
+
+    @Override
+    public Long fetch(int index) {
+        return fetchLong(index);
+    }
+
+    @Override
+    public void store(int index, Long value) {
+        storeLong(index, value);
+    }
+
+    @Override
+    public Long fetchAndStore(int index, Long value) {
+        return fetchAndStoreLong(index, value);
+    }
+
+    @Override
+    public Long compareAndExchange(int index, Long expected, Long value) {
+        return compareAndExchangeLong(index, expected, value);
+    }
+
+    @Override
+    public boolean compareAndStore(int index, Long expected, Long value) {
+        return compareAndStoreLong(index, expected, value);
+    }
+
+    @Override
+    public Long fetchAndAdd(int index, Long value) {
+        return fetchAndAddLong(index, value);
+    }
+
+    @Override
+    public Long fetchAndBitwiseOr(int index, Long mask) {
+        return fetchAndBitwiseOrLong(index, mask);
+    }
+
+    @Override
+    public Long fetchAndBitwiseAnd(int index, Long mask) {
+        return fetchAndBitwiseAndLong(index, mask);
+    }
+
+    @Override
+    public Long fetchAndBitwiseXor(int index, Long mask) {
+        return fetchAndBitwiseXorLong(index, mask);
+    }
+
+    /* ---------------- primitive long view -------------- */
+
+    @Override
+    public long fetchLong(int index) {
+        return (long) LONGS.getAcquire(array, offset(index));
+    }
+
+    @Override
+    public void storeLong(int index, long value) {
+        LONGS.setRelease(array, offset(index), value);
+    }
+
+    @Override
+    public long fetchAndStoreLong(int index, long value) {
+        return (long) LONGS.getAndSet(array, offset(index), value);
+    }
+
+    @Override
+    public long compareAndExchangeLong(int index, long expected, long value) {
+        return (long) LONGS.compareAndExchange(array, offset(index), expected, value);
+    }
+
+    @Override
+    public boolean compareAndStoreLong(int index, long expected, long value) {
+        return LONGS.compareAndSet(array, offset(index), expected, value);
+    }
+
+    @Override
+    public long fetchAndAddLong(int index, long value) {
+        return (long) LONGS.getAndAdd(array, offset(index), value);
+    }
+
+    @Override
+    public long fetchAndBitwiseOrLong(int index, long mask) {
+        return (long) LONGS.getAndBitwiseOr(array, offset(index), mask);
+    }
+
+    @Override
+    public long fetchAndBitwiseAndLong(int index, long mask) {
+        return (long) LONGS.getAndBitwiseAnd(array, offset(index), mask);
+    }
+
+    @Override
+    public long fetchAndBitwiseXorLong(int index, long mask) {
+        return (long) LONGS.getAndBitwiseXor(array, offset(index), mask);
+    }
+
+    /*
+     * The elements are not contiguous, so the bulk operations
+     * are plain strided loops with a single fence
+     */
+
+    @Override
+    public void fetchRangeLong(int index, long[] dst, int offset, int length) {
+        Objects.checkFromIndexSize(index, length, this.length);
+        Objects.checkFromIndexSize(offset, length, dst.length);
+        for (int i = 0, j = (index + 1) * stride; i < length; ++i, j += stride)
+            dst[offset + i] = array[j];
+        VarHandle.acquireFence();
+    }
+
+    @Override
+    public void storeRangeLong(int index, long[] src, int offset, int length) {
+        Objects.checkFromIndexSize(index, length, this.length);
+        Objects.checkFromIndexSize(offset, length, src.length);
+        VarHandle.releaseFence();
+        for (int i = 0, j = (index + 1) * stride; i < length; ++i, j += stride)
+            array[j] = src[offset + i];
+    }
+
+    @Override
+    public void fillLong(int from, int to, long value) {
+        Objects.checkFromToIndex(from, to, length);
+        VarHandle.releaseFence();
+        for (int j = (from + 1) * stride, end = (to + 1) * stride; j < end; j += stride)
+            array[j] = value;
+    }
+
+    @Override
+    public void fill(int from, int to, Long value) {
+        fillLong(from, to, value);
+    }
+
+    @Override
+    public ModifiableMemory<Long> realloc(int size) throws OutOfMemoryError {
+        PaddedLongMemory memory = new PaddedLongMemory(size, stride);
+        for (int i = 0, n = Math.min(size, length); i < n; ++i)
+            memory.array[(i + 1) * stride] = array[(i + 1) * stride];
+        VarHandle.releaseFence();
+        return memory;
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        for (int i = 0; i < length; ++i)
+            joiner.add(Long.toString(fetchLong(i)));
+        return joiner.toString();
+    }
+
+    // VarHandle mechanics
+    private static final VarHandle LONGS
+            = MethodHandles.arrayElementVarHandle(long[].class);
+}
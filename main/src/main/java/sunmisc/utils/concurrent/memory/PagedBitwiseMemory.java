@@ -0,0 +1,344 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.function.LongConsumer;
+
+/**
+ * {@code long} counterpart of {@link PagedMemory}
+ * <p>Pages are {@code long[]} installed with a CAS on the first write
+ * that can change an element, untouched pages read as the default value.
+ * Operations that cannot change an untouched element
+ * (storing the default, adding zero, a failing CAS...) allocate nothing
+ * <p>{@link #realloc} clones the touched pages like {@link PagedMemory#realloc}
+ *
+ * @author Sunmisc Unsafe
+ */
+public final class PagedBitwiseMemory
+        implements BitwiseModifiableMemory<Long>, LongMemory {
+    private final long[][] pages;
+    private final int length, shift;
+    private final long defaultValue;
+
+    public PagedBitwiseMemory(int length) {
+        this(length, PagedMemory.DEFAULT_PAGE_SHIFT, 0L);
+    }
+
+    /**
+     * @param length the number of elements
+     * @param pageShift log2 of the number of elements per page
+     * @param defaultValue the value of the elements of untouched pages
+     */
+    public PagedBitwiseMemory(int length, int pageShift, long defaultValue) {
+        this(new long[pages(length, pageShift)][], length, pageShift, defaultValue);
+    }
+    private PagedBitwiseMemory(long[][] pages, int length, int shift, long defaultValue) {
+        this.pages = pages;
+        this.length = length;
+        this.shift = shift;
+        this.defaultValue = defaultValue;
+    }
+
+    private static int pages(int length, int shift) {
+        if (length < 0 || shift < 0 || shift > 30)
+            throw new IllegalArgumentException();
+        return (int) (((long) length + (1L << shift) - 1) >>> shift);
+    }
+
+    private int offset(int index) {
+        return index & ((1 << shift) - 1);
+    }
+
+    private long[] pageFor(int index) {
+        return pageAt(Objects.checkIndex(index, length) >>> shift);
+    }
+
+    private long[] allocate(int index) {
+        final int p = index >>> shift;
+        long[] page = pageAt(p);
+        if (page == null) {
+            final long[] h = new long[1 << shift];
+            if (defaultValue != 0L)
+                Arrays.fill(h, defaultValue);
+            final long[] witness = casPageAt(p, h);
+            page = witness == null ? h : witness;
+        }
+        return page;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    public int pageSize() {
+        return 1 << shift;
+    }
+
+    /**
+     * @return the number of allocated pages
+     */
+    public int residentPages() {
+        int n = 0;
+        for (int p = 0; p < pages.length; ++p) {
+            if (pageAt(p) != null)
+                ++n;
+        }
+        return n;
+    }
+
+    @Override
+    public Long fetch(int index) {
+        return fetchLong(index);
+    }
+
+    @Override
+    public void store(int index, Long value) {
+        storeLong(index, value);
+    }
+
+    @Override
+    public Long fetchAndStore(int index, Long value) {
+        return fetchAndStoreLong(index, value);
+    }
+
+    @Override
+    public Long compareAndExchange(int index, Long expected, Long value) {
+        return compareAndExchangeLong(index, expected, value);
+    }
+
+    @Override
+    public boolean compareAndStore(int index, Long expected, Long value) {
+        return compareAndStoreLong(index, expected, value);
+    }
+
+    @Override
+    public Long fetchAndAdd(int index, Long value) {
+        return fetchAndAddLong(index, value);
+    }
+
+    @Override
+    public Long fetchAndBitwiseOr(int index, Long mask) {
+        return fetchAndBitwiseOrLong(index, mask);
+    }
+
+    @Override
+    public Long fetchAndBitwiseAnd(int index, Long mask) {
+        return fetchAndBitwiseAndLong(index, mask);
+    }
+
+    @Override
+    public Long fetchAndBitwiseXor(int index, Long mask) {
+        return fetchAndBitwiseXorLong(index, mask);
+    }
+
+    /* ---------------- primitive long view -------------- */
+
+    @Override
+    public long fetchLong(int index) {
+        final long[] page = pageFor(index);
+        return page == null ? defaultValue
+                : (long) LONGS.getAcquire(page, offset(index));
+    }
+
+    @Override
+    public void storeLong(int index, long value) {
+        long[] page = pageFor(index);
+        if (page == null) {
+            if (value == defaultValue)
+                return;
+            page = allocate(index);
+        }
+        LONGS.setRelease(page, offset(index), value);
+    }
+
+    @Override
+    public long fetchAndStoreLong(int index, long value) {
+        long[] page = pageFor(index);
+        if (page == null) {
+            if (value == defaultValue)
+                return defaultValue;
+            page = allocate(index);
+        }
+        return (long) LONGS.getAndSet(page, offset(index), value);
+    }
+
+    @Override
+    public long compareAndExchangeLong(int index, long expected, long value) {
+        long[] page = pageFor(index);
+        if (page == null) {
+            if (expected != defaultValue || value == defaultValue)
+                return defaultValue;
+            page = allocate(index);
+        }
+        return (long) LONGS.compareAndExchange(page, offset(index), expected, value);
+    }
+
+    @Override
+    public boolean compareAndStoreLong(int index, long expected, long value) {
+        long[] page = pageFor(index);
+        if (page == null) {
+            if (expected != defaultValue)
+                return false;
+            else if (value == defaultValue)
+                return true;
+            page = allocate(index);
+        }
+        return LONGS.compareAndSet(page, offset(index), expected, value);
+    }
+
+    @Override
+    public long fetchAndAddLong(int index, long value) {
+        long[] page = pageFor(index);
+        if (page == null) {
+            if (value == 0L)
+                return defaultValue;
+            page = allocate(index);
+        }
+        return (long) LONGS.getAndAdd(page, offset(index), value);
+    }
+
+    @Override
+    public long fetchAndBitwiseOrLong(int index, long mask) {
+        long[] page = pageFor(index);
+        if (page == null) {
+            if ((defaultValue | mask) == defaultValue)
+                return defaultValue;
+            page = allocate(index);
+        }
+        return (long) LONGS.getAndBitwiseOr(page, offset(index), mask);
+    }
+
+    @Override
+    public long fetchAndBitwiseAndLong(int index, long mask) {
+        long[] page = pageFor(index);
+        if (page == null) {
+            if ((defaultValue & mask) == defaultValue)
+                return defaultValue;
+            page = allocate(index);
+        }
+        return (long) LONGS.getAndBitwiseAnd(page, offset(index), mask);
+    }
+
+    @Override
+    public long fetchAndBitwiseXorLong(int index, long mask) {
+        long[] page = pageFor(index);
+        if (page == null) {
+            if (mask == 0L)
+                return defaultValue;
+            page = allocate(index);
+        }
+        return (long) LONGS.getAndBitwiseXor(page, offset(index), mask);
+    }
+
+    /*
+     * The bulk operations walk whole pages, the fence is issued once
+     * for the range, the pages themselves use plain access
+     */
+
+    @Override
+    public void fetchRangeLong(int index, long[] dst, int offset, int length) {
+        Objects.checkFromIndexSize(index, length, this.length);
+        Objects.checkFromIndexSize(offset, length, dst.length);
+        for (int end = index + length; index < end; ) {
+            final long[] page = pageAt(index >>> shift);
+            final int i = offset(index),
+                    n = Math.min((1 << shift) - i, end - index);
+            if (page == null)
+                Arrays.fill(dst, offset, offset + n, defaultValue);
+            else
+                System.arraycopy(page, i, dst, offset, n);
+            offset += n; index += n;
+        }
+        VarHandle.acquireFence();
+    }
+
+    @Override
+    public void storeRangeLong(int index, long[] src, int offset, int length) {
+        Objects.checkFromIndexSize(index, length, this.length);
+        Objects.checkFromIndexSize(offset, length, src.length);
+        VarHandle.releaseFence();
+        for (int end = index + length; index < end; ) {
+            final long[] page = allocate(index);
+            final int i = offset(index),
+                    n = Math.min((1 << shift) - i, end - index);
+            System.arraycopy(src, offset, page, i, n);
+            offset += n; index += n;
+        }
+    }
+
+    @Override
+    public void fillLong(int from, int to, long value) {
+        Objects.checkFromToIndex(from, to, length);
+        VarHandle.releaseFence();
+        while (from < to) {
+            final int i = offset(from),
+                    n = Math.min((1 << shift) - i, to - from);
+            final long[] page = value == defaultValue
+                    ? pageAt(from >>> shift)
+                    : allocate(from);
+            if (page != null)
+                Arrays.fill(page, i, i + n, value);
+            from += n;
+        }
+    }
+
+    @Override
+    public void fill(int from, int to, Long value) {
+        fillLong(from, to, value);
+    }
+
+    @Override
+    public void forEachLong(LongConsumer action) {
+        Objects.requireNonNull(action);
+        for (int p = 0, i = 0; p < pages.length; ++p) {
+            final long[] page = pageAt(p);
+            for (int k = 0, n = Math.min(1 << shift, length - i); k < n; ++k, ++i)
+                action.accept(page == null ? defaultValue : (long) LONGS.getAcquire(page, k));
+        }
+    }
+
+    @Override
+    public ModifiableMemory<Long> realloc(int size) throws OutOfMemoryError {
+        final long[][] copy = new long[pages(size, shift)][];
+        for (int p = 0, n = Math.min(copy.length, pages.length); p < n; ++p) {
+            final long[] page = pageAt(p);
+            if (page != null)
+                copy[p] = page.clone();
+        }
+        // the cut page must not expose the dropped elements if grown again
+        final int tail = offset(size), last = size >>> shift;
+        if (size < length && tail != 0 && copy[last] != null)
+            Arrays.fill(copy[last], tail, 1 << shift, defaultValue);
+        return new PagedBitwiseMemory(copy, size, shift, defaultValue);
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        for (int p = 0; p < pages.length; ++p) {
+            if (pageAt(p) != null)
+                joiner.add(p + "=" + Arrays.toString(pageAt(p)));
+        }
+        return joiner.toString();
+    }
+
+    private long[] pageAt(int p) {
+        return (long[]) PAGES.getAcquire(pages, p);
+    }
+
+    // returns the witness, null if the page has been installed
+    private long[] casPageAt(int p, long[] page) {
+        return (long[]) PAGES.compareAndExchange(pages, p, null, page);
+    }
+
+    // VarHandle mechanics
+    private static final VarHandle LONGS
+            = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle PAGES
+            = MethodHandles.arrayElementVarHandle(long[][].class);
+}
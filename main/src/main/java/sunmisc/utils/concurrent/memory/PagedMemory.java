@@ -0,0 +1,197 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.function.Consumer;
+
+/**
+ * Sparse memory made of fixed-size pages that are allocated on the first write
+ * <p>A page is installed with a single CAS into the page directory,
+ * until then every element of the page reads as the default value
+ * and writes of the default value allocate nothing.
+ * Memory use therefore follows the number of touched pages
+ * ({@link #residentPages()}) rather than the highest index:
+ * the only eager allocation is the directory,
+ * one reference per {@code 2^pageShift} elements
+ * <p>{@link #realloc} returns a copy and does not change this memory,
+ * like {@link ArrayMemory#realloc}: the touched pages are cloned, so
+ * later writes to either memory are not seen by the other,
+ * and the untouched pages stay unallocated in both
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> The base class of elements held in this memory
+ */
+@SuppressWarnings("unchecked")
+public final class PagedMemory<E> implements ModifiableMemory<E> {
+    public static final int DEFAULT_PAGE_SHIFT = 12;
+    private final Object[][] pages;
+    private final int length, shift;
+    private final E defaultValue;
+
+    public PagedMemory(int length) {
+        this(length, DEFAULT_PAGE_SHIFT, null);
+    }
+
+    /**
+     * @param length the number of elements
+     * @param pageShift log2 of the number of elements per page
+     * @param defaultValue the value of the elements of untouched pages
+     */
+    public PagedMemory(int length, int pageShift, E defaultValue) {
+        this(new Object[pages(length, pageShift)][], length, pageShift, defaultValue);
+    }
+    private PagedMemory(Object[][] pages, int length, int shift, E defaultValue) {
+        this.pages = pages;
+        this.length = length;
+        this.shift = shift;
+        this.defaultValue = defaultValue;
+    }
+
+    private static int pages(int length, int shift) {
+        if (length < 0 || shift < 0 || shift > 30)
+            throw new IllegalArgumentException();
+        return (int) (((long) length + (1L << shift) - 1) >>> shift);
+    }
+
+    private int offset(int index) {
+        return index & ((1 << shift) - 1);
+    }
+
+    private Object[] pageFor(int index) {
+        return pageAt(Objects.checkIndex(index, length) >>> shift);
+    }
+
+    private Object[] allocate(int index) {
+        final int p = Objects.checkIndex(index, length) >>> shift;
+        Object[] page = pageAt(p);
+        if (page == null) {
+            final Object[] h = new Object[1 << shift];
+            if (defaultValue != null)
+                Arrays.fill(h, defaultValue);
+            final Object[] witness = casPageAt(p, h);
+            page = witness == null ? h : witness;
+        }
+        return page;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    public int pageSize() {
+        return 1 << shift;
+    }
+
+    /**
+     * @return the number of allocated pages
+     */
+    public int residentPages() {
+        int n = 0;
+        for (int p = 0; p < pages.length; ++p) {
+            if (pageAt(p) != null)
+                ++n;
+        }
+        return n;
+    }
+
+    @Override
+    public E fetch(int index) {
+        final Object[] page = pageFor(index);
+        return page == null ? defaultValue
+                : (E) AA.getAcquire(page, offset(index));
+    }
+
+    @Override
+    public void store(int index, E value) {
+        Object[] page = pageFor(index);
+        if (page == null) {
+            if (value == defaultValue)
+                return;
+            page = allocate(index);
+        }
+        AA.setRelease(page, offset(index), value);
+    }
+
+    @Override
+    public E fetchAndStore(int index, E value) {
+        Object[] page = pageFor(index);
+        if (page == null) {
+            if (value == defaultValue)
+                return defaultValue;
+            page = allocate(index);
+        }
+        return (E) AA.getAndSet(page, offset(index), value);
+    }
+
+    @Override
+    public E compareAndExchange(int index, E expected, E value) {
+        Object[] page = pageFor(index);
+        if (page == null) {
+            // untouched elements hold the default, no need to allocate
+            if (expected != defaultValue || value == defaultValue)
+                return defaultValue;
+            page = allocate(index);
+        }
+        return (E) AA.compareAndExchange(page, offset(index), expected, value);
+    }
+
+    @Override
+    public boolean compareAndStore(int index, E expected, E value) {
+        return compareAndExchange(index, expected, value) == expected;
+    }
+
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        for (int p = 0, i = 0; p < pages.length; ++p) {
+            final Object[] page = pageAt(p);
+            for (int k = 0, n = Math.min(1 << shift, length - i); k < n; ++k, ++i)
+                action.accept(page == null ? defaultValue : (E) AA.getAcquire(page, k));
+        }
+    }
+
+    @Override
+    public ModifiableMemory<E> realloc(int size) throws OutOfMemoryError {
+        final Object[][] copy = new Object[pages(size, shift)][];
+        for (int p = 0, n = Math.min(copy.length, pages.length); p < n; ++p) {
+            final Object[] page = pageAt(p);
+            if (page != null)
+                copy[p] = page.clone();
+        }
+        // the cut page must not expose the dropped elements if grown again
+        final int tail = offset(size), last = size >>> shift;
+        if (size < length && tail != 0 && copy[last] != null)
+            Arrays.fill(copy[last], tail, 1 << shift, defaultValue);
+        return new PagedMemory<>(copy, size, shift, defaultValue);
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        for (int p = 0; p < pages.length; ++p) {
+            if (pageAt(p) != null)
+                joiner.add(p + "=" + Arrays.toString(pageAt(p)));
+        }
+        return joiner.toString();
+    }
+
+    private Object[] pageAt(int p) {
+        return (Object[]) PAGES.getAcquire(pages, p);
+    }
+
+    // returns the witness, null if the page has been installed
+    private Object[] casPageAt(int p, Object[] page) {
+        return (Object[]) PAGES.compareAndExchange(pages, p, null, page);
+    }
+
+    // VarHandle mechanics
+    private static final VarHandle AA
+            = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final VarHandle PAGES
+            = MethodHandles.arrayElementVarHandle(Object[][].class);
+}
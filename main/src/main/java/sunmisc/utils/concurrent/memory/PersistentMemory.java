@@ -0,0 +1,272 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.function.Consumer;
+
+/**
+ * Persistent (immutable) memory, a 32-ary trie with path copying
+ * <p>Every modification returns a new memory that shares all untouched
+ * nodes with the original, {@link #update} and {@link #fetch} are
+ * {@code O(log32 n)}, so the memory itself is a point-in-time snapshot
+ * that can be handed to any number of readers without copying
+ * <p>Subtrees holding only {@code null} are not allocated, so growing
+ * a memory with {@link #realloc} costs {@code O(log32 n)} regardless
+ * of the new length
+ * <p>A batch of modifications is cheaper through a {@link Transient}:
+ * it copies every node at most once and then mutates it in place.
+ * A transient must be confined to a single thread
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> The base class of elements held in this memory
+ */
+@SuppressWarnings("unchecked")
+public final class PersistentMemory<E> implements ReadableMemory<E> {
+    private static final int BITS = 5, WIDTH = 1 << BITS, MASK = WIDTH - 1;
+    private static final PersistentMemory<?> EMPTY
+            = new PersistentMemory<>(null, 0, 0);
+
+    private final Node root;
+    private final int shift, length;
+
+    private PersistentMemory(Node root, int shift, int length) {
+        this.root = root;
+        this.shift = shift;
+        this.length = length;
+    }
+
+    public static <E> PersistentMemory<E> empty() {
+        return (PersistentMemory<E>) EMPTY;
+    }
+
+    /**
+     * @return memory of {@code size} nulls
+     */
+    public static <E> PersistentMemory<E> of(int size) {
+        return PersistentMemory.<E>empty().realloc(size);
+    }
+
+    @Override
+    public E fetch(int index) {
+        return (E) fetch(root, shift, Objects.checkIndex(index, length));
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    public PersistentMemory<E> update(int index, E value) {
+        Objects.checkIndex(index, length);
+        return new PersistentMemory<>(
+                store(null, root, shift, index, value),
+                shift, length);
+    }
+
+    public PersistentMemory<E> append(E value) {
+        return realloc(length + 1).update(length, value);
+    }
+
+    /**
+     * Grows the memory with nulls or drops its tail,
+     * the remaining elements are shared with this memory
+     */
+    public PersistentMemory<E> realloc(int size) {
+        if (size < 0)
+            throw new IllegalArgumentException();
+        else if (size == 0)
+            return empty();
+        else if (size >= length) {
+            Node r = root; int s = shift;
+            for (; capacity(s) < size; s += BITS)
+                r = r == null ? null : new Node(null, r);
+            return new PersistentMemory<>(r, s, size);
+        }
+        Node r = root; int s = shift;
+        for (; s > 0 && capacity(s - BITS) >= size; s -= BITS)
+            r = r == null ? null : (Node) r.array[0];
+        return new PersistentMemory<>(trim(null, r, s, size - 1), s, size);
+    }
+
+    public Transient<E> asTransient() {
+        return new Transient<>(root, shift, length);
+    }
+
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        forEach(root, shift, length, action);
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        forEach(x -> joiner.add(Objects.toString(x)));
+        return joiner.toString();
+    }
+
+    /* ---------------- trie -------------- */
+
+    private static long capacity(int shift) {
+        return 1L << (shift + BITS);
+    }
+
+    private static Object fetch(Node node, int shift, int index) {
+        for (; node != null; shift -= BITS) {
+            Object x = node.array[(index >>> shift) & MASK];
+            if (shift == 0)
+                return x;
+            node = (Node) x;
+        }
+        return null;
+    }
+
+    // copies the nodes not owned by the edit token, mutates the rest
+    private static Node store(Object edit, Node node,
+                              int shift, int index, Object value) {
+        Node n = editable(edit, node);
+        int i = (index >>> shift) & MASK;
+        n.array[i] = shift == 0 ? value
+                : store(edit, (Node) n.array[i], shift - BITS, index, value);
+        return n;
+    }
+
+    // clears everything after the last index along the right edge
+    private static Node trim(Object edit, Node node, int shift, int last) {
+        if (node == null)
+            return null;
+        Node n = editable(edit, node);
+        int i = (last >>> shift) & MASK;
+        Arrays.fill(n.array, i + 1, WIDTH, null);
+        if (shift > 0)
+            n.array[i] = trim(edit, (Node) n.array[i], shift - BITS, last);
+        return n;
+    }
+
+    private static Node editable(Object edit, Node node) {
+        if (node == null)
+            return new Node(edit, new Object[WIDTH]);
+        else if (edit != null && node.edit == edit)
+            return node;
+        else
+            return new Node(edit, node.array.clone());
+    }
+
+    private static <E> int forEach(Node node, int shift, int remaining,
+                                   Consumer<? super E> action) {
+        int n = (int) Math.min(remaining, capacity(shift));
+        if (node == null) {
+            for (int i = 0; i < n; ++i)
+                action.accept(null);
+        } else if (shift == 0) {
+            for (int i = 0; i < n; ++i)
+                action.accept((E) node.array[i]);
+        } else {
+            for (int i = 0, k = n; k > 0; ++i)
+                k -= forEach((Node) node.array[i], shift - BITS, k, action);
+        }
+        return n;
+    }
+
+    private static final class Node {
+        // the transient allowed to mutate this node in place
+        final Object edit;
+        final Object[] array;
+
+        Node(Object edit, Object[] array) {
+            this.edit = edit;
+            this.array = array;
+        }
+
+        Node(Object edit, Node child) {
+            this(edit, new Object[WIDTH]);
+            array[0] = child;
+        }
+    }
+
+    /**
+     * Mutable view of a persistent memory for batch modifications
+     * <p>Nodes are copied on the first write and mutated in place afterwards,
+     * the original persistent memory is never affected.
+     * After {@link #persistent()} the transient can no longer be used
+     *
+     * @param <E> The base class of elements held in this memory
+     */
+    public static final class Transient<E> implements ReadableMemory<E> {
+        private Object edit = new Object();
+        private Node root;
+        private int shift, length;
+
+        private Transient(Node root, int shift, int length) {
+            this.root = root;
+            this.shift = shift;
+            this.length = length;
+        }
+
+        private void ensureEditable() {
+            if (edit == null)
+                throw new IllegalStateException("Transient used after persistent()");
+        }
+
+        @Override
+        public E fetch(int index) {
+            ensureEditable();
+            return (E) PersistentMemory.fetch(root, shift, Objects.checkIndex(index, length));
+        }
+
+        @Override
+        public int length() {
+            ensureEditable();
+            return length;
+        }
+
+        public Transient<E> store(int index, E value) {
+            ensureEditable();
+            Objects.checkIndex(index, length);
+            root = PersistentMemory.store(edit, root, shift, index, value);
+            return this;
+        }
+
+        public Transient<E> append(E value) {
+            return realloc(length + 1).store(length - 1, value);
+        }
+
+        public Transient<E> realloc(int size) {
+            ensureEditable();
+            if (size < 0)
+                throw new IllegalArgumentException();
+            else if (size == 0) {
+                root = null; shift = 0;
+            } else if (size >= length) {
+                for (; capacity(shift) < size; shift += BITS)
+                    root = root == null ? null : new Node(edit, root);
+            } else {
+                for (; shift > 0 && capacity(shift - BITS) >= size; shift -= BITS)
+                    root = root == null ? null : (Node) root.array[0];
+                root = trim(edit, root, shift, size - 1);
+            }
+            length = size;
+            return this;
+        }
+
+        @Override
+        public void forEach(Consumer<? super E> action) {
+            ensureEditable();
+            Objects.requireNonNull(action);
+            PersistentMemory.forEach(root, shift, length, action);
+        }
+
+        /**
+         * @return persistent memory with the contents of this transient
+         * @throws IllegalStateException if called more than once
+         */
+        public PersistentMemory<E> persistent() {
+            ensureEditable();
+            edit = null;
+            return length == 0 ? empty()
+                    : new PersistentMemory<>(root, shift, length);
+        }
+    }
+}
@@ -3,7 +3,13 @@ package sunmisc.utils.concurrent.memory;
 import sunmisc.utils.Cursor;
 
 import java.util.Objects;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public interface ReadableMemory<E> {
 
@@ -21,16 +27,116 @@ public interface ReadableMemory<E> {
         }
     }
 
+    /**
+     * Reads {@code length} elements starting at {@code index} into {@code dst}
+     * <p>Each element is read atomically, the range as a whole is not:
+     * concurrent writes may be partially observed.
+     * Implementations backed by arrays copy whole segments at once
+     * followed by an acquire fence
+     *
+     * @param index the first element to read
+     * @param dst the destination array
+     * @param offset the first position in {@code dst}
+     * @param length the number of elements
+     * @throws IndexOutOfBoundsException if either range is out of bounds
+     */
+    default void fetchRange(int index, E[] dst, int offset, int length) {
+        Objects.checkFromIndexSize(index, length, length());
+        Objects.checkFromIndexSize(offset, length, dst.length);
+        for (int i = 0; i < length; ++i)
+            dst[offset + i] = fetch(index + i);
+    }
+
+    /**
+     * Copies {@code length} elements starting at {@code index}
+     * into {@code dst} starting at {@code dstIndex}
+     * <p>The same per-element atomicity as {@link #fetchRange} applies,
+     * the result is unspecified for overlapping ranges of the same memory
+     *
+     * @param index the first element to read
+     * @param dst the destination memory
+     * @param dstIndex the first element to write
+     * @param length the number of elements
+     * @throws IndexOutOfBoundsException if either range is out of bounds
+     */
+    default void copy(int index,
+                      ModifiableMemory<? super E> dst,
+                      int dstIndex,
+                      int length) {
+        Objects.checkFromIndexSize(index, length, length());
+        Objects.checkFromIndexSize(dstIndex, length, dst.length());
+        for (int i = 0; i < length; ++i)
+            dst.store(dstIndex + i, fetch(index + i));
+    }
+
+    /**
+     * Applies the {@code action} to the elements from {@code 0}
+     * to the length at the moment of the call, in index order.
+     * Stops early if the memory is concurrently shrunk
+     * <p>Unlike walking the {@link #origin() cursor} nothing is allocated
+     * per element, the implementations backed by arrays
+     * loop over the arrays directly
+     */
     default void forEach(Consumer<? super E> action) {
         Objects.requireNonNull(action);
-
-        for (Cursor<E> cursor = origin();
-             cursor.exists();
-             cursor = cursor.next()) {
-            action.accept(cursor.element());
+        for (int i = 0, n = length(); i < n; ++i) {
+            final E e;
+            try {
+                e = fetch(i);
+            } catch (IndexOutOfBoundsException ex) {
+                return;
+            }
+            action.accept(e);
         }
     }
 
+    /**
+     * Spliterator over the elements from {@code 0} to the current length,
+     * the segmented implementations split it along segment boundaries
+     */
+    default Spliterator<E> spliterator() {
+        return new MemorySpliterator<>(this, 0, length(), MemorySpliterator.FLAT);
+    }
+
+    default Stream<E> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    default void parallelForEach(Consumer<? super E> action) {
+        parallelForEach(ForkJoinPool.commonPool(), action);
+    }
+
+    /**
+     * Applies the {@code action} to every element, the elements are split
+     * into batches by {@link #spliterator()} and processed by the {@code pool}.
+     * The action may be invoked concurrently and in any order
+     */
+    default void parallelForEach(ForkJoinPool pool, Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        pool.invoke(new MemoryTasks.ForEach<>(null, spliterator(), action));
+    }
+
+    default <R> R reduce(R identity,
+                         BiFunction<R, ? super E, R> accumulator,
+                         BinaryOperator<R> combiner) {
+        return reduce(ForkJoinPool.commonPool(), identity, accumulator, combiner);
+    }
+
+    /**
+     * Folds every batch of {@link #spliterator()} with the {@code accumulator}
+     * starting from the {@code identity}, the results of adjacent batches
+     * are merged in index order with the {@code combiner}
+     */
+    default <R> R reduce(ForkJoinPool pool,
+                         R identity,
+                         BiFunction<R, ? super E, R> accumulator,
+                         BinaryOperator<R> combiner) {
+        Objects.requireNonNull(accumulator);
+        Objects.requireNonNull(combiner);
+        return pool.invoke(new MemoryTasks.Reduce<>(
+                spliterator(), identity, accumulator, combiner));
+    }
+
     record CursorImpl<E>(
             int index,
             ReadableMemory<E> memory,
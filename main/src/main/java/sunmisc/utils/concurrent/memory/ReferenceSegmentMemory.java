@@ -1,11 +1,17 @@
 package sunmisc.utils.concurrent.memory;
 
+import sunmisc.utils.Footprint;
+import sunmisc.utils.Measurable;
 import sunmisc.utils.concurrent.UnblockingArrayBuffer;
 
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.Spliterator;
 import java.util.StringJoiner;
+import java.util.function.Consumer;
 
 import static java.lang.Integer.numberOfLeadingZeros;
 
@@ -20,8 +26,10 @@ import static java.lang.Integer.numberOfLeadingZeros;
  * <p>This implementation does not replace {@link UnblockingArrayBuffer}, since it physically does not copy anything, this may be unacceptable:<ul>
  * <li>if we need an array of its own length (not a power of two)
  * <li>severe memory limitations
- * <li>it is necessary to reduce the size (can be implemented)
  * </ul>
+ * <p>Shrinking drops whole segments, the dropped segments become garbage
+ * as soon as the operations still using them complete,
+ * a concurrent access to a dropped index fails with {@link IndexOutOfBoundsException}
  * The current implementation is small, but may take up a little more memory than {@link UnblockingArrayBuffer}
  * <p>This class was primarily created for data structures that only increase:
  * hashmaps, queues, lists, sets, etc.
@@ -30,11 +38,23 @@ import static java.lang.Integer.numberOfLeadingZeros;
  * @param <E> The base class of elements held in this array
  */
 @SuppressWarnings("unchecked")
-public final class ReferenceSegmentMemory<E> implements ModifiableMemory<E> {
+public final class ReferenceSegmentMemory<E> implements ModifiableMemory<E>, Measurable {
     private static final int MAXIMUM_CAPACITY = 1 << 30;
     private final ModifiableMemory<E>[] segments = new ModifiableMemory[30];
+    private final MemoryOrder order;
     private volatile int ctl = 1;
 
+    public ReferenceSegmentMemory() {
+        this(MemoryOrder.ACQUIRE_RELEASE);
+    }
+
+    /**
+     * @param order the ordering of {@code fetch} and {@code store} in every segment
+     */
+    public ReferenceSegmentMemory(MemoryOrder order) {
+        this.order = Objects.requireNonNull(order);
+    }
+
     // log2
     private static int segmentForIndex(final int index) {
         return 31 - numberOfLeadingZeros(index);
@@ -43,8 +63,7 @@ public final class ReferenceSegmentMemory<E> implements ModifiableMemory<E> {
     @Override
     public E fetch(int index) {
         Objects.checkIndex(index += 1, ctl);
-        final int exponent = segmentForIndex(index);
-        final ModifiableMemory<E> segment = segmentAt(exponent);
+        final ModifiableMemory<E> segment = segment(index);
         final int i = index - segment.length();
         return segment.fetch(i);
     }
@@ -52,8 +71,7 @@ public final class ReferenceSegmentMemory<E> implements ModifiableMemory<E> {
     @Override
     public void store(int index, E e) {
         Objects.checkIndex(index += 1, ctl);
-        final int exponent = segmentForIndex(index);
-        final ModifiableMemory<E> segment = segmentAt(exponent);
+        final ModifiableMemory<E> segment = segment(index);
         final int i = index - segment.length();
         segment.store(i, e);
     }
@@ -61,8 +79,7 @@ public final class ReferenceSegmentMemory<E> implements ModifiableMemory<E> {
     @Override
     public E compareAndExchange(int index, E expected, E value) {
         Objects.checkIndex(index += 1, ctl);
-        final int exponent = segmentForIndex(index);
-        final ModifiableMemory<E> segment = segmentAt(exponent);
+        final ModifiableMemory<E> segment = segment(index);
         final int i = index - segment.length();
         return segment.compareAndExchange(i, expected, value);
     }
@@ -70,8 +87,7 @@ public final class ReferenceSegmentMemory<E> implements ModifiableMemory<E> {
     @Override
     public E fetchAndStore(int index, E e) {
         Objects.checkIndex(index += 1, ctl);
-        final int exponent = segmentForIndex(index);
-        final ModifiableMemory<E> segment = segmentAt(exponent);
+        final ModifiableMemory<E> segment = segment(index);
         final int i = index - segment.length();
         return segment.fetchAndStore(i, e);
     }
@@ -80,8 +96,79 @@ public final class ReferenceSegmentMemory<E> implements ModifiableMemory<E> {
     public int length() {
         return ctl - 1;
     }
+
     @Override
-    public void realloc(int size) {
+    public Spliterator<E> spliterator() {
+        return new MemorySpliterator<>(this, 0, length(), 1);
+    }
+    @Override
+    public void fetchRange(int index, E[] dst, int offset, int length) {
+        Objects.checkFromIndexSize(index, length, length());
+        Objects.checkFromIndexSize(offset, length, dst.length);
+        for (int j = index + 1, end = j + length; j < end; ) {
+            final ModifiableMemory<E> segment = segment(j);
+            final int base = segment.length(), i = j - base,
+                    n = Math.min(base - i, end - j);
+            segment.fetchRange(i, dst, offset, n);
+            offset += n; j += n;
+        }
+    }
+
+    @Override
+    public void storeRange(int index, E[] src, int offset, int length) {
+        Objects.checkFromIndexSize(index, length, length());
+        Objects.checkFromIndexSize(offset, length, src.length);
+        for (int j = index + 1, end = j + length; j < end; ) {
+            final ModifiableMemory<E> segment = segment(j);
+            final int base = segment.length(), i = j - base,
+                    n = Math.min(base - i, end - j);
+            segment.storeRange(i, src, offset, n);
+            offset += n; j += n;
+        }
+    }
+
+    @Override
+    public void fill(int from, int to, E value) {
+        Objects.checkFromToIndex(from, to, length());
+        for (int j = from + 1, end = to + 1; j < end; ) {
+            final ModifiableMemory<E> segment = segment(j);
+            final int base = segment.length(), i = j - base,
+                    n = Math.min(base - i, end - j);
+            segment.fill(i, i + n, value);
+            j += n;
+        }
+    }
+
+    @Override
+    public void copy(int index,
+                     ModifiableMemory<? super E> dst,
+                     int dstIndex,
+                     int length) {
+        Objects.checkFromIndexSize(index, length, length());
+        Objects.checkFromIndexSize(dstIndex, length, dst.length());
+        for (int j = index + 1, end = j + length; j < end; ) {
+            final ModifiableMemory<E> segment = segment(j);
+            final int base = segment.length(), i = j - base,
+                    n = Math.min(base - i, end - j);
+            segment.copy(i, dst, dstIndex, n);
+            dstIndex += n; j += n;
+        }
+    }
+
+    // segments are ArrayMemory, which loops over its array
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        for (int k = 0, n = segmentForIndex(ctl); k < n; ++k) {
+            final ModifiableMemory<E> segment = segmentAt(k);
+            if (segment == null)
+                return;
+            segment.forEach(action);
+        }
+    }
+
+    @Override
+    public ModifiableMemory<E> realloc(int size) {
         final int n = (-1 >>> Integer.numberOfLeadingZeros(size)) + 1;
         if (n < 0 || n >= MAXIMUM_CAPACITY)
             throw new OutOfMemoryError("Required array size too large");
@@ -96,7 +183,7 @@ public final class ReferenceSegmentMemory<E> implements ModifiableMemory<E> {
             } else {
                 final int index = segmentForIndex(c);
                 final ArrayMemory<E> h = new ArrayMemory<>(
-                        1 << index);
+                        1 << index, order);
                 if (casSegmentAt(index, null, h)) {
                     int k = (int) CTL.compareAndExchange(this, c, c << 1);
                     if (k < c)
@@ -104,6 +191,23 @@ public final class ReferenceSegmentMemory<E> implements ModifiableMemory<E> {
                 }
             }
         }
+        return this;
+    }
+
+    @Override
+    public Footprint footprint() {
+        final List<Footprint.Segment> usage = new ArrayList<>();
+        long used = 0, capacity = 0;
+        for (int k = 0, n = segmentForIndex(ctl); k < n; ++k) {
+            if (!(segmentAt(k) instanceof ArrayMemory<E> segment))
+                break;
+            final int u = segment.used(), c = segment.length();
+            usage.add(new Footprint.Segment(c, u));
+            used += u; capacity += c;
+        }
+        return new Footprint(
+                Footprint.retainedBytes(this, order),
+                used, capacity, usage);
     }
 
     @Override
@@ -122,6 +226,20 @@ public final class ReferenceSegmentMemory<E> implements ModifiableMemory<E> {
         SEGMENTS.setRelease(segments, i, null);
     }
 
+    /*
+     * A shrink lowers ctl before it unlinks the segment, so a thread
+     * that has passed the index check may still find the segment
+     * unlinked, for it the index has just been dropped.
+     * Readers need no other protection: a segment they still hold
+     * stays reachable, it becomes garbage once the last of them is done
+     */
+    private ModifiableMemory<E> segment(int j) {
+        final ModifiableMemory<E> segment = segmentAt(segmentForIndex(j));
+        if (segment == null)
+            throw new IndexOutOfBoundsException(j - 1);
+        return segment;
+    }
+
     private ModifiableMemory<E> segmentAt(int i) {
         return (ModifiableMemory<E>) SEGMENTS.getAcquire(segments, i);
     }
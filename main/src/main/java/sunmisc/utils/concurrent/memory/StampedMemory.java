@@ -0,0 +1,158 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.StringJoiner;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Memory of {@code int} values, every slot carries a stamp
+ * that is incremented by every write
+ * <p>The value and the stamp are packed into one {@code long}
+ * (the stamp in the high half), so a CAS checks both at once
+ * and costs the same as a plain {@code long} CAS.
+ * Reading the stamped word and passing it back to
+ * {@link #compareAndStore(int, long, int)} fails if the slot has been
+ * written in between, even if the value has come back (ABA)
+ *
+ * <pre>{@code
+ * long word = memory.fetchStamped(i);
+ * int next = f(StampedMemory.value(word));
+ * if (memory.compareAndStore(i, word, next)) ...
+ * }</pre>
+ *
+ * <p>The {@link IntMemory} operations compare values only, but they
+ * also advance the stamp. Stamps wrap around after {@code 2^32} writes
+ *
+ * @author Sunmisc Unsafe
+ */
+public final class StampedMemory implements IntMemory {
+    private final BitwiseSegmentMemory<Long> words
+            = new BitwiseSegmentMemory<>(long.class);
+
+    public StampedMemory(int size) {
+        words.realloc(size);
+    }
+
+    public static long pack(int value, int stamp) {
+        return ((long) stamp << 32) | (value & 0xFFFFFFFFL);
+    }
+
+    public static int value(long word) {
+        return (int) word;
+    }
+
+    public static int stamp(long word) {
+        return (int) (word >>> 32);
+    }
+
+    private static long next(long word, int value) {
+        return pack(value, stamp(word) + 1);
+    }
+
+    @Override
+    public int length() {
+        return words.length();
+    }
+
+    /**
+     * @return the value and the stamp of the slot, see {@link #value} and {@link #stamp}
+     */
+    public long fetchStamped(int index) {
+        return words.fetchLong(index);
+    }
+
+    public int fetchStamp(int index) {
+        return stamp(words.fetchLong(index));
+    }
+
+    /**
+     * Sets the value and advances the stamp if the slot
+     * still holds the stamped word {@code expected}
+     */
+    public boolean compareAndStore(int index, long expected, int value) {
+        return words.compareAndStoreLong(index, expected, next(expected, value));
+    }
+
+    public boolean compareAndStore(int index,
+                                   int expectedValue, int expectedStamp,
+                                   int newValue, int newStamp) {
+        return words.compareAndStoreLong(index,
+                pack(expectedValue, expectedStamp),
+                pack(newValue, newStamp));
+    }
+
+    // returns the previous word
+    private long update(int index, int x, IntBinaryOperator operator) {
+        for (long w;;) {
+            w = words.fetchLong(index);
+            if (words.compareAndStoreLong(index, w,
+                    next(w, operator.applyAsInt(value(w), x))))
+                return w;
+        }
+    }
+
+    @Override
+    public int fetchInt(int index) {
+        return value(words.fetchLong(index));
+    }
+
+    @Override
+    public void storeInt(int index, int value) {
+        update(index, value, (a, b) -> b);
+    }
+
+    @Override
+    public int fetchAndStoreInt(int index, int value) {
+        return value(update(index, value, (a, b) -> b));
+    }
+
+    @Override
+    public int compareAndExchangeInt(int index, int expected, int value) {
+        for (long w;;) {
+            w = words.fetchLong(index);
+            if (value(w) != expected ||
+                    words.compareAndStoreLong(index, w, next(w, value)))
+                return value(w);
+        }
+    }
+
+    @Override
+    public boolean compareAndStoreInt(int index, int expected, int value) {
+        return compareAndExchangeInt(index, expected, value) == expected;
+    }
+
+    @Override
+    public int fetchAndAddInt(int index, int value) {
+        return value(update(index, value, Integer::sum));
+    }
+
+    @Override
+    public int fetchAndBitwiseOrInt(int index, int mask) {
+        return value(update(index, mask, (a, b) -> a | b));
+    }
+
+    @Override
+    public int fetchAndBitwiseAndInt(int index, int mask) {
+        return value(update(index, mask, (a, b) -> a & b));
+    }
+
+    @Override
+    public int fetchAndBitwiseXorInt(int index, int mask) {
+        return value(update(index, mask, (a, b) -> a ^ b));
+    }
+
+    public StampedMemory realloc(int size) {
+        words.realloc(size);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        for (int i = 0, n = length(); i < n; ++i) {
+            long w = fetchStamped(i);
+            joiner.add(value(w) + "@" + stamp(w));
+        }
+        return joiner.toString();
+    }
+}
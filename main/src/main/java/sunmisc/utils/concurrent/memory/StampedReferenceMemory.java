@@ -0,0 +1,126 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * Memory of references to the elements of a pool, every slot
+ * carries a stamp that is incremented by every write
+ * <p>A reference cannot be packed with a stamp into one word,
+ * so the slots hold the index of the element in the pool instead,
+ * with {@link #NIL} for {@code null}, in a {@link StampedMemory}.
+ * A slot stores the index plus one, so the zeros a new slot starts with
+ * already are {@link #NIL} and no pool index is ever seen before the slot
+ * is written, {@link #node} decodes the index of a word.
+ * Nodes recycled through the pool keep their index, a CAS of a slot
+ * checks the index and the stamp together, so a node that has been
+ * removed and put back does not pass for the one that was read,
+ * and no wrapper is allocated per update (unlike
+ * {@link java.util.concurrent.atomic.AtomicStampedReference})
+ *
+ * <pre>{@code
+ * long word = slots.fetchStamped(i);
+ * Node head = slots.resolve(word);
+ * // head.next is the pool index of the following node
+ * if (head != null && slots.compareAndStore(i, word, head.next)) ...
+ * }</pre>
+ *
+ * @author Sunmisc Unsafe
+ * @param <E> The base class of elements held in the pool
+ */
+public final class StampedReferenceMemory<E> implements ReadableMemory<E> {
+    public static final int NIL = -1;
+    private final StampedMemory slots;
+    private final ReadableMemory<? extends E> pool;
+
+    /**
+     * @param size the number of slots, initially {@link #NIL}
+     * @param pool the elements the slots refer to
+     */
+    public StampedReferenceMemory(int size, ReadableMemory<? extends E> pool) {
+        this.pool = Objects.requireNonNull(pool);
+        this.slots = new StampedMemory(size);
+    }
+
+    @Override
+    public int length() {
+        return slots.length();
+    }
+
+    /**
+     * @return the pool element of the slot, {@code null} if the slot is {@link #NIL}
+     */
+    @Override
+    public E fetch(int index) {
+        return resolve(slots.fetchStamped(index));
+    }
+
+    /**
+     * @return the encoded pool index and the stamp of the slot,
+     *         see {@link #node} and {@link StampedMemory#stamp}
+     */
+    public long fetchStamped(int index) {
+        return slots.fetchStamped(index);
+    }
+
+    /**
+     * @return the pool index of a word read with {@link #fetchStamped}
+     *         or {@link #NIL}
+     */
+    public static int node(long word) {
+        return StampedMemory.value(word) - 1;
+    }
+
+    /**
+     * @return the pool element of a word read with {@link #fetchStamped}
+     */
+    public E resolve(long word) {
+        final int node = node(word);
+        return node == NIL ? null : pool.fetch(node);
+    }
+
+    /**
+     * Points the slot to the pool element {@code node} and advances
+     * the stamp if the slot still holds the word {@code expected}
+     *
+     * @param node the index of the element in the pool or {@link #NIL}
+     */
+    public boolean compareAndStore(int index, long expected, int node) {
+        return slots.compareAndStore(index, expected, encode(node));
+    }
+
+    /**
+     * @return the previous pool index or {@link #NIL}
+     */
+    public int fetchAndStore(int index, int node) {
+        return slots.fetchAndStoreInt(index, encode(node)) - 1;
+    }
+
+    public void store(int index, int node) {
+        slots.storeInt(index, encode(node));
+    }
+
+    // NIL becomes 0
+    private int encode(int node) {
+        return node == NIL ? 0 : Objects.checkIndex(node, pool.length()) + 1;
+    }
+
+    /**
+     * New slots are {@link #NIL}
+     */
+    public StampedReferenceMemory<E> realloc(int size) {
+        slots.realloc(size);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        for (int i = 0, n = length(); i < n; ++i) {
+            long w = fetchStamped(i);
+            joiner.add(resolve(w) + "@" + StampedMemory.stamp(w));
+        }
+        return joiner.toString();
+    }
+}
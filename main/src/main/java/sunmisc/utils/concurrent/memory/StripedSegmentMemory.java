@@ -0,0 +1,169 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Memory of counters for indexes that may be updated by many threads at once
+ * <p>Every counter starts as a single {@code long} of a {@link BitwiseSegmentMemory},
+ * the first time a CAS on it fails the counter is inflated into a {@link LongAdder},
+ * which then takes all subsequent updates of that index.
+ * Cold counters never leave the compact representation, and the side table
+ * of adders is only allocated by the first inflation,
+ * so the memory costs as much as a {@code long[]} until contention appears
+ * <p>Once a counter is striped there is no single value to return, so
+ * {@link #fetchAndAdd}, {@link #fetchAndStore} and {@link #compareAndStore}
+ * fail with {@link UnsupportedOperationException} on a striped counter.
+ * They work on a counter that has never been inflated, one that is inflated
+ * while they run keeps their effect in its compact part.
+ * {@link #sum} is exact in the absence of concurrent updates,
+ * otherwise it has the same guarantees as {@link LongAdder#sum()}
+ *
+ * @author Sunmisc Unsafe
+ */
+@SuppressWarnings("unchecked")
+public final class StripedSegmentMemory implements ReadableMemory<Long> {
+    private final BitwiseSegmentMemory<Long> base
+            = new BitwiseSegmentMemory<>(long.class);
+    // null until the first inflation
+    private volatile ReferenceSegmentMemory<LongAdder> cells;
+
+    public StripedSegmentMemory(int size) {
+        realloc(size);
+    }
+
+    public void add(int index, long x) {
+        LongAdder adder = adder(index);
+        if (adder == null) {
+            long v = base.fetchLong(index);
+            if (base.compareAndStoreLong(index, v, v + x))
+                return;
+            adder = inflate(index);
+        }
+        adder.add(x);
+    }
+
+    public void increment(int index) {
+        add(index, 1L);
+    }
+
+    public void decrement(int index) {
+        add(index, -1L);
+    }
+
+    /**
+     * @return the previous value of a counter that is not striped
+     */
+    public long fetchAndAdd(int index, long x) {
+        ensureCompact(index);
+        return base.fetchAndAddLong(index, x);
+    }
+
+    /**
+     * @return the previous value of a counter that is not striped
+     */
+    public long fetchAndStore(int index, long value) {
+        ensureCompact(index);
+        return base.fetchAndStoreLong(index, value);
+    }
+
+    public boolean compareAndStore(int index, long expected, long value) {
+        ensureCompact(index);
+        return base.compareAndStoreLong(index, expected, value);
+    }
+
+    public long sum(int index) {
+        long s = base.fetchLong(index);
+        LongAdder adder = adder(index);
+        return adder == null ? s : s + adder.sum();
+    }
+
+    /**
+     * Resets the counter to zero and returns it to the compact representation.
+     * Like {@link LongAdder#reset()} this is only exact
+     * in the absence of concurrent updates
+     */
+    public void reset(int index) {
+        if (adder(index) != null)
+            cells.store(index, null);
+        base.storeLong(index, 0L);
+    }
+
+    public boolean isStriped(int index) {
+        return adder(index) != null;
+    }
+
+    @Override
+    public Long fetch(int index) {
+        return sum(index);
+    }
+
+    @Override
+    public int length() {
+        return base.length();
+    }
+
+    public StripedSegmentMemory realloc(int size) {
+        final ReferenceSegmentMemory<LongAdder> c = cells;
+        base.realloc(size);
+        if (c != null)
+            c.realloc(size);
+        return this;
+    }
+
+    private void ensureCompact(int index) {
+        if (isStriped(index))
+            throw new UnsupportedOperationException("Striped counter " + index);
+    }
+
+    /*
+     * The side table may be shorter than the base, if it has been created
+     * concurrently with a growth, its missing indexes have no adder
+     */
+    private LongAdder adder(int index) {
+        final ReferenceSegmentMemory<LongAdder> c = cells;
+        return c == null || index >= c.length() ? null : c.fetch(index);
+    }
+
+    private LongAdder inflate(int index) {
+        ReferenceSegmentMemory<LongAdder> c = cells;
+        if (c == null) {
+            final ReferenceSegmentMemory<LongAdder> created
+                    = new ReferenceSegmentMemory<>();
+            created.realloc(base.length());
+            c = (ReferenceSegmentMemory<LongAdder>)
+                    CELLS.compareAndExchange(this, null, created);
+            if (c == null)
+                c = created;
+        }
+        if (index >= c.length())
+            c.realloc(Math.max(index + 1, base.length()));
+        LongAdder adder = new LongAdder(),
+                witness = c.compareAndExchange(index, null, adder);
+        return witness == null ? adder : witness;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0, n = length(); i < n; ++i) {
+            if (i > 0) builder.append(", ");
+            builder.append(sum(i));
+        }
+        return builder.append(']').toString();
+    }
+
+    // VarHandle mechanics
+    private static final VarHandle CELLS;
+
+    static {
+        try {
+            MethodHandles.Lookup l = MethodHandles.lookup();
+            CELLS = l.findVarHandle(StripedSegmentMemory.class,
+                    "cells", ReferenceSegmentMemory.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package sunmisc.utils.concurrent.memory;
+
+import sunmisc.utils.Footprint;
+import sunmisc.utils.Measurable;
+
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * Struct-of-arrays memory: every slot is a record of primitive fields
+ * and every field is a column of its own, a {@link BitwiseSegmentMemory}
+ * of the declared type
+ * <p>A slot costs only the bytes of its fields, there is no object
+ * per slot to allocate, to chase or to trace.
+ * Every field supports the atomic operations of the memory package,
+ * addressed by the slot index and the field number
+ * <p>With the seqlock enabled every slot also gets a sequence number,
+ * {@link #write} takes it and {@link #read} retries until it observes
+ * all fields of the slot from the same write.
+ * The single-field operations never take the seqlock: they stay
+ * lock-free, but a {@link #read} may observe them mid-way
+ * between two multi-field writes
+ *
+ * <pre>{@code
+ * // timestamp, count, flags
+ * StructMemory m = new StructMemory(1024, true, long.class, int.class, byte.class);
+ * m.write(7, System.nanoTime(), 1, 0b101);
+ * m.fetchAndAddLong(7, 1, 1);
+ * long[] slot = new long[3];
+ * m.read(7, slot);
+ * }</pre>
+ *
+ * @author Sunmisc Unsafe
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+public final class StructMemory implements Measurable {
+    private final BitwiseSegmentMemory<?>[] columns;
+    // null if the seqlock is disabled
+    private final BitwiseSegmentMemory<Integer> sequences;
+
+    /**
+     * @param length the number of slots
+     * @param seqlock whether {@link #read} and {@link #write} are consistent
+     * @param fields {@code byte}, {@code short}, {@code int} or {@code long} class of every field
+     */
+    @SafeVarargs
+    public StructMemory(int length, boolean seqlock, Class<? extends Number>... fields) {
+        if (fields.length == 0)
+            throw new IllegalArgumentException("No fields");
+        BitwiseSegmentMemory<?>[] columns = new BitwiseSegmentMemory[fields.length];
+        for (int i = 0; i < fields.length; ++i) {
+            columns[i] = new BitwiseSegmentMemory(fields[i]);
+            columns[i].realloc(length);
+        }
+        this.columns = columns;
+        if (seqlock) {
+            sequences = new BitwiseSegmentMemory<>(int.class);
+            sequences.realloc(length);
+        } else
+            sequences = null;
+    }
+
+    public int length() {
+        // a concurrent realloc may leave the columns of different lengths
+        int n = Integer.MAX_VALUE;
+        for (BitwiseSegmentMemory<?> column : columns)
+            n = Math.min(n, column.length());
+        return sequences == null ? n : Math.min(n, sequences.length());
+    }
+
+    public int fields() {
+        return columns.length;
+    }
+
+    private BitwiseSegmentMemory<?> column(int field) {
+        return columns[Objects.checkIndex(field, columns.length)];
+    }
+
+    /* ---------------- single field -------------- */
+
+    public long fetchLong(int index, int field) {
+        return column(field).fetchLong(index);
+    }
+
+    public void storeLong(int index, int field, long value) {
+        column(field).storeLong(index, value);
+    }
+
+    public long fetchAndStoreLong(int index, int field, long value) {
+        return column(field).fetchAndStoreLong(index, value);
+    }
+
+    public boolean compareAndStoreLong(int index, int field, long expected, long value) {
+        return column(field).compareAndStoreLong(index, expected, value);
+    }
+
+    public long fetchAndAddLong(int index, int field, long value) {
+        return column(field).fetchAndAddLong(index, value);
+    }
+
+    public long fetchAndBitwiseOrLong(int index, int field, long mask) {
+        return column(field).fetchAndBitwiseOrLong(index, mask);
+    }
+
+    public long fetchAndBitwiseAndLong(int index, int field, long mask) {
+        return column(field).fetchAndBitwiseAndLong(index, mask);
+    }
+
+    public long fetchAndBitwiseXorLong(int index, int field, long mask) {
+        return column(field).fetchAndBitwiseXorLong(index, mask);
+    }
+
+    /* ---------------- whole slot -------------- */
+
+    /**
+     * Reads every field of the slot into {@code dst}, in declaration order
+     * <p>With the seqlock the fields come from the same {@link #write},
+     * the call spins while a write of the slot is in progress
+     *
+     * @throws IllegalArgumentException if {@code dst} is shorter than the number of fields
+     */
+    public void read(int index, long[] dst) {
+        if (dst.length < columns.length)
+            throw new IllegalArgumentException();
+        if (sequences == null) {
+            for (int f = 0; f < columns.length; ++f)
+                dst[f] = columns[f].fetchLong(index);
+            return;
+        }
+        for (;;) {
+            final int s = sequences.fetchInt(index);
+            if ((s & 1) == 0) {
+                for (int f = 0; f < columns.length; ++f)
+                    dst[f] = columns[f].fetchLong(index);
+                // the field loads must not pass the validation
+                VarHandle.acquireFence();
+                if (sequences.fetchInt(index) == s)
+                    return;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Writes every field of the slot, in declaration order
+     * <p>With the seqlock writers of the same slot are serialized
+     * and readers never observe a partial write
+     *
+     * @throws IllegalArgumentException if the number of values differs from the number of fields
+     */
+    public void write(int index, long... values) {
+        if (values.length != columns.length)
+            throw new IllegalArgumentException();
+        if (sequences == null) {
+            for (int f = 0; f < columns.length; ++f)
+                columns[f].storeLong(index, values[f]);
+            return;
+        }
+        final int s = lock(index);
+        try {
+            for (int f = 0; f < columns.length; ++f)
+                columns[f].storeLong(index, values[f]);
+        } finally {
+            sequences.storeInt(index, s + 1);
+        }
+    }
+
+    // returns the odd sequence number of the write
+    private int lock(int index) {
+        for (int s;;) {
+            s = sequences.fetchInt(index);
+            if ((s & 1) == 0 && sequences.compareAndStoreInt(index, s, s + 1))
+                return s + 1;
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Resizes every column, see {@link BitwiseSegmentMemory#realloc}
+     */
+    public StructMemory realloc(int size) {
+        if (sequences != null)
+            sequences.realloc(size);
+        for (BitwiseSegmentMemory<?> column : columns)
+            column.realloc(size);
+        return this;
+    }
+
+    /*
+     * The slots are the elements,
+     * the segments are those of the first column
+     */
+    @Override
+    public Footprint footprint() {
+        final Footprint first = columns[0].footprint();
+        return new Footprint(
+                Footprint.retainedBytes(this, (Object[]) MemoryOrder.values()),
+                length(), first.capacity(), first.segments());
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        final long[] slot = new long[columns.length];
+        for (int i = 0, n = Math.min(length(), 1 << 10); i < n; ++i) {
+            StringJoiner fields = new StringJoiner(
+                    ", ", "(", ")");
+            read(i, slot);
+            for (long x : slot)
+                fields.add(Long.toString(x));
+            joiner.add(fields.toString());
+        }
+        return joiner.toString();
+    }
+}
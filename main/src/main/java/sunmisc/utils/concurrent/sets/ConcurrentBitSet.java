@@ -1,24 +1,28 @@
 package sunmisc.utils.concurrent.sets;
 
-import sunmisc.utils.concurrent.memory.BitwiseModifiableMemory;
 import sunmisc.utils.concurrent.memory.BitwiseSegmentMemory;
+import sunmisc.utils.concurrent.memory.MemoryOrder;
 import sunmisc.utils.Cursor;
+import sunmisc.utils.Footprint;
+import sunmisc.utils.Measurable;
 
 import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class ConcurrentBitSet
         extends AbstractSet<Integer>
-        implements Set<Integer> {
+        implements Set<Integer>, Measurable {
 
     private static final int ADDRESS_BITS_PER_CELL
             = Integer.numberOfTrailingZeros(Long.SIZE);
     private static final int BITS_PER_CELL =
             1 << ADDRESS_BITS_PER_CELL;
-    private final BitwiseModifiableMemory<Long> memory
+    private final BitwiseSegmentMemory<Long> memory
             = new BitwiseSegmentMemory<>(long.class);
     private final AtomicInteger ctl = new AtomicInteger();
 
@@ -30,7 +34,7 @@ public class ConcurrentBitSet
             memory.realloc(ctl.updateAndGet(
                     p -> Math.max(p, bitIndex + 1)));
         final long mask = 1L << bitIndex;
-        return (memory.fetchAndBitwiseOr(index, mask) & mask) == 0;
+        return (memory.fetchAndBitwiseOrLong(index, mask) & mask) == 0;
     }
     @Override
     public boolean remove(Object o) {
@@ -39,7 +43,7 @@ public class ConcurrentBitSet
 
         if (index < ctl.get()) {
             long mask = 1L << bitIndex;
-            return (memory.fetchAndBitwiseAnd(index, ~mask) & mask) != 0;
+            return (memory.fetchAndBitwiseAndLong(index, ~mask) & mask) != 0;
         }
         return false;
     }
@@ -49,7 +53,7 @@ public class ConcurrentBitSet
         final int bitIndex = (int) o;
         final int index = cellIndex(bitIndex);
         return index < ctl.get() &&
-                (memory.fetch(index) & (1L << bitIndex)) != 0;
+                (memory.fetchLong(index) & (1L << bitIndex)) != 0;
     }
 
 
@@ -64,7 +68,7 @@ public class ConcurrentBitSet
     @Override
     public boolean isEmpty() {
         for (int i = 0, n = lastCell(); i < n; ++i) {
-            if (memory.fetch(i) != 0)
+            if (memory.fetchLong(i) != 0)
                 return false;
         }
         return true;
@@ -72,18 +76,38 @@ public class ConcurrentBitSet
     public int cardinality() {
         int sum = 0;
         for (int i = 0, n = lastCell(); i < n; ++i)
-            sum += Long.bitCount(memory.fetch(i));
+            sum += Long.bitCount(memory.fetchLong(i));
         return sum;
     }
 
     @Override
     public final void clear() {
         int n = ctl.get();
-        for (int i = 0; i < n; ++i)
-            memory.store(i,0L);
+        memory.fillLong(0, Math.min(n, memory.length()), 0L);
         ctl.compareAndSet(n, 0);
     }
 
+    /**
+     * Elements and capacity are counted in bits,
+     * the segments are the areas of the underlying memory
+     */
+    @Override
+    public Footprint footprint() {
+        final List<Footprint.Segment> usage = new ArrayList<>();
+        long used = 0, capacity = 0;
+        final Footprint cells = memory.footprint();
+        int cell = 0;
+        for (Footprint.Segment area : cells.segments()) {
+            int bits = 0;
+            for (long i = 0; i < area.used(); ++i, ++cell)
+                bits += Long.bitCount(memory.fetchLong(cell));
+            usage.add(new Footprint.Segment(area.capacity() * BITS_PER_CELL, bits));
+            used += bits; capacity += area.capacity() * BITS_PER_CELL;
+        }
+        return new Footprint(
+                Footprint.retainedBytes(this, (Object[]) MemoryOrder.values()),
+                used, capacity, usage);
+    }
 
     private static int cellIndex(int bitIndex) {
         return bitIndex >> ADDRESS_BITS_PER_CELL;
@@ -109,12 +133,12 @@ public class ConcurrentBitSet
         int u = cellIndex(fromIndex);
         if (u >= memory.length())
             throw new IndexOutOfBoundsException();
-        for (long word = memory.fetch(u) & (-1L << fromIndex);;) {
+        for (long word = memory.fetchLong(u) & (-1L << fromIndex);;) {
             if (word != 0)
                 return (u * BITS_PER_CELL) + Long.numberOfTrailingZeros(word);
             else if (++u >= ctl.get())
                 return -1;
-            word = memory.fetch(u);
+            word = memory.fetchLong(u);
         }
     }
 
@@ -122,7 +146,7 @@ public class ConcurrentBitSet
     public int hashCode() {
         long h = 1234;
         for (int i = lastCell(); --i >= 0; )
-            h ^= memory.fetch(i) * (i + 1);
+            h ^= memory.fetchLong(i) * (i + 1);
         return Long.hashCode(h);
     }
 
@@ -0,0 +1,343 @@
+package sunmisc.utils.concurrent.sets;
+
+import sunmisc.utils.Footprint;
+import sunmisc.utils.Measurable;
+import sunmisc.utils.concurrent.memory.BitwiseSegmentMemory;
+import sunmisc.utils.concurrent.memory.MemoryOrder;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A thread-safe {@link EnumSet}: a bit per enumeration constant
+ * <p>An enum of up to 64 constants is held in a single {@code long},
+ * so {@code add}, {@code remove} and the bulk operations with an
+ * {@link EnumSet} or another {@code ConcurrentEnumSet} are a single
+ * atomic instruction and {@code containsAll} a single read.
+ * Larger enums are held in a {@link BitwiseSegmentMemory}, a word per 64
+ * constants, the operations on a single element stay atomic and the bulk
+ * operations are atomic per word
+ * <p>The iterators are weakly consistent like the ones of
+ * {@link java.util.concurrent.ConcurrentHashMap}: they walk a copy of
+ * the current word, {@link #forEach} does not allocate.
+ * Null elements are not allowed
+ *
+ * @author Sunmisc Unsafe
+ *
+ * @param <E> the type of elements maintained by this set
+ */
+@SuppressWarnings("unchecked")
+public final class ConcurrentEnumSet<E extends Enum<E>>
+        extends AbstractSet<E>
+        implements Set<E>, Measurable {
+    private static final int ADDRESS_BITS_PER_CELL
+            = Integer.numberOfTrailingZeros(Long.SIZE);
+    private final Class<E> elementType;
+    // All the values comprising E
+    private final E[] universe;
+    // the elements of an enum of up to 64 constants
+    private volatile long bits;
+    // the elements of a larger enum, null otherwise
+    private final BitwiseSegmentMemory<Long> words;
+
+    public ConcurrentEnumSet(final Class<E> elementType) {
+        this.elementType = elementType;
+        this.universe = elementType.getEnumConstants();
+        final int n = universe.length;
+        if (n > Long.SIZE) {
+            final BitwiseSegmentMemory<Long> m
+                    = new BitwiseSegmentMemory<>(long.class);
+            m.realloc(cells());
+            this.words = m;
+        } else
+            this.words = null;
+    }
+
+    public ConcurrentEnumSet(final Class<E> elementType,
+                             final Collection<? extends E> c) {
+        this(elementType);
+        addAll(c);
+    }
+
+    // the number of words in use
+    private int cells() {
+        return (universe.length + Long.SIZE - 1) >>> ADDRESS_BITS_PER_CELL;
+    }
+
+    private long wordAt(final int i) {
+        final BitwiseSegmentMemory<Long> m = words;
+        return m == null ? bits : m.fetchLong(i);
+    }
+
+    // returns the previous word
+    private long orAt(final int i, final long mask) {
+        final BitwiseSegmentMemory<Long> m = words;
+        return m == null
+                ? (long) BITS.getAndBitwiseOr(this, mask)
+                : m.fetchAndBitwiseOrLong(i, mask);
+    }
+
+    // returns the previous word
+    private long andAt(final int i, final long mask) {
+        final BitwiseSegmentMemory<Long> m = words;
+        return m == null
+                ? (long) BITS.getAndBitwiseAnd(this, mask)
+                : m.fetchAndBitwiseAndLong(i, mask);
+    }
+
+    @Override
+    public boolean add(final E e) {
+        requireNonNull(e);
+        if (!checkElement(e))
+            throw new ClassCastException(e.getClass() + " != " + elementType);
+        final int o = e.ordinal();
+        final long mask = 1L << o;
+        return (orAt(o >>> ADDRESS_BITS_PER_CELL, mask) & mask) == 0L;
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        if (!checkElement(o))
+            return false;
+        final int i = ((Enum<?>) o).ordinal();
+        final long mask = 1L << i;
+        final int u = i >>> ADDRESS_BITS_PER_CELL;
+        return (wordAt(u) & mask) != 0L &&
+                (andAt(u, ~mask) & mask) != 0L;
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        if (!checkElement(o))
+            return false;
+        final int i = ((Enum<?>) o).ordinal();
+        return (wordAt(i >>> ADDRESS_BITS_PER_CELL) & (1L << i)) != 0L;
+    }
+
+    @Override
+    public int size() {
+        int sz = 0;
+        for (int i = 0, n = cells(); i < n; ++i)
+            sz += Long.bitCount(wordAt(i));
+        return sz;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (int i = 0, n = cells(); i < n; ++i) {
+            if (wordAt(i) != 0L)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        final BitwiseSegmentMemory<Long> m = words;
+        if (m == null)
+            bits = 0L;
+        else
+            m.fillLong(0, cells(), 0L);
+    }
+
+    /*
+     * The words of a set of the same element type, null if the elements
+     * of c have to be looked at one by one
+     */
+    private long[] masks(final Collection<?> c) {
+        if (c instanceof ConcurrentEnumSet<?> s) {
+            if (s.elementType != elementType)
+                return null;
+            final long[] ws = new long[cells()];
+            for (int i = 0; i < ws.length; ++i)
+                ws[i] = s.wordAt(i);
+            return ws;
+        } else if (c instanceof EnumSet<?> s) {
+            final long[] ws = new long[cells()];
+            for (Enum<?> e : s) {
+                if (!checkElement(e))
+                    return null;
+                final int o = e.ordinal();
+                ws[o >>> ADDRESS_BITS_PER_CELL] |= 1L << o;
+            }
+            return ws;
+        }
+        return null;
+    }
+
+    /**
+     * With an {@link EnumSet} or a {@code ConcurrentEnumSet}
+     * it is a single OR per word
+     */
+    @Override
+    public boolean addAll(final Collection<? extends E> c) {
+        final long[] ws = masks(requireNonNull(c));
+        if (ws == null)
+            return super.addAll(c);
+        boolean modified = false;
+        for (int i = 0; i < ws.length; ++i) {
+            final long mask = ws[i];
+            if (mask != 0L && (orAt(i, mask) & mask) != mask)
+                modified = true;
+        }
+        return modified;
+    }
+
+    /**
+     * With an {@link EnumSet} or a {@code ConcurrentEnumSet}
+     * it is a single AND per word
+     */
+    @Override
+    public boolean removeAll(final Collection<?> c) {
+        final long[] ws = masks(requireNonNull(c));
+        if (ws == null)
+            return super.removeAll(c);
+        boolean modified = false;
+        for (int i = 0; i < ws.length; ++i) {
+            final long mask = ws[i];
+            if (mask != 0L && (andAt(i, ~mask) & mask) != 0L)
+                modified = true;
+        }
+        return modified;
+    }
+
+    /**
+     * With an {@link EnumSet} or a {@code ConcurrentEnumSet}
+     * it is a single AND per word
+     */
+    @Override
+    public boolean retainAll(final Collection<?> c) {
+        final long[] ws = masks(requireNonNull(c));
+        if (ws == null)
+            return super.retainAll(c);
+        boolean modified = false;
+        for (int i = 0; i < ws.length; ++i) {
+            final long mask = ws[i];
+            if ((andAt(i, mask) & ~mask) != 0L)
+                modified = true;
+        }
+        return modified;
+    }
+
+    /**
+     * With an {@link EnumSet} or a {@code ConcurrentEnumSet}
+     * every word is checked by a single read
+     */
+    @Override
+    public boolean containsAll(final Collection<?> c) {
+        final long[] ws = masks(requireNonNull(c));
+        if (ws == null)
+            return super.containsAll(c);
+        for (int i = 0; i < ws.length; ++i) {
+            if ((wordAt(i) & ws[i]) != ws[i])
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void forEach(final Consumer<? super E> action) {
+        requireNonNull(action);
+        final E[] es = universe;
+        for (int i = 0, n = cells(); i < n; ++i) {
+            for (long w = wordAt(i); w != 0L; w &= w - 1) {
+                action.accept(es[(i << ADDRESS_BITS_PER_CELL)
+                        + Long.numberOfTrailingZeros(w)]);
+            }
+        }
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new EnumSetIterator();
+    }
+
+    /**
+     * Elements and capacity are counted in bits, one per constant
+     */
+    @Override
+    public Footprint footprint() {
+        final int n = universe.length, sz = size();
+        final MemoryOrder[] orders = MemoryOrder.values();
+        final Object[] shared = new Object[n + 1 + orders.length];
+        System.arraycopy(universe, 0, shared, 0, n);
+        shared[n] = elementType;
+        System.arraycopy(orders, 0, shared, n + 1, orders.length);
+        return new Footprint(
+                Footprint.retainedBytes(this, shared),
+                sz, n,
+                List.of(new Footprint.Segment(n, sz)));
+    }
+
+    private boolean checkElement(final Object e) {
+        requireNonNull(e);
+        // Cheaper than instanceof Enum followed by getDeclaringClass
+        Class<?> c = e.getClass(), type = elementType;
+        return c == type || c.getSuperclass() == type;
+    }
+
+    private final class EnumSetIterator implements Iterator<E> {
+        // the remaining bits of the word, a copy
+        private long unseen;
+        private int cell = -1, lastRet = -1;
+
+        EnumSetIterator() {
+            advance();
+        }
+
+        private void advance() {
+            long w = unseen;
+            for (int n = cells(); w == 0L && cell + 1 < n; )
+                w = wordAt(++cell);
+            unseen = w;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return unseen != 0L;
+        }
+
+        @Override
+        public E next() {
+            final long w = unseen;
+            if (w == 0L)
+                throw new NoSuchElementException();
+            final int i = lastRet = (cell << ADDRESS_BITS_PER_CELL)
+                    + Long.numberOfTrailingZeros(w);
+            unseen = w & (w - 1);
+            advance();
+            return universe[i];
+        }
+
+        @Override
+        public void remove() {
+            final int l = lastRet;
+            if (l < 0)
+                throw new IllegalStateException();
+            andAt(l >>> ADDRESS_BITS_PER_CELL, ~(1L << l));
+            lastRet = -1;
+        }
+    }
+
+    // VarHandle mechanics
+    private static final VarHandle BITS;
+
+    static {
+        try {
+            MethodHandles.Lookup l = MethodHandles.lookup();
+            BITS = l.findVarHandle(ConcurrentEnumSet.class, "bits", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package sunmisc.utils;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import sunmisc.utils.concurrent.lazy.ConcurrentLazy;
+import sunmisc.utils.concurrent.maps.ConcurrentEnumMap;
+import sunmisc.utils.concurrent.memory.ArrayMemory;
+import sunmisc.utils.concurrent.memory.BitwiseSegmentMemory;
+import sunmisc.utils.concurrent.memory.ImmutableSegmentsMemory;
+import sunmisc.utils.concurrent.memory.MemoryOrder;
+import sunmisc.utils.concurrent.memory.ReferenceSegmentMemory;
+import sunmisc.utils.concurrent.memory.StructMemory;
+import sunmisc.utils.concurrent.sets.ConcurrentBitSet;
+import sunmisc.utils.concurrent.sets.ConcurrentEnumSet;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.testng.Assert.*;
+
+/*
+ * Every structure must be measurable on a default JVM,
+ * without -Djol.magicFieldOffset=true
+ */
+@Test
+public class FootprintTest {
+
+    private static final Object ELEMENT = new Object();
+
+    @DataProvider
+    public Object[][] structures() {
+        return new Object[][] {
+                {"ArrayMemory", (Supplier<Measurable>) () -> {
+                    ArrayMemory<Object> memory = new ArrayMemory<>(16);
+                    memory.fill(0, 16, ELEMENT);
+                    return memory;
+                }},
+                {"ReferenceSegmentMemory", (Supplier<Measurable>) () -> {
+                    ReferenceSegmentMemory<Object> memory = new ReferenceSegmentMemory<>();
+                    memory.realloc(16);
+                    memory.fill(0, 16, ELEMENT);
+                    return memory;
+                }},
+                {"ImmutableSegmentsMemory", (Supplier<Measurable>) () -> {
+                    ImmutableSegmentsMemory<Object> memory = new ImmutableSegmentsMemory<>(16);
+                    memory.fill(0, 16, ELEMENT);
+                    return memory;
+                }},
+                {"BitwiseSegmentMemory", (Supplier<Measurable>) () -> {
+                    BitwiseSegmentMemory<Byte> memory
+                            = new BitwiseSegmentMemory<>(byte.class, MemoryOrder.VOLATILE);
+                    memory.realloc(100);
+                    return memory;
+                }},
+                {"ConcurrentBitSet", (Supplier<Measurable>) () -> {
+                    ConcurrentBitSet set = new ConcurrentBitSet();
+                    for (int i = 0; i < 200; i += 3)
+                        set.add(i);
+                    return set;
+                }},
+                {"ConcurrentEnumSet", (Supplier<Measurable>) () -> {
+                    ConcurrentEnumSet<TimeUnit> set = new ConcurrentEnumSet<>(TimeUnit.class);
+                    set.add(TimeUnit.DAYS);
+                    return set;
+                }},
+                {"ConcurrentEnumSet (large)", (Supplier<Measurable>) () -> {
+                    ConcurrentEnumSet<Character.UnicodeScript> set
+                            = new ConcurrentEnumSet<>(Character.UnicodeScript.class);
+                    set.add(Character.UnicodeScript.LATIN);
+                    set.add(Character.UnicodeScript.UNKNOWN);
+                    return set;
+                }},
+                {"ConcurrentEnumMap", (Supplier<Measurable>) () -> {
+                    ConcurrentEnumMap<TimeUnit, Object> map = new ConcurrentEnumMap<>(TimeUnit.class);
+                    map.put(TimeUnit.SECONDS, ELEMENT);
+                    return map;
+                }},
+                {"StructMemory", (Supplier<Measurable>) () ->
+                        new StructMemory(10, true, long.class, int.class, byte.class)},
+                {"ConcurrentLazy (new)", (Supplier<Measurable>) () ->
+                        new ConcurrentLazy<>(() -> ELEMENT)},
+                {"ConcurrentLazy (completed)", (Supplier<Measurable>) () -> {
+                    ConcurrentLazy<Object, RuntimeException> lazy = new ConcurrentLazy<>(() -> ELEMENT);
+                    lazy.value();
+                    return lazy;
+                }}
+        };
+    }
+
+    @Test(dataProvider = "structures")
+    public void testFootprintWithoutMagicFieldOffset(String name, Supplier<Measurable> factory) {
+        assertNull(System.getProperty("jol.magicFieldOffset"));
+        Footprint footprint = factory.get().footprint();
+
+        assertTrue(footprint.retainedBytes() > 0, name);
+        assertTrue(footprint.elements() <= footprint.capacity(), name);
+        assertEquals(footprint.slack(), footprint.capacity() - footprint.elements(), name);
+    }
+}
@@ -0,0 +1,160 @@
+package sunmisc.utils.concurrent.ConcurrentEnumMap;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import sunmisc.utils.concurrent.maps.ConcurrentEnumLongMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+import static org.testng.Assert.*;
+
+/*
+ * Both modes against a long[] indexed by ordinal,
+ * for the first and the last constant of a small and a large enum
+ */
+@Test
+public class ConcurrentEnumLongMapTest {
+
+    @DataProvider
+    public static Object[][] modes() {
+        return new Object[][] {{false}, {true}};
+    }
+
+    @Test(dataProvider = "modes")
+    public void testOpsAgainstArray(boolean striped) {
+        testOpsAgainstArray(TestEnum.class, striped);
+        testOpsAgainstArray(Character.UnicodeScript.class, striped);
+    }
+
+    @Test(dataProvider = "modes")
+    public void testFirstAndLastKey(boolean striped) {
+        testFirstAndLastKey(TestEnum.class, striped);
+        testFirstAndLastKey(Character.UnicodeScript.class, striped);
+    }
+
+    @Test(dataProvider = "modes")
+    public void testConcurrentAdds(boolean striped) {
+        final ConcurrentEnumLongMap<TestEnum> map = new ConcurrentEnumLongMap<>(TestEnum.class, striped);
+        final int threads = 4, adds = 50_000;
+        IntStream.range(0, threads).parallel().forEach(t -> {
+            for (int k = 0; k < adds; ++k) {
+                map.increment(TestEnum.A);
+                map.add(TestEnum.Z, 2);
+            }
+        });
+        assertEquals(map.get(TestEnum.A), (long) threads * adds);
+        assertEquals(map.get(TestEnum.Z), 2L * threads * adds);
+        assertEquals(map.sum(), 3L * threads * adds);
+        // reset returns an inflated key to a single value
+        map.reset(TestEnum.Z);
+        assertEquals(map.getAndAdd(TestEnum.Z, 5), 0L);
+        map.clear();
+        assertEquals(map.sum(), 0L);
+        assertEquals(map.put(TestEnum.A, 1), 0L);
+    }
+
+    @Test
+    public void testNullKey() {
+        final ConcurrentEnumLongMap<TestEnum> map = new ConcurrentEnumLongMap<>(TestEnum.class);
+        assertThrows(NullPointerException.class, () -> map.get(null));
+        assertThrows(NullPointerException.class, () -> map.add(null, 1));
+        assertThrows(NullPointerException.class, () -> map.forEach(null));
+    }
+
+    private static <K extends Enum<K>> void testOpsAgainstArray(Class<K> type, boolean striped) {
+        final K[] keys = type.getEnumConstants();
+        final ConcurrentEnumLongMap<K> map = new ConcurrentEnumLongMap<>(type, striped);
+        final long[] expected = new long[keys.length];
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int k = 0; k < 20_000; ++k) {
+            final int i = random.nextInt(keys.length);
+            final K key = keys[i];
+            final long x = random.nextLong(-1000, 1000), old = expected[i];
+            expected[i] = switch (random.nextInt(11)) {
+                case 0 -> {
+                    assertEquals(map.put(key, x), old);
+                    yield x;
+                }
+                case 1 -> {
+                    assertEquals(map.getAndAdd(key, x), old);
+                    yield old + x;
+                }
+                case 2 -> {
+                    assertEquals(map.addAndGet(key, x), old + x);
+                    yield old + x;
+                }
+                case 3 -> {
+                    assertEquals(map.getAndIncrement(key), old);
+                    yield old + 1;
+                }
+                case 4 -> {
+                    assertEquals(map.incrementAndGet(key), old + 1);
+                    yield old + 1;
+                }
+                case 5 -> {
+                    assertEquals(map.getAndDecrement(key), old);
+                    yield old - 1;
+                }
+                case 6 -> {
+                    assertEquals(map.decrementAndGet(key), old - 1);
+                    yield old - 1;
+                }
+                case 7 -> {
+                    assertFalse(map.compareAndSet(key, old + 1, x));
+                    assertTrue(map.compareAndSet(key, old, x));
+                    yield x;
+                }
+                case 8 -> {
+                    map.add(key, x);
+                    map.increment(key);
+                    map.decrement(key);
+                    yield old + x;
+                }
+                case 9 -> {
+                    map.reset(key);
+                    yield 0;
+                }
+                default -> {
+                    // reading changes nothing
+                    assertEquals(map.get(key), old);
+                    yield old;
+                }
+            };
+            assertEquals(map.get(key), expected[i]);
+        }
+        long sum = 0;
+        for (long x : expected)
+            sum += x;
+        assertEquals(map.sum(), sum);
+
+        final List<K> visited = new ArrayList<>();
+        map.forEach((key, value) -> {
+            assertEquals(value, expected[key.ordinal()]);
+            visited.add(key);
+        });
+        assertEquals(visited, List.of(keys));
+
+        map.clear();
+        for (K key : keys)
+            assertEquals(map.get(key), 0L);
+    }
+
+    private static <K extends Enum<K>> void testFirstAndLastKey(Class<K> type, boolean striped) {
+        final K[] keys = type.getEnumConstants();
+        final K first = keys[0], last = keys[keys.length - 1];
+        final ConcurrentEnumLongMap<K> map = new ConcurrentEnumLongMap<>(type, striped);
+        map.put(first, Long.MIN_VALUE);
+        map.put(last, Long.MAX_VALUE);
+        assertEquals(map.get(first), Long.MIN_VALUE);
+        assertEquals(map.get(last), Long.MAX_VALUE);
+        // the values wrap like a long
+        assertEquals(map.incrementAndGet(last), Long.MIN_VALUE);
+        assertEquals(map.sum(), 0L);
+        assertTrue(map.toString().contains(last + "=" + Long.MIN_VALUE));
+        for (int i = 1; i < keys.length - 1; ++i)
+            assertEquals(map.get(keys[i]), 0L);
+    }
+}
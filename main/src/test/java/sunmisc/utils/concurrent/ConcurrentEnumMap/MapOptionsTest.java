@@ -0,0 +1,211 @@
+package sunmisc.utils.concurrent.ConcurrentEnumMap;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import sunmisc.utils.concurrent.Backoff;
+import sunmisc.utils.concurrent.maps.ConcurrentEnumMap;
+import sunmisc.utils.concurrent.maps.ConcurrentEnumMap.Option;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.testng.Assert.*;
+
+/*
+ * The maps with a presence index or versions must behave like
+ * the plain one, for enums that fit in a single presence word
+ * and for enums that span several
+ */
+@Test
+public class MapOptionsTest {
+
+    @DataProvider
+    public static Object[][] options() {
+        return new Object[][] {
+                {new Option[] {Option.INDEXED}},
+                {new Option[] {Option.VERSIONED}},
+                {new Option[] {Option.INDEXED, Option.VERSIONED}}
+        };
+    }
+
+    @Test(dataProvider = "options")
+    public void testSize(Option[] options) {
+        testSize(TestEnum.class, options);
+        testSize(Character.UnicodeScript.class, options);
+    }
+
+    @Test(dataProvider = "options")
+    public void testIteration(Option[] options) {
+        testIteration(TestEnum.class, options);
+        testIteration(Character.UnicodeScript.class, options);
+    }
+
+    @Test(dataProvider = "options")
+    public void testSerialization(Option[] options) throws Exception {
+        testSerialization(TestEnum.class, options);
+        testSerialization(Character.UnicodeScript.class, options);
+    }
+
+    /*
+     * The stream of a map written before the options existed
+     * ends right after the pairs, such a map reads as a plain one
+     */
+    @Test
+    public void testSerializationWithoutOptions() throws Exception {
+        final ConcurrentEnumMap<TestEnum, Integer> map
+                = new ConcurrentEnumMap<>(TestEnum.class, Backoff.SPIN);
+        map.put(TestEnum.A, 1);
+        map.put(TestEnum.C, 3);
+        final byte[] bytes = serialize(map);
+        // drop the backoff and the flags after the null terminator pair
+        int end = bytes.length - 1, trailer = -1;
+        for (int i = 0; i + 2 < end; ++i) {
+            if (bytes[i] == ObjectStreamConstants.TC_NULL &&
+                    bytes[i + 1] == ObjectStreamConstants.TC_NULL &&
+                    bytes[i + 2] == ObjectStreamConstants.TC_ENUM)
+                trailer = i + 2;
+        }
+        assertTrue(trailer > 0);
+        assertEquals(bytes[end], ObjectStreamConstants.TC_ENDBLOCKDATA);
+        final byte[] old = new byte[trailer + 1];
+        System.arraycopy(bytes, 0, old, 0, trailer);
+        old[trailer] = ObjectStreamConstants.TC_ENDBLOCKDATA;
+
+        final ConcurrentEnumMap<TestEnum, Integer> copy = deserialize(old);
+        assertEquals(copy, map);
+        assertEquals(copy.size(), 2);
+        copy.put(TestEnum.B, 2);
+        copy.remove(TestEnum.A);
+        assertEquals(copy.size(), 2);
+        assertEquals(roundTrip(copy), copy);
+    }
+
+    /*
+     * One thread keeps toggling the keys of odd ordinals,
+     * which share the presence words with the even ones,
+     * the mappings of even ordinals put before must stay visible
+     */
+    @Test(dataProvider = "options")
+    public void testConcurrentToggle(Option[] options) {
+        final Character.UnicodeScript[] keys = Character.UnicodeScript.values();
+        final ConcurrentEnumMap<Character.UnicodeScript, Integer> map
+                = new ConcurrentEnumMap<>(Character.UnicodeScript.class, Backoff.NONE, options);
+        final AtomicBoolean done = new AtomicBoolean();
+        final CompletableFuture<Void> toggler = CompletableFuture.runAsync(() -> {
+            while (!done.get()) {
+                for (int i = 1; i < keys.length; i += 2) {
+                    map.put(keys[i], i);
+                    map.remove(keys[i]);
+                }
+            }
+        });
+        try {
+            for (int i = 0; i < keys.length; i += 2) {
+                map.put(keys[i], i);
+                assertFalse(map.isEmpty());
+                assertTrue(map.size() >= i / 2 + 1);
+                for (int k = 0; k <= i; k += 2)
+                    assertTrue(map.containsValue(k), "lost " + keys[k]);
+                final int[] seen = {0};
+                map.forEach((k, v) -> {
+                    if ((v & 1) == 0) ++seen[0];
+                });
+                assertEquals(seen[0], i / 2 + 1);
+            }
+        } finally {
+            done.set(true);
+            toggler.join();
+        }
+        assertEquals(map.size(), (keys.length + 1) / 2);
+    }
+
+    private static <K extends Enum<K>> void testSize(Class<K> type, Option[] options) {
+        final K[] keys = type.getEnumConstants();
+        final ConcurrentEnumMap<K, Integer> map
+                = new ConcurrentEnumMap<>(type, Backoff.NONE, options);
+        assertTrue(map.isEmpty());
+        for (int i = 0; i < keys.length; i += 3)
+            map.put(keys[i], i);
+        assertEquals(map.size(), (keys.length + 2) / 3);
+        map.putIfAbsent(keys[0], -1);
+        map.remove(keys[keys.length - 1]);
+        map.computeIfAbsent(keys[keys.length - 1], k -> -1);
+        assertEquals(map.size(), (keys.length + 2) / 3 + ((keys.length - 1) % 3 == 0 ? 0 : 1));
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(map.size(), 0);
+    }
+
+    private static <K extends Enum<K>> void testIteration(Class<K> type, Option[] options) {
+        final K[] keys = type.getEnumConstants();
+        final ConcurrentEnumMap<K, Integer> map
+                = new ConcurrentEnumMap<>(type, Backoff.NONE, options);
+        final Map<K, Integer> expected = new EnumMap<>(type);
+        for (int i = keys.length - 1; i >= 0; i -= 5) {
+            map.put(keys[i], i);
+            expected.put(keys[i], i);
+        }
+        assertEquals(map, expected);
+        assertEquals(new ArrayList<>(map.keySet()), new ArrayList<>(expected.keySet()));
+
+        final List<K> visited = new ArrayList<>();
+        map.forEach((k, v) -> visited.add(k));
+        assertEquals(visited, new ArrayList<>(expected.keySet()));
+
+        for (Iterator<K> it = map.keySet().iterator(); it.hasNext(); ) {
+            if ((it.next().ordinal() & 1) != 0)
+                it.remove();
+        }
+        expected.keySet().removeIf(k -> (k.ordinal() & 1) != 0);
+        assertEquals(map, expected);
+        assertEquals(map.size(), expected.size());
+    }
+
+    private static <K extends Enum<K>> void
+    testSerialization(Class<K> type, Option[] options) throws Exception {
+        final K[] keys = type.getEnumConstants();
+        final ConcurrentEnumMap<K, Integer> map
+                = new ConcurrentEnumMap<>(type, Backoff.NONE, options);
+        for (int i = 0; i < keys.length; i += 2)
+            map.put(keys[i], i);
+        final ConcurrentEnumMap<K, Integer> copy = roundTrip(map);
+        assertEquals(copy, map);
+        assertEquals(copy.size(), map.size());
+        copy.put(keys[1], 1);
+        copy.remove(keys[0]);
+        assertEquals(copy.size(), map.size());
+        assertTrue(copy.containsKey(keys[1]));
+        assertFalse(copy.containsKey(keys[0]));
+    }
+
+    private static <T> T roundTrip(T o) throws IOException, ClassNotFoundException {
+        return deserialize(serialize(o));
+    }
+
+    private static byte[] serialize(Object o) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(o);
+        }
+        return bytes.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes))) {
+            return (T) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package sunmisc.utils.concurrent.ConcurrentEnumMap;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import sunmisc.utils.concurrent.Backoff;
+import sunmisc.utils.concurrent.maps.ConcurrentEnumMap;
+import sunmisc.utils.concurrent.maps.ConcurrentEnumMap.Option;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+/*
+ * The bulk operations against an EnumMap, run sequentially (a threshold
+ * above the size) and split across the common pool (a threshold of 1)
+ */
+@Test
+public class ParallelBulkTest {
+
+    @DataProvider
+    public static Object[][] options() {
+        final long[] thresholds = {1L, Long.MAX_VALUE};
+        final Option[][] options = {
+                {}, {Option.INDEXED}, {Option.VERSIONED}, {Option.INDEXED, Option.VERSIONED}
+        };
+        final Object[][] cases = new Object[thresholds.length * options.length][];
+        int c = 0;
+        for (long threshold : thresholds)
+            for (Option[] option : options)
+                cases[c++] = new Object[] {threshold, option};
+        return cases;
+    }
+
+    @Test(dataProvider = "options")
+    public void testAgainstEnumMap(long threshold, Option[] options) {
+        testAgainstEnumMap(TestEnum.class, threshold, options);
+        testAgainstEnumMap(Character.UnicodeScript.class, threshold, options);
+    }
+
+    @Test(dataProvider = "options")
+    public void testEmptyMap(long threshold, Option[] options) {
+        final ConcurrentEnumMap<TestEnum, Integer> map
+                = new ConcurrentEnumMap<>(TestEnum.class, Backoff.NONE, options);
+        map.forEach(threshold, (k, v) -> fail());
+        assertNull(map.search(threshold, (k, v) -> k));
+        assertNull(map.reduce(threshold, (k, v) -> v, Integer::sum));
+        assertNull(map.reduceValues(threshold, Integer::sum));
+    }
+
+    @Test(dataProvider = "options")
+    public void testLastKey(long threshold, Option[] options) {
+        final Character.UnicodeScript[] keys = Character.UnicodeScript.values();
+        final Character.UnicodeScript last = keys[keys.length - 1];
+        final ConcurrentEnumMap<Character.UnicodeScript, Integer> map
+                = new ConcurrentEnumMap<>(Character.UnicodeScript.class, Backoff.NONE, options);
+        map.put(last, 1);
+        assertEquals(map.search(threshold, (k, v) -> k), last);
+        assertEquals(map.reduceValues(threshold, Integer::sum), (Integer) 1);
+        final AtomicInteger visits = new AtomicInteger();
+        map.forEach(threshold, (k, v) -> {
+            assertEquals(k, last);
+            visits.incrementAndGet();
+        });
+        assertEquals(visits.get(), 1);
+        map.remove(last);
+        assertNull(map.search(threshold, (k, v) -> k));
+    }
+
+    @Test
+    public void testNullArguments() {
+        final ConcurrentEnumMap<TestEnum, Integer> map = new ConcurrentEnumMap<>(TestEnum.class);
+        assertThrows(NullPointerException.class, () -> map.forEach(1L, null));
+        assertThrows(NullPointerException.class, () -> map.search(1L, null));
+        assertThrows(NullPointerException.class, () -> map.reduce(1L, null, (a, b) -> a));
+        assertThrows(NullPointerException.class, () -> map.reduce(1L, (k, v) -> v, null));
+    }
+
+    private static <K extends Enum<K>> void
+    testAgainstEnumMap(Class<K> type, long threshold, Option[] options) {
+        final K[] keys = type.getEnumConstants();
+        final ConcurrentEnumMap<K, Integer> map
+                = new ConcurrentEnumMap<>(type, Backoff.NONE, options);
+        final Map<K, Integer> expected = new EnumMap<>(type);
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int round = 0; round < 20; ++round) {
+            for (int k = 0; k < keys.length; ++k) {
+                final K key = keys[random.nextInt(keys.length)];
+                if (random.nextInt(3) == 0) {
+                    map.remove(key);
+                    expected.remove(key);
+                } else {
+                    final int v = random.nextInt(1000);
+                    map.put(key, v);
+                    expected.put(key, v);
+                }
+            }
+            final Map<K, Integer> visited = new ConcurrentHashMap<>();
+            map.forEach(threshold, (k, v) -> assertNull(visited.put(k, v)));
+            assertEquals(visited, expected);
+
+            final int sum = expected.values().stream().mapToInt(x -> x).sum();
+            assertEquals(map.reduceValues(threshold, Integer::sum),
+                    expected.isEmpty() ? null : (Integer) sum);
+            // the mappings a transformer skips are not combined
+            final long odd = expected.entrySet().stream()
+                    .filter(e -> (e.getKey().ordinal() & 1) != 0)
+                    .mapToLong(e -> e.getValue()).sum();
+            final Long reduced = map.reduce(threshold,
+                    (k, v) -> (k.ordinal() & 1) != 0 ? (long) v : null, Long::sum);
+            assertEquals(reduced == null ? 0L : (long) reduced, odd);
+
+            final int target = random.nextInt(1000);
+            final K found = map.search(threshold, (k, v) -> v >= target ? k : null);
+            if (found == null)
+                assertTrue(expected.values().stream().allMatch(v -> v < target));
+            else
+                assertTrue(expected.get(found) >= target);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package sunmisc.utils.concurrent.memory;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.testng.Assert.*;
+
+/*
+ * The range combinators and the bit count against a long[] for every
+ * component type, with ranges that cross areas at different offsets
+ * in both memories, so that the vector loops and the scalar tails both run
+ */
+@Test
+public class BulkBitwiseTest {
+
+    @DataProvider
+    public Object[][] types() {
+        return new Object[][] {
+                {byte.class, 8}, {short.class, 16}, {int.class, 32}, {long.class, 64}
+        };
+    }
+
+    private static long narrow(long x, int bits) {
+        return x << (64 - bits) >> (64 - bits);
+    }
+
+    private static long mask(int bits) {
+        return -1L >>> (64 - bits);
+    }
+
+    // the memory and the array hold the same random elements
+    private static <E extends Number> BitwiseSegmentMemory<E> random(Class<E> type, long[] expected) {
+        BitwiseSegmentMemory<E> memory = new BitwiseSegmentMemory<>(type);
+        memory.realloc(expected.length);
+        assertEquals(memory.length(), expected.length);
+        long[] values = ThreadLocalRandom.current().longs(expected.length).toArray();
+        memory.storeRangeLong(0, values, 0, values.length);
+        memory.fetchRangeLong(0, expected, 0, values.length);
+        return memory;
+    }
+
+    @Test(dataProvider = "types")
+    public <E extends Number> void testCombinatorsAgainstArray(Class<E> type, int bits) {
+        long[] a = new long[1024], b = new long[1024];
+        BitwiseSegmentMemory<E> x = random(type, a), y = random(type, b);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int k = 0; k < 300; ++k) {
+            int length = random.nextInt(300),
+                    i = random.nextInt(a.length - length + 1),
+                    j = random.nextInt(b.length - length + 1),
+                    op = random.nextInt(4);
+            switch (op) {
+                case BulkBitwise.AND -> x.andRange(i, y, j, length);
+                case BulkBitwise.OR -> x.orRange(i, y, j, length);
+                case BulkBitwise.XOR -> x.xorRange(i, y, j, length);
+                default -> x.andNotRange(i, y, j, length);
+            }
+            for (int n = 0; n < length; ++n) {
+                long p = a[i + n], q = b[j + n];
+                a[i + n] = narrow(switch (op) {
+                    case BulkBitwise.AND -> p & q;
+                    case BulkBitwise.OR -> p | q;
+                    case BulkBitwise.XOR -> p ^ q;
+                    default -> p & ~q;
+                }, bits);
+            }
+            long[] actual = new long[a.length];
+            x.fetchRangeLong(0, actual, 0, actual.length);
+            assertEquals(actual, a, "op " + op + " at " + i + ", " + j + " of " + length);
+            // the source is only read
+            y.fetchRangeLong(0, actual, 0, actual.length);
+            assertEquals(actual, b);
+        }
+    }
+
+    @Test(dataProvider = "types")
+    public <E extends Number> void testBitCountAgainstArray(Class<E> type, int bits) {
+        long[] a = new long[1024];
+        BitwiseSegmentMemory<E> memory = random(type, a);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int k = 0; k < 300; ++k) {
+            int from = random.nextInt(a.length + 1), to = random.nextInt(from, a.length + 1);
+            long count = 0;
+            for (int i = from; i < to; ++i)
+                count += Long.bitCount(a[i] & mask(bits));
+            assertEquals(memory.bitCount(from, to), count);
+        }
+        assertEquals(memory.bitCount(0, 0), 0L);
+    }
+
+    @Test(dataProvider = "types")
+    public <E extends Number> void testLastIndexAfterRealloc(Class<E> type, int bits) {
+        BitwiseSegmentMemory<E> x = new BitwiseSegmentMemory<>(type),
+                y = new BitwiseSegmentMemory<>(type);
+        for (int size : new int[] {5, 64, 1000, 3, 17}) {
+            x.realloc(size);
+            y.realloc(size);
+            int n = x.length(), last = n - 1;
+            x.fillLong(0, n, -1);
+            y.fillLong(0, n, 0);
+            y.storeLong(last, 1);
+            x.andRange(0, y, 0, n);
+            assertEquals(x.bitCount(0, n), 1L);
+            assertEquals(x.fetchLong(last), 1L);
+            x.xorRange(last, y, last, 1);
+            assertEquals(x.bitCount(0, n), 0L);
+
+            assertThrows(IndexOutOfBoundsException.class, () -> x.orRange(last, y, 0, 2));
+            assertThrows(IndexOutOfBoundsException.class, () -> x.orRange(0, y, last, 2));
+            assertThrows(IndexOutOfBoundsException.class, () -> x.bitCount(0, n + 1));
+        }
+    }
+
+    @Test
+    public void testSameMemoryDisjointRanges() {
+        long[] a = new long[256];
+        BitwiseSegmentMemory<Long> memory = random(long.class, a);
+        memory.xorRange(128, memory, 0, 128);
+        for (int i = 0; i < 128; ++i)
+            a[128 + i] ^= a[i];
+        long[] actual = new long[256];
+        memory.fetchRangeLong(0, actual, 0, 256);
+        assertEquals(actual, a);
+    }
+
+    @Test
+    public void testComponentTypesMustMatch() {
+        BitwiseSegmentMemory<Long> longs = new BitwiseSegmentMemory<>(long.class);
+        BitwiseSegmentMemory<Integer> ints = new BitwiseSegmentMemory<>(int.class);
+        @SuppressWarnings("unchecked")
+        BitwiseSegmentMemory<Long> mismatched = (BitwiseSegmentMemory<Long>) (Object) ints;
+        assertThrows(IllegalArgumentException.class, () -> longs.orRange(0, mismatched, 0, 1));
+    }
+
+    @Test
+    public void testArrayKernels() {
+        // odd offsets and lengths leave a scalar tail after the vector loop
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int n : new int[] {0, 1, 7, 33, 257}) {
+            long[] a = random.longs(n + 3).toArray(), b = random.longs(n + 5).toArray(),
+                    expected = a.clone();
+            for (int k = 0; k < n; ++k)
+                expected[3 + k] &= ~b[5 + k];
+            BulkBitwise.combine(BulkBitwise.AND_NOT, a, 3, b, 5, n);
+            assertEquals(a, expected);
+
+            int[] c = random.ints(n + 1).toArray(), d = random.ints(n + 2).toArray(),
+                    ints = c.clone();
+            for (int k = 0; k < n; ++k)
+                ints[1 + k] |= d[2 + k];
+            BulkBitwise.combine(BulkBitwise.OR, c, 1, d, 2, n);
+            assertEquals(c, ints);
+
+            long count = 0;
+            for (int k = 1; k < n + 1; ++k)
+                count += Long.bitCount(a[k]);
+            assertEquals(BulkBitwise.bitCount(a, 1, n), count);
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> BulkBitwise.combine(BulkBitwise.OR, new char[1], 0, new char[1], 0, 1));
+    }
+}
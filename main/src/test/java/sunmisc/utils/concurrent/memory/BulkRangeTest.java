@@ -0,0 +1,185 @@
+package sunmisc.utils.concurrent.memory;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import sunmisc.utils.concurrent.sets.ConcurrentBitSet;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import static org.testng.Assert.*;
+
+/*
+ * The range operations of every memory against an array,
+ * with ranges that start and end inside different segments
+ */
+@Test
+public class BulkRangeTest {
+
+    private static final int N = 300;
+
+    @DataProvider
+    public Object[][] memories() {
+        return new Object[][] {
+                {"array", (Supplier<ModifiableMemory<Integer>>) () -> new ArrayMemory<>(N)},
+                {"reference segments", (Supplier<ModifiableMemory<Integer>>) () ->
+                        new ReferenceSegmentMemory<Integer>().realloc(N)},
+                {"immutable segments", (Supplier<ModifiableMemory<Integer>>) () ->
+                        new ImmutableSegmentsMemory<>(N)},
+                {"padded", (Supplier<ModifiableMemory<Integer>>) () -> new PaddedArrayMemory<>(N)},
+                {"paged", (Supplier<ModifiableMemory<Integer>>) () -> new PagedMemory<>(N, 4, null)}
+        };
+    }
+
+    @DataProvider
+    public Object[][] longMemories() {
+        return new Object[][] {
+                {"bitwise byte", 8, (Supplier<LongMemory>) () -> bitwise(byte.class)},
+                {"bitwise short", 16, (Supplier<LongMemory>) () -> bitwise(short.class)},
+                {"bitwise int", 32, (Supplier<LongMemory>) () -> bitwise(int.class)},
+                {"bitwise long", 64, (Supplier<LongMemory>) () -> bitwise(long.class)},
+                {"padded", 64, (Supplier<LongMemory>) () -> new PaddedLongMemory(N)},
+                {"paged", 64, (Supplier<LongMemory>) () -> new PagedBitwiseMemory(N, 4, 0L)}
+        };
+    }
+
+    private static <E extends Number> LongMemory bitwise(Class<E> type) {
+        BitwiseSegmentMemory<E> memory = new BitwiseSegmentMemory<>(type);
+        memory.realloc(N);
+        return memory;
+    }
+
+    private static long narrow(long x, int bits) {
+        return x << (64 - bits) >> (64 - bits);
+    }
+
+    @Test(dataProvider = "memories")
+    public void testRangesAgainstArray(String name, Supplier<ModifiableMemory<Integer>> factory) {
+        ModifiableMemory<Integer> memory = factory.get();
+        int n = memory.length();
+        Integer[] expected = new Integer[n];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int k = 0; k < 500; ++k) {
+            int from = random.nextInt(n), to = random.nextInt(from, n + 1);
+            switch (random.nextInt(3)) {
+                case 0 -> {
+                    Integer x = random.nextInt();
+                    memory.fill(from, to, x);
+                    for (int i = from; i < to; ++i)
+                        expected[i] = x;
+                }
+                case 1 -> {
+                    Integer[] src = new Integer[to - from + 3];
+                    for (int i = 0; i < src.length; ++i)
+                        src[i] = random.nextInt();
+                    memory.storeRange(from, src, 2, to - from);
+                    System.arraycopy(src, 2, expected, from, to - from);
+                }
+                default -> {
+                    Integer[] dst = new Integer[to - from + 1];
+                    memory.fetchRange(from, dst, 1, to - from);
+                    for (int i = from; i < to; ++i)
+                        assertEquals(dst[i - from + 1], expected[i], name);
+                    assertNull(dst[0], name);
+                }
+            }
+        }
+        for (int i = 0; i < n; ++i)
+            assertEquals(memory.fetch(i), expected[i], name);
+    }
+
+    @Test(dataProvider = "memories")
+    public void testCopyBetweenMemories(String name, Supplier<ModifiableMemory<Integer>> factory) {
+        ModifiableMemory<Integer> src = factory.get(), dst = new ArrayMemory<>(N);
+        for (int i = 0; i < N; ++i)
+            src.store(i, i);
+        src.copy(3, dst, 10, N - 20);
+        for (int i = 0; i < N; ++i)
+            assertEquals(dst.fetch(i), i >= 10 && i < N - 10 ? (Integer) (i - 7) : null, name);
+        dst.copy(10, src, 0, 5);
+        for (int i = 0; i < 5; ++i)
+            assertEquals(src.fetch(i), (Integer) (i + 3), name);
+    }
+
+    @Test(dataProvider = "memories")
+    public void testBoundsAtLastIndex(String name, Supplier<ModifiableMemory<Integer>> factory) {
+        ModifiableMemory<Integer> memory = factory.get();
+        for (int size : new int[] {N, 1000, 17}) {
+            memory = memory.realloc(size);
+            ModifiableMemory<Integer> m = memory;
+            int n = m.length();
+            assertTrue(n >= size, name);
+            m.fill(n - 1, n, 7);
+            m.storeRange(n - 2, new Integer[] {1, 2}, 0, 2);
+            Integer[] tail = new Integer[2];
+            m.fetchRange(n - 2, tail, 0, 2);
+            assertEquals(tail, new Integer[] {1, 2}, name);
+            m.fill(n, n, 7);
+
+            assertThrows(IndexOutOfBoundsException.class, () -> m.fill(n - 1, n + 1, 7));
+            assertThrows(IndexOutOfBoundsException.class,
+                    () -> m.storeRange(n - 1, new Integer[2], 0, 2));
+            assertThrows(IndexOutOfBoundsException.class,
+                    () -> m.fetchRange(n - 1, new Integer[2], 0, 2));
+            assertThrows(IndexOutOfBoundsException.class,
+                    () -> m.fetchRange(0, new Integer[2], 1, 2));
+            assertThrows(IndexOutOfBoundsException.class,
+                    () -> m.copy(n - 1, new ArrayMemory<>(4), 0, 2));
+            // a failed range leaves the memory untouched
+            assertEquals(m.fetch(n - 1), (Integer) 2, name);
+        }
+    }
+
+    @Test(dataProvider = "longMemories")
+    public void testLongRangesAgainstArray(String name, int bits, Supplier<LongMemory> factory) {
+        LongMemory memory = factory.get();
+        int n = memory.length();
+        long[] expected = new long[n];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int k = 0; k < 500; ++k) {
+            int from = random.nextInt(n), to = random.nextInt(from, n + 1);
+            switch (random.nextInt(3)) {
+                case 0 -> {
+                    long x = random.nextLong();
+                    memory.fillLong(from, to, x);
+                    for (int i = from; i < to; ++i)
+                        expected[i] = narrow(x, bits);
+                }
+                case 1 -> {
+                    long[] src = random.longs(to - from + 3).toArray();
+                    memory.storeRangeLong(from, src, 2, to - from);
+                    for (int i = from; i < to; ++i)
+                        expected[i] = narrow(src[i - from + 2], bits);
+                }
+                default -> {
+                    long[] dst = new long[to - from + 1];
+                    memory.fetchRangeLong(from, dst, 1, to - from);
+                    for (int i = from; i < to; ++i)
+                        assertEquals(dst[i - from + 1], expected[i], name);
+                }
+            }
+        }
+        for (int i = 0; i < n; ++i)
+            assertEquals(memory.fetchLong(i), expected[i], name);
+
+        assertThrows(IndexOutOfBoundsException.class, () -> memory.fillLong(n - 1, n + 1, 7));
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> memory.storeRangeLong(n - 1, new long[2], 0, 2));
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> memory.fetchRangeLong(n - 1, new long[2], 0, 2));
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> memory.fetchRangeLong(-1, new long[2], 0, 1));
+        assertEquals(memory.fetchLong(n - 1), expected[n - 1], name);
+    }
+
+    @Test
+    public void testBitSetClear() {
+        ConcurrentBitSet set = new ConcurrentBitSet();
+        for (int i = 0; i < 1000; i += 7)
+            set.add(i);
+        set.clear();
+        assertTrue(set.isEmpty());
+        for (int i = 0; i < 1000; ++i)
+            assertFalse(set.contains(i));
+    }
+}
@@ -0,0 +1,144 @@
+package sunmisc.utils.concurrent.memory;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+import static org.testng.Assert.*;
+
+@Test
+public class FloatingSegmentMemoryTest {
+
+    @DataProvider
+    public Object[][] modes() {
+        return new Object[][] {
+                {double.class, false}, {double.class, true},
+                {float.class, false}, {float.class, true}
+        };
+    }
+
+    @Test(dataProvider = "modes")
+    public <E extends Number> void testAddOnFreshMemory(Class<E> type, boolean striped) {
+        FloatingSegmentMemory<E> memory = new FloatingSegmentMemory<>(type, striped);
+        for (int i = 0; i < memory.length(); ++i) {
+            memory.add(i, 1.5);
+            assertEquals(memory.fetchDouble(i), 1.5);
+            assertFalse(memory.isStriped(i));
+        }
+    }
+
+    @Test(dataProvider = "modes")
+    public <E extends Number> void testLastIndexAfterRealloc(Class<E> type, boolean striped) {
+        FloatingSegmentMemory<E> memory = new FloatingSegmentMemory<>(type, striped);
+        for (int size : new int[] {5, 64, 1000, 3, 17}) {
+            memory.realloc(size);
+            int last = memory.length() - 1;
+            assertTrue(last >= size - 1);
+
+            memory.storeDouble(last, 0);
+            memory.add(last, 2.0);
+            memory.add(last, 0.25);
+            assertEquals(memory.fetchDouble(last), 2.25);
+            assertEquals(memory.fetchAndStoreDouble(last, 1), 2.25);
+            assertEquals(memory.fetch(last).doubleValue(), 1.0);
+
+            int length = memory.length();
+            assertThrows(IndexOutOfBoundsException.class,
+                    () -> memory.fetchDouble(length));
+            assertThrows(IndexOutOfBoundsException.class,
+                    () -> memory.add(length, 1));
+        }
+    }
+
+    @Test(dataProvider = "modes")
+    public <E extends Number> void testReallocKeepsPrefix(Class<E> type, boolean striped) {
+        FloatingSegmentMemory<E> memory = new FloatingSegmentMemory<>(type, striped);
+        memory.realloc(100);
+        for (int i = 0; i < 100; ++i)
+            memory.storeDouble(i, i);
+        memory.realloc(10);
+        assertTrue(memory.length() < 100);
+        memory.realloc(100);
+        for (int i = 0; i < 10; ++i)
+            assertEquals(memory.fetchDouble(i), i);
+        for (int i = 16; i < 100; ++i)
+            assertEquals(memory.fetchDouble(i), 0.0);
+    }
+
+    @Test
+    public void testPrimitiveOpsAgainstArray() {
+        FloatingSegmentMemory<Double> memory = new FloatingSegmentMemory<>(double.class);
+        memory.realloc(256);
+        double[] expected = new double[memory.length()];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int k = 0; k < 10_000; ++k) {
+            int i = random.nextInt(expected.length);
+            double x = random.nextInt(-100, 100) / 4.0;
+            switch (random.nextInt(6)) {
+                case 0 -> {
+                    memory.storeDouble(i, x);
+                    expected[i] = x;
+                }
+                case 1 -> {
+                    assertEquals(memory.fetchAndAddDouble(i, x), expected[i]);
+                    expected[i] += x;
+                }
+                case 2 -> {
+                    assertEquals(memory.fetchAndMinDouble(i, x), expected[i]);
+                    expected[i] = Math.min(expected[i], x);
+                }
+                case 3 -> {
+                    assertEquals(memory.fetchAndMaxDouble(i, x), expected[i]);
+                    expected[i] = Math.max(expected[i], x);
+                }
+                case 4 -> {
+                    assertTrue(memory.compareAndStoreDouble(i, expected[i], x));
+                    assertFalse(memory.compareAndStoreDouble(i, x + 1, x));
+                    expected[i] = x;
+                }
+                default -> {
+                    memory.add(i, x);
+                    expected[i] += x;
+                }
+            }
+        }
+        for (int i = 0; i < expected.length; ++i)
+            assertEquals(memory.fetchDouble(i), expected[i]);
+    }
+
+    @Test
+    public void testFloatRoundsLikeFloat() {
+        FloatingSegmentMemory<Float> memory = new FloatingSegmentMemory<>(float.class);
+        memory.storeDouble(0, 0.1);
+        assertEquals(memory.fetch(0), 0.1f);
+        assertEquals(memory.fetchDouble(0), (double) 0.1f);
+    }
+
+    @Test
+    public void testNegativeZeroIsDistinct() {
+        FloatingSegmentMemory<Double> memory = new FloatingSegmentMemory<>(double.class);
+        memory.storeDouble(0, -0.0);
+        assertFalse(memory.compareAndStoreDouble(0, 0.0, 1.0));
+        assertTrue(memory.compareAndStoreDouble(0, -0.0, 1.0));
+    }
+
+    @Test
+    public void testStripedSumUnderContention() {
+        FloatingSegmentMemory<Double> memory = new FloatingSegmentMemory<>(double.class, true);
+        memory.realloc(5);
+        int last = memory.length() - 1, threads = 4, adds = 50_000;
+        IntStream.range(0, threads).parallel().forEach(t -> {
+            for (int k = 0; k < adds; ++k) {
+                memory.add(0, 1);
+                memory.add(last, 1);
+            }
+        });
+        assertEquals(memory.fetchDouble(0), (double) threads * adds);
+        assertEquals(memory.fetchDouble(last), (double) threads * adds);
+        memory.storeDouble(last, 3);
+        assertFalse(memory.isStriped(last));
+        assertEquals(memory.fetchDouble(last), 3.0);
+    }
+}
@@ -0,0 +1,158 @@
+package sunmisc.utils.concurrent.memory;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+import static org.testng.Assert.*;
+
+/*
+ * The single-word operations against an array,
+ * the multi-word ones against a sequential model,
+ * and the invariants that concurrent multi-word updates must keep
+ */
+@Test
+public class KCasMemoryTest {
+
+    @Test
+    public void testSingleWordOpsAgainstArray() {
+        KCasMemory<Object> memory = new KCasMemory<>(100);
+        Object[] expected = new Object[memory.length()];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int k = 0; k < 20_000; ++k) {
+            int i = random.nextInt(expected.length);
+            Object x = new Object(), old = expected[i];
+            switch (random.nextInt(4)) {
+                case 0 -> memory.store(i, x);
+                case 1 -> assertSame(memory.fetchAndStore(i, x), old);
+                case 2 -> {
+                    assertFalse(memory.compareAndStore(i, new Object(), x));
+                    assertTrue(memory.compareAndStore(i, old, x));
+                }
+                default -> assertSame(memory.compareAndExchange(i, old, x), old);
+            }
+            expected[i] = x;
+            assertSame(memory.fetch(i), x);
+        }
+        List<Object> elements = new ArrayList<>();
+        memory.forEach(elements::add);
+        assertEquals(elements.toArray(), expected);
+    }
+
+    @Test
+    public void testMultiWordAgainstModel() {
+        KCasMemory<Object> memory = new KCasMemory<>(50);
+        Object[] expected = new Object[memory.length()];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int k = 0; k < 5_000; ++k) {
+            int[] indexes = random.ints(0, expected.length)
+                    .distinct().limit(random.nextInt(1, 6)).toArray();
+            Object[] witness = new Object[indexes.length], values = new Object[indexes.length];
+            boolean succeeds = random.nextBoolean();
+            for (int i = 0; i < indexes.length; ++i) {
+                witness[i] = expected[indexes[i]];
+                values[i] = new Object();
+            }
+            // a single mismatch fails the whole operation
+            if (!succeeds)
+                witness[random.nextInt(witness.length)] = new Object();
+            assertEquals(memory.compareAndStore(indexes, witness, values), succeeds);
+            if (succeeds) {
+                for (int i = 0; i < indexes.length; ++i)
+                    expected[indexes[i]] = values[i];
+            }
+            for (int i = 0; i < expected.length; ++i)
+                assertSame(memory.fetch(i), expected[i]);
+        }
+        assertTrue(memory.compareAndStore(new int[0], new Object[0], new Object[0]));
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        KCasMemory<Object> memory = new KCasMemory<>(10);
+        Object a = new Object();
+        memory.store(3, a);
+        assertThrows(IllegalArgumentException.class, () -> memory.compareAndStore(
+                new int[] {1, 2}, new Object[1], new Object[2]));
+        assertThrows(IllegalArgumentException.class, () -> memory.compareAndStore(
+                3, a, null, 3, a, null));
+        assertThrows(IndexOutOfBoundsException.class, () -> memory.compareAndStore(
+                3, a, null, 10, null, null));
+        assertThrows(IndexOutOfBoundsException.class, () -> memory.swap(9, 10));
+        // the rejected operations changed nothing
+        assertSame(memory.fetch(3), a);
+        memory.swap(3, 3);
+        assertSame(memory.fetch(3), a);
+    }
+
+    @Test
+    public void testReallocKeepsPrefix() {
+        ModifiableMemory<Integer> memory = new KCasMemory<>(1);
+        int prev = 1;
+        memory.store(0, 0);
+        for (int size : new int[] {5, 64, 1000, 3, 17}) {
+            memory = memory.realloc(size);
+            KCasMemory<Integer> kcas = (KCasMemory<Integer>) memory;
+            assertEquals(kcas.length(), size);
+            for (int i = 0; i < Math.min(prev, size); ++i)
+                assertEquals(kcas.fetch(i), (Integer) i);
+            for (int i = prev; i < size; ++i) {
+                assertNull(kcas.fetch(i));
+                kcas.store(i, i);
+            }
+            int last = size - 1;
+            Integer a = kcas.fetch(0), b = kcas.fetch(last);
+            assertTrue(kcas.compareAndStore(0, a, b, last, b, a));
+            kcas.swap(0, last);
+            assertEquals(kcas.fetch(last), (Integer) last);
+            assertThrows(IndexOutOfBoundsException.class, () -> kcas.fetch(size));
+            assertThrows(IndexOutOfBoundsException.class, () -> kcas.swap(0, size));
+            prev = size;
+        }
+    }
+
+    @Test
+    public void testConcurrentSwapsKeepPermutation() {
+        int n = 16, threads = 4, swaps = 20_000;
+        KCasMemory<Integer> memory = new KCasMemory<>(n);
+        for (int i = 0; i < n; ++i)
+            memory.store(i, i);
+        IntStream.range(0, threads).parallel().forEach(t -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int k = 0; k < swaps; ++k)
+                memory.swap(random.nextInt(n), random.nextInt(n));
+        });
+        int[] values = new int[n];
+        for (int i = 0; i < n; ++i)
+            values[i] = memory.fetch(i);
+        Arrays.sort(values);
+        assertEquals(values, IntStream.range(0, n).toArray());
+    }
+
+    @Test
+    public void testConcurrentTransfersKeepSum() {
+        int n = 8, threads = 4, transfers = 20_000;
+        KCasMemory<Long> memory = new KCasMemory<>(n);
+        for (int i = 0; i < n; ++i)
+            memory.store(i, 100L);
+        IntStream.range(0, threads).parallel().forEach(t -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int k = 0; k < transfers; ++k) {
+                int from = random.nextInt(n), to = (from + 1 + random.nextInt(n - 1)) % n;
+                for (;;) {
+                    Long a = memory.fetch(from), b = memory.fetch(to);
+                    if (memory.compareAndStore(from, a, a - 1, to, b, b + 1))
+                        break;
+                }
+            }
+        });
+        long sum = 0;
+        for (int i = 0; i < n; ++i)
+            sum += memory.fetch(i);
+        assertEquals(sum, 100L * n);
+    }
+}
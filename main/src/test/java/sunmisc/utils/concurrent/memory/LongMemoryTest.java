@@ -0,0 +1,210 @@
+package sunmisc.utils.concurrent.memory;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import static org.testng.Assert.*;
+
+/*
+ * The primitive views of every memory against a long[] whose elements
+ * are narrowed like the memory's: wrapped on writes, sign-extended on reads
+ */
+@Test
+public class LongMemoryTest {
+
+    private static final int N = 300;
+
+    @DataProvider
+    public Object[][] memories() {
+        return new Object[][] {
+                {"bitwise byte", 8, (Supplier<LongMemory>) () -> bitwise(byte.class)},
+                {"bitwise short", 16, (Supplier<LongMemory>) () -> bitwise(short.class)},
+                {"bitwise int", 32, (Supplier<LongMemory>) () -> bitwise(int.class)},
+                {"bitwise long", 64, (Supplier<LongMemory>) () -> bitwise(long.class)},
+                {"native int", 32, (Supplier<LongMemory>) () -> offHeap(int.class)},
+                {"native long", 64, (Supplier<LongMemory>) () -> offHeap(long.class)},
+                {"padded", 64, (Supplier<LongMemory>) () -> new PaddedLongMemory(N)},
+                {"paged", 64, (Supplier<LongMemory>) () -> new PagedBitwiseMemory(N, 4, 0L)}
+        };
+    }
+
+    @DataProvider
+    public Object[][] narrowMemories() {
+        return new Object[][] {
+                {"bitwise byte", 8, (Supplier<LongMemory>) () -> bitwise(byte.class)},
+                {"bitwise short", 16, (Supplier<LongMemory>) () -> bitwise(short.class)},
+                {"bitwise int", 32, (Supplier<LongMemory>) () -> bitwise(int.class)},
+                {"native int", 32, (Supplier<LongMemory>) () -> offHeap(int.class)}
+        };
+    }
+
+    private static <E extends Number> LongMemory bitwise(Class<E> type) {
+        BitwiseSegmentMemory<E> memory = new BitwiseSegmentMemory<>(type);
+        memory.realloc(N);
+        return memory;
+    }
+
+    private static <E extends Number> LongMemory offHeap(Class<E> type) {
+        NativeSegmentMemory<E> memory = new NativeSegmentMemory<>(type);
+        memory.realloc(N);
+        return memory;
+    }
+
+    private static long narrow(long x, int bits) {
+        return x << (64 - bits) >> (64 - bits);
+    }
+
+    private static void close(Object memory) {
+        if (memory instanceof AutoCloseable c) {
+            try {
+                c.close();
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    @Test(dataProvider = "memories")
+    public void testLongOpsAgainstArray(String name, int bits, Supplier<LongMemory> factory) {
+        LongMemory memory = factory.get();
+        try {
+            long[] expected = new long[memory.length()];
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int k = 0; k < 20_000; ++k) {
+                int i = random.nextInt(expected.length);
+                long x = random.nextLong(), old = expected[i];
+                expected[i] = narrow(switch (random.nextInt(8)) {
+                    case 0 -> {
+                        memory.storeLong(i, x);
+                        yield x;
+                    }
+                    case 1 -> {
+                        assertEquals(memory.fetchAndStoreLong(i, x), old, name);
+                        yield x;
+                    }
+                    case 2 -> {
+                        assertEquals(memory.fetchAndAddLong(i, x), old, name);
+                        yield old + x;
+                    }
+                    case 3 -> {
+                        assertEquals(memory.fetchAndBitwiseOrLong(i, x), old, name);
+                        yield old | x;
+                    }
+                    case 4 -> {
+                        assertEquals(memory.fetchAndBitwiseAndLong(i, x), old, name);
+                        yield old & x;
+                    }
+                    case 5 -> {
+                        assertEquals(memory.fetchAndBitwiseXorLong(i, x), old, name);
+                        yield old ^ x;
+                    }
+                    case 6 -> {
+                        assertFalse(memory.compareAndStoreLong(i, old + 1, x), name);
+                        assertTrue(memory.compareAndStoreLong(i, old, x), name);
+                        yield x;
+                    }
+                    default -> {
+                        assertEquals(memory.compareAndExchangeLong(i, old, x), old, name);
+                        yield x;
+                    }
+                }, bits);
+                assertEquals(memory.fetchLong(i), expected[i], name);
+            }
+            for (int i = 0; i < expected.length; ++i)
+                assertEquals(memory.fetchLong(i), expected[i], name);
+        } finally {
+            close(memory);
+        }
+    }
+
+    @Test(dataProvider = "narrowMemories")
+    public void testExpectedOutOfRangeMatchesNothing(String name, int bits, Supplier<LongMemory> factory) {
+        LongMemory memory = factory.get();
+        try {
+            long wide = 1L << bits, max = (1L << (bits - 1)) - 1;
+            // the element is 0, a cast of the expected value would match it
+            assertFalse(memory.compareAndStoreLong(0, wide, 7), name);
+            assertEquals(memory.compareAndExchangeLong(0, wide, 7), 0L, name);
+            assertEquals(memory.fetchLong(0), 0L, name);
+
+            memory.storeLong(1, -1);
+            assertFalse(memory.compareAndStoreLong(1, wide - 1, 7), name);
+            assertTrue(memory.compareAndStoreLong(1, -1, 7), name);
+
+            memory.storeLong(2, max);
+            assertEquals(memory.compareAndExchangeLong(2, max, max + 1), max, name);
+            // the new value is narrowed like a store
+            assertEquals(memory.fetchLong(2), -max - 1, name);
+        } finally {
+            close(memory);
+        }
+    }
+
+    @Test(dataProvider = "memories")
+    public void testIntViewAgainstArray(String name, int bits, Supplier<LongMemory> factory) {
+        LongMemory longs = factory.get();
+        try {
+            if (!(longs instanceof IntMemory memory))
+                return;
+            int[] expected = new int[memory.length()];
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int k = 0; k < 20_000; ++k) {
+                int i = random.nextInt(expected.length);
+                int x = random.nextInt(), old = expected[i];
+                expected[i] = (int) narrow(switch (random.nextInt(5)) {
+                    case 0 -> {
+                        memory.storeInt(i, x);
+                        yield x;
+                    }
+                    case 1 -> {
+                        assertEquals(memory.fetchAndStoreInt(i, x), old, name);
+                        yield x;
+                    }
+                    case 2 -> {
+                        // a wider element keeps the carry, the int view only casts
+                        if (bits > 32 && (long) old + x != old + x) {
+                            memory.storeInt(i, x);
+                            yield x;
+                        }
+                        assertEquals(memory.fetchAndAddInt(i, x), old, name);
+                        yield old + x;
+                    }
+                    case 3 -> {
+                        assertEquals(memory.fetchAndBitwiseXorInt(i, x), old, name);
+                        yield old ^ x;
+                    }
+                    default -> {
+                        assertTrue(memory.compareAndStoreInt(i, old, x), name);
+                        yield x;
+                    }
+                }, Math.min(bits, 32));
+                assertEquals(memory.fetchInt(i), expected[i], name);
+            }
+        } finally {
+            close(longs);
+        }
+    }
+
+    @Test(dataProvider = "memories")
+    public void testBoundsAtLastIndex(String name, int bits, Supplier<LongMemory> factory) {
+        LongMemory memory = factory.get();
+        try {
+            int last = memory.length() - 1;
+            assertTrue(last >= N - 1, name);
+            memory.storeLong(last, 5);
+            assertEquals(memory.fetchAndAddLong(last, 1), 5L, name);
+            assertEquals(memory.fetchLong(last), 6L, name);
+
+            int length = memory.length();
+            assertThrows(IndexOutOfBoundsException.class, () -> memory.fetchLong(length));
+            assertThrows(IndexOutOfBoundsException.class, () -> memory.storeLong(length, 1));
+            assertThrows(IndexOutOfBoundsException.class, () -> memory.compareAndStoreLong(length, 0, 1));
+            assertThrows(IndexOutOfBoundsException.class, () -> memory.fetchLong(-1));
+        } finally {
+            close(memory);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package sunmisc.utils.concurrent.memory;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.testng.Assert.*;
+
+/*
+ * Every split must keep the elements and their order,
+ * the geometric layouts split at segment starts
+ */
+@Test
+public class MemorySpliteratorTest {
+
+    @DataProvider
+    public Object[][] memories() {
+        return new Object[][] {
+                {"array", (Supplier<ModifiableMemory<Integer>>) () -> new ArrayMemory<>(1)},
+                {"reference segments", (Supplier<ModifiableMemory<Integer>>) ReferenceSegmentMemory::new},
+                {"immutable segments", (Supplier<ModifiableMemory<Integer>>) () ->
+                        new ImmutableSegmentsMemory<>(1)},
+                {"bitwise", (Supplier<ModifiableMemory<Integer>>) () ->
+                        new BitwiseSegmentMemory<>(int.class)},
+                {"paged", (Supplier<ModifiableMemory<Integer>>) () -> new PagedMemory<>(1, 4, null)}
+        };
+    }
+
+    private static ModifiableMemory<Integer> filled(ModifiableMemory<Integer> memory, int size) {
+        memory = memory.realloc(size);
+        for (int i = 0, n = memory.length(); i < n; ++i)
+            memory.store(i, i);
+        return memory;
+    }
+
+    private static void leaves(Spliterator<Integer> s, List<Spliterator<Integer>> out) {
+        Spliterator<Integer> prefix = s.trySplit();
+        if (prefix == null) {
+            out.add(s);
+            return;
+        }
+        long n = prefix.estimateSize() + s.estimateSize();
+        assertTrue(prefix.estimateSize() > 0 && s.estimateSize() > 0);
+        leaves(prefix, out);
+        leaves(s, out);
+        assertTrue(n >= 2);
+    }
+
+    @Test(dataProvider = "memories")
+    public void testSplitsKeepOrder(String name, Supplier<ModifiableMemory<Integer>> factory) {
+        for (int size : new int[] {1, 2, 3, 63, 64, 1000}) {
+            ModifiableMemory<Integer> memory = filled(factory.get(), size);
+            int n = memory.length();
+            Spliterator<Integer> root = memory.spliterator();
+            assertEquals(root.estimateSize(), n, name);
+            assertTrue(root.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED), name);
+            assertTrue(root.hasCharacteristics(Spliterator.ORDERED), name);
+
+            List<Spliterator<Integer>> leaves = new ArrayList<>();
+            leaves(root, leaves);
+            List<Integer> seen = new ArrayList<>();
+            for (Spliterator<Integer> leaf : leaves) {
+                assertEquals(leaf.estimateSize(), 1L, name);
+                assertTrue(leaf.tryAdvance(seen::add), name);
+                assertFalse(leaf.tryAdvance(seen::add), name);
+                assertEquals(leaf.estimateSize(), 0L, name);
+            }
+            assertEquals(seen, memory.stream().collect(Collectors.toList()), name);
+            assertEquals(seen.size(), n, name);
+            for (int i = 0; i < n; ++i)
+                assertEquals(seen.get(i), (Integer) i, name);
+        }
+    }
+
+    @Test(dataProvider = "memories")
+    public void testForkJoinTraversal(String name, Supplier<ModifiableMemory<Integer>> factory) {
+        ModifiableMemory<Integer> memory = filled(factory.get(), 20_000);
+        int n = memory.length();
+        long expected = (long) n * (n - 1) / 2;
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            ConcurrentLinkedQueue<Integer> visited = new ConcurrentLinkedQueue<>();
+            memory.parallelForEach(pool, visited::add);
+            assertEquals(visited.size(), n, name);
+            assertEquals(visited.stream().mapToLong(x -> x).sum(), expected, name);
+
+            assertEquals((long) memory.reduce(pool, 0L, (s, x) -> s + x, Long::sum), expected, name);
+            // the batches are merged in index order
+            List<Integer> ordered = memory.reduce(pool, List.of(),
+                    (list, x) -> {
+                        List<Integer> r = new ArrayList<>(list);
+                        r.add(x);
+                        return r;
+                    },
+                    (a, b) -> {
+                        List<Integer> r = new ArrayList<>(a);
+                        r.addAll(b);
+                        return r;
+                    });
+            assertEquals(ordered, memory.stream().collect(Collectors.toList()), name);
+            assertEquals(memory.stream().parallel().mapToLong(x -> x).sum(), expected, name);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(dataProvider = "memories")
+    public void testLengthAfterRealloc(String name, Supplier<ModifiableMemory<Integer>> factory) {
+        ModifiableMemory<Integer> memory = filled(factory.get(), 1000);
+        int kept = memory.length();
+        for (int size : new int[] {17, 3000, 5}) {
+            memory = memory.realloc(size);
+            int n = memory.length();
+            assertTrue(n >= size, name);
+            kept = Math.min(kept, n - 1);
+            memory.store(n - 1, -1);
+            List<Integer> all = memory.stream().collect(Collectors.toList());
+            assertEquals(all.size(), n, name);
+            // the growth and the shrink keep the prefix
+            for (int i = 0; i < kept; ++i)
+                assertEquals(all.get(i), (Integer) i, name);
+            assertEquals(all.get(n - 1), (Integer) (-1), name);
+        }
+    }
+
+    @Test
+    public void testSegmentedSplitFromOrigin() {
+        // the segment k of a bitwise memory starts at 2^k
+        BitwiseSegmentMemory<Integer> bitwise = new BitwiseSegmentMemory<>(int.class);
+        bitwise.realloc(1 << 10);
+        Spliterator<Integer> s = bitwise.spliterator();
+        for (int k = 9; k >= 1; --k) {
+            Spliterator<Integer> prefix = s.trySplit();
+            assertEquals(s.estimateSize(), 1L << k);
+            s = prefix;
+        }
+        // the segment k of a reference memory starts at 2^k - 1
+        ReferenceSegmentMemory<Integer> reference = new ReferenceSegmentMemory<>();
+        reference.realloc((1 << 10) - 1);
+        int n = reference.length();
+        Spliterator<Integer> r = new MemorySpliterator<>(reference, 0, n, 1);
+        Spliterator<Integer> prefix = r.trySplit();
+        assertEquals(prefix.estimateSize() + 1, Integer.highestOneBit(n));
+    }
+
+    @Test
+    public void testFlatSplitInTheMiddle() {
+        ArrayMemory<Integer> memory = new ArrayMemory<>(100);
+        Spliterator<Integer> s = new MemorySpliterator<>(memory, 10, 100, MemorySpliterator.FLAT);
+        Spliterator<Integer> prefix = s.trySplit();
+        assertEquals(prefix.estimateSize(), 45L);
+        assertEquals(s.estimateSize(), 45L);
+        Spliterator<Integer> single = new MemorySpliterator<>(memory, 99, 100, MemorySpliterator.FLAT);
+        assertNull(single.trySplit());
+    }
+
+    @Test
+    public void testShrinkDuringTraversal() {
+        ReferenceSegmentMemory<Integer> memory = new ReferenceSegmentMemory<>();
+        filled(memory, 1000);
+        Spliterator<Integer> s = memory.spliterator();
+        assertTrue(s.tryAdvance(x -> memory.realloc(10)));
+        assertThrows(IndexOutOfBoundsException.class, () -> s.forEachRemaining(x -> { }));
+    }
+}
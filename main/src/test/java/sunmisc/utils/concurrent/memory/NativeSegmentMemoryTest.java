@@ -0,0 +1,195 @@
+package sunmisc.utils.concurrent.memory;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.testng.Assert.*;
+
+/*
+ * The boxed and range operations against a long[],
+ * the primitive views are covered by LongMemoryTest
+ */
+@Test
+public class NativeSegmentMemoryTest {
+
+    @DataProvider
+    public Object[][] types() {
+        return new Object[][] {{int.class, 32}, {long.class, 64}};
+    }
+
+    private static long narrow(long x, int bits) {
+        return x << (64 - bits) >> (64 - bits);
+    }
+
+    @Test(dataProvider = "types")
+    public <E extends Number> void testBoxedOpsAgainstArray(Class<E> type, int bits) {
+        try (NativeSegmentMemory<E> memory = new NativeSegmentMemory<>(type)) {
+            memory.realloc(300);
+            long[] expected = new long[memory.length()];
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int k = 0; k < 20_000; ++k) {
+                int i = random.nextInt(expected.length);
+                long x = narrow(random.nextLong(), bits), old = expected[i];
+                E boxed = box(type, x);
+                expected[i] = narrow(switch (random.nextInt(6)) {
+                    case 0 -> {
+                        memory.store(i, boxed);
+                        yield x;
+                    }
+                    case 1 -> {
+                        assertEquals(memory.fetchAndStore(i, boxed).longValue(), old);
+                        yield x;
+                    }
+                    case 2 -> {
+                        assertEquals(memory.fetchAndAdd(i, boxed).longValue(), old);
+                        yield old + x;
+                    }
+                    case 3 -> {
+                        assertEquals(memory.fetchAndBitwiseOr(i, boxed).longValue(), old);
+                        yield old | x;
+                    }
+                    case 4 -> {
+                        assertEquals(memory.fetchAndBitwiseAnd(i, boxed).longValue(), old);
+                        yield old & x;
+                    }
+                    default -> {
+                        assertEquals(memory.compareAndExchange(i, box(type, old), boxed).longValue(), old);
+                        yield x;
+                    }
+                }, bits);
+                assertEquals(memory.fetch(i).longValue(), expected[i]);
+            }
+            List<Long> elements = new ArrayList<>();
+            memory.forEach(x -> elements.add(x.longValue()));
+            assertEquals(elements.size(), expected.length);
+            for (int i = 0; i < expected.length; ++i)
+                assertEquals((long) elements.get(i), expected[i]);
+        }
+    }
+
+    @Test(dataProvider = "types")
+    public <E extends Number> void testRangesAgainstArray(Class<E> type, int bits) {
+        try (NativeSegmentMemory<E> memory = new NativeSegmentMemory<>(type)) {
+            memory.realloc(1000);
+            int n = memory.length();
+            long[] expected = new long[n];
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int k = 0; k < 200; ++k) {
+                int from = random.nextInt(n), to = random.nextInt(from, n + 1);
+                long x = narrow(random.nextLong(), bits);
+                if (random.nextBoolean()) {
+                    memory.fillLong(from, to, x);
+                    for (int i = from; i < to; ++i)
+                        expected[i] = x;
+                } else {
+                    long[] src = new long[to - from + 2];
+                    for (int i = 0; i < src.length; ++i)
+                        src[i] = narrow(random.nextLong(), bits);
+                    memory.storeRangeLong(from, src, 1, to - from);
+                    System.arraycopy(src, 1, expected, from, to - from);
+                }
+                long[] dst = new long[n + 1];
+                memory.fetchRangeLong(0, dst, 1, n);
+                for (int i = 0; i < n; ++i)
+                    assertEquals(dst[i + 1], expected[i]);
+            }
+            long[] tail = new long[1];
+            memory.fetchRangeLong(n - 1, tail, 0, 1);
+            assertEquals(tail[0], expected[n - 1]);
+            assertThrows(IndexOutOfBoundsException.class,
+                    () -> memory.fetchRangeLong(n - 1, new long[2], 0, 2));
+            assertThrows(IndexOutOfBoundsException.class,
+                    () -> memory.fillLong(0, n + 1, 1));
+        }
+    }
+
+    @Test(dataProvider = "types")
+    public <E extends Number> void testLastIndexAfterRealloc(Class<E> type, int bits) {
+        try (NativeSegmentMemory<E> memory = new NativeSegmentMemory<>(type)) {
+            for (int size : new int[] {5, 64, 1000, 3, 17}) {
+                memory.realloc(size);
+                int last = memory.length() - 1;
+                assertTrue(last >= size - 1);
+
+                memory.storeLong(last, 5);
+                assertEquals(memory.fetchAndAddLong(last, 1), 5L);
+                assertEquals(memory.fetch(last).longValue(), 6L);
+
+                int length = memory.length();
+                assertThrows(IndexOutOfBoundsException.class,
+                        () -> memory.fetch(length));
+                assertThrows(IndexOutOfBoundsException.class,
+                        () -> memory.storeLong(length, 1));
+            }
+        }
+    }
+
+    @Test(dataProvider = "types")
+    public <E extends Number> void testReallocKeepsPrefix(Class<E> type, int bits) {
+        try (NativeSegmentMemory<E> memory = new NativeSegmentMemory<>(type)) {
+            memory.realloc(100);
+            for (int i = 0; i < 100; ++i)
+                memory.storeLong(i, i + 1);
+            memory.realloc(10);
+            assertTrue(memory.length() < 100);
+            memory.realloc(100);
+            for (int i = 0; i < 10; ++i)
+                assertEquals(memory.fetchLong(i), i + 1);
+            // areas dropped by the shrink come back zeroed
+            for (int i = 16; i < memory.length(); ++i)
+                assertEquals(memory.fetchLong(i), 0L);
+            assertEquals(StreamSupport.stream(memory.spliterator(), false)
+                    .count(), memory.length());
+        }
+    }
+
+    @Test
+    public void testClosedMemoryFails() {
+        NativeSegmentMemory<Long> memory = new NativeSegmentMemory<>(long.class);
+        memory.realloc(10);
+        memory.close();
+        assertThrows(IndexOutOfBoundsException.class, () -> memory.fetchLong(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> memory.storeLong(9, 1));
+    }
+
+    @Test
+    public void testMappedMemorySurvivesReopen() throws Exception {
+        Path directory = Files.createTempDirectory("native-memory");
+        try {
+            try (NativeSegmentMemory<Long> memory = NativeSegmentMemory.map(long.class, directory)) {
+                memory.realloc(100);
+                for (int i = 0; i < memory.length(); ++i)
+                    memory.storeLong(i, -i);
+                memory.force();
+            }
+            try (NativeSegmentMemory<Long> memory = NativeSegmentMemory.map(long.class, directory)) {
+                assertTrue(memory.length() >= 100);
+                for (int i = 0; i < memory.length(); ++i)
+                    assertEquals(memory.fetchLong(i), -i);
+                memory.realloc(10);
+                memory.realloc(100);
+                for (int i = 16; i < memory.length(); ++i)
+                    assertEquals(memory.fetchLong(i), 0L);
+            }
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (Path file : files.collect(Collectors.toList()))
+                    Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Number> E box(Class<E> type, long x) {
+        return (E) (type == int.class ? (Number) (int) x : (Number) x);
+    }
+}
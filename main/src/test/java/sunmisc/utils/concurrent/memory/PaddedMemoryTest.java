@@ -0,0 +1,120 @@
+package sunmisc.utils.concurrent.memory;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.testng.Assert.*;
+
+/*
+ * The padded layouts must behave like the dense arrays
+ * whatever the stride, the primitive long operations
+ * of PaddedLongMemory are covered by LongMemoryTest
+ */
+@Test
+public class PaddedMemoryTest {
+
+    @DataProvider
+    public Object[][] strides() {
+        return new Object[][] {
+                {1}, {3}, {PaddedArrayMemory.DEFAULT_STRIDE}
+        };
+    }
+
+    @Test(dataProvider = "strides")
+    public void testArrayOpsAgainstArray(int stride) {
+        PaddedArrayMemory<Object> memory = new PaddedArrayMemory<>(100, stride);
+        assertEquals(memory.stride(), stride);
+        Object[] expected = new Object[memory.length()];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int k = 0; k < 20_000; ++k) {
+            int i = random.nextInt(expected.length);
+            Object x = new Object(), old = expected[i];
+            switch (random.nextInt(4)) {
+                case 0 -> memory.store(i, x);
+                case 1 -> assertSame(memory.fetchAndStore(i, x), old);
+                case 2 -> {
+                    assertFalse(memory.compareAndStore(i, new Object(), x));
+                    assertTrue(memory.compareAndStore(i, old, x));
+                }
+                default -> assertSame(memory.compareAndExchange(i, old, x), old);
+            }
+            expected[i] = x;
+            assertSame(memory.fetch(i), x);
+        }
+        List<Object> elements = new ArrayList<>();
+        memory.forEach(elements::add);
+        assertEquals(elements.toArray(), expected);
+    }
+
+    @Test(dataProvider = "strides")
+    public void testArrayReallocKeepsPrefix(int stride) {
+        PaddedArrayMemory<Integer> memory = new PaddedArrayMemory<>(0, stride);
+        assertThrows(IndexOutOfBoundsException.class, () -> memory.fetch(0));
+        ModifiableMemory<Integer> m = memory;
+        int prev = 0;
+        for (int size : new int[] {5, 64, 1000, 3, 17}) {
+            m = m.realloc(size);
+            assertEquals(m.length(), size);
+            for (int i = 0; i < Math.min(prev, size); ++i)
+                assertEquals(m.fetch(i), (Integer) i);
+            for (int i = prev; i < size; ++i) {
+                assertNull(m.fetch(i));
+                m.store(i, i);
+            }
+            ModifiableMemory<Integer> last = m;
+            assertEquals(last.fetch(size - 1), (Integer) (size - 1));
+            assertThrows(IndexOutOfBoundsException.class, () -> last.fetch(size));
+            assertThrows(IndexOutOfBoundsException.class, () -> last.store(size, 0));
+            assertThrows(IndexOutOfBoundsException.class, () -> last.fetch(-1));
+            prev = size;
+        }
+    }
+
+    @Test(dataProvider = "strides")
+    public void testLongReallocKeepsPrefix(int stride) {
+        PaddedLongMemory memory = new PaddedLongMemory(0, stride);
+        assertEquals(memory.stride(), stride);
+        ModifiableMemory<Long> m = memory;
+        int prev = 0;
+        for (int size : new int[] {5, 64, 1000, 3, 17}) {
+            m = m.realloc(size);
+            PaddedLongMemory longs = (PaddedLongMemory) m;
+            assertEquals(longs.length(), size);
+            for (int i = 0; i < Math.min(prev, size); ++i)
+                assertEquals(longs.fetchLong(i), -i);
+            for (int i = prev; i < size; ++i) {
+                assertEquals(longs.fetchLong(i), 0L);
+                longs.storeLong(i, -i);
+            }
+            assertEquals(longs.fetchAndAddLong(size - 1, 0), 1L - size);
+            assertThrows(IndexOutOfBoundsException.class, () -> longs.fetchLong(size));
+            assertThrows(IndexOutOfBoundsException.class, () -> longs.storeLong(size, 0));
+            prev = size;
+        }
+    }
+
+    @Test
+    public void testNeighboursAreIndependent() {
+        PaddedLongMemory memory = new PaddedLongMemory(4, 2);
+        memory.fillLong(0, 4, -1L);
+        memory.storeLong(1, 0L);
+        long[] all = new long[4];
+        memory.fetchRangeLong(0, all, 0, 4);
+        assertEquals(all, new long[] {-1, 0, -1, -1});
+        assertEquals(memory.toString(), "[-1, 0, -1, -1]");
+    }
+
+    @Test
+    public void testInvalidLayout() {
+        assertThrows(IllegalArgumentException.class, () -> new PaddedArrayMemory<>(-1));
+        assertThrows(IllegalArgumentException.class, () -> new PaddedArrayMemory<>(4, 0));
+        assertThrows(IllegalArgumentException.class, () -> new PaddedLongMemory(-1));
+        assertThrows(IllegalArgumentException.class, () -> new PaddedLongMemory(4, 0));
+        assertThrows(ArithmeticException.class,
+                () -> new PaddedLongMemory(Integer.MAX_VALUE / 2, 16));
+    }
+}
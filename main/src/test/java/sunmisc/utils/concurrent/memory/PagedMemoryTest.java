@@ -0,0 +1,183 @@
+package sunmisc.utils.concurrent.memory;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.testng.Assert.*;
+
+/*
+ * The paged memories against dense arrays pre-filled with the default value,
+ * a realloc must behave like Arrays.copyOf of such an array
+ */
+@Test
+public class PagedMemoryTest {
+
+    private static final String DEFAULT = "default";
+    private static final long DEFAULT_LONG = 7L;
+
+    @Test
+    public void testOpsAgainstArray() {
+        PagedMemory<String> memory = new PagedMemory<>(1000, 4, DEFAULT);
+        String[] expected = new String[memory.length()];
+        Arrays.fill(expected, DEFAULT);
+        assertEquals(memory.residentPages(), 0);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int k = 0; k < 5_000; ++k) {
+            int i = random.nextInt(expected.length);
+            String x = random.nextInt(4) == 0 ? DEFAULT : "" + random.nextInt(), old = expected[i];
+            switch (random.nextInt(3)) {
+                case 0 -> memory.store(i, x);
+                case 1 -> assertSame(memory.fetchAndStore(i, x), old);
+                default -> {
+                    assertFalse(memory.compareAndStore(i, "other", x));
+                    assertTrue(memory.compareAndStore(i, old, x));
+                }
+            }
+            expected[i] = x;
+            assertSame(memory.fetch(i), x);
+        }
+        List<String> elements = new ArrayList<>();
+        memory.forEach(elements::add);
+        assertEquals(elements.toArray(), expected);
+    }
+
+    @Test
+    public void testDefaultWritesAllocateNothing() {
+        PagedMemory<String> memory = new PagedMemory<>(100, 4, DEFAULT);
+        memory.store(5, DEFAULT);
+        memory.fetchAndStore(20, DEFAULT);
+        assertFalse(memory.compareAndStore(40, "other", "x"));
+        assertEquals(memory.residentPages(), 0);
+        memory.store(99, "x");
+        assertTrue(memory.compareAndStore(0, DEFAULT, "y"));
+        assertEquals(memory.residentPages(), 2);
+
+        PagedBitwiseMemory longs = new PagedBitwiseMemory(100, 4, DEFAULT_LONG);
+        longs.storeLong(5, DEFAULT_LONG);
+        longs.fetchAndAddLong(6, 0);
+        longs.fetchAndBitwiseOrLong(7, DEFAULT_LONG);
+        assertEquals(longs.residentPages(), 0);
+        longs.fillLong(0, 100, DEFAULT_LONG);
+        assertEquals(longs.fetchLong(99), DEFAULT_LONG);
+        longs.fetchAndAddLong(99, 1);
+        assertEquals(longs.residentPages(), 1);
+    }
+
+    @Test
+    public void testReallocLikeCopyOf() {
+        ModifiableMemory<String> memory = new PagedMemory<>(100, 4, DEFAULT);
+        String[] expected = new String[100];
+        Arrays.fill(expected, DEFAULT);
+        for (int i = 0; i < 100; i += 3)
+            memory.store(i, expected[i] = "" + i);
+        for (int size : new int[] {37, 200, 3, 64, 17, 1000}) {
+            ModifiableMemory<String> grown = memory.realloc(size);
+            String[] copy = Arrays.copyOf(expected, size);
+            for (int i = expected.length; i < size; ++i)
+                copy[i] = DEFAULT;
+            assertEquals(grown.length(), size);
+            for (int i = 0; i < size; ++i)
+                assertEquals(grown.fetch(i), copy[i], "size " + size + " index " + i);
+            // the bounds move with the length
+            grown.store(size - 1, "last");
+            assertEquals(grown.fetch(size - 1), "last");
+            assertThrows(IndexOutOfBoundsException.class, () -> grown.fetch(size));
+            assertThrows(IndexOutOfBoundsException.class, () -> grown.store(size, "x"));
+            copy[size - 1] = "last";
+
+            // the copy and the original do not share pages
+            assertEquals(memory.fetch(0), expected[0]);
+            memory.store(0, "original");
+            assertEquals(grown.fetch(0), copy[0]);
+            expected[0] = "original";
+
+            memory = grown;
+            expected = copy;
+        }
+    }
+
+    @Test
+    public void testBitwiseOpsAgainstArray() {
+        PagedBitwiseMemory memory = new PagedBitwiseMemory(1000, 4, DEFAULT_LONG);
+        long[] expected = new long[memory.length()];
+        Arrays.fill(expected, DEFAULT_LONG);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int k = 0; k < 5_000; ++k) {
+            int i = random.nextInt(expected.length);
+            long x = random.nextLong(), old = expected[i];
+            expected[i] = switch (random.nextInt(6)) {
+                case 0 -> {
+                    memory.storeLong(i, x);
+                    yield x;
+                }
+                case 1 -> {
+                    assertEquals(memory.fetchAndAddLong(i, x), old);
+                    yield old + x;
+                }
+                case 2 -> {
+                    assertEquals(memory.fetchAndBitwiseXorLong(i, x), old);
+                    yield old ^ x;
+                }
+                case 3 -> {
+                    assertEquals(memory.fetchAndBitwiseAnd(i, x).longValue(), old);
+                    yield old & x;
+                }
+                case 4 -> {
+                    assertTrue(memory.compareAndStoreLong(i, old, x));
+                    yield x;
+                }
+                default -> {
+                    assertEquals(memory.compareAndExchange(i, old, x).longValue(), old);
+                    yield x;
+                }
+            };
+            assertEquals(memory.fetchLong(i), expected[i]);
+        }
+        long[] all = new long[expected.length];
+        memory.fetchRangeLong(0, all, 0, all.length);
+        assertEquals(all, expected);
+    }
+
+    @Test
+    public void testBitwiseReallocLikeCopyOf() {
+        ModifiableMemory<Long> memory = new PagedBitwiseMemory(100, 4, DEFAULT_LONG);
+        long[] expected = new long[100];
+        Arrays.fill(expected, DEFAULT_LONG);
+        for (int i = 0; i < 100; i += 3)
+            ((PagedBitwiseMemory) memory).storeLong(i, expected[i] = -i);
+        for (int size : new int[] {37, 200, 3, 64, 17, 1000}) {
+            PagedBitwiseMemory grown = (PagedBitwiseMemory) memory.realloc(size);
+            long[] copy = Arrays.copyOf(expected, size);
+            for (int i = expected.length; i < size; ++i)
+                copy[i] = DEFAULT_LONG;
+            assertEquals(grown.length(), size);
+            long[] all = new long[size];
+            grown.fetchRangeLong(0, all, 0, size);
+            assertEquals(all, copy, "size " + size);
+
+            assertEquals(grown.fetchAndAddLong(size - 1, 1), copy[size - 1]);
+            ++copy[size - 1];
+            assertThrows(IndexOutOfBoundsException.class, () -> grown.fetchLong(size));
+            assertThrows(IndexOutOfBoundsException.class, () -> grown.storeLong(size, 1));
+
+            ((PagedBitwiseMemory) memory).storeLong(0, 42);
+            assertEquals(grown.fetchLong(0), copy[0]);
+
+            memory = grown;
+            expected = copy;
+        }
+    }
+
+    @Test
+    public void testInvalidGeometry() {
+        assertThrows(IllegalArgumentException.class, () -> new PagedMemory<>(-1));
+        assertThrows(IllegalArgumentException.class, () -> new PagedMemory<>(10, 31, null));
+        assertThrows(IllegalArgumentException.class, () -> new PagedBitwiseMemory(10, -1, 0L));
+        assertEquals(new PagedMemory<>(0).length(), 0);
+        assertEquals(new PagedBitwiseMemory(10, 0, 0L).pageSize(), 1);
+    }
+}
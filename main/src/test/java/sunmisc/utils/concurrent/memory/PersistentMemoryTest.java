@@ -0,0 +1,74 @@
+package sunmisc.utils.concurrent.memory;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.testng.Assert.*;
+
+@Test
+public class PersistentMemoryTest {
+
+    /** The number of elements, large enough for three levels of the trie. */
+    private static final int N = Integer.getInteger("n", 40_000);
+
+    @Test
+    public void testSnapshotIsolation() {
+        PersistentMemory<Integer> v0 = PersistentMemory.of(N);
+        PersistentMemory<Integer> v1 = v0;
+        for (int i = 0; i < N; ++i)
+            v1 = v1.update(i, i);
+        PersistentMemory<Integer> v2 = v1.update(N / 2, -1);
+
+        assertEquals(v0.length(), N);
+        assertNull(v0.fetch(N / 2));
+        assertEquals(v1.fetch(N / 2).intValue(), N / 2);
+        assertEquals(v2.fetch(N / 2).intValue(), -1);
+        for (int i = 0; i < N; ++i)
+            assertEquals(v1.fetch(i).intValue(), i);
+    }
+
+    @Test
+    public void testReallocClearsDroppedTail() {
+        PersistentMemory<Integer> v = PersistentMemory.empty();
+        for (int i = 0; i < N; ++i)
+            v = v.append(i);
+        PersistentMemory<Integer> shrunk = v.realloc(33).realloc(N);
+
+        assertEquals(v.fetch(N - 1).intValue(), N - 1);
+        for (int i = 0; i < 33; ++i)
+            assertEquals(shrunk.fetch(i).intValue(), i);
+        for (int i = 33; i < N; ++i)
+            assertNull(shrunk.fetch(i));
+    }
+
+    @Test
+    public void testTransientMatchesPersistent() {
+        PersistentMemory<Integer> origin = PersistentMemory.of(N);
+        PersistentMemory.Transient<Integer> batch = origin.asTransient();
+        PersistentMemory<Integer> expected = origin;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int k = 0; k < N; ++k) {
+            int i = random.nextInt(N);
+            batch.store(i, k);
+            expected = expected.update(i, k);
+        }
+        PersistentMemory<Integer> actual = batch.persistent();
+
+        List<Integer> a = new ArrayList<>(), e = new ArrayList<>();
+        actual.forEach(a::add);
+        expected.forEach(e::add);
+        assertEquals(a, e);
+        origin.forEach(x -> assertNull(x));
+        assertThrows(IllegalStateException.class, () -> batch.store(0, 0));
+    }
+
+    @Test
+    public void testOutOfBounds() {
+        PersistentMemory<Integer> v = PersistentMemory.of(10);
+        assertThrows(IndexOutOfBoundsException.class, () -> v.fetch(10));
+        assertThrows(IndexOutOfBoundsException.class, () -> v.update(-1, 0));
+    }
+}
@@ -0,0 +1,210 @@
+package sunmisc.utils.concurrent.memory;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+import static org.testng.Assert.*;
+
+/*
+ * The values against an int[] and the stamps against a count of writes,
+ * every write must advance the stamp by one
+ */
+@Test
+public class StampedMemoryTest {
+
+    @Test
+    public void testIntOpsAgainstArray() {
+        StampedMemory memory = new StampedMemory(300);
+        int[] expected = new int[memory.length()], stamps = new int[memory.length()];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int k = 0; k < 20_000; ++k) {
+            int i = random.nextInt(expected.length);
+            int x = random.nextInt(), old = expected[i];
+            expected[i] = switch (random.nextInt(9)) {
+                case 0 -> {
+                    memory.storeInt(i, x);
+                    yield x;
+                }
+                case 1 -> {
+                    assertEquals(memory.fetchAndStoreInt(i, x), old);
+                    yield x;
+                }
+                case 2 -> {
+                    assertEquals(memory.fetchAndAddInt(i, x), old);
+                    yield old + x;
+                }
+                case 3 -> {
+                    assertEquals(memory.fetchAndBitwiseOrInt(i, x), old);
+                    yield old | x;
+                }
+                case 4 -> {
+                    assertEquals(memory.fetchAndBitwiseAndInt(i, x), old);
+                    yield old & x;
+                }
+                case 5 -> {
+                    assertEquals(memory.fetchAndBitwiseXorInt(i, x), old);
+                    yield old ^ x;
+                }
+                case 6 -> {
+                    // a failed comparison is not a write
+                    assertEquals(memory.compareAndExchangeInt(i, old + 1, x), old);
+                    --stamps[i];
+                    yield old;
+                }
+                case 7 -> {
+                    assertTrue(memory.compareAndStoreInt(i, old, x));
+                    yield x;
+                }
+                default -> {
+                    long word = memory.fetchStamped(i);
+                    assertFalse(memory.compareAndStore(i, word + (1L << 32), x));
+                    assertTrue(memory.compareAndStore(i, word, x));
+                    yield x;
+                }
+            };
+            ++stamps[i];
+            long word = memory.fetchStamped(i);
+            assertEquals(StampedMemory.value(word), expected[i]);
+            assertEquals(StampedMemory.stamp(word), stamps[i]);
+            assertEquals(memory.fetchInt(i), expected[i]);
+            assertEquals(memory.fetchStamp(i), stamps[i]);
+        }
+    }
+
+    @Test
+    public void testAbaIsDetected() {
+        StampedMemory memory = new StampedMemory(1);
+        memory.storeInt(0, 5);
+        long word = memory.fetchStamped(0);
+        memory.storeInt(0, 6);
+        memory.storeInt(0, 5);
+        assertEquals(memory.fetchInt(0), 5);
+        assertFalse(memory.compareAndStore(0, word, 7));
+        assertTrue(memory.compareAndStore(0, 5, 3, 7, 100));
+        assertEquals(memory.fetchStamped(0), StampedMemory.pack(7, 100));
+        assertFalse(memory.compareAndStore(0, 7, 99, 8, 101));
+    }
+
+    @Test
+    public void testPacking() {
+        for (int v : new int[] {0, 1, -1, Integer.MIN_VALUE, Integer.MAX_VALUE}) {
+            for (int s : new int[] {0, 1, -1, Integer.MIN_VALUE}) {
+                long word = StampedMemory.pack(v, s);
+                assertEquals(StampedMemory.value(word), v);
+                assertEquals(StampedMemory.stamp(word), s);
+            }
+        }
+        // the stamp wraps around
+        StampedMemory memory = new StampedMemory(1);
+        assertTrue(memory.compareAndStore(0, 0, 0, 1, -1));
+        memory.storeInt(0, 2);
+        assertEquals(memory.fetchStamp(0), 0);
+        assertEquals(memory.fetchInt(0), 2);
+    }
+
+    @Test
+    public void testLastIndexAfterRealloc() {
+        StampedMemory memory = new StampedMemory(1);
+        for (int size : new int[] {5, 64, 1000, 3, 17}) {
+            memory.realloc(size);
+            int n = memory.length(), last = n - 1;
+            assertTrue(n >= size);
+            int stamp = memory.fetchStamp(last);
+            memory.storeInt(last, 9);
+            assertEquals(memory.fetchAndAddInt(last, 1), 9);
+            assertEquals(memory.fetchStamped(last), StampedMemory.pack(10, stamp + 2));
+
+            assertThrows(IndexOutOfBoundsException.class, () -> memory.fetchInt(n));
+            assertThrows(IndexOutOfBoundsException.class, () -> memory.storeInt(n, 1));
+            assertThrows(IndexOutOfBoundsException.class, () -> memory.compareAndStore(n, 0L, 1));
+        }
+    }
+
+    @Test
+    public void testReallocKeepsPrefix() {
+        StampedMemory memory = new StampedMemory(100);
+        for (int i = 0; i < 100; ++i)
+            memory.storeInt(i, i);
+        memory.realloc(10);
+        assertTrue(memory.length() < 100);
+        memory.realloc(100);
+        for (int i = 0; i < 10; ++i)
+            assertEquals(memory.fetchStamped(i), StampedMemory.pack(i, 1));
+        // new slots start from a zero stamp
+        for (int i = 16; i < memory.length(); ++i)
+            assertEquals(memory.fetchStamped(i), 0L);
+    }
+
+    @Test
+    public void testConcurrentStampsCountWrites() {
+        StampedMemory memory = new StampedMemory(2);
+        int threads = 4, adds = 20_000;
+        IntStream.range(0, threads).parallel().forEach(t -> {
+            for (int k = 0; k < adds; ++k) {
+                memory.fetchAndAddInt(0, 1);
+                for (long w;;) {
+                    w = memory.fetchStamped(1);
+                    if (memory.compareAndStore(1, w, StampedMemory.value(w) + 2))
+                        break;
+                }
+            }
+        });
+        assertEquals(memory.fetchStamped(0), StampedMemory.pack(threads * adds, threads * adds));
+        assertEquals(memory.fetchStamped(1), StampedMemory.pack(2 * threads * adds, threads * adds));
+    }
+
+    @Test
+    public void testReferencesAgainstPool() {
+        ArrayMemory<String> pool = new ArrayMemory<>(10);
+        for (int i = 0; i < pool.length(); ++i)
+            pool.store(i, "node" + i);
+        StampedReferenceMemory<String> slots = new StampedReferenceMemory<>(50, pool);
+        int[] expected = new int[slots.length()], stamps = new int[slots.length()];
+        Arrays.fill(expected, StampedReferenceMemory.NIL);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int k = 0; k < 10_000; ++k) {
+            int i = random.nextInt(expected.length),
+                    node = random.nextInt(-1, pool.length());
+            switch (random.nextInt(3)) {
+                case 0 -> slots.store(i, node);
+                case 1 -> assertEquals(slots.fetchAndStore(i, node), expected[i]);
+                default -> {
+                    long word = slots.fetchStamped(i);
+                    assertEquals(StampedReferenceMemory.node(word), expected[i]);
+                    assertTrue(slots.compareAndStore(i, word, node));
+                    assertFalse(slots.compareAndStore(i, word, node));
+                }
+            }
+            expected[i] = node;
+            ++stamps[i];
+            long word = slots.fetchStamped(i);
+            assertEquals(StampedReferenceMemory.node(word), node);
+            assertEquals(StampedMemory.stamp(word), stamps[i]);
+            assertEquals(slots.fetch(i), node == StampedReferenceMemory.NIL ? null : "node" + node);
+            assertEquals(slots.resolve(word), slots.fetch(i));
+        }
+    }
+
+    @Test
+    public void testReferenceBoundsAndRealloc() {
+        ArrayMemory<String> pool = new ArrayMemory<>(3);
+        pool.store(2, "last");
+        StampedReferenceMemory<String> slots = new StampedReferenceMemory<>(1, pool);
+        assertNull(slots.fetch(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> slots.store(0, 3));
+        assertThrows(IndexOutOfBoundsException.class, () -> slots.store(0, -2));
+        for (int size : new int[] {5, 64, 3, 17}) {
+            slots.realloc(size);
+            int n = slots.length(), last = n - 1;
+            assertTrue(n >= size);
+            slots.store(last, 2);
+            assertEquals(slots.fetch(last), "last");
+            assertThrows(IndexOutOfBoundsException.class, () -> slots.fetch(n));
+            // an unwritten slot is NIL
+            assertEquals(StampedReferenceMemory.node(slots.fetchStamped(0)), StampedReferenceMemory.NIL);
+        }
+    }
+}
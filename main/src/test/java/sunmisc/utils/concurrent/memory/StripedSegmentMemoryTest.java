@@ -0,0 +1,133 @@
+package sunmisc.utils.concurrent.memory;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+import static org.testng.Assert.*;
+
+/*
+ * The counters against a long[] while they stay compact,
+ * and their sums once contention may have striped them
+ */
+@Test
+public class StripedSegmentMemoryTest {
+
+    @Test
+    public void testPrimitiveOpsAgainstArray() {
+        StripedSegmentMemory memory = new StripedSegmentMemory(300);
+        long[] expected = new long[memory.length()];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int k = 0; k < 20_000; ++k) {
+            int i = random.nextInt(expected.length);
+            long x = random.nextLong(-1000, 1000);
+            switch (random.nextInt(6)) {
+                case 0 -> {
+                    memory.add(i, x);
+                    expected[i] += x;
+                }
+                case 1 -> {
+                    memory.increment(i);
+                    memory.decrement(i);
+                    memory.increment(i);
+                    ++expected[i];
+                }
+                case 2 -> {
+                    assertEquals(memory.fetchAndAdd(i, x), expected[i]);
+                    expected[i] += x;
+                }
+                case 3 -> {
+                    assertEquals(memory.fetchAndStore(i, x), expected[i]);
+                    expected[i] = x;
+                }
+                case 4 -> {
+                    assertFalse(memory.compareAndStore(i, expected[i] + 1, x));
+                    assertTrue(memory.compareAndStore(i, expected[i], x));
+                    expected[i] = x;
+                }
+                default -> {
+                    memory.reset(i);
+                    expected[i] = 0;
+                }
+            }
+            assertEquals(memory.sum(i), expected[i]);
+            assertEquals(memory.fetch(i).longValue(), expected[i]);
+        }
+        for (int i = 0; i < expected.length; ++i) {
+            assertFalse(memory.isStriped(i));
+            assertEquals(memory.sum(i), expected[i]);
+        }
+    }
+
+    @Test
+    public void testLastIndexAfterRealloc() {
+        StripedSegmentMemory memory = new StripedSegmentMemory(1);
+        for (int size : new int[] {5, 64, 1000, 3, 17}) {
+            memory.realloc(size);
+            int last = memory.length() - 1;
+            assertTrue(last >= size - 1);
+
+            memory.reset(last);
+            memory.add(last, 2);
+            memory.increment(last);
+            assertEquals(memory.sum(last), 3L);
+            assertEquals(memory.fetchAndStore(last, 7), 3L);
+            assertEquals(memory.fetch(last).longValue(), 7L);
+
+            int length = memory.length();
+            assertThrows(IndexOutOfBoundsException.class,
+                    () -> memory.sum(length));
+            assertThrows(IndexOutOfBoundsException.class,
+                    () -> memory.add(length, 1));
+            assertThrows(IndexOutOfBoundsException.class,
+                    () -> memory.add(-1, 1));
+        }
+    }
+
+    @Test
+    public void testReallocKeepsPrefix() {
+        StripedSegmentMemory memory = new StripedSegmentMemory(100);
+        for (int i = 0; i < 100; ++i)
+            memory.add(i, i);
+        memory.realloc(10);
+        assertTrue(memory.length() < 100);
+        memory.realloc(100);
+        for (int i = 0; i < 10; ++i)
+            assertEquals(memory.sum(i), i);
+        for (int i = 16; i < memory.length(); ++i)
+            assertEquals(memory.sum(i), 0L);
+    }
+
+    @Test
+    public void testSumUnderContention() {
+        StripedSegmentMemory memory = new StripedSegmentMemory(5);
+        int last = memory.length() - 1, threads = 4, adds = 50_000;
+        IntStream.range(0, threads).parallel().forEach(t -> {
+            for (int k = 0; k < adds; ++k) {
+                memory.increment(0);
+                memory.add(last, 2);
+            }
+        });
+        assertEquals(memory.sum(0), (long) threads * adds);
+        assertEquals(memory.sum(last), 2L * threads * adds);
+
+        // a striped counter has no single value to exchange
+        for (int i : new int[] {0, last}) {
+            if (memory.isStriped(i)) {
+                assertThrows(UnsupportedOperationException.class,
+                        () -> memory.fetchAndAdd(i, 1));
+                assertThrows(UnsupportedOperationException.class,
+                        () -> memory.compareAndStore(i, 0, 1));
+            }
+            memory.reset(i);
+            assertFalse(memory.isStriped(i));
+            assertEquals(memory.fetchAndAdd(i, 1), 0L);
+        }
+        // the side table follows a growth after the inflation
+        memory.realloc(1000);
+        int end = memory.length() - 1;
+        memory.add(end, 3);
+        assertEquals(memory.sum(end), 3L);
+    }
+}
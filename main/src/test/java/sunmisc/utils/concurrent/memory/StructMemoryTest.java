@@ -0,0 +1,153 @@
+package sunmisc.utils.concurrent.memory;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.testng.Assert.*;
+
+/*
+ * Every column against a long[] narrowed to the width of its field,
+ * with and without the seqlock
+ */
+@Test
+public class StructMemoryTest {
+
+    private static final int[] BITS = {64, 8, 32, 16};
+
+    @DataProvider
+    public Object[][] seqlock() {
+        return new Object[][] {{false}, {true}};
+    }
+
+    private static StructMemory struct(int length, boolean seqlock) {
+        return new StructMemory(length, seqlock, long.class, byte.class, int.class, short.class);
+    }
+
+    private static long narrow(long x, int bits) {
+        return x << (64 - bits) >> (64 - bits);
+    }
+
+    @Test(dataProvider = "seqlock")
+    public void testFieldOpsAgainstArray(boolean seqlock) {
+        StructMemory memory = struct(300, seqlock);
+        assertEquals(memory.fields(), BITS.length);
+        long[][] expected = new long[BITS.length][memory.length()];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long[] slot = new long[BITS.length];
+        for (int k = 0; k < 20_000; ++k) {
+            int i = random.nextInt(memory.length()), f = random.nextInt(BITS.length);
+            long x = random.nextLong(), old = expected[f][i];
+            expected[f][i] = narrow(switch (random.nextInt(7)) {
+                case 0 -> {
+                    memory.storeLong(i, f, x);
+                    yield x;
+                }
+                case 1 -> {
+                    assertEquals(memory.fetchAndStoreLong(i, f, x), old);
+                    yield x;
+                }
+                case 2 -> {
+                    assertEquals(memory.fetchAndAddLong(i, f, x), old);
+                    yield old + x;
+                }
+                case 3 -> {
+                    assertEquals(memory.fetchAndBitwiseOrLong(i, f, x), old);
+                    yield old | x;
+                }
+                case 4 -> {
+                    assertEquals(memory.fetchAndBitwiseAndLong(i, f, x), old);
+                    yield old & x;
+                }
+                case 5 -> {
+                    assertEquals(memory.fetchAndBitwiseXorLong(i, f, x), old);
+                    yield old ^ x;
+                }
+                default -> {
+                    assertTrue(memory.compareAndStoreLong(i, f, old, x));
+                    yield x;
+                }
+            }, BITS[f]);
+            assertEquals(memory.fetchLong(i, f), expected[f][i]);
+            if (random.nextInt(8) == 0) {
+                long[] values = random.longs(BITS.length).toArray();
+                memory.write(i, values);
+                for (int g = 0; g < BITS.length; ++g)
+                    expected[g][i] = narrow(values[g], BITS[g]);
+            }
+            memory.read(i, slot);
+            for (int g = 0; g < BITS.length; ++g)
+                assertEquals(slot[g], expected[g][i]);
+        }
+    }
+
+    @Test(dataProvider = "seqlock")
+    public void testLastIndexAfterRealloc(boolean seqlock) {
+        StructMemory memory = struct(1, seqlock);
+        long[] slot = new long[BITS.length];
+        for (int size : new int[] {5, 64, 1000, 3, 17}) {
+            memory.realloc(size);
+            int n = memory.length(), last = n - 1;
+            assertTrue(n >= size);
+            memory.write(last, 1, 2, 3, 4);
+            assertEquals(memory.fetchAndAddLong(last, 3, 1), 4L);
+            memory.read(last, slot);
+            assertEquals(slot, new long[] {1, 2, 3, 5});
+
+            assertThrows(IndexOutOfBoundsException.class, () -> memory.fetchLong(n, 0));
+            assertThrows(IndexOutOfBoundsException.class, () -> memory.write(n, 1, 2, 3, 4));
+            assertThrows(IndexOutOfBoundsException.class, () -> memory.read(n, slot));
+            assertThrows(IndexOutOfBoundsException.class, () -> memory.fetchLong(last, BITS.length));
+        }
+    }
+
+    @Test(dataProvider = "seqlock")
+    public void testReallocKeepsPrefix(boolean seqlock) {
+        StructMemory memory = struct(100, seqlock);
+        for (int i = 0; i < 100; ++i)
+            memory.write(i, i, i, i, i);
+        memory.realloc(10);
+        assertTrue(memory.length() < 100);
+        memory.realloc(100);
+        long[] slot = new long[BITS.length];
+        for (int i = 0; i < memory.length(); ++i) {
+            memory.read(i, slot);
+            long x = i < 10 ? i : i >= 16 ? 0 : slot[0];
+            assertEquals(slot, new long[] {x, x, x, x});
+        }
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new StructMemory(4, true));
+        assertThrows(IllegalArgumentException.class,
+                () -> new StructMemory(4, false, long.class, double.class));
+        StructMemory memory = struct(4, true);
+        assertThrows(IllegalArgumentException.class, () -> memory.write(0, 1, 2));
+        assertThrows(IllegalArgumentException.class, () -> memory.read(0, new long[2]));
+    }
+
+    @Test
+    public void testSeqlockReadsWholeWrites() {
+        StructMemory memory = new StructMemory(4, true, long.class, int.class, long.class);
+        AtomicBoolean done = new AtomicBoolean();
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            for (int k = 1; !done.get(); ++k)
+                memory.write(k & 3, k, k, k);
+        });
+        try {
+            long[] slot = new long[3];
+            for (int k = 0; k < 200_000; ++k) {
+                memory.read(k & 3, slot);
+                assertTrue(slot[0] == slot[1] && slot[1] == slot[2],
+                        slot[0] + ", " + slot[1] + ", " + slot[2]);
+            }
+        } finally {
+            done.set(true);
+            writer.join();
+        }
+    }
+}
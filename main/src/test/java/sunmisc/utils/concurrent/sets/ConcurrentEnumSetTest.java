@@ -0,0 +1,121 @@
+package sunmisc.utils.concurrent.sets;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+/*
+ * Every operation is checked against EnumSet, for an enum held
+ * in a single word and for one held in a memory of words
+ */
+@Test
+public class ConcurrentEnumSetTest {
+
+    @DataProvider
+    public static Object[][] types() {
+        return new Object[][] {
+                {TimeUnit.class},
+                {Character.UnicodeScript.class}
+        };
+    }
+
+    @Test(dataProvider = "types")
+    public <E extends Enum<E>> void testAddRemove(Class<E> type) {
+        final E[] universe = type.getEnumConstants();
+        final ConcurrentEnumSet<E> set = new ConcurrentEnumSet<>(type);
+        final Set<E> expected = EnumSet.noneOf(type);
+        assertTrue(set.isEmpty());
+        for (int i = 0; i < universe.length; i += 3) {
+            assertTrue(set.add(universe[i]));
+            assertFalse(set.add(universe[i]));
+            expected.add(universe[i]);
+        }
+        assertEquals(set, expected);
+        assertEquals(set.size(), expected.size());
+        assertTrue(set.contains(universe[0]));
+        assertFalse(set.contains(universe[1]));
+        assertFalse(set.contains(Thread.State.NEW));
+
+        assertTrue(set.remove(universe[0]));
+        assertFalse(set.remove(universe[0]));
+        assertFalse(set.remove(Thread.State.NEW));
+        expected.remove(universe[0]);
+        assertEquals(set, expected);
+
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertEquals(set.size(), 0);
+    }
+
+    @Test(dataProvider = "types")
+    public <E extends Enum<E>> void testBulkOperations(Class<E> type) {
+        final E[] universe = type.getEnumConstants();
+        final Set<E> evens = EnumSet.noneOf(type), thirds = EnumSet.noneOf(type);
+        for (int i = 0; i < universe.length; ++i) {
+            if (i % 2 == 0) evens.add(universe[i]);
+            if (i % 3 == 0) thirds.add(universe[i]);
+        }
+        // EnumSet, ConcurrentEnumSet and an arbitrary collection take different paths
+        final List<Set<E>> arguments = List.of(
+                thirds,
+                new ConcurrentEnumSet<>(type, thirds),
+                new HashSet<>(thirds));
+        for (Set<E> c : arguments) {
+            final ConcurrentEnumSet<E> set = new ConcurrentEnumSet<>(type, evens);
+            final Set<E> expected = EnumSet.copyOf(evens);
+            assertEquals(set, expected);
+            assertEquals(set.addAll(c), expected.addAll(c));
+            assertEquals(set, expected);
+            assertFalse(set.addAll(c));
+            assertTrue(set.containsAll(c));
+
+            assertEquals(set.retainAll(c), expected.retainAll(c));
+            assertEquals(set, expected);
+            assertFalse(set.retainAll(c));
+
+            assertEquals(set.removeAll(c), expected.removeAll(c));
+            assertEquals(set, expected);
+            assertTrue(set.isEmpty());
+            assertFalse(set.removeAll(c));
+            assertFalse(set.containsAll(c));
+        }
+    }
+
+    @Test(dataProvider = "types")
+    public <E extends Enum<E>> void testIteratorRemove(Class<E> type) {
+        final E[] universe = type.getEnumConstants();
+        final ConcurrentEnumSet<E> set = new ConcurrentEnumSet<>(type, EnumSet.allOf(type));
+        final List<E> visited = new ArrayList<>();
+        for (Iterator<E> it = set.iterator(); it.hasNext(); ) {
+            final E e = it.next();
+            visited.add(e);
+            if ((e.ordinal() & 1) != 0)
+                it.remove();
+        }
+        assertEquals(visited, List.of(universe));
+        assertEquals(set.size(), (universe.length + 1) / 2);
+        for (E e : universe)
+            assertEquals(set.contains(e), (e.ordinal() & 1) == 0);
+
+        final Iterator<E> it = set.iterator();
+        assertThrows(IllegalStateException.class, it::remove);
+        it.next();
+        it.remove();
+        assertThrows(IllegalStateException.class, it::remove);
+        assertFalse(set.contains(universe[0]));
+
+        set.clear();
+        assertFalse(set.iterator().hasNext());
+        assertThrows(NoSuchElementException.class, () -> set.iterator().next());
+    }
+}